@@ -0,0 +1,27 @@
+package calhoun.analysis.crf;
+
+/** an objective function that can also be computed on a subset of the training data.  Stochastic optimizers use this to take
+ * a step after looking at a small random batch of training sequences instead of the whole training set.
+ * <p>
+ * The training data is still set once through {@link #setTrainingData}, and all of the one time setup and caching happens there.
+ * The batch methods then select sequences from this training data by index.
+ */
+public interface CRFBatchObjectiveFunctionGradient extends CRFObjectiveFunctionGradient {
+
+	/** returns the number of training sequences that batches can select from.  This may be smaller than the number of sequences
+	 * passed to <code>setTrainingData</code> if some sequences were discarded as invalid.  Only valid after the training data is set.
+	 * @return the number of usable training sequences
+	 */
+	int getNumSequences();
+
+	/** computes the objective function value and the gradient on a subset of the training sequences.  The value and the gradient are
+	 * normalized by the number of positions in the batch, so that they are on the same scale as the values returned by
+	 * {@link #apply(double[], double[])}.
+	 *
+	 * @param weights an array of feature weights to use.
+	 * @param grad an array which must be filled with the gradient vector for the batch when the function returns.
+	 * @param sequences indices of the training sequences to include in the batch.  Each index must be less than {@link #getNumSequences}.
+	 * @return the value of the objective function on the batch.
+	 */
+	double apply(double[] weights, double[] grad, int[] sequences);
+}
@@ -25,6 +25,11 @@ public class CompositeFeatureManager extends AbstractFeatureManager implements F
 	int startIx;
 	int totalFeatures;
 
+	// Feature types with their input components resolved to slots, and the components of the most recently evaluated sequence.
+	// Both are replaced rather than modified, so evaluation from several threads needs no locking.
+	transient volatile ComponentSlots slots;
+	transient volatile Binding binding;
+
 	public 	List<FeatureManager> getComponentFeatures() {
 		return allFeatureTypes;
 	}
@@ -41,6 +46,7 @@ public class CompositeFeatureManager extends AbstractFeatureManager implements F
 	
 	public void addFeatureManager(String name, String inputParams, FeatureManager fm) {
 		Assert.a(startIndexes == null, "Attempted to add a new FeatureManager after training.");
+		slots = null;
 
 		if(name != null)
 			fm.setInputComponent(name);
@@ -124,19 +130,100 @@ public class CompositeFeatureManager extends AbstractFeatureManager implements F
 		}
 	}
 
+	/** the feature types of each kind as arrays, with the slot of the input component each one reads.  A slot of -1 means
+	 * the feature type reads the whole input sequence. */
+	static class ComponentSlots {
+		String[] names;
+		FeatureManagerNode[] node;
+		int[] nodeSlots;
+		FeatureManagerEdge[] edge;
+		int[] edgeSlots;
+		FeatureManagerNodeExplicitLength[] nodeLength;
+		int[] nodeLengthSlots;
+		FeatureManagerEdgeExplicitLength[] edgeLength;
+		int[] edgeLengthSlots;
+	}
+
+	/** the input components of one sequence, in slot order */
+	static class Binding {
+		final InputSequence seq;
+		final InputSequence[] components;
+
+		Binding(InputSequence seq, InputSequence[] components) {
+			this.seq = seq;
+			this.components = components;
+		}
+	}
+
+	/** returns the component slots, resolving the component names of the feature types the first time it is called. */
+	ComponentSlots getSlots() {
+		ComponentSlots ret = slots;
+		if(ret == null) {
+			List<String> names = new ArrayList<String>();
+			ret = new ComponentSlots();
+			ret.node = nodeFeatureTypes.toArray(new FeatureManagerNode[nodeFeatureTypes.size()]);
+			ret.nodeSlots = resolveSlots(ret.node, names);
+			ret.edge = edgeFeatureTypes.toArray(new FeatureManagerEdge[edgeFeatureTypes.size()]);
+			ret.edgeSlots = resolveSlots(ret.edge, names);
+			ret.nodeLength = explicitLengthNodeFeatureTypes.toArray(new FeatureManagerNodeExplicitLength[explicitLengthNodeFeatureTypes.size()]);
+			ret.nodeLengthSlots = resolveSlots(ret.nodeLength, names);
+			ret.edgeLength = explicitLengthEdgeFeatureTypes.toArray(new FeatureManagerEdgeExplicitLength[explicitLengthEdgeFeatureTypes.size()]);
+			ret.edgeLengthSlots = resolveSlots(ret.edgeLength, names);
+			ret.names = names.toArray(new String[names.size()]);
+			slots = ret;
+		}
+		return ret;
+	}
+
+	static int[] resolveSlots(FeatureManager[] fms, List<String> names) {
+		int[] ret = new int[fms.length];
+		for(int i = 0; i<fms.length; ++i) {
+			String name = fms[i].getInputComponent();
+			if(name == null) {
+				ret[i] = -1;
+			} else {
+				ret[i] = names.indexOf(name);
+				if(ret[i] == -1) {
+					ret[i] = names.size();
+					names.add(name);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/** returns the input components of a sequence in slot order.  Features are evaluated for one sequence at a time, so the
+	 * components are looked up by name only when the sequence changes. */
+	InputSequence[] bind(InputSequence seq, ComponentSlots s) {
+		Binding b = binding;
+		if(b == null || b.seq != seq) {
+			InputSequence[] components = new InputSequence[s.names.length];
+			for(int i = 0; i<components.length; ++i) {
+				components[i] = seq.getComponent(s.names[i]);
+			}
+			b = new Binding(seq, components);
+			binding = b;
+		}
+		return b.components;
+	}
+
 	public void evaluateNode(InputSequence seq, int pos, int state, FeatureList result) {
-		for(FeatureManagerNode fm : nodeFeatureTypes) {
-			InputSequence componentSeq = fm.getInputComponent() == null ? seq : seq.getComponent(fm.getInputComponent());
-			fm.evaluateNode(componentSeq, pos, state, result);
+		ComponentSlots s = getSlots();
+		InputSequence[] components = bind(seq, s);
+		for(int i = 0; i<s.node.length; ++i) {
+			int slot = s.nodeSlots[i];
+			s.node[i].evaluateNode(slot == -1 ? seq : components[slot], pos, state, result);
 			if(!result.isValid())
 				break;
 		}
 	}
 
 	public void evaluateEdge(InputSequence seq, int pos, int prevState, int state, FeatureList result) {
-		for(FeatureManagerEdge fm : edgeFeatureTypes) {
-			InputSequence componentSeq = fm.getInputComponent() == null ? seq : seq.getComponent(fm.getInputComponent());
-			fm.evaluateEdge(componentSeq, pos, prevState, state, result);
+		ComponentSlots s = getSlots();
+		InputSequence[] components = bind(seq, s);
+		for(int i = 0; i<s.edge.length; ++i) {
+			int slot = s.edgeSlots[i];
+			s.edge[i].evaluateEdge(slot == -1 ? seq : components[slot], pos, prevState, state, result);
 			if(!result.isValid()) {
 				break;
 			}
@@ -145,9 +232,11 @@ public class CompositeFeatureManager extends AbstractFeatureManager implements F
 
 	public void evaluateNodeLength(InputSequence seq, int pos, int length, int state, FeatureList result) {
 		Assert.a(length>0);
-		for(FeatureManagerNodeExplicitLength fm : explicitLengthNodeFeatureTypes) {
-			InputSequence componentSeq = fm.getInputComponent() == null ? seq : seq.getComponent(fm.getInputComponent());
-			fm.evaluateNodeLength(componentSeq, pos, length, state, result);
+		ComponentSlots s = getSlots();
+		InputSequence[] components = bind(seq, s);
+		for(int i = 0; i<s.nodeLength.length; ++i) {
+			int slot = s.nodeLengthSlots[i];
+			s.nodeLength[i].evaluateNodeLength(slot == -1 ? seq : components[slot], pos, length, state, result);
 			if(!result.isValid())
 				break;
 		}
@@ -155,9 +244,11 @@ public class CompositeFeatureManager extends AbstractFeatureManager implements F
 
 	public void evaluateEdgeLength(InputSequence seq, int pos, int length, int prevState, int state, FeatureList result) {
 		Assert.a(length>0);
-		for(FeatureManagerEdgeExplicitLength fm : explicitLengthEdgeFeatureTypes) {
-			InputSequence componentSeq = fm.getInputComponent() == null ? seq : seq.getComponent(fm.getInputComponent());
-			fm.evaluateEdgeLength(componentSeq, pos, length, prevState, state, result);
+		ComponentSlots s = getSlots();
+		InputSequence[] components = bind(seq, s);
+		for(int i = 0; i<s.edgeLength.length; ++i) {
+			int slot = s.edgeLengthSlots[i];
+			s.edgeLength[i].evaluateEdgeLength(slot == -1 ? seq : components[slot], pos, length, prevState, state, result);
 			if(!result.isValid())
 				break;
 		}
@@ -2,6 +2,7 @@ package calhoun.analysis.crf;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -247,22 +248,25 @@ public class Conrad implements Serializable {
 	 * @throws IOException if there is a problem reading the training data
 	 */
 	public void test(String inputLocation) throws IOException {
-		List<? extends TrainingSequence<?>> t = inputHandler.readTrainingData(inputLocation, false);
-		test(t);
+		test(inputLocation, null);
 	}
 
 	public void test(String inputLocation, String outputLocation) throws IOException {
-		List<? extends TrainingSequence<?>> t = inputHandler.readTrainingData(inputLocation, false);
-		test(t, outputLocation);
+		test(inputHandler.readTrainingDataIterator(inputLocation, false), outputLocation);
 	}
 
 	public void test(List<? extends TrainingSequence<?>> data) throws IOException {
 		test(data, null);
 	}
 	
+	/** predicts the hidden states of input data that has no known results.  The sequences are read and predicted one at a time,
+	 * so with an input handler and output handler that stream, only one sequence is held in memory at a time.
+	 * @param inputLocation string location of the data.  The exact meaning will be determined by the InputHandler.
+	 * @param outputLocation location passed to the output handler
+	 * @throws IOException if there is a problem reading the data or writing the results
+	 */
 	public void testWithoutAnswers(String inputLocation, String outputLocation) throws IOException {
-		List<? extends TrainingSequence<?>> t = inputHandler.readTrainingData(inputLocation, true);
-		test(t, outputLocation);
+		test(inputHandler.readTrainingDataIterator(inputLocation, true), outputLocation);
 	}
 	
 	/** runs a trained model against a set of input data with known results and evaluates the performance.  Assumes that
@@ -273,10 +277,20 @@ public class Conrad implements Serializable {
 	 * @param data a list of training sequences to use for training
 	 */
 	public void test(List<? extends TrainingSequence<?>> data, String location) throws IOException {
+		test(data.iterator(), location);
+	}
+
+	/** runs a trained model against input data that is read one sequence at a time.  Each sequence is predicted and passed to
+	 * the output handler before the next one is read, so no reference to it is kept here.
+	 * @param data an iterator over the sequences to predict
+	 * @param location location passed to the output handler
+	 */
+	public void test(Iterator<? extends TrainingSequence<?>> data, String location) throws IOException {
 		print("Beginning test");
 		printWeights();
 		outputHandler.setOutputLocation(location);
-		for (TrainingSequence dr : data) {
+		while (data.hasNext()) {
+			TrainingSequence dr = data.next();
 			InferenceResult predictedHiddenSequence = predict(dr);
 			outputHandler.writeTestOutput(dr.getInputSequence(), dr.getY(), predictedHiddenSequence.hiddenStates);
 		}
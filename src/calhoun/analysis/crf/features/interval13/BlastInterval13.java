@@ -13,6 +13,7 @@ import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
 import calhoun.analysis.crf.io.CompositeInput;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.IntInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 
 public class BlastInterval13 extends AbstractFeatureManager<CompositeInput> implements FeatureManagerNode<CompositeInput> {
@@ -46,11 +47,11 @@ public class BlastInterval13 extends AbstractFeatureManager<CompositeInput> impl
 			return;
 		}		
 
-		InputSequence<Integer>  pblast = (InputSequence<Integer>) seq.getComponent("pblast");
-		InputSequence<Integer>  mblast = (InputSequence<Integer>) seq.getComponent("mblast");
+		IntInputSequence  pblast = (IntInputSequence) seq.getComponent("pblast");
+		IntInputSequence  mblast = (IntInputSequence) seq.getComponent("mblast");
 
-		int plusEst  = pblast.getX(pos+1);
-		int minusEst = mblast.getX(pos+1);
+		int plusEst  = pblast.getInt(pos+1);
+		int minusEst = mblast.getInt(pos+1);
 		// 0 - no data
 		// 1 - blast cluster hit here on this strand
 
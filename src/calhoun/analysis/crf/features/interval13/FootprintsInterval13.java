@@ -11,6 +11,7 @@ import calhoun.analysis.crf.FeatureList;
 import calhoun.analysis.crf.FeatureManagerNode;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
+import calhoun.analysis.crf.io.AlignmentTracks;
 import calhoun.analysis.crf.io.InputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.MultipleAlignmentColumn;
@@ -58,8 +59,10 @@ public class FootprintsInterval13 extends AbstractFeatureManager<MultipleAlignme
 	
 	public void evaluateNode(InputSequence<? extends MultipleAlignmentColumn> seq, int pos, int state, FeatureList result) {
 		MultipleAlignmentColumn mac = seq.getX(pos);
+		AlignmentTracks tracks = mac.getMultipleAlignment().getAlignmentTracks();
+		int refPos = mac.getPosition();
 		for (int species = 1; species<mac.numSpecies(); species++) {
-			if (mac.nucleotide(species) == '-') continue;
+			if (!tracks.isAligned(refPos, species)) continue;
 			
 			if (isStateIntergenic[state]) { result.addFeature(startIx+((species-1)*3+0), 1.0); }
 			if (isStateCoding[state])     { result.addFeature(startIx+((species-1)*3+1), 1.0); }
@@ -11,11 +11,10 @@ import calhoun.analysis.crf.FeatureList;
 import calhoun.analysis.crf.FeatureManagerNode;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
+import calhoun.analysis.crf.io.AlignmentTracks;
 import calhoun.analysis.crf.io.InputSequence;
-import calhoun.analysis.crf.io.MultipleAlignmentInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.MultipleAlignmentColumn;
-import calhoun.seq.KmerHasher;
 import calhoun.util.Assert;
 
 public class GapFeaturesInterval13 extends AbstractFeatureManager<MultipleAlignmentColumn> implements FeatureManagerNode<MultipleAlignmentColumn> {
@@ -46,18 +45,11 @@ public class GapFeaturesInterval13 extends AbstractFeatureManager<MultipleAlignm
 	
 	int startIx;  
 	ModelManager model;
-	KmerHasher h = new KmerHasher(KmerHasher.ACGTN,1);
-	
-	int maxSeqLength;
 	
 	int nFeatures = 6;
 	int nStates;
 	
-	Boolean[] gapboundary, frameshifter;
 	Boolean[] isStateCoding, isStateIntronic, isStateIntergenic;
-
-	int lastSeqLength = -1;
-	int lastpos = -1;
 	
 	
 	public GapFeaturesInterval13() {	
@@ -75,73 +67,18 @@ public class GapFeaturesInterval13 extends AbstractFeatureManager<MultipleAlignm
 		return ret;
 	}
 
-	transient InputSequence<? extends MultipleAlignmentColumn> lastSeq = null;
-	
 	public void evaluateNode(InputSequence<? extends MultipleAlignmentColumn> seq, int pos, int state, FeatureList result) {
-		// Try out one of the following two lines.
-		if ( (seq != lastSeq) ) {
-		//if( (seq.length() != lastSeqLength)  || (pos < lastpos) ) {
-			log.debug("Performing precomputations for seq of length " + seq.length() + " at position " + pos);
-			performPrecomputations(seq.getX(0).getMultipleAlignment());
-			lastSeqLength = seq.length();
-			lastpos = pos;
-			lastSeq = seq;
-		}
-
-		if (isStateCoding[state]     && frameshifter[pos])          { result.addFeature(startIx+0, 1.0); }
-		if (isStateIntronic[state]   && frameshifter[pos])          { result.addFeature(startIx+1, 1.0); }
-		if (isStateIntergenic[state] && frameshifter[pos])          { result.addFeature(startIx+2, 1.0); }
-		if (isStateCoding[state]     && gapboundary[pos])           { result.addFeature(startIx+3, 1.0); }
-		if (isStateIntronic[state]   && gapboundary[pos])           { result.addFeature(startIx+4, 1.0); }
-		if (isStateIntergenic[state] && gapboundary[pos])           { result.addFeature(startIx+5, 1.0); }
-	}
-
-	private void performPrecomputations(MultipleAlignmentInputSequence seq) {
-		// In this method is where you need to set the boolean vectors frameshifter[i] and gapboundary[i] using the multiple alignment seq.
-
-		// Maybe a little inefficient with memory allocation but hopefully not too much
-		if (seq.length() > frameshifter.length) {
-			frameshifter = new Boolean[seq.length()];
-			gapboundary  = new Boolean[seq.length()];
-		}
-		
-		for (int j=0; j<seq.length(); j++) {
-			frameshifter[j] = false;
-			gapboundary[j] = false;
-		}
-		
-		int numSpecies = seq.numSpecies();
-		int consensusLength = seq.getConsensusLength();
-		
-		for (int spec = 0; spec<numSpecies; spec++) {
-			boolean inGap = false;
-			int conGapStart = -1;
-			for (int cpos = 1; cpos< consensusLength; cpos++ ) {
-				if ( (!inGap) && (h.hashable(seq.characterInPaddedAlignment(cpos-1,spec))) && (!h.hashable(seq.characterInPaddedAlignment(cpos,spec))) ) {
-					inGap = true;
-					conGapStart = cpos;
-				}
-				if ( (inGap) && (!h.hashable(seq.characterInPaddedAlignment(cpos-1,spec))) && (h.hashable(seq.characterInPaddedAlignment(cpos,spec))) ) {
-					inGap = false;
-					int conGapEnd = cpos-1;
-					int gaplen = conGapEnd - conGapStart + 1;
-					if (gaplen <=60) {
-						if ( (gaplen%3) == 0) {
-							gapboundary[seq.con2refLeft(conGapStart)] = true;
-							gapboundary[seq.con2refRight(conGapEnd)] = true;
-						} else {
-							frameshifter[seq.con2refLeft(conGapStart)] = true;
-							frameshifter[seq.con2refRight(conGapEnd)] = true;							
-						}
-						
-					}
-					
-				}
-					
-			}
-			
-		}
-		
+		MultipleAlignmentColumn col = seq.getX(pos);
+		AlignmentTracks tracks = col.getMultipleAlignment().getAlignmentTracks();
+		boolean frameshifter = tracks.isFrameshift(col.getPosition());
+		boolean gapboundary = tracks.isGapBoundary(col.getPosition());
+
+		if (isStateCoding[state]     && frameshifter)          { result.addFeature(startIx+0, 1.0); }
+		if (isStateIntronic[state]   && frameshifter)          { result.addFeature(startIx+1, 1.0); }
+		if (isStateIntergenic[state] && frameshifter)          { result.addFeature(startIx+2, 1.0); }
+		if (isStateCoding[state]     && gapboundary)           { result.addFeature(startIx+3, 1.0); }
+		if (isStateIntronic[state]   && gapboundary)           { result.addFeature(startIx+4, 1.0); }
+		if (isStateIntergenic[state] && gapboundary)           { result.addFeature(startIx+5, 1.0); }
 	}
 
 	public void train(int startingIndex, ModelManager modelInfo, List<? extends TrainingSequence<? extends MultipleAlignmentColumn>> data) {
@@ -150,14 +87,6 @@ public class GapFeaturesInterval13 extends AbstractFeatureManager<MultipleAlignm
 		model = modelInfo;
 		nStates = model.getNumStates();
 
-		maxSeqLength = 0;			
-		for(TrainingSequence<? extends MultipleAlignmentColumn> seq : data) {
-			int len = seq.length();
-			if (len > maxSeqLength) { maxSeqLength = len; }
-		}
-		frameshifter = new Boolean[maxSeqLength];
-		gapboundary  = new Boolean[maxSeqLength];
-				
 		isStateCoding = new Boolean[nStates];       for (int j=0; j<nStates; j++) { isStateCoding[j] = false; }
 		isStateCoding[1] = true;
 		isStateCoding[2] = true;
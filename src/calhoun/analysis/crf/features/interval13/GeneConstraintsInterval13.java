@@ -12,6 +12,8 @@ import calhoun.analysis.crf.FeatureManagerEdge;
 import calhoun.analysis.crf.FeatureManagerNode;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
+import calhoun.analysis.crf.features.supporting.GeneMotifIndex;
+import calhoun.analysis.crf.features.supporting.GeneMotifIndex.Motif;
 import calhoun.analysis.crf.io.InputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.util.Assert;
@@ -20,6 +22,7 @@ import calhoun.util.Assert;
  * 1) Intergenic - start must occur at ATG
  * 2) Splice sites must be canonical GT/AG or GC/AG
  * 3) Exon-stop must be followed by a start codon
+ * The motifs are looked up in the {@link GeneMotifIndex} of the sequence, which is shared with any other feature that asks for it.
  */
 public class GeneConstraintsInterval13  extends AbstractFeatureManager<Character> implements FeatureManagerEdge<Character>, FeatureManagerNode<Character> {
 	@SuppressWarnings("unused")
@@ -41,6 +44,7 @@ public class GeneConstraintsInterval13  extends AbstractFeatureManager<Character
 	
 	public void evaluateEdge(InputSequence<? extends Character> seq, int pos, int prevState, int state, FeatureList result) {
 		boolean valid = true;
+		GeneMotifIndex motifs = GeneMotifIndex.get(seq);
 		
 		int eind,iind;
 		
@@ -53,57 +57,57 @@ public class GeneConstraintsInterval13  extends AbstractFeatureManager<Character
 		case PSTART:
 			eind = Interval13Tools.check012(state-1);
 			if ((pos-eind)%3 != 0) { valid = false; break; } 
-			valid = startConstraintPlus(seq, pos);
+			valid = startConstraintPlus(motifs, pos);
 			break;
 		case PDON:
 			iind = Interval13Tools.check012(state-4);
 			eind = Interval13Tools.check012(prevState-1);
 			if ((pos-eind+iind)%3 != 0) { valid = false; break; } 
-			valid = donorConstraintPlus(seq, pos);
+			valid = donorConstraintPlus(motifs, pos);
 			break;
 		case PACC:
 			iind = Interval13Tools.check012(prevState-4);
 			eind = Interval13Tools.check012(state-1);
 			if ((pos-eind+iind)%3 != 0) { valid = false; break; } 
-			valid = acceptorConstraintPlus(seq, pos);
+			valid = acceptorConstraintPlus(motifs, pos);
 			break;
 		case PSTOP:
 			eind = Interval13Tools.check012(prevState-1);
 			if ((pos-eind)%3 != 0) { valid = false; break; } 
-			valid = stopEdgeConstraintPlus(seq, pos);
+			valid = stopEdgeConstraintPlus(motifs, pos);
 			break;
 		case MSTART:
 			eind = Interval13Tools.check012(prevState-7);
 			if ((pos-eind)%3 != 0) { valid = false; break; } 
-			valid = startConstraintMinus(seq, pos);
+			valid = startConstraintMinus(motifs, pos);
 			break;
 		case MDON:
 			iind = Interval13Tools.check012(prevState-10);
 			eind = Interval13Tools.check012(state-7);
 			if ((pos-eind-iind)%3 != 0) { valid = false; break; } 
-			valid = donorConstraintMinus(seq, pos);
+			valid = donorConstraintMinus(motifs, pos);
 			break;
 		case MACC:
 			iind = Interval13Tools.check012(state-10);
 			eind = Interval13Tools.check012(prevState-7);
 			if ((pos-eind-iind)%3 != 0) { valid = false; break; } 			
-			valid = acceptorConstraintMinus(seq, pos);
+			valid = acceptorConstraintMinus(motifs, pos);
 			break;
 		case MSTOP:
 			eind = Interval13Tools.check012(state-7);
 			if ((pos-eind)%3 != 0) { valid = false; break; } 
-			valid = stopEdgeConstraintMinus(seq, pos);
+			valid = stopEdgeConstraintMinus(motifs, pos);
 			break;
 		case PCODE: // redundant with node invalidation below
 			eind = Interval13Tools.check012(state-1);
 			if ( (pos-eind)%3 == 2) {
-				valid = !stopNodeConstraintPlus(seq, pos);
+				valid = !stopNodeConstraintPlus(motifs, pos);
 			}
 			break;
 		case MCODE: // redundant iwth node evaluation below
 			eind = Interval13Tools.check012(state-7);
 			if ( (pos-eind)%3==0) {
-				valid = !stopNodeConstraintMinus(seq, pos);
+				valid = !stopNodeConstraintMinus(motifs, pos);
 			}
 			break;
 		default:
@@ -127,6 +131,7 @@ public class GeneConstraintsInterval13  extends AbstractFeatureManager<Character
 
 	public void evaluateNode(InputSequence<? extends Character> seq, int pos, int state, FeatureList result) {
 		boolean valid = true;
+		GeneMotifIndex motifs = GeneMotifIndex.get(seq);
 	
 		int eind;
 		
@@ -139,13 +144,13 @@ public class GeneConstraintsInterval13  extends AbstractFeatureManager<Character
 		case PCODE:
 			eind = Interval13Tools.check012(state-1);
 			if ( (pos-eind)%3 == 2) {
-				valid = !stopNodeConstraintPlus(seq, pos);
+				valid = !stopNodeConstraintPlus(motifs, pos);
 			}
 			break;
 		case MCODE:
 			eind = Interval13Tools.check012(state-7);
 			if ( (pos-eind)%3==0) {
-				valid = !stopNodeConstraintMinus(seq, pos);
+				valid = !stopNodeConstraintMinus(motifs, pos);
 			}
 			break;
 		default:
@@ -156,73 +161,49 @@ public class GeneConstraintsInterval13  extends AbstractFeatureManager<Character
 	}
 	
 	
-	private boolean startConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		return (seq.length() > pos + 2) && seq.getX(pos) == 'A' && seq.getX(pos+1) == 'T' && seq.getX(pos+2) == 'G';
+	private boolean startConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.START_PLUS, pos);
 	}
 
-	private boolean startConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		return (pos >= 3) && seq.getX(pos-3) == 'C' && seq.getX(pos-2) == 'A' && seq.getX(pos-1) == 'T';
+	private boolean startConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.START_MINUS, pos-3);
 	}
 
-	private boolean donorConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		return (seq.length() > pos + 1) && seq.getX(pos) == 'G' && (seq.getX(pos+1) == 'T' || seq.getX(pos+1) == 'C');
+	private boolean donorConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.DONOR_PLUS, pos);
 	}
 
-	private boolean donorConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		boolean ret = (pos >= 2) && (seq.getX(pos-2) == 'A' || seq.getX(pos-2) == 'G') && seq.getX(pos-1) == 'C';
-		//if(!ret) log.warn("Seq wrong at MDON");
-		return ret;
+	private boolean donorConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.DONOR_MINUS, pos-2);
 	}
 
-	private boolean acceptorConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		return (pos > 1) && seq.getX(pos-2) == 'A' && seq.getX(pos-1) == 'G';
+	private boolean acceptorConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.ACCEPTOR_PLUS, pos-2);
 	}
 
-	private boolean acceptorConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		boolean ret = (seq.length() > pos + 1) && seq.getX(pos) == 'C' && seq.getX(pos+1) == 'T';
-		//if(!ret) log.warn("Seq wrong at MACC - expected CT but was "+seq.getX(pos)+seq.getX(pos+1));
-		return ret;
+	private boolean acceptorConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.ACCEPTOR_MINUS, pos);
 	}
 
 	//////////////////////////////////
 	
 	
-	private boolean stopEdgeConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		if(pos < (seq.length()-2) && seq.getX(pos) == 'T') {
-			return (seq.getX(pos+1) == 'A' && (seq.getX(pos+2) == 'G' || seq.getX(pos+2) == 'A'))
-					|| (seq.getX(pos+1) == 'G' && seq.getX(pos+2) == 'A');
-		}
-		return false;
+	private boolean stopEdgeConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.STOP_PLUS, pos);
 	}
 
-	private boolean stopEdgeConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		if(pos>=3 && seq.getX(pos-1) == 'A') {
-			boolean ret = (seq.getX(pos-2) == 'T' && (seq.getX(pos-3) == 'C' || seq.getX(pos-3) == 'T'))
-					|| (seq.getX(pos-2) == 'C' && seq.getX(pos-3) == 'T');
-			//if(!ret) log.warn("Seq wrong at MSTOP edge entry");
-			return ret;
-		}
-		//log.warn("Seq wrong at MSTOP edge exit");
-		return false;
+	private boolean stopEdgeConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.STOP_MINUS, pos-3);
 	}
 	
 	/////////////////////////////////////////
 	
-	private boolean stopNodeConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		if(pos >= 2 && seq.getX(pos-2) == 'T') {
-			return (seq.getX(pos-1) == 'A' && (seq.getX(pos) == 'G' || seq.getX(pos) == 'A'))
-					|| (seq.getX(pos-1) == 'G' && seq.getX(pos) == 'A');
-		}
-		return false;
+	private boolean stopNodeConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.STOP_PLUS, pos-2);
 	}
 
-	private boolean stopNodeConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		if(pos<(seq.length()-2) && seq.getX(pos+2) == 'A') {
-			boolean ret = (seq.getX(pos+1) == 'T' && (seq.getX(pos) == 'C' || seq.getX(pos) == 'T'))
-					|| (seq.getX(pos+1) == 'C' && seq.getX(pos) == 'T');
-			return ret;
-		}
-		return false;
+	private boolean stopNodeConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.STOP_MINUS, pos);
 	}
 	
 	@Override
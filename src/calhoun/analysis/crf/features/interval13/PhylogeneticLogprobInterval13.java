@@ -13,11 +13,14 @@ import calhoun.analysis.crf.FeatureList;
 import calhoun.analysis.crf.FeatureManagerNode;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
+import calhoun.analysis.crf.features.supporting.phylogenetic.ColumnPatternHistogram;
 import calhoun.analysis.crf.features.supporting.phylogenetic.EvolutionaryModel;
 import calhoun.analysis.crf.features.supporting.phylogenetic.Kimura80Model;
 import calhoun.analysis.crf.features.supporting.phylogenetic.PhylogeneticTreeFelsensteinOrder;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.ColumnPatterns;
 import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.MultipleAlignmentColumn;
 import calhoun.seq.KmerHasher;
 import calhoun.util.Assert;
@@ -32,11 +35,18 @@ public class PhylogeneticLogprobInterval13 extends AbstractFeatureManager<Multip
 	int startIx;  // The index of the first feature managed by this FeatureManager
 	ModelManager model;	
 	boolean multipleFeatures = false;
+	int trainingThreads = Runtime.getRuntime().availableProcessors(); // threads used to evaluate the likelihood during training
 	
 	EvolutionaryModel emodelIntergenic;      // one model for a column of aligned sequence in intergenic region
 	EvolutionaryModel emodelIntronic;        // one model for intronic regions
 	ArrayList<EvolutionaryModel> emodelExonic; // a model for positions 0,1,2 = (A,T,G) of a codon n a coding exon.
 	
+	// Log probabilities of each column pattern in the last alignment evaluated.  There is one table for each model and strand,
+	// computed when first needed: intergenic, intronic +, intronic -, exonic + for each phase, exonic - for each phase.
+	transient MultipleAlignmentInputSequence lastAlignment;
+	transient ColumnPatterns patterns;
+	transient double[][] patternLogprobs;
+
 	static KmerHasher hforward = new KmerHasher(KmerHasher.ACGTother,1);    // a character hasher for forward strand
 	static KmerHasher hbackward = new KmerHasher(KmerHasher.ACGTotherRC,1); // a character hasher for reverse strand
 	
@@ -65,13 +75,20 @@ public class PhylogeneticLogprobInterval13 extends AbstractFeatureManager<Multip
 
 		Assert.a(state < model.getNumStates());
 		MultipleAlignmentColumn col = seq.getX(pos);
+		MultipleAlignmentInputSequence aln = col.getMultipleAlignment();
+		if (aln != lastAlignment) {
+			lastAlignment = aln;
+			patterns = aln.getColumnPatterns();
+			patternLogprobs = new double[9][];
+		}
+		int pattern = patterns.getPatternId(col.getPosition());
 		
 		double val = 0.0;
 		int ephase;
 		int featureOffset = Integer.MIN_VALUE;
 		switch (state) {
 		case 0:
-			val = emodelIntergenic.logprob(col,true);
+			val = patternLogprob(0, emodelIntergenic, false, pattern);
 			featureOffset = 0;
 			break;
 		case 1:
@@ -79,26 +96,26 @@ public class PhylogeneticLogprobInterval13 extends AbstractFeatureManager<Multip
 		case 3:
 			ephase = ((pos-state+1)%3+3)%3;  //((pos-(state-1))%3 +3)%3;
 			//val = emodelExonic.get(0).logprob(col,true);
-			val = emodelExonic.get(ephase).logprob(col,true);
+			val = patternLogprob(3+ephase, emodelExonic.get(ephase), false, pattern);
 			featureOffset = 1; // + ephase;
 			break;
 		case 4:
 		case 5:
 		case 6:
-			val = emodelIntronic.logprob(col,true);
+			val = patternLogprob(1, emodelIntronic, false, pattern);
 			featureOffset = 2;
 			break;
 		case 7:
 		case 8:
 		case 9:
 			ephase = ((-pos+state+1)%3+3)%3;   // ((-pos+2+(state-7))%3 +3)%3;
-			val = emodelExonic.get(ephase).logprobRC(col,true);
+			val = patternLogprob(6+ephase, emodelExonic.get(ephase), true, pattern);
 			featureOffset = 3; // + ephase;
 			break;			
 		case 10:
 		case 11:
 		case 12:
-			val = emodelIntronic.logprobRC(col,true);
+			val = patternLogprob(2, emodelIntronic, true, pattern);
 			featureOffset = 4;
 			break;
 		default:
@@ -109,9 +126,20 @@ public class PhylogeneticLogprobInterval13 extends AbstractFeatureManager<Multip
 	}
 	
 	
+	/** looks up the log probability of a column pattern, computing the table for all patterns of the current alignment if needed */
+	private double patternLogprob(int table, EvolutionaryModel emodel, boolean reverseComplement, int pattern) {
+		double[] logprobs = patternLogprobs[table];
+		if (logprobs == null) {
+			logprobs = emodel.logprobs(patterns, true, reverseComplement);
+			patternLogprobs[table] = logprobs;
+		}
+		return logprobs[pattern];
+	}
+	
 	public void train(int startingIndex, ModelManager modelInfo, final List<? extends TrainingSequence<? extends MultipleAlignmentColumn>> data) {
 		startIx = startingIndex;
 		model = modelInfo;
+		lastAlignment = null;
 				
 		final PhylogeneticTreeFelsensteinOrder felsOrder = data.get(0).getX(0).getMultipleAlignment().getFelsensteinOrder();
 		
@@ -257,6 +285,25 @@ public class PhylogeneticLogprobInterval13 extends AbstractFeatureManager<Multip
 		double total = pi[0] + pi[1] + pi[2] + pi[3];
 		pi[0]/=total; pi[1]/=total; pi[2]/=total; pi[3]/=total;
 
+		// The likelihood only depends on how often each distinct column occurs on each strand
+		final ColumnPatternHistogram histogram = new ColumnPatternHistogram();
+		for(int seqNum=0; seqNum<data.size(); seqNum++) {
+			TrainingSequence<? extends MultipleAlignmentColumn> aln = data.get(seqNum);
+			int len = aln.length();							
+			
+			boolean[] ff = flagsForward.get(seqNum);
+			boolean[] fb = flagsBackward.get(seqNum);			
+			
+			for (int ix=0; ix<len; ix++) {
+				if (ff[ix]) {
+					histogram.add(aln.getX(ix),false);
+				}
+				if (fb[ix]) {
+					histogram.add(aln.getX(ix),true);
+				}
+			}
+		}
+		log.debug("Training on " + histogram.getTotal() + " columns with " + histogram.numPatterns() + " distinct patterns");
 		
 		MinimisationFunction mFunc = new MinimisationFunction() {
 			public double function(double[] d) {
@@ -267,27 +314,7 @@ public class PhylogeneticLogprobInterval13 extends AbstractFeatureManager<Multip
 				Kimura80Model R = new Kimura80Model(ed);
 				EvolutionaryModel M = new EvolutionaryModel(felsOrder,pi,R);
 				
-				double ret = 0;
-				for(int seqNum=0; seqNum<data.size(); seqNum++) {
-					TrainingSequence<? extends MultipleAlignmentColumn> aln = data.get(seqNum);
-					int len = aln.length();							
-					
-					boolean[] ff = flagsForward.get(seqNum);
-					Assert.a(ff.length == len);
-					
-					boolean[] fb = flagsBackward.get(seqNum);			
-					Assert.a(fb.length == len);
-					
-					for (int ix=0; ix<len; ix++) {
-						if (ff[ix]) {
-							ret += M.logprob(aln.getX(ix),true);									
-						}
-						if (fb[ix]) {
-							ret += M.logprobRC(aln.getX(ix),true);
-						}
-					}
-				}				
-				return -ret;
+				return -histogram.logLikelihood(M,true);
 			}
 		};						
 		
@@ -296,6 +323,7 @@ public class PhylogeneticLogprobInterval13 extends AbstractFeatureManager<Multip
 		final int nParm   = 2;
 		Minimisation m = new Minimisation();
 		m.setNmax(maxIter);
+		m.setNthreads(trainingThreads);
 		double[] starts = new double[nParm];
 		Arrays.fill(starts, 0.1);
 		double[] steps = new double[nParm];
@@ -328,4 +356,19 @@ public class PhylogeneticLogprobInterval13 extends AbstractFeatureManager<Multip
 	public void setMultipleFeatures(boolean multipleFeatures) {
 		this.multipleFeatures = multipleFeatures;
 	}
+
+	/**
+	 * @return Returns the number of threads used to train the evolutionary models.
+	 */
+	public int getTrainingThreads() {
+		return trainingThreads;
+	}
+
+	/**
+	 * @param trainingThreads The number of threads used to train the evolutionary models.  The Nelder-Mead
+	 * search evaluates candidate parameters concurrently.  Defaults to the number of processors.
+	 */
+	public void setTrainingThreads(int trainingThreads) {
+		this.trainingThreads = trainingThreads;
+	}
 }
@@ -14,6 +14,7 @@ import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
 import calhoun.analysis.crf.io.CompositeInput;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.IntInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 
 public class ESTInterval29 extends AbstractFeatureManager<CompositeInput> implements FeatureManagerNode<CompositeInput> , FeatureManagerEdge<CompositeInput> {
@@ -47,11 +48,11 @@ public class ESTInterval29 extends AbstractFeatureManager<CompositeInput> implem
 			return;
 		}		
 
-		InputSequence<Integer>  pest = (InputSequence<Integer>) seq.getComponent("pest");
-		InputSequence<Integer>  mest = (InputSequence<Integer>) seq.getComponent("mest");
+		IntInputSequence  pest = (IntInputSequence) seq.getComponent("pest");
+		IntInputSequence  mest = (IntInputSequence) seq.getComponent("mest");
 
-		int plusEst  = pest.getX(pos+1);
-		int minusEst = mest.getX(pos+1);
+		int plusEst  = pest.getInt(pos+1);
+		int minusEst = mest.getInt(pos+1);
 		// 0 - no data
 		// 1 - exon only
 		// 2 - intron only
@@ -75,16 +76,16 @@ public class ESTInterval29 extends AbstractFeatureManager<CompositeInput> implem
 			return;
 		}		
 		
-		InputSequence<Integer>  pest = (InputSequence<Integer>) seq.getComponent("pest");
-		InputSequence<Integer>  mest = (InputSequence<Integer>) seq.getComponent("mest");
+		IntInputSequence  pest = (IntInputSequence) seq.getComponent("pest");
+		IntInputSequence  mest = (IntInputSequence) seq.getComponent("mest");
 
-		int plusE  = pest.getX(pos+1); int plusEp = pest.getX(pos);
-		int minusE = mest.getX(pos+1); int minusEp = mest.getX(pos);
+		int plusE  = pest.getInt(pos+1); int plusEp = pest.getInt(pos);
+		int minusE = mest.getInt(pos+1); int minusEp = mest.getInt(pos);
 		
-		Boolean plusacc = ((plusEp==2) && (plusE==1));
-		Boolean plusdon = ((plusEp==1) && (plusE==2));
-		Boolean minusacc = ((minusEp==1) && (minusE==2));
-		Boolean minusdon = ((minusEp==2) && (minusE==1));
+		boolean plusacc = ((plusEp==2) && (plusE==1));
+		boolean plusdon = ((plusEp==1) && (plusE==2));
+		boolean minusacc = ((minusEp==1) && (minusE==2));
+		boolean minusdon = ((minusEp==2) && (minusE==1));
 		
 		if (plusacc  && plusExonState[state] && plusIntronState[prevState]) { result.addFeature(startIx+4,1); }
 		if (minusacc && minusExonState[prevState] && minusIntronState[state]) { result.addFeature(startIx+4,1); }
@@ -9,6 +9,8 @@ import calhoun.analysis.crf.FeatureManagerEdge;
 import calhoun.analysis.crf.FeatureManagerNode;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
+import calhoun.analysis.crf.features.supporting.GeneMotifIndex;
+import calhoun.analysis.crf.features.supporting.GeneMotifIndex.Motif;
 import calhoun.analysis.crf.io.InputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.util.Assert;
@@ -17,6 +19,7 @@ import calhoun.util.Assert;
  * 1) Intergenic - start must occur at ATG
  * 2) Splice sites must be canonical GT/AG or GC/AG
  * 3) Exon-stop must be followed by a start codon
+ * The motifs are looked up in the {@link GeneMotifIndex} of the sequence, which is shared with any other feature that asks for it.
  */
 public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character> implements FeatureManagerEdge<Character>, FeatureManagerNode<Character> {
 	private static final long serialVersionUID = 3041359216265032511L;
@@ -36,6 +39,7 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 	
 	public void evaluateEdge(InputSequence<? extends Character> seq, int pos, int prevState, int state, FeatureList result) {
 		boolean valid = true;
+		GeneMotifIndex motifs = GeneMotifIndex.get(seq);
 		
 		int eind,iind;
 		int eind1, eind2, iind1, iind2;
@@ -49,7 +53,7 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 			// ig-e to exonE
 			eind = Interval29Tools.check012(state-1);
 			if ((pos-eind)%3 != 0) { valid = false; break; } 
-			valid = startConstraintPlus(seq, pos);
+			valid = startConstraintPlus(motifs, pos);
 			break;
 		case PDON:
 			// exonE to e-iI 
@@ -57,7 +61,7 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 			iind = Interval29Tools.check012(state-15);
 			eind = Interval29Tools.check012(prevState-1);
 			if ((pos-eind+iind)%3 != 0) { valid = false; break; } 
-			valid = pos < 0 || donorConstraintPlus(seq, pos);
+			valid = pos < 0 || donorConstraintPlus(motifs, pos);
 			break;
 		case PACC:
 			// intronI to i-eE
@@ -65,19 +69,19 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 			eind = Interval29Tools.check012(state-18);
 			iind = Interval29Tools.check012(prevState-4);
 			if ((pos+2-eind+iind)%3 != 0) { valid = false; break; } 
-			valid = (pos+2 >= seq.length()) || acceptorConstraintPlus(seq, pos+2);
+			valid = (pos+2 >= seq.length()) || acceptorConstraintPlus(motifs, pos+2);
 			break;
 		case PSTOP:
 			// exonE to e-ig
 			eind = Interval29Tools.check012(prevState-1);
 			if ((pos-eind)%3 != 0) { valid = false; break; } 
-			valid = stopEdgeConstraintPlus(seq, pos);
+			valid = stopEdgeConstraintPlus(motifs, pos);
 			break; //done to here
 		case MSTART:
 			// exonEm to em-ig
 			eind = Interval29Tools.check012(prevState-7);
 			if ((pos-eind)%3 != 0) { valid = false; break; } 
-			valid = startConstraintMinus(seq, pos);
+			valid = startConstraintMinus(motifs, pos);
 			break;
 		case MDON:
 			// intronIm to im-eEm
@@ -85,7 +89,7 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 			eind = Interval29Tools.check012(state-26);
 			iind = Interval29Tools.check012(prevState-10);
 			if ((pos+2-eind-iind)%3 != 0) { valid = false; break; } 
-			valid = (pos+2 >= seq.length()) || donorConstraintMinus(seq, pos+2);
+			valid = (pos+2 >= seq.length()) || donorConstraintMinus(motifs, pos+2);
 			break;
 		case MACC:
 			// exonEm to e-iIm
@@ -93,24 +97,24 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 			iind = Interval29Tools.check012(state-23);
 			eind = Interval29Tools.check012(prevState-7);		
 			if ((pos-eind-iind)%3 != 0) { valid = false; break; } 			
-			valid = pos < 0 || acceptorConstraintMinus(seq, pos);
+			valid = pos < 0 || acceptorConstraintMinus(motifs, pos);
 			break;
 		case MSTOP:
 			// ig-em to exonEm
 			eind = Interval29Tools.check012(state - 7);
 			if ((pos-eind)%3 != 0) { valid = false; break; } 
-			valid = stopEdgeConstraintMinus(seq, pos);
+			valid = stopEdgeConstraintMinus(motifs, pos);
 			break;
 		case PCODE: // redundant with node invalidation below
 			eind = Interval29Tools.check012(state-1);
 			if ( (pos-eind)%3 == 2) {
-				valid = !stopNodeConstraintPlus(seq, pos);
+				valid = !stopNodeConstraintPlus(motifs, pos);
 			}
 			break;
 		case MCODE: // redundant with node evaluation below
 			eind = Interval29Tools.check012(state-7);
 			if ( (pos-eind)%3==0) {
-				valid = !stopNodeConstraintMinus(seq, pos);
+				valid = !stopNodeConstraintMinus(motifs, pos);
 			}
 			break;
 		case PKEEPE:
@@ -120,7 +124,7 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 			if (eind1 != eind2) {
 				valid = false;
 			} else {
-				valid = acceptorConstraintPlus(seq, pos);
+				valid = acceptorConstraintPlus(motifs, pos);
 			}
 			//valid = false;
 			break;
@@ -131,7 +135,7 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 			if (iind1 != iind2) {
 				valid = false;
 			} else {
-				valid = pos-2 < 0 || donorConstraintPlus(seq, pos-2);
+				valid = pos-2 < 0 || donorConstraintPlus(motifs, pos-2);
 			}		
 			//valid = false;
 			break;
@@ -142,7 +146,7 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 			if (eind1 != eind2) {
 				valid = false;
 			} else {
-				valid = donorConstraintMinus(seq, pos);
+				valid = donorConstraintMinus(motifs, pos);
 			}
 			//valid = false;
 			break;
@@ -153,21 +157,21 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 			if (iind1 != iind2) {
 				valid = false;
 			} else {
-				valid = pos-2 < 0 || acceptorConstraintMinus(seq, pos-2);
+				valid = pos-2 < 0 || acceptorConstraintMinus(motifs, pos-2);
 			}	
 			//valid = false;
 			break;
 		case PSTOPPED:
-			valid = pos-2 < 0 || stopEdgeConstraintPlus(seq, pos-2);
+			valid = pos-2 < 0 || stopEdgeConstraintPlus(motifs, pos-2);
 			break;
 		case MSTARTED:
-			valid = pos-2 < 0 || startConstraintMinus(seq, pos-2);
+			valid = pos-2 < 0 || startConstraintMinus(motifs, pos-2);
 			break;
 		case PWILLSTART:
-			valid = pos+2 >= seq.length() || startConstraintPlus(seq, pos+2);
+			valid = pos+2 >= seq.length() || startConstraintPlus(motifs, pos+2);
 			break;
 		case MWILLSTOP:
-			valid = pos+2 >= seq.length() || stopEdgeConstraintMinus(seq, pos+2);
+			valid = pos+2 >= seq.length() || stopEdgeConstraintMinus(motifs, pos+2);
 			break;
 		default:
 			Assert.a(false);
@@ -179,6 +183,7 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 
 	public void evaluateNode(InputSequence<? extends Character> seq, int pos, int state, FeatureList result) {
 		boolean valid = true;
+		GeneMotifIndex motifs = GeneMotifIndex.get(seq);
 	
 		int eind;
 		
@@ -191,13 +196,13 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 		case PCODE:
 			eind = Interval29Tools.check012(state-1);
 			if ( (pos-eind)%3 == 2) {
-				valid = !stopNodeConstraintPlus(seq, pos);
+				valid = !stopNodeConstraintPlus(motifs, pos);
 			}
 			break;
 		case MCODE:
 			eind = Interval29Tools.check012(state-7);
 			if ( (pos-eind)%3==0) {
-				valid = !stopNodeConstraintMinus(seq, pos);
+				valid = !stopNodeConstraintMinus(motifs, pos);
 			}
 			break;
 		default:
@@ -208,65 +213,49 @@ public class GeneConstraintsInterval29  extends AbstractFeatureManager<Character
 	}
 	
 	
-	private boolean startConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		return (seq.length() > pos + 2) && seq.getX(pos) == 'A' && seq.getX(pos+1) == 'T' && seq.getX(pos+2) == 'G';
+	private boolean startConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.START_PLUS, pos);
 	}
 
-	private boolean startConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		return (pos >= 3) && seq.getX(pos-3) == 'C' && seq.getX(pos-2) == 'A' && seq.getX(pos-1) == 'T';
+	private boolean startConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.START_MINUS, pos-3);
 	}
 
-	private boolean donorConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		return (seq.length() > pos + 1) && seq.getX(pos) == 'G' && (seq.getX(pos+1) == 'T' || seq.getX(pos+1) == 'C');
+	private boolean donorConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.DONOR_PLUS, pos);
 	}
 
-	private boolean donorConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		return (pos >= 2) && (seq.getX(pos-2) == 'A' || seq.getX(pos-2) == 'G') && seq.getX(pos-1) == 'C';
+	private boolean donorConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.DONOR_MINUS, pos-2);
 	}
 
-	private boolean acceptorConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		return (pos > 1) && seq.getX(pos-2) == 'A' && seq.getX(pos-1) == 'G';
+	private boolean acceptorConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.ACCEPTOR_PLUS, pos-2);
 	}
 
-	private boolean acceptorConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		return (seq.length() > pos + 1) && seq.getX(pos) == 'C' && seq.getX(pos+1) == 'T';
+	private boolean acceptorConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.ACCEPTOR_MINUS, pos);
 	}
 
 	//////////////////////////////////
 	
 	
-	private boolean stopEdgeConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		if(pos < (seq.length()-2) && seq.getX(pos) == 'T') {
-			return (seq.getX(pos+1) == 'A' && (seq.getX(pos+2) == 'G' || seq.getX(pos+2) == 'A'))
-					|| (seq.getX(pos+1) == 'G' && seq.getX(pos+2) == 'A');
-		}
-		return false;
+	private boolean stopEdgeConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.STOP_PLUS, pos);
 	}
 
-	private boolean stopEdgeConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		if(pos>=3 && seq.getX(pos-1) == 'A') {
-			return (seq.getX(pos-2) == 'T' && (seq.getX(pos-3) == 'C' || seq.getX(pos-3) == 'T'))
-					|| (seq.getX(pos-2) == 'C' && seq.getX(pos-3) == 'T');
-		}
-		return false;
+	private boolean stopEdgeConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.STOP_MINUS, pos-3);
 	}
 	
 	/////////////////////////////////////////
 	
-	private boolean stopNodeConstraintPlus(InputSequence<? extends Character> seq, int pos) {
-		if(pos >= 2 && seq.getX(pos-2) == 'T') {
-			return (seq.getX(pos-1) == 'A' && (seq.getX(pos) == 'G' || seq.getX(pos) == 'A'))
-					|| (seq.getX(pos-1) == 'G' && seq.getX(pos) == 'A');
-		}
-		return false;
+	private boolean stopNodeConstraintPlus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.STOP_PLUS, pos-2);
 	}
 
-	private boolean stopNodeConstraintMinus(InputSequence<? extends Character> seq, int pos) {
-		if(pos<(seq.length()-2) && seq.getX(pos+2) == 'A') {
-			return (seq.getX(pos+1) == 'T' && (seq.getX(pos) == 'C' || seq.getX(pos) == 'T'))
-					|| (seq.getX(pos+1) == 'C' && seq.getX(pos) == 'T');
-		}
-		return false;
+	private boolean stopNodeConstraintMinus(GeneMotifIndex motifs, int pos) {
+		return motifs.has(Motif.STOP_MINUS, pos);
 	}
 	
 	@Override
@@ -0,0 +1,129 @@
+package calhoun.analysis.crf.features.supporting;
+
+import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.InputSequenceCache;
+
+/** bitsets of the positions of the start codon, stop codon and splice site motifs in a DNA sequence, on both strands.  The index
+ * for a sequence is found with {@link #get} and is built in one pass over the sequence the first time it is asked for.  After
+ * that, asking whether a motif occurs at a position is a single bit test, safe from any thread.
+ * <p>
+ * Each motif is recorded at the position of its first base on the plus strand, so the minus strand motifs are the reverse
+ * complements as they read on the plus strand.  Matching is case sensitive, like the constraint checks it replaces: only upper
+ * case bases match.  Callers test the reading frame themselves from the position.
+ */
+public class GeneMotifIndex {
+
+	/** the motifs that are indexed */
+	public enum Motif {
+		/** ATG */
+		START_PLUS,
+		/** CAT, a start codon on the minus strand */
+		START_MINUS,
+		/** TAA, TAG or TGA */
+		STOP_PLUS,
+		/** TTA, CTA or TCA, a stop codon on the minus strand */
+		STOP_MINUS,
+		/** GT or GC */
+		DONOR_PLUS,
+		/** AC or GC, a donor on the minus strand */
+		DONOR_MINUS,
+		/** AG */
+		ACCEPTOR_PLUS,
+		/** CT, an acceptor on the minus strand */
+		ACCEPTOR_MINUS
+	}
+
+	static final int A = 0, C = 1, G = 2, T = 3, OTHER = 4;
+
+	static final InputSequenceCache<InputSequence<? extends Character>, GeneMotifIndex> cache = new InputSequenceCache<InputSequence<? extends Character>, GeneMotifIndex>() {
+		protected GeneMotifIndex create(InputSequence<? extends Character> seq) {
+			return new GeneMotifIndex(seq);
+		}
+	};
+
+	final int length;
+	// One bitset for each motif, indexed by ordinal.  Bit p is set if the motif starts at position p.
+	final long[][] bits;
+
+	/** returns the motif index of a sequence, creating it on first use.  The index does not keep the sequence from being garbage collected.
+	 * @param seq a DNA sequence
+	 * @return the index for this sequence
+	 */
+	public static GeneMotifIndex get(InputSequence<? extends Character> seq) {
+		return cache.get(seq);
+	}
+
+	GeneMotifIndex(InputSequence<? extends Character> seq) {
+		length = seq.length();
+		bits = new long[Motif.values().length][(length+63) >> 6];
+
+		// Slide a three base window along the sequence.  c0 is the base at pos.
+		int c0 = length > 0 ? code(seq.getX(0)) : OTHER;
+		int c1 = length > 1 ? code(seq.getX(1)) : OTHER;
+		for (int pos=0; pos<length; pos++) {
+			int c2 = pos+2 < length ? code(seq.getX(pos+2)) : OTHER;
+			if (c0 == A && c1 == T && c2 == G) {
+				set(Motif.START_PLUS, pos);
+			}
+			if (c0 == C && c1 == A && c2 == T) {
+				set(Motif.START_MINUS, pos);
+			}
+			if (c0 == T && ((c1 == A && (c2 == A || c2 == G)) || (c1 == G && c2 == A))) {
+				set(Motif.STOP_PLUS, pos);
+			}
+			if (c2 == A && ((c1 == T && (c0 == C || c0 == T)) || (c1 == C && c0 == T))) {
+				set(Motif.STOP_MINUS, pos);
+			}
+			if (c0 == G && (c1 == T || c1 == C)) {
+				set(Motif.DONOR_PLUS, pos);
+			}
+			if ((c0 == A || c0 == G) && c1 == C) {
+				set(Motif.DONOR_MINUS, pos);
+			}
+			if (c0 == A && c1 == G) {
+				set(Motif.ACCEPTOR_PLUS, pos);
+			}
+			if (c0 == C && c1 == T) {
+				set(Motif.ACCEPTOR_MINUS, pos);
+			}
+			c0 = c1;
+			c1 = c2;
+		}
+	}
+
+	static int code(char c) {
+		switch (c) {
+		case 'A':
+			return A;
+		case 'C':
+			return C;
+		case 'G':
+			return G;
+		case 'T':
+			return T;
+		default:
+			return OTHER;
+		}
+	}
+
+	void set(Motif motif, int pos) {
+		bits[motif.ordinal()][pos >> 6] |= 1L << (pos & 63);
+	}
+
+	/** returns true if a motif starts at a position.  Positions off either end of the sequence never have a motif.
+	 * @param motif the motif to look for
+	 * @param pos zero-based position of the first base of the motif
+	 * @return true if the motif is there
+	 */
+	public boolean has(Motif motif, int pos) {
+		if (pos < 0 || pos >= length) {
+			return false;
+		}
+		return ((bits[motif.ordinal()][pos >> 6] >>> (pos & 63)) & 1L) != 0;
+	}
+
+	/** returns the length of the indexed sequence */
+	public int length() {
+		return length;
+	}
+}
@@ -6,6 +6,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.KmerIndexTracks;
 import calhoun.seq.KmerHasher;
 import calhoun.util.Assert;
 
@@ -51,32 +52,9 @@ public class LogProbLookup implements Serializable {
 	}
 	
 	private int getInd(InputSequence<? extends Character> seq, int pos, boolean isPlus) {
-		int ind = 0;
-		if (isPlus) {
-			if (pos < maxLookBack) { return -1; }
-			for (int j=pos-maxLookBack; j<=pos; j++) {
-				int h = hashForward.hash( (char) seq.getX(j));
-				//int h = hashForward.hash('A');
-				if (h<4) {
-					ind *= mult;
-					ind += h;
-				} else {
-					return -1;
-				}
-			}
-		} else {
-			if (pos + maxLookBack >= seq.length()) { return -1; }
-			for (int j=pos+maxLookBack; j>=pos; j--) {
-				int h = hashReverse.hash( (char) seq.getX(j));
-				if (h<4) {
-					ind *= mult;
-					ind += h;
-				} else {
-					return -1;
-				}
-			}
-		}
-		return ind;
+		KmerIndexTracks tracks = KmerIndexTracks.get(seq);
+		int[] track = isPlus ? tracks.getForward(maxLookBack+1, false) : tracks.getReverse(maxLookBack+1, false);
+		return track[pos];
 	}
 	
 	public void increment(InputSequence<? extends Character> seq, int pos, boolean isPlus) {
@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.List;
 
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.KmerIndexTracks;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.seq.KmerHasher;
 import calhoun.util.Assert;
@@ -31,8 +32,6 @@ public class MarkovPredictorLogprob implements Serializable {
 	int maxLength;
 	KmerHasher h; // for a single letter.  Used to index the third dimension of the log prob.
 	
-	int[] currentHash;
-	char[] scratch;
 
 	/** History is a list that contains one entry for each state.  Each entry in the list is in turn a list of the preceding states
 	 * that we want to examine.
@@ -47,7 +46,6 @@ public class MarkovPredictorLogprob implements Serializable {
 		kmerLengths = new int[nStates];
 		hashers = new KmerHasher[nStates];
 		logProb = new float[nStates][][];
-		currentHash = new int[nStates];
 
 		h = new KmerHasher(KmerHasher.ACGTN, 1);
 			
@@ -65,13 +63,8 @@ public class MarkovPredictorLogprob implements Serializable {
 				}
 			}
 		}
-		scratch = new char[maxLength];
 	}
 	
-	transient InputSequence<? extends Character> lastSeq = null;
-	int lastPos = -1;
-	char lastChar;
-	int singleHash;
 	public float logprob(int state, InputSequence<? extends Character> seq, int pos) {
 		/* Returns the log probability of nucleotide at position pos in ISC given
 		 * that the hidden state at position pos is state and given the previous several
@@ -82,20 +75,10 @@ public class MarkovPredictorLogprob implements Serializable {
 			return (float) 0.0; 
 		}		
 		
-		if(seq != lastSeq || pos != lastPos) {
-			if(pos == lastPos + 1) {
-				updateHashes(lastChar);
-			}
-			else {
-				initHashes(seq, pos);
-			}
-			lastSeq = seq;
-			lastPos = pos;
-			lastChar = seq.getX(pos);
-			singleHash = h.hash(lastChar);
-		}
-		
-		return logProb[state][currentHash[state]][singleHash];
+		// The history is the k-mer ending just before this position, hashed like ACGTN
+		KmerIndexTracks tracks = KmerIndexTracks.get(seq);
+		int historyHash = tracks.getForward(kmerLengths[state], true)[pos-1];
+		return logProb[state][historyHash][tracks.getCodes()[pos]];
 	}
 
 	
@@ -108,7 +91,12 @@ public class MarkovPredictorLogprob implements Serializable {
 		for(TrainingSequence<? extends Character> seq : data) {
 			int len = seq.length();
 
-			initHashes(seq, maxLength);
+			KmerIndexTracks tracks = KmerIndexTracks.get(seq.getInputSequence());
+			byte[] codes = tracks.getCodes();
+			int[][] historyHashes = new int[nStates][];
+			for (int v=0; v<nStates; v++) {
+				historyHashes[v] = tracks.getForward(kmerLengths[v], true);
+			}
 			for (int pos=maxLength; pos<len; pos++) {
 				int v = seq.getY(pos);
 				boolean okHistory = true;
@@ -119,11 +107,9 @@ public class MarkovPredictorLogprob implements Serializable {
 					}
 				}
 				
-				char c = seq.getX(pos);
 				if (okHistory) {
-					logProb[v][currentHash[v]][h.hash(c)] += 1.0f;
+					logProb[v][historyHashes[v][pos-1]][codes[pos]] += 1.0f;
 				}
-				updateHashes(c);
 			}	
 		}
 		
@@ -142,23 +128,4 @@ public class MarkovPredictorLogprob implements Serializable {
 		}	
 		trainedYet = true;
 	}
-
-	void initHashes(InputSequence<? extends Character> seq, int start) {
-		// Fill the scratch buffer with the first entries, from 0 to maxLength-1
-		for (int pos=0; pos<maxLength; pos++) {
-			scratch[pos] = seq.getX(pos-maxLength+start);
-			// Note: if you crash on above line with class cast exception, then a possible
-			// cause is that you are using a composite input, but in you config file you
-			// do not specify which input component this feature should be using.
-		}
-		for(int i = 0; i<currentHash.length; ++i) {
-			currentHash[i] = hashers[i].hash(scratch, maxLength - kmerLengths[i]);
-		}
-	}
-
-	void updateHashes(char c) {
-		for(int i = 0; i<currentHash.length; ++i) {
-			currentHash[i] = hashers[i].shiftHash(c, currentHash[i]);
-		}
-	}
 }
@@ -6,7 +6,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import calhoun.analysis.crf.io.InputSequence;
-import calhoun.seq.KmerHasher;
+import calhoun.analysis.crf.io.KmerIndexTracks;
 import calhoun.util.Assert;
 
 
@@ -15,9 +15,6 @@ public class PWMLookup implements Serializable {
 
 	private static final Log log = LogFactory.getLog(PWMLookup.class);
 
-	final KmerHasher.CharacterHash hashForward = KmerHasher.ACGTN;
-	final KmerHasher.CharacterHash hashReverse = KmerHasher.ACGTNcomp;		
-
 	boolean finalized = false;
 	
 	final int mult = 4;
@@ -48,12 +45,13 @@ public class PWMLookup implements Serializable {
 	
 	public void increment(InputSequence<? extends Character> seq, int pos, boolean isPlus) {
 		Assert.a(!finalized);
+		byte[] codes = KmerIndexTracks.get(seq).getCodes();
 		
 		if (isPlus) {
 			if (pos < left) { return; }
 			if (pos + right > seq.length()) { return; }
 			for (int j = pos - left; j<pos+right; j++) {
-				int h = hashForward.hash(seq.getX(j));
+				int h = codes[j];
 				if (h<4) {
 					lookupTable[mult*(j-pos+left) + h] += 1.0;
 				}
@@ -62,9 +60,9 @@ public class PWMLookup implements Serializable {
 			if (pos < right) { return; }
 			if (pos + left > seq.length()) { return; }			
 			for (int j = pos + left - 1; j>=pos - right; j--) {
-				int h = hashReverse.hash(seq.getX(j));
+				int h = codes[j];
 				if (h<4) {
-					lookupTable[mult*(pos+left-1-j) + h] += 1.0;
+					lookupTable[mult*(pos+left-1-j) + 3 - h] += 1.0;
 				}
 			}
 		}
@@ -93,12 +91,13 @@ public class PWMLookup implements Serializable {
 		Assert.a(finalized);
 		
 		double ret = 0.0;
+		byte[] codes = KmerIndexTracks.get(seq).getCodes();
 		
 		if (isPlus) {
 			if (pos < left) { return 0.0; }
 			if (pos + right > seq.length()) { return 0.0; }
 			for (int j = pos - left; j<pos+right; j++) {
-				int h = hashForward.hash(seq.getX(j));
+				int h = codes[j];
 				if (h<4) {
 					ret += lookupTable[mult*(j-pos+left) + h];
 				}
@@ -107,9 +106,9 @@ public class PWMLookup implements Serializable {
 			if (pos < right) { return 0.0; }
 			if (pos + left > seq.length()) { return 0.0; }			
 			for (int j = pos + left - 1; j>=pos - right; j--) {
-				int h = hashReverse.hash(seq.getX(j));
+				int h = codes[j];
 				if (h<4) {
-					ret += lookupTable[mult*(pos+left-1-j) + h];
+					ret += lookupTable[mult*(pos+left-1-j) + 3 - h];
 				}
 			}
 		}
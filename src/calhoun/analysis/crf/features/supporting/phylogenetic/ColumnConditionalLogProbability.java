@@ -3,16 +3,16 @@ package calhoun.analysis.crf.features.supporting.phylogenetic;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.ColumnPatterns;
 import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.MultipleAlignmentColumn;
 import calhoun.seq.KmerHasher;
 import calhoun.util.Assert;
@@ -24,24 +24,30 @@ public class ColumnConditionalLogProbability implements Serializable {
 
 	private static final Log log = LogFactory.getLog(ColumnConditionalLogProbability.class);
 
-	InputSequence<MultipleAlignmentColumn> lastSeq; 
-	int lastPos;
-	double[] vals;	
+	// Log probabilities of each column pattern in the last alignment evaluated, one table per cluster, computed when first needed.
+	transient MultipleAlignmentInputSequence lastAlignment;
+	transient ColumnPatterns patterns;
+	transient double[][] patternLogprobs;
 	
 	List<int[]> clusters;             // will be an input
 	int[] state2cluster;              // will be derived
 	List<EvolutionaryModel> emodels;  // this gets trained
 	private ModelManager model;
 	static KmerHasher h = new KmerHasher(KmerHasher.ACGTother,1);
-	Map<Integer, double[]> columnCache = new HashMap<Integer, double[]>();
 	private int eModelNum;  // 0 = Kimura80Model
                             // 1 = HKY85Model
+	private int trainingThreads = Runtime.getRuntime().availableProcessors(); // threads used to evaluate the likelihood during training
 		
 	public ColumnConditionalLogProbability(List<int[]> clusters, int eModelNum) {
 		this.clusters = clusters;
 		this.eModelNum = eModelNum;
 	}
 	
+	/** sets the number of threads used by the Nelder-Mead search when training the evolutionary models.  Defaults to the number of processors. */
+	public void setTrainingThreads(int trainingThreads) {
+		this.trainingThreads = trainingThreads;
+	}
+
 	public int numClusters() {
 		return clusters.size();
 	}
@@ -54,33 +60,24 @@ public class ColumnConditionalLogProbability implements Serializable {
 		Assert.a(state < model.getNumStates());
 
 		MultipleAlignmentColumn col = seq.getX(pos);
-		return emodels.get(state2cluster[state]).logprob(col,true);
-		
-		/*
-		if(seq != lastSeq || pos != lastPos) {
-			lastSeq = seq;
-			lastPos = pos;
-
-			MultipleAlignmentColumn col = seq.getX(pos);
-			Integer hash = col.getUniqueHash();
-			if(columnCache.containsKey(hash)) {
-				vals = columnCache.get(hash); 
-			}
-			else {
-				for (int i=0; i<clusters.size(); i++) {
-					vals = new double[clusters.size()];
-					vals[i] = emodels.get(i).logprob(col,true);
-				}
-				columnCache.put(hash, vals);
-			}
+		MultipleAlignmentInputSequence aln = col.getMultipleAlignment();
+		if(aln != lastAlignment) {
+			lastAlignment = aln;
+			patterns = aln.getColumnPatterns();
+			patternLogprobs = new double[clusters.size()][];
+		}
+		int cluster = state2cluster[state];
+		double[] logprobs = patternLogprobs[cluster];
+		if(logprobs == null) {
+			logprobs = emodels.get(cluster).logprobs(patterns, true, false);
+			patternLogprobs[cluster] = logprobs;
 		}
-		return vals[state2cluster[state]];
-		*/
+		return logprobs[patterns.getPatternId(col.getPosition())];
 	}
 	
 	public void train( ModelManager modelInfo, final List<? extends TrainingSequence<? extends MultipleAlignmentColumn>> data) {
 		model = modelInfo;
-		vals = new double[clusters.size()];
+		lastAlignment = null;
 		final PhylogeneticTreeFelsensteinOrder felsOrder = data.get(0).getX(0).getMultipleAlignment().getFelsensteinOrder();
 
 		
@@ -131,6 +128,19 @@ public class ColumnConditionalLogProbability implements Serializable {
 			double total = pi[0] + pi[1] + pi[2] + pi[3];
 			pi[0]/=total; pi[1]/=total; pi[2]/=total; pi[3]/=total;
 			
+			// The likelihood only depends on how often each distinct column occurs in the cluster
+			final ColumnPatternHistogram histogram = new ColumnPatternHistogram();
+			for(TrainingSequence<? extends MultipleAlignmentColumn> aln : data) {
+				int len = aln.length();							
+				for (int ix=0; ix<len; ix++) {
+					int y = aln.getY(ix);
+					if (state2cluster[y] == cluster) {
+						histogram.add(aln.getX(ix),false);
+					}
+				}
+			}
+			log.debug("Training on " + histogram.getTotal() + " columns with " + histogram.numPatterns() + " distinct patterns");
+			
 			if (eModelNum==0) { // Kimura80Model
 				MinimisationFunction mFunc = new MinimisationFunction() {
 					public double function(double[] d) {
@@ -141,17 +151,7 @@ public class ColumnConditionalLogProbability implements Serializable {
 						Kimura80Model R = new Kimura80Model(ed);
 						EvolutionaryModel M = new EvolutionaryModel(felsOrder,pi,R);
 						
-						double ret = 0;
-						for(TrainingSequence<? extends MultipleAlignmentColumn> aln : data) {
-							int len = aln.length();							
-							for (int ix=0; ix<len; ix++) {
-								int y = aln.getY(ix);
-								if (state2cluster[y] == cluster) {
-									ret += M.logprob(aln.getX(ix),false);									
-								}
-							}
-						}					
-						return -ret;
+						return -histogram.logLikelihood(M,false);
 					}
 				};						
 				
@@ -160,6 +160,7 @@ public class ColumnConditionalLogProbability implements Serializable {
 				final int nParm   = 2;
 				Minimisation m = new Minimisation();
 				m.setNmax(maxIter);
+				m.setNthreads(trainingThreads);
 				double[] starts = new double[nParm];
 				Arrays.fill(starts, 0.1);
 				double[] steps = new double[nParm];
@@ -187,17 +188,7 @@ public class ColumnConditionalLogProbability implements Serializable {
 						HKY85Model R = new HKY85Model(ed);
 						EvolutionaryModel M = new EvolutionaryModel(felsOrder,pi,R);
 						
-						double ret = 0;
-						for(TrainingSequence<? extends MultipleAlignmentColumn> aln : data) {
-							int len = aln.length();							
-							for (int ix=0; ix<len; ix++) {
-								int y = aln.getY(ix);
-								if (state2cluster[y] == cluster) {
-									ret += M.logprob(aln.getX(ix),false);									
-								}
-							}
-						}					
-						return -ret;
+						return -histogram.logLikelihood(M,false);
 					}
 				};						
 				
@@ -206,6 +197,7 @@ public class ColumnConditionalLogProbability implements Serializable {
 				final int nParm   = 2;
 				Minimisation m = new Minimisation();
 				m.setNmax(maxIter);
+				m.setNthreads(trainingThreads);
 				double[] starts = new double[nParm];
 				Arrays.fill(starts, 0.1);
 				double[] steps = new double[nParm];
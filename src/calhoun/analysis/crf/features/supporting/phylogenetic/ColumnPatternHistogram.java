@@ -0,0 +1,140 @@
+package calhoun.analysis.crf.features.supporting.phylogenetic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.ColumnPatterns;
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.MultipleAlignmentColumn;
+import calhoun.seq.KmerHasher;
+
+/** counts of the distinct alignment columns in a set of training data.  The log likelihood of the training columns under an
+ * evolutionary model only depends on these counts, so the Nelder-Mead search used to train evolutionary models can evaluate
+ * each distinct column once instead of once per position.
+ * <p>
+ * Columns from the reverse strand are complemented when added, so forward and reverse strand columns that are the same
+ * after complementing are counted together.
+ */
+public class ColumnPatternHistogram {
+
+	Map<String, Integer> ids = new HashMap<String, Integer>();
+	List<byte[]> patterns = new ArrayList<byte[]>();
+	int[] counts = new int[16];
+	int total = 0;
+	byte[][] patternArray = null;
+
+	// Maps the pattern ids of each alignment to ids in this histogram, for each strand
+	Map<ColumnPatterns, int[][]> alignmentIds = new IdentityHashMap<ColumnPatterns, int[][]>();
+
+	/** adds one column to the histogram.
+	 * @param col the alignment column
+	 * @param reverseComplement true if the column is on the reverse strand, as for {@link EvolutionaryModel#logprobRC}
+	 */
+	public void add(MultipleAlignmentColumn col, boolean reverseComplement) {
+		ColumnPatterns alignmentPatterns = col.getMultipleAlignment().getColumnPatterns();
+		int[][] strandIds = alignmentIds.get(alignmentPatterns);
+		if(strandIds == null) {
+			strandIds = new int[2][];
+			alignmentIds.put(alignmentPatterns, strandIds);
+		}
+		int strand = reverseComplement ? 1 : 0;
+		int[] localIds = strandIds[strand];
+		if(localIds == null) {
+			localIds = new int[alignmentPatterns.numPatterns()];
+			Arrays.fill(localIds, -1);
+			strandIds[strand] = localIds;
+		}
+
+		int localId = alignmentPatterns.getPatternId(col.getPosition());
+		int id = localIds[localId];
+		if(id == -1) {
+			id = patternId(alignmentPatterns.getPattern(localId), reverseComplement);
+			localIds[localId] = id;
+		}
+		counts[id] += 1;
+		total += 1;
+	}
+
+	int patternId(byte[] alignmentPattern, boolean reverseComplement) {
+		char[] key = new char[alignmentPattern.length];
+		for(int i = 0; i < key.length; ++i) {
+			int x = alignmentPattern[i];
+			key[i] = (char) ((reverseComplement && x < 4) ? 3 - x : x);
+		}
+		String keyString = new String(key);
+		Integer id = ids.get(keyString);
+		if(id == null) {
+			id = patterns.size();
+			ids.put(keyString, id);
+			byte[] pattern = new byte[key.length];
+			for(int i = 0; i < key.length; ++i) {
+				pattern[i] = (byte) key[i];
+			}
+			patterns.add(pattern);
+			patternArray = null;
+			if(id == counts.length) {
+				int[] newCounts = new int[counts.length * 2];
+				System.arraycopy(counts, 0, newCounts, 0, counts.length);
+				counts = newCounts;
+			}
+		}
+		return id;
+	}
+
+	/** returns the number of distinct column patterns added.
+	 * @return the number of patterns
+	 */
+	public int numPatterns() {
+		return patterns.size();
+	}
+
+	/** returns the {@link KmerHasher#ACGTother} codes of a pattern, complemented if it was on the reverse strand.
+	 * @param i the pattern index
+	 * @return the codes in species order
+	 */
+	public byte[] getPattern(int i) {
+		return patterns.get(i);
+	}
+
+	/** returns the number of times a pattern was added.
+	 * @param i the pattern index
+	 * @return the count
+	 */
+	public int getCount(int i) {
+		return counts[i];
+	}
+
+	/** returns the total number of columns added.
+	 * @return the number of columns
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/** computes the log likelihood of all of the columns added under an evolutionary model.  Safe to call from several threads
+	 * once all columns are added.
+	 * @param model the evolutionary model
+	 * @param conditionref if true, probabilities are conditioned on the reference species
+	 * @return the sum of the log probabilities of the columns
+	 */
+	public double logLikelihood(EvolutionaryModel model, boolean conditionref) {
+		byte[][] codes = getPatternArray();
+		double[] logprobs = new double[codes.length];
+		model.logprobs(codes, codes.length, conditionref, false, logprobs);
+		double ret = 0;
+		for(int i = 0; i < codes.length; ++i) {
+			ret += counts[i] * logprobs[i];
+		}
+		return ret;
+	}
+
+	synchronized byte[][] getPatternArray() {
+		if(patternArray == null) {
+			patternArray = patterns.toArray(new byte[patterns.size()][]);
+		}
+		return patternArray;
+	}
+}
@@ -1,15 +1,17 @@
 package calhoun.analysis.crf.features.supporting.phylogenetic;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.ColumnPatterns;
 import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.MultipleAlignmentColumn;
 import calhoun.seq.KmerHasher;
 import calhoun.util.Assert;
-import cern.colt.matrix.DoubleMatrix2D;
 
 public class EvolutionaryModel implements Serializable {
 	private static final long serialVersionUID = -4531626481183209673L;
@@ -27,7 +29,10 @@ public class EvolutionaryModel implements Serializable {
 	int[] ileft,iright;  // indices of left and right child nodes
 	double[][] Tleft;  //Transition matrices for the branches going left
 	double[][] Tright;  // transition matrices for branches going right
-	double[][] P;   // space in which Felsenstein algorithm recursions will be performed.
+	double[][] P;   // space in which Felsenstein algorithm recursions will be performed by the single column methods, which are not thread-safe.
+	double[] refMarginal;  // probability of the reference leaf alone, for each ACGTother code of the reference.
+
+	static final int BATCH_SIZE = 256;  // number of columns evaluated together by the batch methods
 
 	static KmerHasher hforward = new KmerHasher(KmerHasher.ACGTother,1);
 	static KmerHasher hbackward = new KmerHasher(KmerHasher.ACGTotherRC,1);	
@@ -50,13 +55,44 @@ public class EvolutionaryModel implements Serializable {
 		Tleft  = new double[T.nSteps][];
 		Tright = new double[T.nSteps][];
 		for (int j=0; j<T.nSteps; j++) {
-			Tleft[j] = createArrayFromTransitionMatrix(R.transitionMatrix(bleft[j]));
-			Tright[j] = createArrayFromTransitionMatrix(R.transitionMatrix(bright[j]));
+			Tleft[j] = R.transitionProbabilities(bleft[j]);
+			Tright[j] = R.transitionProbabilities(bright[j]);
 		}
 		Assert.a(ileft.length == T.nSteps);
 		Assert.a(iright.length == T.nSteps);
 		
 		P = new double[T.nNodes][4];
+		computeReferenceMarginals();
+	}
+
+	/** The denominator used when conditioning on the reference species is the probability of the reference
+	 * leaf alone.  It only depends on the reference character, so it is computed once for each code. */
+	private void computeReferenceMarginals() {
+		refMarginal = new double[5];
+		for (int x=0; x<5; x++) {
+			for (int j=0; j<4; j++) {
+				P[0][j] = x >= 4 || x == j ? 1.0 : 0.0;
+			}
+			for (int i=1; i<numSpecies; i++) {
+				Arrays.fill(P[i], 1.0);
+			}
+			for (int step=0; step<T.nSteps; step++) {
+				int node = step + numSpecies;			
+				felsenstein(P[ileft[step]],Tleft[step],P[iright[step]],Tright[step],P[node]);
+			}
+			double denom = 0;
+			for (int i=0; i<4; i++) {
+				denom += pi[i] * P[T.numNodes()-1][i];
+			}
+			refMarginal[x] = denom;
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (refMarginal == null) {
+			computeReferenceMarginals();
+		}
 	}
 	
 	
@@ -68,6 +104,114 @@ public class EvolutionaryModel implements Serializable {
 		return logprob(col,conditionref,hforward);
 	}
 	
+	/** computes the log probability of every distinct column pattern of an alignment.  Gives the same values as calling
+	 * {@link #logprob} or {@link #logprobRC} on each column, but each pattern is only computed once.  Safe to call from
+	 * several threads at once.
+	 * @param patterns the column patterns of an alignment
+	 * @param conditionref if true, the probability is conditioned on the reference species
+	 * @param reverseComplement if true, computes the probabilities of the reverse strand as in {@link #logprobRC}
+	 * @return log probabilities indexed by pattern id
+	 */
+	public double[] logprobs(ColumnPatterns patterns, boolean conditionref, boolean reverseComplement) {
+		int nPatterns = patterns.numPatterns();
+		byte[][] codes = new byte[nPatterns][];
+		for (int p=0; p<nPatterns; p++) {
+			codes[p] = patterns.getPattern(p);
+		}
+		double[] ret = new double[nPatterns];
+		logprobs(codes, nPatterns, conditionref, reverseComplement, ret);
+		return ret;
+	}
+
+	/** computes the log probabilities of an array of column patterns, a batch at a time.  Safe to call from several threads at once.
+	 * @param patterns the {@link KmerHasher#ACGTother} codes of each species in each column
+	 * @param n the number of patterns to evaluate, starting with the first
+	 * @param conditionref if true, the probability is conditioned on the reference species
+	 * @param reverseComplement if true, computes the probabilities of the reverse strand
+	 * @param result array which is filled with the log probabilities, indexed like <code>patterns</code>
+	 */
+	public void logprobs(byte[][] patterns, int n, boolean conditionref, boolean reverseComplement, double[] result) {
+		int batchSize = Math.min(n, BATCH_SIZE);
+		double[] scratch = new double[batchScratchSize(batchSize)];
+		for (int start=0; start<n; start+=batchSize) {
+			logprobs(patterns, start, Math.min(batchSize, n-start), conditionref, reverseComplement, scratch, result);
+		}
+	}
+
+	/** returns the size of the scratch buffer needed to evaluate a batch of columns.
+	 * @param batchSize the number of columns in each batch
+	 * @return the number of doubles needed
+	 */
+	public int batchScratchSize(int batchSize) {
+		return T.nNodes*4*batchSize;
+	}
+
+	/** computes the log probabilities of a batch of column patterns.  All temporary values are kept in the caller's scratch
+	 * buffer, so this is safe to call from several threads at once as long as each uses its own buffer.  The partial likelihood
+	 * of state i at node k for column c is kept at <code>scratch[(k*4+i)*n+c]</code>, so the recursion runs over contiguous columns.
+	 * @param patterns the {@link KmerHasher#ACGTother} codes of each species in each column
+	 * @param start the first pattern in the batch
+	 * @param n the number of patterns in the batch
+	 * @param conditionref if true, the probability is conditioned on the reference species
+	 * @param reverseComplement if true, computes the probabilities of the reverse strand
+	 * @param scratch buffer of at least <code>batchScratchSize(n)</code> doubles
+	 * @param result array which is filled with the log probabilities, indexed like <code>patterns</code>
+	 */
+	public void logprobs(byte[][] patterns, int start, int n, boolean conditionref, boolean reverseComplement, double[] scratch, double[] result) {
+		Assert.a(scratch.length >= batchScratchSize(n), "Scratch buffer is too small");
+		for (int c=0; c<n; c++) {
+			byte[] pattern = patterns[start+c];
+			if ( pattern.length != numSpecies ) {
+				Assert.a(false,"pattern has " + pattern.length + " species and numSpecies is " + numSpecies);
+			}
+			for (int i=0; i<numSpecies; i++) {
+				int x = pattern[i];
+				if (reverseComplement && x < 4) {
+					x = 3 - x;
+				}
+				int base = i*4*n + c;
+				for (int j=0; j<4; j++) { 
+					scratch[base + j*n] = x >= 4 || x == j ? 1.0 : 0.0; 
+				}
+			}
+		}
+		
+		for (int step=0; step<T.nSteps; step++) {
+			int node = step + numSpecies;
+			felsensteinBatch(scratch, ileft[step]*4*n, Tleft[step], iright[step]*4*n, Tright[step], node*4*n, n);
+		}
+
+		int root = (T.numNodes()-1)*4*n;
+		for (int c=0; c<n; c++) {
+			double prob = 0;
+			for (int i=0; i<4; i++) {
+				prob += pi[i] * scratch[root + i*n + c];
+			}
+			int ref = patterns[start+c][0];
+			if (reverseComplement && ref < 4) {
+				ref = 3 - ref;
+			}
+			result[start+c] = conditionedLogprob(prob, conditionref, ref);
+		}
+	}
+
+	/** computes the log probability of a single column pattern.
+	 * @param pattern the {@link KmerHasher#ACGTother} code of each species in the column
+	 * @param conditionref if true, the probability is conditioned on the reference species
+	 * @return the log probability of the pattern
+	 */
+	public double logprob(byte[] pattern, boolean conditionref) {
+		if ( pattern.length != numSpecies ) {
+			Assert.a(false,"pattern has " + pattern.length + " species and numSpecies is " + numSpecies);
+		}
+		for (int i=0; i<numSpecies; i++) {
+			int x = pattern[i];
+			for (int j=0; j<4; j++) { 
+				P[i][j] = x >= 4 || x == j ? 1.0 : 0.0; 
+			}
+		}
+		return leafLogprob(conditionref, pattern[0]);
+	}
 	
 	private double logprob(MultipleAlignmentColumn C,boolean conditionref, KmerHasher h) {
 			
@@ -75,13 +219,21 @@ public class EvolutionaryModel implements Serializable {
 			Assert.a(false,"C.numspecies is " + C.numSpecies() + "  and numSpecies is " + numSpecies);
 		}
 		
+		int ref = 4;
 		for (int i=0; i<numSpecies; i++) {
 			int x = h.hash(C.nucleotide(i));
 			for (int j=0; j<4; j++) { 
 				P[i][j] = x >= 4 || x == j ? 1.0 : 0.0; 
 			}
+			if (i == 0) {
+				ref = x;
+			}
 		}
-		
+		return leafLogprob(conditionref, ref);
+	}
+
+	/** runs the Felsenstein recursion from the leaf probabilities already filled into P */
+	private double leafLogprob(boolean conditionref, int ref) {
 		for (int step=0; step<T.nSteps; step++) {
 			int node = step + numSpecies;			
 			felsenstein(P[ileft[step]],Tleft[step],P[iright[step]],Tright[step],P[node]);
@@ -90,19 +242,12 @@ public class EvolutionaryModel implements Serializable {
 		for (int i=0; i<4; i++) {
 			prob += pi[i] * P[T.numNodes()-1][i];
 		}
-		
+		return conditionedLogprob(prob, conditionref, ref);
+	}
+
+	private double conditionedLogprob(double prob, boolean conditionref, int ref) {
 		if (conditionref) {
-			for (int i=1; i<T.numSpecies(); i++) {
-				Arrays.fill(P[i], 1.0);
-			}
-			for (int step=0; step<T.nSteps; step++) {
-				int node = step + numSpecies;			
-				felsenstein(P[ileft[step]],Tleft[step],P[iright[step]],Tright[step],P[node]);
-			}
-			double denom = 0;
-			for (int i=0; i<4; i++) {
-				denom += pi[i] * P[T.numNodes()-1][i];
-			}
+			double denom = refMarginal[ref];
 			if ( !(prob/denom < 1.00000001) ) {
 				Assert.a(false , "prob=" + prob + "  denom="+denom);
 			}
@@ -119,16 +264,20 @@ public class EvolutionaryModel implements Serializable {
 		return Math.log(prob);	
 	}
 
-	private static double[] createArrayFromTransitionMatrix(DoubleMatrix2D R) {
-		double[] ret = new double[16];
-		for(int i = 0; i<4; ++i) {
-			for(int j = 0; j<4; ++j) {
-				ret[i*4+j] = R.getQuick(i,j);
-			}			
+	/** one step of the recursion for a batch of columns, with the layout described in {@link #logprobs(byte[][], int, int, boolean, boolean, double[], double[])} */
+	private static void felsensteinBatch(double[] scratch, int left, double[] lT, int right, double[] rT, int parent, int n) {
+		for (int i=0; i<4; i++) {
+			double l0 = lT[i*4], l1 = lT[i*4+1], l2 = lT[i*4+2], l3 = lT[i*4+3];
+			double r0 = rT[i*4], r1 = rT[i*4+1], r2 = rT[i*4+2], r3 = rT[i*4+3];
+			int out = parent + i*n;
+			for (int c=0; c<n; c++) {
+				double leftprob = l0*scratch[left+c] + l1*scratch[left+n+c] + l2*scratch[left+2*n+c] + l3*scratch[left+3*n+c];
+				double rightprob = r0*scratch[right+c] + r1*scratch[right+n+c] + r2*scratch[right+2*n+c] + r3*scratch[right+3*n+c];
+				scratch[out+c] = leftprob*rightprob;
+			}
 		}
-		return ret;
 	}
-	
+
 	private static void felsenstein(double[] lp, double[] lT,double[] rp, double[] rT,double[] pp) {
 		for (int i=0; i<4; i++) { 
 			double leftprob=0.0,  rightprob=0.0;
@@ -91,6 +91,39 @@ public class HKY85Model extends NucleotideSubstitutionModel {
 		R.assign(X);
 	}
 
+	/** closed form transition probabilities for the HKY85 model, see Felsenstein, "Inferring Phylogenies", 2004, chapter 13. */
+	@Override
+	public double[] transitionProbabilities(double t) {
+		double[] freq = new double[] {piA, piC, piG, piT};
+		boolean[] purine = new boolean[] {true, false, true, false};
+		double piR = piA + piG;
+		double piY = piC + piT;
+		double eTv = Math.exp(-tv*t);
+		double eR = Math.exp(-(piR*ts + piY*tv)*t);
+		double eY = Math.exp(-(piY*ts + piR*tv)*t);
+
+		double[] ret = new double[16];
+		for (int i=0; i<4; i++) {
+			for (int j=0; j<4; j++) {
+				double pj = freq[j];
+				if (purine[i] != purine[j]) {
+					ret[i*4+j] = pj*(1 - eTv);
+				} else {
+					double piJ = purine[j] ? piR : piY;
+					double eJ = purine[j] ? eR : eY;
+					double p = pj + pj*(1/piJ - 1)*eTv;
+					if (i == j) {
+						p += (piJ - pj)/piJ*eJ;
+					} else {
+						p -= pj/piJ*eJ;
+					}
+					ret[i*4+j] = p;
+				}
+			}
+		}
+		return ret;
+	}
+
 	@Override
 	public void summarize() {
 		log.debug("HKY85 Nucleotide substitution rate matrix; ts=" + ts + "  tv=" + tv + "  piA="+piA+"  piC="+piC+"  piG="+piG+"  piT="+piT);	
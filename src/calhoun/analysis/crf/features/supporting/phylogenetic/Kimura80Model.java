@@ -70,6 +70,28 @@ public class Kimura80Model extends NucleotideSubstitutionModel {
 		R.assign(X);
 	}
 
+	/** closed form transition probabilities for the Kimura 2 parameter model */
+	@Override
+	public double[] transitionProbabilities(double t) {
+		double e1 = Math.exp(-4*tv*t);
+		double e2 = Math.exp(-2*(ts+tv)*t);
+		double same = 0.25 + 0.25*e1 + 0.5*e2;
+		double transition = 0.25 + 0.25*e1 - 0.5*e2;
+		double transversion = 0.25 - 0.25*e1;
+
+		// Transitions are A<->G and C<->T
+		int A=0, C=1, G=2, T=3;
+		double[] ret = new double[16];
+		for (int i=0; i<4; i++) {
+			for (int j=0; j<4; j++) {
+				ret[i*4+j] = transversion;
+			}
+			ret[i*4+i] = same;
+		}
+		ret[A*4+G] = ret[G*4+A] = ret[C*4+T] = ret[T*4+C] = transition;
+		return ret;
+	}
+
 	@Override
 	public void summarize() {
 		log.debug("Kimura80 Nucleotide substitution rate matrix; ts=" + ts + "  tv=" + tv);	
@@ -64,6 +64,22 @@ public abstract class NucleotideSubstitutionModel implements Serializable{
 		return T;
 	}
 
+	/** returns the transition probabilities over a branch as an array, where entry <code>i*4+j</code> is the probability of
+	 * changing from base i to base j.  Exponentiates the rate matrix, models with closed form transition probabilities override this.
+	 * @param t the branch length
+	 * @return the transition probabilities, row major
+	 */
+	public double[] transitionProbabilities(double t) {
+		DoubleMatrix2D T = transitionMatrix(t);
+		double[] ret = new double[16];
+		for(int i = 0; i<4; ++i) {
+			for(int j = 0; j<4; ++j) {
+				ret[i*4+j] = T.getQuick(i,j);
+			}			
+		}
+		return ret;
+	}
+
 	public abstract void summarize();
 	
 }
@@ -11,6 +11,7 @@ import calhoun.analysis.crf.FeatureManagerNode;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.io.CompositeInput;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.IntInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 
 public class ESTExon extends AbstractFeatureManager<CompositeInput> implements FeatureManagerNode<CompositeInput> {
@@ -44,11 +45,11 @@ public class ESTExon extends AbstractFeatureManager<CompositeInput> implements F
 			return;
 		}		
 
-		InputSequence<Integer>  pest = (InputSequence<Integer>) seq.getComponent("pest");		
-		InputSequence<Integer>  mest = (InputSequence<Integer>) seq.getComponent("mest");
+		IntInputSequence  pest = (IntInputSequence) seq.getComponent("pest");		
+		IntInputSequence  mest = (IntInputSequence) seq.getComponent("mest");
 		
-		int plusEst  = pest.getX(pos+1);
-		int minusEst = mest.getX(pos+1);
+		int plusEst  = pest.getInt(pos+1);
+		int minusEst = mest.getInt(pos+1);
 		// 0 - no data
 		// 1 - exon only
 		// 2 - intron only
@@ -13,6 +13,7 @@ import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
 import calhoun.analysis.crf.io.CompositeInput;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.IntInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 
 public class ESTIntron extends AbstractFeatureManager<CompositeInput> implements FeatureManagerNode<CompositeInput> {
@@ -49,11 +50,11 @@ public class ESTIntron extends AbstractFeatureManager<CompositeInput> implements
 			return;
 		}		
 
-		InputSequence<Integer>  pest = (InputSequence<Integer>) seq.getComponent("pest");		
-		InputSequence<Integer>  mest = (InputSequence<Integer>) seq.getComponent("mest");
+		IntInputSequence  pest = (IntInputSequence) seq.getComponent("pest");		
+		IntInputSequence  mest = (IntInputSequence) seq.getComponent("mest");
 		
-		boolean plusEstIntron = (pest.getX(pos+1) == 2);
-		boolean minusEstIntron = (mest.getX(pos+1) == 2);		
+		boolean plusEstIntron = (pest.getInt(pos+1) == 2);
+		boolean minusEstIntron = (mest.getInt(pos+1) == 2);		
 
 		if (plusIntronState[state] && plusEstIntron) { result.addFeature(startIx, 1); }
 		if (minusIntronState[state] && minusEstIntron) { result.addFeature(startIx, 1); }		
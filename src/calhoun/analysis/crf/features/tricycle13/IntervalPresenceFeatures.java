@@ -10,6 +10,7 @@ import calhoun.analysis.crf.FeatureList;
 import calhoun.analysis.crf.FeatureManagerNode;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.IntervalInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.analysis.crf.io.IntervalInputSequence.IntervalPosition;
 
@@ -44,8 +45,17 @@ public class IntervalPresenceFeatures extends AbstractFeatureManager<IntervalPos
 			return;
 		}		
 
-		boolean plusInt  = seq.getX(pos).queryPlus();
-		boolean minusInt = seq.getX(pos).queryMinus();   
+		boolean plusInt;
+		boolean minusInt;
+		if(seq instanceof IntervalInputSequence) {
+			IntervalInputSequence intervals = (IntervalInputSequence) seq;
+			plusInt  = intervals.queryPlus(pos);
+			minusInt = intervals.queryMinus(pos);
+		} else {
+			IntervalPosition x = seq.getX(pos);
+			plusInt  = x.queryPlus();
+			minusInt = x.queryMinus();
+		}
 		
 		if (plusExonState[state] && plusInt ) { result.addFeature(startIx, 1); }
 		if (minusExonState[state] && minusInt ) { result.addFeature(startIx, 1); }
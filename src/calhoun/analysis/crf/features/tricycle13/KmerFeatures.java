@@ -1,9 +1,11 @@
 package calhoun.analysis.crf.features.tricycle13;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -19,6 +21,10 @@ import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.util.Assert;
 
 /** trains on the data and then evaluates to P(state | label) for given Kmers.  Used for historical reasons.  Emission markov generally does better.  
+ * <p>
+ * Each kmer is coded as an integer over the characters seen in training, so upper and lower case bases remain distinct kmers.  The
+ * slot of every kmer at every position of a sequence is computed once, the first time the sequence is evaluated, so evaluation does
+ * no string building or hashing.
  */
 public class KmerFeatures extends AbstractFeatureManager<Character> implements FeatureManagerNode<Character> {
 	private static final long serialVersionUID = 5959560033335736926L;
@@ -29,12 +35,16 @@ public class KmerFeatures extends AbstractFeatureManager<Character> implements F
 	};
 
 	static final int DEFAULT_RARE_THRESHOLD = 25;
+	/** kmer tables with at most this many possible codes are stored as dense arrays */
+	static final int DENSE_LIMIT = 1 << 16;
 	int startIx;
 	ModelManager model;
 	int nStates;
 	List<int[]> kmerDefs;
-	Map<String, double[]>[] counts;
-	Map<String, Integer>[] kmerIds;
+	// charCodes[c] is 1 + the index of character c in the training alphabet, or 0 if it never appeared in training
+	int[] charCodes;
+	int radix;
+	KmerTable[] tables;
 	Cardinality cardinality = Cardinality.PER_STATE;
 	int rareThreshold = DEFAULT_RARE_THRESHOLD;
 
@@ -81,8 +91,8 @@ public class KmerFeatures extends AbstractFeatureManager<Character> implements F
 		default:
 			Assert.a(cardinality == Cardinality.PER_KMER);
 			int num = 0;
-			for (Map m : counts) {
-				num += m.size();
+			for (KmerTable t : tables) {
+				num += t.size;
 			}
 			return num;
 		}
@@ -102,43 +112,87 @@ public class KmerFeatures extends AbstractFeatureManager<Character> implements F
 		return "Kmer." + val + name;
 	}
 
-	transient InputSequence<? extends Character> lastSeq;
-	transient int lastPos;
-	String[] kmers;
-	double[][] vals;
+	/** the table slot of each kmer definition at each position of the last sequence evaluated */
+	static class PositionSlots {
+		final InputSequence<? extends Character> seq;
+		final int[][] slots;
 
-	public void evaluateNode(InputSequence<? extends Character> seq, int pos, int state, FeatureList result) {
-		if (seq != lastSeq || pos != lastPos) {
-			lastSeq = seq;
-			lastPos = pos;
-			for (int j = 0; j < kmerDefs.size(); ++j) {
-				String kmer = getKmer(seq, pos, kmerDefs.get(j));
-				vals[j] = counts[j].get(kmer);
-				if (cardinality == Cardinality.PER_KMER) {
-					kmers[j] = kmer;
-				}
-			}
+		PositionSlots(InputSequence<? extends Character> seq, int[][] slots) {
+			this.seq = seq;
+			this.slots = slots;
 		}
-		for (int j = 0; j < kmerDefs.size(); ++j) {
-			double[] kmerVals = vals[j];
-			if (kmerVals == null || kmerVals[state] == 0.0)
+	}
+	transient volatile PositionSlots positions;
+
+	public void evaluateNode(InputSequence<? extends Character> seq, int pos, int state, FeatureList result) {
+		int[][] slots = getSlots(seq);
+		for (int j = 0; j < tables.length; ++j) {
+			int slot = slots[j][pos];
+			if (slot == -1)
+				continue;
+			KmerTable table = tables[j];
+			double val = table.vals[slot][state];
+			if (val == 0.0)
 				continue;
 			int index;
 			if (cardinality == Cardinality.SINGLE) {
 				index = startIx + j;
 			} else if (cardinality == Cardinality.PER_STATE) {
-				index = startIx + j + kmerDefs.size() * state;
+				index = startIx + j + tables.length * state;
 			} else {
 				Assert.a(cardinality == Cardinality.PER_KMER);
-				Integer id = kmerIds[j].get(kmers[j]);
-				if (id == null)
+				index = table.ids[slot];
+				if (index == -1)
 					continue;
-				index = id;
 			}
-			result.addFeature(index, kmerVals[state]);
+			result.addFeature(index, val);
 		}
 	}
 
+	/** returns the table slot of each kmer definition at each position of a sequence, computing them if this is a new sequence */
+	int[][] getSlots(InputSequence<? extends Character> seq) {
+		PositionSlots p = positions;
+		if (p != null && p.seq == seq) {
+			return p.slots;
+		}
+		int len = seq.length();
+		int[] chars = new int[len];
+		for (int pos = 0; pos < len; ++pos) {
+			chars[pos] = charCode(seq.getX(pos));
+		}
+		int[][] slots = new int[tables.length][len];
+		for (int j = 0; j < tables.length; ++j) {
+			int[] def = kmerDefs.get(j);
+			for (int pos = 0; pos < len; ++pos) {
+				int code = kmerCode(chars, pos, def);
+				slots[j][pos] = code == -1 ? -1 : tables[j].find(code);
+			}
+		}
+		positions = new PositionSlots(seq, slots);
+		return slots;
+	}
+
+	/** returns the 0-based index of a character in the training alphabet, or -1 if it was not seen in training */
+	int charCode(char c) {
+		return c < charCodes.length ? charCodes[c] - 1 : -1;
+	}
+
+	/** returns the code of the kmer at a position, or -1 if it runs off the sequence or contains a character not seen in training.
+	 * @param chars the alphabet index of each character in the sequence
+	 * @param pos position the kmer is defined relative to
+	 * @param def offsets of the kmer's characters from pos
+	 * @return the code of the kmer */
+	int kmerCode(int[] chars, int pos, int[] def) {
+		int code = 0;
+		for (int i = 0; i < def.length; ++i) {
+			int loc = pos + def[i];
+			if (loc < 0 || loc >= chars.length || chars[loc] == -1)
+				return -1;
+			code = code * radix + chars[loc];
+		}
+		return code;
+	}
+
 	public String getKmer(InputSequence<? extends Character> seq, int pos, int[] def) {
 		StringBuffer buf = new StringBuffer(def.length);
 		for (int i = 0; i < def.length; ++i) {
@@ -165,7 +219,14 @@ public class KmerFeatures extends AbstractFeatureManager<Character> implements F
 
 	/** Returns an individual entry from the counts list. */
 	public double getKmerProb(int kmerIndex, String kmer, int label) {
-		return counts[kmerIndex].get(kmer)[label];
+		int code = 0;
+		for (int i = 0; i < kmer.length() && code != -1; ++i) {
+			int c = charCode(kmer.charAt(i));
+			code = c == -1 ? -1 : code * radix + c;
+		}
+		int slot = code == -1 ? -1 : tables[kmerIndex].find(code);
+		Assert.a(slot != -1, "Kmer ", kmer, " was not seen in training");
+		return tables[kmerIndex].vals[slot][label];
 	}
 
 	/** Computes the P(label | kmer) for each kmer across all of the training data. These will used as features values. */
@@ -173,32 +234,49 @@ public class KmerFeatures extends AbstractFeatureManager<Character> implements F
 		startIx = startingIndex;
 		model = modelInfo;
 		nStates = model.getNumStates();
-		vals = new double[kmerDefs.size()][];
-		// Initialize an array of hash maps for each kmer
-		counts = new HashMap[kmerDefs.size()];
-		for (int i = 0; i < counts.length; ++i) {
-			counts[i] = new HashMap();
+		positions = null;
+		// Number the characters that appear in the training data
+		char maxChar = 0;
+		for (TrainingSequence<? extends Character> seq : data) {
+			int len = seq.length();
+			for (int pos = 0; pos < len; ++pos) {
+				maxChar = (char) Math.max(maxChar, seq.getX(pos));
+			}
 		}
-		if (cardinality == Cardinality.PER_KMER) {
-			kmerIds = new HashMap[kmerDefs.size()];
-			for (int i = 0; i < kmerIds.length; ++i) {
-				kmerIds[i] = new HashMap();
+		charCodes = new int[maxChar + 1];
+		radix = 0;
+		for (TrainingSequence<? extends Character> seq : data) {
+			int len = seq.length();
+			for (int pos = 0; pos < len; ++pos) {
+				char c = seq.getX(pos);
+				if (charCodes[c] == 0) {
+					charCodes[c] = ++radix;
+				}
 			}
 		}
+		// Create a table for each kmer
+		int nKmers = kmerDefs.size();
+		tables = new KmerTable[nKmers];
+		for (int i = 0; i < nKmers; ++i) {
+			long range = 1;
+			for (int k = 0; k < kmerDefs.get(i).length; ++k) {
+				range *= Math.max(radix, 1);
+				Assert.a(range <= Integer.MAX_VALUE, "Too many possible kmers for ", kmerName(i), " with ", radix, " characters");
+			}
+			tables[i] = new KmerTable((int) range);
+		}
 		// Count the occurances of each kmer in each state
 		for (TrainingSequence<? extends Character> seq : data) {
 			int len = seq.length();
+			int[] chars = new int[len];
+			for (int pos = 0; pos < len; ++pos) {
+				chars[pos] = charCode(seq.getX(pos));
+			}
 			for (int pos = 0; pos < len; ++pos) {
-				int nKmers = kmerDefs.size();
 				for (int i = 0; i < nKmers; ++i) {
-					String kmer = getKmer(seq, pos, kmerDefs.get(i));
-					if (kmer != null) {
-						double[] val = (double[]) counts[i].get(kmer);
-						if (val == null) {
-							val = new double[nStates];
-							Arrays.fill(val, 1);
-							counts[i].put(kmer, val);
-						}
+					int code = kmerCode(chars, pos, kmerDefs.get(i));
+					if (code != -1) {
+						double[] val = tables[i].add(code, nStates);
 						int state = seq.getY(pos);
 						val[state] += 1;
 					}
@@ -208,9 +286,16 @@ public class KmerFeatures extends AbstractFeatureManager<Character> implements F
 		int kmerId = startIx;
 		// Now compute probabilities for all kmers with at least KMER_THRESHOLD appearances
 		for (int j = 0; j < kmerDefs.size(); ++j) {
+			KmerTable table = tables[j];
+			if (cardinality == Cardinality.PER_KMER) {
+				table.ids = new int[table.vals.length];
+				Arrays.fill(table.ids, -1);
+			}
 			int kmerCounts = 0;
-			for (Map.Entry<String, double[]> val : counts[j].entrySet()) {
-				double[] cnts = val.getValue();
+			for (int slot = 0; slot < table.vals.length; ++slot) {
+				double[] cnts = table.vals[slot];
+				if (cnts == null)
+					continue;
 				double total = 0.0f;
 				for (int i = 0; i < cnts.length; ++i) {
 					total += cnts[i];
@@ -218,7 +303,7 @@ public class KmerFeatures extends AbstractFeatureManager<Character> implements F
 				if (total >= rareThreshold) {
 					kmerCounts += 1;
 					if (cardinality == Cardinality.PER_KMER) {
-						kmerIds[j].put(val.getKey(), kmerId);
+						table.ids[slot] = kmerId;
 						kmerId++;
 					}
 				}
@@ -236,4 +321,168 @@ public class KmerFeatures extends AbstractFeatureManager<Character> implements F
 			log.info(kmerCounts + " kmers of " + kmerName(j));
 		}
 	}
+
+	/** reads a model saved either with kmer tables or, by older versions, with maps from kmer strings to values.  Models in the old
+	 * form are converted to tables as they are read. */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		startIx = fields.get("startIx", 0);
+		model = (ModelManager) fields.get("model", null);
+		nStates = fields.get("nStates", 0);
+		kmerDefs = (List<int[]>) fields.get("kmerDefs", null);
+		cardinality = (Cardinality) fields.get("cardinality", Cardinality.PER_STATE);
+		rareThreshold = fields.get("rareThreshold", DEFAULT_RARE_THRESHOLD);
+		charCodes = (int[]) fields.get("charCodes", null);
+		radix = fields.get("radix", 0);
+		tables = (KmerTable[]) fields.get("tables", null);
+		if (tables == null && fields.getObjectStreamClass().getField("counts") != null) {
+			Map<String, double[]>[] counts = (Map<String, double[]>[]) fields.get("counts", null);
+			if (counts != null) {
+				convertCounts(counts, (Map<String, Integer>[]) fields.get("kmerIds", null));
+			}
+		}
+	}
+
+	/** builds the kmer tables from the maps used by older versions */
+	void convertCounts(Map<String, double[]>[] counts, Map<String, Integer>[] kmerIds) {
+		// Number the characters that appear in any kmer
+		char maxChar = 0;
+		for (Map<String, double[]> m : counts) {
+			for (String kmer : m.keySet()) {
+				for (int i = 0; i < kmer.length(); ++i) {
+					maxChar = (char) Math.max(maxChar, kmer.charAt(i));
+				}
+			}
+		}
+		charCodes = new int[maxChar + 1];
+		radix = 0;
+		for (Map<String, double[]> m : counts) {
+			for (String kmer : m.keySet()) {
+				for (int i = 0; i < kmer.length(); ++i) {
+					char c = kmer.charAt(i);
+					if (charCodes[c] == 0) {
+						charCodes[c] = ++radix;
+					}
+				}
+			}
+		}
+		tables = new KmerTable[counts.length];
+		for (int j = 0; j < counts.length; ++j) {
+			long range = 1;
+			for (int k = 0; k < kmerDefs.get(j).length; ++k) {
+				range *= Math.max(radix, 1);
+				Assert.a(range <= Integer.MAX_VALUE, "Too many possible kmers for ", kmerName(j), " with ", radix, " characters");
+			}
+			KmerTable table = new KmerTable((int) range);
+			tables[j] = table;
+			for (Map.Entry<String, double[]> entry : counts[j].entrySet()) {
+				table.put(stringCode(entry.getKey()), entry.getValue());
+			}
+			if (cardinality == Cardinality.PER_KMER) {
+				// Slots are only final once every kmer is in the table
+				table.ids = new int[table.vals.length];
+				Arrays.fill(table.ids, -1);
+				for (Map.Entry<String, Integer> entry : kmerIds[j].entrySet()) {
+					table.ids[table.find(stringCode(entry.getKey()))] = entry.getValue();
+				}
+			}
+		}
+	}
+
+	/** returns the code of a kmer given as a string.  All of its characters must be in the training alphabet. */
+	int stringCode(String kmer) {
+		int code = 0;
+		for (int i = 0; i < kmer.length(); ++i) {
+			code = code * radix + charCode(kmer.charAt(i));
+		}
+		return code;
+	}
+
+	/** counts or values for each kmer of one definition, keyed by kmer code.  When there are few enough possible kmers the code is
+	 * the slot, otherwise the codes are kept in an open addressing hash table.  Empty slots have null values. */
+	static class KmerTable implements Serializable {
+		private static final long serialVersionUID = -2204367351094478811L;
+
+		// Code stored in each slot, or null if slots are indexed directly by code
+		int[] keys;
+		double[][] vals;
+		// Feature index of the kmer in each slot for PER_KMER cardinality, or -1 if the kmer is rare
+		int[] ids;
+		int size;
+
+		KmerTable(int range) {
+			if (range <= DENSE_LIMIT) {
+				vals = new double[range][];
+			} else {
+				allocate(16);
+			}
+		}
+
+		void allocate(int capacity) {
+			keys = new int[capacity];
+			Arrays.fill(keys, -1);
+			vals = new double[capacity][];
+		}
+
+		int hashSlot(int code) {
+			int h = code * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & (keys.length - 1);
+		}
+
+		/** returns the slot holding a kmer, or -1 if it is not in the table */
+		int find(int code) {
+			if (keys == null) {
+				return vals[code] == null ? -1 : code;
+			}
+			for (int slot = hashSlot(code); ; slot = (slot + 1) & (keys.length - 1)) {
+				if (keys[slot] == code) {
+					return slot;
+				}
+				if (keys[slot] == -1) {
+					return -1;
+				}
+			}
+		}
+
+		/** returns the counts for a kmer, adding it with a count of 1 in each state if it is new */
+		double[] add(int code, int nStates) {
+			int slot = find(code);
+			if (slot != -1) {
+				return vals[slot];
+			}
+			double[] val = new double[nStates];
+			Arrays.fill(val, 1);
+			put(code, val);
+			return val;
+		}
+
+		/** adds a kmer that is not yet in the table */
+		void put(int code, double[] val) {
+			if (keys == null) {
+				vals[code] = val;
+			} else {
+				if (2 * (size + 1) > keys.length) {
+					int[] oldKeys = keys;
+					double[][] oldVals = vals;
+					allocate(keys.length * 2);
+					for (int i = 0; i < oldKeys.length; ++i) {
+						if (oldKeys[i] != -1) {
+							insert(oldKeys[i], oldVals[i]);
+						}
+					}
+				}
+				insert(code, val);
+			}
+			size++;
+		}
+
+		void insert(int code, double[] val) {
+			int slot = hashSlot(code);
+			while (keys[slot] != -1) {
+				slot = (slot + 1) & (keys.length - 1);
+			}
+			keys[slot] = code;
+			vals[slot] = val;
+		}
+	}
 }
@@ -13,6 +13,7 @@ import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
 import calhoun.analysis.crf.io.CompositeInput;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.IntInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 
 public class PfamGenic extends AbstractFeatureManager<CompositeInput> implements FeatureManagerNode<CompositeInput> {
@@ -50,11 +51,11 @@ public class PfamGenic extends AbstractFeatureManager<CompositeInput> implements
 			return;
 		}		
 
-		InputSequence<Integer>  ppfam = (InputSequence<Integer>) seq.getComponent("ppfam");		
-		InputSequence<Integer>  mpfam = (InputSequence<Integer>) seq.getComponent("mpfam");
+		IntInputSequence  ppfam = (IntInputSequence) seq.getComponent("ppfam");		
+		IntInputSequence  mpfam = (IntInputSequence) seq.getComponent("mpfam");
 		
-		boolean plusPfam = (ppfam.getX(pos) > 0);
-		boolean minusPfam = (mpfam.getX(pos) > 0);		
+		boolean plusPfam = (ppfam.getInt(pos) > 0);
+		boolean minusPfam = (mpfam.getInt(pos) > 0);		
 
 		if (plusGenic[state] && plusPfam) { result.addFeature(startIx, 1); }
 		if (minusGenic[state] && minusPfam) { result.addFeature(startIx, 1); }		
@@ -13,6 +13,7 @@ import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.CacheStrategySpec.CacheStrategy;
 import calhoun.analysis.crf.io.CompositeInput;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.IntInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 
 public class PfamPhase extends AbstractFeatureManager<CompositeInput> implements FeatureManagerNode<CompositeInput> {
@@ -53,16 +54,16 @@ public class PfamPhase extends AbstractFeatureManager<CompositeInput> implements
 			return;
 		}		
 
-		InputSequence<Integer>  ppfam = (InputSequence<Integer>) seq.getComponent("ppfam");		
-		InputSequence<Integer>  mpfam = (InputSequence<Integer>) seq.getComponent("mpfam");
+		IntInputSequence  ppfam = (IntInputSequence) seq.getComponent("ppfam");		
+		IntInputSequence  mpfam = (IntInputSequence) seq.getComponent("mpfam");
 		
-		if ((state==exon1S) && (ppfam.getX(pos)==1))  { result.addFeature(startIx, 1); }
-		if ((state==exon2S) && (ppfam.getX(pos)==2))  { result.addFeature(startIx, 1); }
-		if ((state==exon3S) && (ppfam.getX(pos)==3))  { result.addFeature(startIx, 1); }
+		if ((state==exon1S) && (ppfam.getInt(pos)==1))  { result.addFeature(startIx, 1); }
+		if ((state==exon2S) && (ppfam.getInt(pos)==2))  { result.addFeature(startIx, 1); }
+		if ((state==exon3S) && (ppfam.getInt(pos)==3))  { result.addFeature(startIx, 1); }
 
-		if ((state==exon1mS) && (mpfam.getX(pos)==1))  { result.addFeature(startIx, 1); }
-		if ((state==exon2mS) && (mpfam.getX(pos)==2))  { result.addFeature(startIx, 1); }
-		if ((state==exon3mS) && (mpfam.getX(pos)==3))  { result.addFeature(startIx, 1); }
+		if ((state==exon1mS) && (mpfam.getInt(pos)==1))  { result.addFeature(startIx, 1); }
+		if ((state==exon2mS) && (mpfam.getInt(pos)==2))  { result.addFeature(startIx, 1); }
+		if ((state==exon3mS) && (mpfam.getInt(pos)==3))  { result.addFeature(startIx, 1); }
 	}
 
 
@@ -0,0 +1,93 @@
+package calhoun.analysis.crf.io;
+
+import java.util.BitSet;
+
+/** per-position tracks describing the gap structure of a multiple alignment, indexed by position on the reference sequence.
+ * The tracks are computed once for each alignment by {@link MultipleAlignmentInputSequence#getAlignmentTracks()} and are shared by
+ * all of the features of the alignment.  They are never modified afterwards, so features that use them can be evaluated from
+ * several threads.
+ * <p>
+ * A gap in any species of at most {@link #MAX_GAP_LENGTH} consensus columns marks the last reference position before the gap and
+ * the first reference position after it.  Gaps whose length is a multiple of 3 mark gap boundaries and other gaps mark frameshifts.
+ */
+public class AlignmentTracks {
+
+	/** longest gap that marks a frameshift or gap boundary */
+	public static final int MAX_GAP_LENGTH = 60;
+
+	final BitSet frameshift;
+	final BitSet gapBoundary;
+	final BitSet[] aligned;
+
+	AlignmentTracks(MultipleAlignmentInputSequence seq) {
+		int length = seq.length();
+		int nSpecies = seq.numSpecies();
+		int consensusLength = seq.getConsensusLength();
+		int conOffset = seq.conOffset;
+		frameshift = new BitSet(length);
+		gapBoundary = new BitSet(length);
+		aligned = new BitSet[nSpecies];
+
+		for (int spec = 0; spec<nSpecies; spec++) {
+			aligned[spec] = new BitSet(length);
+			byte[] row = seq.rows[spec];
+			if (row == null) {
+				// A missing species is all gaps, so it has no gap boundaries and is never aligned
+				continue;
+			}
+
+			for (int pos = 0; pos<length; pos++) {
+				if (row[seq.ref2con[seq.refOffset+pos]] != MultipleAlignmentInputSequence.GAP) {
+					aligned[spec].set(pos);
+				}
+			}
+
+			boolean inGap = false;
+			int conGapStart = -1;
+			boolean lastBase = MultipleAlignmentInputSequence.isBase((char) row[conOffset]);
+			for (int cpos = 1; cpos<consensusLength; cpos++) {
+				boolean base = MultipleAlignmentInputSequence.isBase((char) row[conOffset+cpos]);
+				if (!inGap && lastBase && !base) {
+					inGap = true;
+					conGapStart = cpos;
+				}
+				else if (inGap && !lastBase && base) {
+					inGap = false;
+					int conGapEnd = cpos-1;
+					int gaplen = conGapEnd - conGapStart + 1;
+					if (gaplen <= MAX_GAP_LENGTH) {
+						BitSet track = (gaplen%3) == 0 ? gapBoundary : frameshift;
+						track.set(seq.con2refLeft(conGapStart));
+						track.set(seq.con2refRight(conGapEnd));
+					}
+				}
+				lastBase = base;
+			}
+		}
+	}
+
+	/** returns true if a gap that is not a multiple of 3 long starts or ends next to this position
+	 * @param pos position on the reference sequence
+	 * @return true if this position is next to a frameshifting gap
+	 */
+	public boolean isFrameshift(int pos) {
+		return frameshift.get(pos);
+	}
+
+	/** returns true if a gap that is a multiple of 3 long starts or ends next to this position
+	 * @param pos position on the reference sequence
+	 * @return true if this position is next to a gap that preserves the frame
+	 */
+	public boolean isGapBoundary(int pos) {
+		return gapBoundary.get(pos);
+	}
+
+	/** returns true if a species has a character other than a gap aligned to this position
+	 * @param pos position on the reference sequence
+	 * @param species index of the species in the alignment
+	 * @return true if the species is aligned here
+	 */
+	public boolean isAligned(int pos, int species) {
+		return aligned[species].get(pos);
+	}
+}
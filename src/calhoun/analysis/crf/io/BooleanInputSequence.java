@@ -0,0 +1,13 @@
+package calhoun.analysis.crf.io;
+
+/** an input sequence of booleans that can return each value as a primitive <code>boolean</code>.  Features that read boolean
+ * tracks at every position should use {@link #getBoolean} instead of {@link #getX} to avoid boxing.
+ */
+public interface BooleanInputSequence extends InputSequence<Boolean> {
+
+	/** retrieves the value at a position in the input sequence.
+	 * @param ix the zero-based index position at which to get the input.
+	 * @return the value at this position.
+	 */
+	boolean getBoolean(int ix);
+}
@@ -101,6 +101,11 @@ public class CompositeInput implements Serializable {
 			return handler.readTrainingData(inputLocation, predict);
 		}
 		
+		public Iterator<? extends TrainingSequence<?>> readTrainingDataIterator(String inputLocation, boolean predict) throws IOException {
+			initInputHandler(inputLocation);
+			return handler.readTrainingDataIterator(inputLocation, predict);
+		}
+		
 		public void writeTrainingData(String location, List data) throws IOException {
 			initInputHandler(location);
 			handler.writeTrainingData(location, data);
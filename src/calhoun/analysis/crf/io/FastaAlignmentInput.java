@@ -2,7 +2,6 @@ package calhoun.analysis.crf.io;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -56,15 +55,8 @@ public class FastaAlignmentInput implements InputComponentIO {
 					break;
 			}
 			
-			// Pad missing species with gaps
+			// Missing species are left null and read as all gaps
 			Assert.a(len != -1, "No alignments available for this input.");
-			char[] gapChars = new char[len];
-			Arrays.fill(gapChars, '-');
-			String gaps = new String(gapChars);
-			for(int i = 0; i < consensuses.size(); ++i) {
-				if(consensuses.get(i) == null)
-					consensuses.set(i, gaps);
-			}
 
 			alignment.setSpeciesAndConsensuses(species, consensuses);
 			seqNum += 1;
@@ -3,20 +3,28 @@ package calhoun.analysis.crf.io;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import calhoun.seq.FastaIterator;
 import calhoun.seq.FastaSequence;
 import calhoun.seq.FastaWriter;
+import calhoun.seq.IndexedFastaFile;
 import calhoun.util.Assert;
 
+/** reads a FASTA file into a header component and a sequence component.  By default every record is read into memory.  When the
+ * <code>indexed</code> property is set, the file is memory mapped through an {@link IndexedFastaFile} and each sequence is a
+ * {@link MappedFastaInputSequence} that reads its bases from the file as they are needed.
+ */
 public class FastaInput implements InputComponentIO {
 	private static final long serialVersionUID = 760405914814389112L;
 
 	String header;
 	String sequence;
 	Integer numSeqCap = Integer.MAX_VALUE;
+	boolean packed = false;
+	boolean indexed = false;
 
 	public List<String> getComponentNames() {
 		List<String> ret = new ArrayList();
@@ -26,6 +34,10 @@ public class FastaInput implements InputComponentIO {
 	}
 
 	public void readInputSequences(String location, List<Map<String, InputSequence<?>>> inputs) throws IOException {
+		if (indexed) {
+			readIndexedSequences(location, inputs);
+			return;
+		}
 		FastaIterator it = new FastaIterator(location);
 		Assert.a(inputs.size() == 0, "Fasta input always has to go first in the list.");
 		int i = 0;
@@ -33,21 +45,114 @@ public class FastaInput implements InputComponentIO {
 			numSeqCap = Integer.MAX_VALUE;
 		}
 		while(it.hasNext() && i < numSeqCap.intValue()) {
-			FastaSequence seq = (FastaSequence) it.next();
-			Map<String, InputSequence<?>> input = new HashMap();
-			input.put(header, new NameInputSequence(seq.getHeader()));
-			input.put(sequence, new InputSequenceCharacter(seq.getSequence().toUpperCase()));
-			inputs.add(input);
+			inputs.add(toInput((FastaSequence) it.next()));
 			i++;
 		}
 	}
 
+	Map<String, InputSequence<?>> toInput(FastaSequence seq) {
+		Map<String, InputSequence<?>> input = new HashMap();
+		input.put(header, new NameInputSequence(seq.getHeader()));
+		if (packed) {
+			input.put(sequence, new PackedDnaInputSequence(seq.getSequence()));
+		} else {
+			input.put(sequence, new InputSequenceCharacter(seq.getSequence().toUpperCase()));
+		}
+		return input;
+	}
+
+	Map<String, InputSequence<?>> toInput(IndexedFastaFile.Record record) {
+		Map<String, InputSequence<?>> input = new HashMap();
+		input.put(header, new NameInputSequence(record.getHeader()));
+		input.put(sequence, new MappedFastaInputSequence(record));
+		return input;
+	}
+
+	/** returns the input sequences at a location one at a time.  Each record is read from the file as the iterator advances, so
+	 * only one sequence needs to be in memory at once.  Other components can not be added to these inputs, so this is only useful
+	 * when FASTA is the only input.
+	 * @param location the FASTA file
+	 * @param indexedFasta true to read through an index even if the <code>indexed</code> property is not set
+	 * @return an iterator over maps of component names to input sequences */
+	public Iterator<Map<String, InputSequence<?>>> iterateInputSequences(String location, boolean indexedFasta) throws IOException {
+		int cap = numSeqCap == null ? Integer.MAX_VALUE : numSeqCap.intValue();
+		if (indexed || indexedFasta) {
+			return new RecordIterator(new IndexedFastaFile(location).getRecords().iterator(), cap);
+		}
+		return new RecordIterator(new FastaIterator(location), cap);
+	}
+
+	/** converts the records of a FASTA file to inputs as they are asked for, stopping after <code>numSeqCap</code> records.  The
+	 * records are either {@link IndexedFastaFile.Record}s or sequences read by a {@link FastaIterator}. */
+	class RecordIterator implements Iterator<Map<String, InputSequence<?>>> {
+		Iterator<? extends FastaSequence> records;
+		int remaining;
+
+		RecordIterator(Iterator<? extends FastaSequence> records, int cap) {
+			this.records = records;
+			this.remaining = cap;
+		}
+
+		public boolean hasNext() {
+			return remaining > 0 && records.hasNext();
+		}
+
+		public Map<String, InputSequence<?>> next() {
+			remaining--;
+			FastaSequence seq = records.next();
+			if (seq instanceof IndexedFastaFile.Record) {
+				return toInput((IndexedFastaFile.Record) seq);
+			}
+			return toInput(seq);
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/** reads input sequences from an indexed, memory mapped FASTA file regardless of the <code>indexed</code> property.  The index is
+	 * built if it does not exist.  The <code>packed</code> property is ignored, since the bases are not held in memory.
+	 * @param location the FASTA file
+	 * @param inputs list that a map of components is added to for each record */
+	public void readIndexedSequences(String location, List<Map<String, InputSequence<?>>> inputs) throws IOException {
+		IndexedFastaFile fasta = new IndexedFastaFile(location);
+		Assert.a(inputs.size() == 0, "Fasta input always has to go first in the list.");
+		int cap = numSeqCap == null ? Integer.MAX_VALUE : numSeqCap.intValue();
+		for (IndexedFastaFile.Record record : fasta.getRecords()) {
+			if (inputs.size() >= cap) {
+				break;
+			}
+			inputs.add(toInput(record));
+		}
+	}
+
+	/** reads input sequences with an input component, using the indexed FASTA reader if it is a <code>FastaInput</code> and
+	 * <code>indexedFasta</code> is set.  Used by the input handlers.
+	 * @param reader the input component
+	 * @param location the location to read
+	 * @param inputs list of component maps to add to
+	 * @param indexedFasta true to read FASTA files through an index */
+	static void read(InputComponentIO reader, String location, List<Map<String, InputSequence<?>>> inputs, boolean indexedFasta) throws IOException {
+		if (indexedFasta && reader instanceof FastaInput) {
+			((FastaInput) reader).readIndexedSequences(location, inputs);
+		} else {
+			reader.readInputSequences(location, inputs);
+		}
+	}
+
 	public void writeInputSequences(String location, List<? extends Map<String, ? extends InputSequence<?>>> inputComponents) throws IOException {
 		FastaWriter w = new FastaWriter(location, false);
 		for(Map<String, ? extends InputSequence<?>> input : inputComponents) {
 			NameInputSequence nameSeq = (NameInputSequence) input.get(header);
-			InputSequenceCharacter seqSeq = (InputSequenceCharacter) input.get(sequence);
-			w.writeSeq(nameSeq.getName(), seqSeq.getString());
+			InputSequence<?> seqSeq = input.get(sequence);
+			if (seqSeq instanceof PackedDnaInputSequence) {
+				w.writeSeq(nameSeq.getName(), ((PackedDnaInputSequence) seqSeq).getString());
+			} else if (seqSeq instanceof MappedFastaInputSequence) {
+				w.writeSeq(nameSeq.getName(), ((MappedFastaInputSequence) seqSeq).getString());
+			} else {
+				w.writeSeq(nameSeq.getName(), ((InputSequenceCharacter) seqSeq).getString());
+			}
 		}
 		
 		w.close();
@@ -85,4 +190,29 @@ public class FastaInput implements InputComponentIO {
 	public void setNumSeqCap(Integer numSeqCap) {
 		this.numSeqCap = numSeqCap; 
 	}
+
+	/** returns true if sequences are stored as {@link PackedDnaInputSequence}s
+	 * @return true if sequences are packed */
+	public boolean isPacked() {
+		return packed;
+	}
+
+	/** sets whether sequences are stored as {@link PackedDnaInputSequence}s, which use 2 bits per base instead of a string.
+	 * @param packed true to pack sequences */
+	public void setPacked(boolean packed) {
+		this.packed = packed;
+	}
+
+	/** returns true if sequences are read through a memory mapped {@link IndexedFastaFile}
+	 * @return true if sequences are indexed */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/** sets whether sequences are read through a memory mapped {@link IndexedFastaFile} instead of into memory.  Used for genome
+	 * scale inputs.  A <code>.fai</code> index next to the file is used if it is up to date, and is created otherwise.
+	 * @param indexed true to read sequences through an index */
+	public void setIndexed(boolean indexed) {
+		this.indexed = indexed;
+	}
 }
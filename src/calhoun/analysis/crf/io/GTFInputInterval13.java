@@ -5,10 +5,11 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.builder.CompareToBuilder;
 import org.apache.commons.lang.builder.EqualsBuilder;
@@ -23,7 +24,6 @@ import calhoun.analysis.crf.features.interval13.GeneConstraintsInterval13;
 import calhoun.analysis.crf.solver.CacheProcessor.FeatureEvaluation;
 import calhoun.util.Assert;
 import calhoun.util.CheckException;
-import calhoun.util.FileUtil;
 
 public class GTFInputInterval13 implements TrainingSequenceIO {
 	private static final long serialVersionUID = 4413724139445660883L;
@@ -31,6 +31,7 @@ public class GTFInputInterval13 implements TrainingSequenceIO {
 	private static final Log log = LogFactory.getLog(GTFInputInterval13.class);
 	
 	String nameComponent = "name";
+	boolean indexed = false;
 	
 	static class CDS implements Comparable<CDS> {
 		String seq;
@@ -54,77 +55,65 @@ public class GTFInputInterval13 implements TrainingSequenceIO {
 	}
 	
 	public void readTrainingSequences(Object location, List<TrainingSequence<Map<String, Object>>> seqs) throws IOException {
-		String[][] gtf = FileUtil.readFlatFile((String) location);
-	
-		// Create a list of exons for each sequence
-		Map<String, List<CDS>> exonLists = new HashMap();
-		for(TrainingSequence<Map<String, Object>> seq : seqs) {
-			exonLists.put((String) seq.getInputSequence().getComponent("name").getX(0), new ArrayList());
-		}
-		long threwout = 0;
-		long kept = 0;
-		// First read in all of the exons into an array and sort by sequence and position
-		for(String[] row : gtf) {
-			log.debug("current row: " + Arrays.asList(row));
-			if(row[2].equalsIgnoreCase("cds")) {
-				CDS cds = new CDS();
-				cds.seq = row[0];
-				cds.start = Integer.parseInt(row[3]);
-				cds.stop = Integer.parseInt(row[4]);
-				cds.strand = row[6].charAt(0);
-				
-				// Parse out the gene identifier
-				String attributes = row[8];
-				//log.warn(attributes);
-				for(String pair : attributes.split(";")) {
-					String[] keyValue = pair.trim().split("[ =]");
-					
-					// Strip quotes if they surround the ids
-					try{
-					if(keyValue[1].charAt(0)=='"')
-						keyValue[1] = keyValue[1].substring(1,keyValue[1].length()-1);
-					}catch(Exception e){
-						e.printStackTrace();
-						System.out.println(attributes);
-					}
-					// Check for something that indicates where this CDS belongs
-					if(keyValue[0].equals("gene_id") || keyValue[0].equals("Parent")) {
-						cds.gene = keyValue[1];
-					}
-					//log.warn("Key="+keyValue[0]+" Value="+keyValue[1]);
-				}
-				Assert.a(cds.gene != null);
-				if (exonLists.containsKey(cds.seq)) {
-					exonLists.get(cds.seq).add(cds);
-					kept++;
-				} else {
-					threwout++;
-				}
-				
+		GTFReader gtf = new GTFReader((String) location);
+		if(indexed) {
+			// Read each sequence's exons from its own part of the file, so only one sequence's exons are held at a time
+			gtf.buildIndex();
+			for(TrainingSequence<Map<String, Object>> seq : seqs) {
+				String name = (String) seq.getInputSequence().getComponent("name").getX(0);
+				setStates(seq, toCDS(gtf.read("CDS", name)));
 			}
+			return;
 		}
+
+		// Read the exons of all of the sequences in one pass
+		Set<String> names = new HashSet<String>();
+		for(TrainingSequence<Map<String, Object>> seq : seqs) {
+			names.add((String) seq.getInputSequence().getComponent("name").getX(0));
+		}
+		Map<String, List<GTFReader.Feature>> features = gtf.read("CDS", names);
+		long threwout = gtf.getDiscarded();
 		if (threwout > 0) {
+			long kept = 0;
+			for(List<GTFReader.Feature> list : features.values()) {
+				kept += list.size();
+			}
 			log.warn("Threw out " + threwout + " of " + (threwout + kept) + " exons");
 		}
 		// Now go through and populate int vectors for each sequence 
 		for(TrainingSequence<Map<String, Object>> seq : seqs) {
 			String name = (String) seq.getInputSequence().getComponent("name").getX(0);
-			List<CDS> exons = exonLists.get(name);
-			
-			// Sort in position order
-			Collections.sort(exons);
-			
-			int[] states = new int[seq.length()];
-			//log.warn("Seq: "+name+" Length: "+seq.length());
-		
-			
-			mapExonsToStates(exons, states);
-			seq.setY(states);
+			List<GTFReader.Feature> exons = features.get(name);
+			setStates(seq, toCDS(exons == null ? Collections.<GTFReader.Feature>emptyList() : exons));
 
 			//confirmSeq(seq);
 		}
 	}
 
+	List<CDS> toCDS(List<GTFReader.Feature> features) {
+		List<CDS> ret = new ArrayList<CDS>(features.size());
+		for(GTFReader.Feature f : features) {
+			Assert.a(f.gene != null, "No gene_id or Parent for CDS at ", f.seq, ":", f.start);
+			CDS cds = new CDS();
+			cds.seq = f.seq;
+			cds.gene = f.gene;
+			cds.start = f.start;
+			cds.stop = f.stop;
+			cds.strand = f.strand;
+			ret.add(cds);
+		}
+		return ret;
+	}
+
+	void setStates(TrainingSequence<Map<String, Object>> seq, List<CDS> exons) {
+		// Sort in position order
+		Collections.sort(exons);
+		
+		int[] states = new int[seq.length()];
+		mapExonsToStates(exons, states);
+		seq.setY(states);
+	}
+
 	void mapExonsToStates(List<CDS> exons, int[] states) {
 		if(exons.size() == 0)
 			return;
@@ -205,6 +194,21 @@ public class GTFInputInterval13 implements TrainingSequenceIO {
 		this.nameComponent = nameComponent;
 	}
 
+	/** returns true if exons are read through an index of the GTF file, one sequence at a time
+	 * @return true if the GTF file is indexed
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/** sets whether exons are read through an index of the GTF file, one sequence at a time, instead of all at once.  Used for
+	 * genome scale annotations.  The lines for each sequence must be together in the file.
+	 * @param indexed true to index the GTF file
+	 */
+	public void setIndexed(boolean indexed) {
+		this.indexed = indexed;
+	}
+
 	/* This is debugging code that lets you get a better idea if problems occur.  Specific to interval13 */
 	void confirmSeq(TrainingSequence<?> seq) {
 		int[] states = seq.y;
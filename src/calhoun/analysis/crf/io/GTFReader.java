@@ -0,0 +1,248 @@
+package calhoun.analysis.crf.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import calhoun.util.ConfigException;
+
+/** reads features from a GTF file, grouped by sequence.  Features are parsed as the file is read and only the columns that are
+ * needed are split out, so the whole annotation is never held as text.
+ * <p>
+ * {@link #read(String, Set)} reads the file once and returns the features of every requested sequence.  For very large
+ * annotations, {@link #buildIndex} records where each sequence's lines are in the file, and {@link #read(String, String)} then
+ * reads just one sequence's lines.  Indexing requires that all of the lines for a sequence are together in the file, as they are
+ * in any GTF sorted by sequence.
+ */
+public class GTFReader {
+
+	/** one line of a GTF file */
+	public static class Feature {
+		public String seq;
+		public String feature;
+		public long start;
+		public long stop;
+		public char strand;
+		/** the gene_id or Parent attribute, or null if there is neither */
+		public String gene;
+	}
+
+	String file;
+	// Byte offsets of the first line and the end of the last line of each sequence, in file order
+	Map<String, long[]> index;
+	int discarded;
+
+	/** creates a reader for a GTF file.  Nothing is read until one of the read methods is called.
+	 * @param file the GTF file */
+	public GTFReader(String file) {
+		this.file = file;
+	}
+
+	/** reads the features of a set of sequences in one pass over the file.  Features on other sequences are counted in
+	 * {@link #getDiscarded} and dropped.
+	 * @param featureType the feature type to read, compared ignoring case, or null to read all features
+	 * @param seqNames the sequences to read, or null to read all sequences
+	 * @return a map from sequence name to its features in file order.  Requested sequences with no features are not in the map.
+	 */
+	public Map<String, List<Feature>> read(String featureType, Set<String> seqNames) throws IOException {
+		Map<String, List<Feature>> ret = new HashMap<String, List<Feature>>();
+		discarded = 0;
+		BufferedReader r = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while((line = r.readLine()) != null) {
+				Feature f = parse(line, featureType);
+				if(f == null) {
+					continue;
+				}
+				if(seqNames != null && !seqNames.contains(f.seq)) {
+					++discarded;
+					continue;
+				}
+				List<Feature> list = ret.get(f.seq);
+				if(list == null) {
+					list = new ArrayList<Feature>();
+					ret.put(f.seq, list);
+				}
+				list.add(f);
+			}
+		}
+		finally {
+			r.close();
+		}
+		return ret;
+	}
+
+	/** returns the number of features dropped by the last call to {@link #read(String, Set)} because they were on a sequence that
+	 * was not asked for */
+	public int getDiscarded() {
+		return discarded;
+	}
+
+	/** scans the file once and records where the lines of each sequence are.  Fails if the lines of any sequence are not together. */
+	public void buildIndex() throws IOException {
+		Map<String, long[]> ret = new LinkedHashMap<String, long[]>();
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		try {
+			long offset = 0;
+			String current = null;
+			long[] range = null;
+			StringBuffer seq = new StringBuffer();
+			int c = in.read();
+			while(c != -1) {
+				long lineStart = offset;
+				// Only the first column is needed, the rest of the line is skipped
+				seq.setLength(0);
+				while(c != -1 && c != '\t' && c != '\n') {
+					seq.append((char) c);
+					++offset;
+					c = in.read();
+				}
+				boolean hasColumns = c == '\t';
+				while(c != -1 && c != '\n') {
+					++offset;
+					c = in.read();
+				}
+				if(c == '\n') {
+					++offset;
+					c = in.read();
+				}
+				String name = seq.toString().trim();
+				if(!hasColumns || name.length() == 0 || name.charAt(0) == '#') {
+					continue;
+				}
+				if(!name.equals(current)) {
+					if(ret.containsKey(name)) {
+						throw new ConfigException("Unable to index "+file+": it is not sorted by sequence.  Lines for "+name+" start again at offset "+lineStart);
+					}
+					current = name;
+					range = new long[] { lineStart, offset };
+					ret.put(name, range);
+				}
+				range[1] = offset;
+			}
+		}
+		finally {
+			in.close();
+		}
+		index = ret;
+	}
+
+	/** returns true if {@link #buildIndex} has been called */
+	public boolean isIndexed() {
+		return index != null;
+	}
+
+	/** returns the sequences in the index, in the order they appear in the file */
+	public Collection<String> getIndexedSequences() {
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	/** reads the features of one sequence, reading only the part of the file that holds them.  {@link #buildIndex} must have
+	 * been called.
+	 * @param featureType the feature type to read, compared ignoring case, or null to read all features
+	 * @param seqName the sequence to read
+	 * @return the features in file order, empty if the sequence has none
+	 */
+	public List<Feature> read(String featureType, String seqName) throws IOException {
+		if(index == null)
+			throw new IllegalStateException("The GTF file "+file+" has not been indexed");
+		List<Feature> ret = new ArrayList<Feature>();
+		long[] range = index.get(seqName);
+		if(range == null) {
+			return ret;
+		}
+		byte[] bytes = new byte[(int) (range[1] - range[0])];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(range[0]);
+			raf.readFully(bytes);
+		}
+		finally {
+			raf.close();
+		}
+		int lineStart = 0;
+		for(int i = 0; i <= bytes.length; ++i) {
+			if(i == bytes.length || bytes[i] == '\n') {
+				if(i > lineStart) {
+					Feature f = parse(new String(bytes, lineStart, i - lineStart, "ISO-8859-1"), featureType);
+					if(f != null) {
+						ret.add(f);
+					}
+				}
+				lineStart = i + 1;
+			}
+		}
+		return ret;
+	}
+
+	/** parses one line of the file.  Returns null for comments, blank lines and features of other types. */
+	Feature parse(String line, String featureType) {
+		if(line.length() == 0 || line.trim().length() == 0 || line.trim().charAt(0) == '#') {
+			return null;
+		}
+		// Find the first 8 tabs.  The attributes are everything after the last one.
+		int[] tabs = new int[8];
+		int n = 0;
+		for(int i = line.indexOf('\t'); i != -1 && n < 8; i = line.indexOf('\t', i + 1)) {
+			tabs[n++] = i;
+		}
+		if(n < 2) {
+			return null;
+		}
+		String type = line.substring(tabs[1] + 1, n > 2 ? tabs[2] : line.length());
+		if(featureType != null && !type.equalsIgnoreCase(featureType)) {
+			return null;
+		}
+		if(n < 8) {
+			throw new ConfigException(file + " is not a valid GTF file.  Offending line was : " + line);
+		}
+		Feature f = new Feature();
+		f.seq = line.substring(0, tabs[0]);
+		f.feature = type;
+		try {
+			f.start = Long.parseLong(line.substring(tabs[2] + 1, tabs[3]).trim());
+			f.stop = Long.parseLong(line.substring(tabs[3] + 1, tabs[4]).trim());
+		}
+		catch(NumberFormatException ex) {
+			throw new ConfigException(file + " is not a valid GTF file.  Offending line was : " + line);
+		}
+		f.strand = tabs[6] > tabs[5] + 1 ? line.charAt(tabs[5] + 1) : '.';
+		f.gene = parseGene(line.substring(tabs[7] + 1));
+		return f;
+	}
+
+	/** returns the gene_id or Parent attribute, without surrounding quotes.  Attributes may be written GTF style (key "value")
+	 * or GFF3 style (key=value). */
+	static String parseGene(String attributes) {
+		String ret = null;
+		for(String pair : attributes.split(";")) {
+			String[] keyValue = pair.trim().split("[ =]");
+			if(keyValue.length < 2 || keyValue[1].length() == 0) {
+				continue;
+			}
+			// Check for something that indicates where this feature belongs
+			if(keyValue[0].equals("gene_id") || keyValue[0].equals("Parent")) {
+				String value = keyValue[1];
+				// Strip quotes if they surround the ids
+				if(value.charAt(0) == '"') {
+					value = value.substring(1, value.length() - 1);
+				}
+				ret = value;
+			}
+		}
+		return ret;
+	}
+}
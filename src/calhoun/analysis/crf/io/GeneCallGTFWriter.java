@@ -0,0 +1,345 @@
+package calhoun.analysis.crf.io;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import calhoun.util.Assert;
+
+/** writes gene calls from 13 state hidden sequences to a GTF file one sequence at a time.  Gene numbers continue from one
+ * sequence to the next, so writing sequences one at a time gives the same file as writing them all at once with
+ * {@link #writeGTF}, as long as the model type is known up front.
+ * <p>
+ * Hidden sequences from the interval13 model are converted to tricycle13 before writing.  The conversion changes the
+ * sequence passed in.  If the model type is not given, a sequence is treated as interval13 once any sequence written so far
+ * has an intergenic to exon transition that only interval13 allows.
+ */
+public class GeneCallGTFWriter {
+	private static final Log log = LogFactory.getLog(GeneCallGTFWriter.class);
+
+	Writer out;
+	// True or false if the model type is known, null to detect it from the sequences
+	Boolean interval13;
+	int geneNum = 1;
+	int seqCount = 0;
+	int frame = -1;
+	long exonStart = 0, exonEnd = 0;
+
+	String seqName;
+	String genePrefix;
+	long   offset;
+
+	/** creates a writer for a GTF file
+	 * @param filename the file to write
+	 * @param interval13 true if the hidden sequences are from the interval13 model, false for tricycle13, or null to detect it */
+	public GeneCallGTFWriter(String filename, Boolean interval13) throws IOException {
+		this(new BufferedWriter(new FileWriter(filename)), interval13);
+	}
+
+	/** creates a writer that writes GTF lines to a writer
+	 * @param out the writer, which is closed by {@link #close}
+	 * @param interval13 true if the hidden sequences are from the interval13 model, false for tricycle13, or null to detect it */
+	public GeneCallGTFWriter(Writer out, Boolean interval13) {
+		this.out = out;
+		this.interval13 = interval13;
+	}
+
+	/** writes a list of labeled sequences to a GTF file.  The model type is detected from all of the sequences before any are written.
+	 * @param refStates the sequences, labeled with the 13 state model hidden states
+	 * @param filename the file to write */
+	public static void writeGTF(List<? extends TrainingSequence<?>> refStates, String filename) throws IOException {
+		boolean interval13 = false;
+		for (TrainingSequence seq : refStates) {
+			if (isInterval13(seq)) {
+				interval13 = true;
+				break;
+			}
+		}
+		GeneCallGTFWriter w = new GeneCallGTFWriter(filename, interval13);
+		for (TrainingSequence seq : refStates) {
+			w.write(seq);
+		}
+		w.close();
+	}
+
+	// Determine if model is tricycle13 or interval13.
+	static boolean isInterval13(TrainingSequence<?> seq) {
+		if (seq.length() == 0)
+			return false;
+		int prevState = seq.getY(0);
+		for (int i=1; i<seq.length(); i++) {
+			int state = seq.getY(i);
+			if (prevState == 0 && (state==2 || state==3 || state==7 || state==8)) {
+				return true;
+			}
+			prevState = state;
+		}
+		return false;
+	}
+
+	/** writes the genes in one labeled sequence
+	 * @param seq the sequence, labeled with the 13 state model hidden states */
+	public void write(TrainingSequence seq) throws IOException {
+		int ref;
+		long i, end;
+		boolean inPlusExon, inMinusExon, firstExon, startCodonSplit;
+		String strand;
+
+		if (interval13 == null) {
+			if (isInterval13(seq)) {
+				interval13 = Boolean.TRUE;
+			}
+		}
+		if (interval13 != null && interval13.booleanValue()) {
+			SequenceConverter.convertSeqFromInterval13ToTricycle13(seq);
+		}
+
+		inPlusExon  = false;
+		inMinusExon = false;
+		firstExon   = true;
+		startCodonSplit = false;
+		
+		parseSeqName(seq, seqCount);
+								
+		for (i=0; i<seq.length(); i++)
+		{			
+			ref = seq.getY((int)i);
+			
+			if (ref == 1 || ref == 2 || ref == 3)		// in a plus exon
+			{
+				if (!inPlusExon)
+				{
+					exonStart = i+1;
+					inPlusExon = true;
+					frame = setFrame(ref);
+				}
+			}
+			else if (ref == 7 || ref == 8 || ref == 9)	// in a minus exon
+			{
+				if (!inMinusExon)
+				{
+					exonStart = i+1;
+					inMinusExon = true;
+					frame = setFrame(ref);
+					if (firstExon) {
+						if (i < 3)
+							System.err.println("Minus strand gene start is within 3 nucleotides of sequence start.  No stop codon writen to GTF for gene starting at position " + (exonStart+offset));
+						else
+							writeGFTLine(out,seqName,"stop_codon",exonStart+offset-3,exonStart+offset-1,"-",frame,genePrefix,geneNum);						
+
+					}
+				}
+			}
+			else if ( inPlusExon  && (ref == 4  || ref == 5  || ref == 6) )	{ // just ended an exon on plus strand, now in a plus intron
+				strand = "+";	
+				inPlusExon = false;
+				exonEnd = i;
+				if (firstExon) {
+					if (exonEnd - exonStart + 1 < 3)	{ end = exonEnd + offset; startCodonSplit = true;}
+					else								{ end = exonStart+offset+2; }
+					writeGFTLine(out,seqName,"start_codon",exonStart+offset,end,strand,frame,genePrefix,geneNum);						
+					firstExon = false;
+				}
+				else if (startCodonSplit) {	// at second exon that contains part of start codon
+					Assert.a(frame==1 || frame==2);
+					writeGFTLine(out,seqName,"start_codon",exonStart+offset,exonStart+offset+frame-1,strand,frame,genePrefix,geneNum);						
+					startCodonSplit = false;
+				}
+				writeGFTLine(out,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
+			}
+			else if (inMinusExon && (ref == 10 || ref == 11 || ref == 12))  { // just ended an exon on minus strand, now in a minus intron
+				strand = "-";
+				inMinusExon = false;
+				firstExon = false;
+				exonEnd = i;
+				writeGFTLine(out,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
+			}
+			else								// now in intergenic region
+			{
+				boolean write = true;
+				if (inPlusExon)					// was in gene at previous nucleotide
+				{
+					strand = "+";
+					exonEnd = i;			
+					if (firstExon) {
+						if (exonEnd - exonStart + 1 < 3) {
+							System.err.println("Single '" + strand + "' strand exon is < 3 bases for sequence '" + seqName + "'.  exonStart=" + exonStart + "  exonEnd=" + exonEnd);
+							write = false;
+						}
+						else {
+							writeGFTLine(out,seqName,"start_codon",exonStart+offset,exonStart+offset+2,strand,frame,genePrefix,geneNum);
+						}
+					}
+					else if (startCodonSplit) {	// at second exon that contains part of start codon
+						Assert.a(frame==1 || frame==2);
+						writeGFTLine(out,seqName,"start_codon",exonStart+offset,exonStart+offset+frame-1,strand,frame,genePrefix,geneNum);						
+					}
+					if (write) {
+						writeGFTLine(out,seqName,"CDS",exonStart+offset,exonEnd+offset,  strand,frame,genePrefix,geneNum);
+						writeGFTLine(out,seqName,"stop_codon",exonEnd+offset+1,exonEnd+offset+3,strand,0,    genePrefix,geneNum);
+					}
+					inPlusExon  = false;
+					firstExon   = true;
+					startCodonSplit = false;
+					geneNum++;
+				}
+				else if (inMinusExon) {
+					strand = "-";
+					long prevExonEnd = exonEnd;
+					exonEnd = i;			
+					if (firstExon && exonEnd - exonStart + 1 < 3) {
+						System.err.println("Single '" + strand + "' strand exon is < 3 bases for sequence '" + seqName + "'.  exonStart=" + exonStart + "  exonEnd=" + exonEnd);
+					}
+					else if (exonEnd - exonStart + 1 < 3) {	// this exon is < 3 bases, need to split start codon
+						if (exonEnd - exonStart + 1 == 2) { // this exon is 2 bases
+							writeGFTLine(out,seqName,"start_codon",prevExonEnd+offset,prevExonEnd+offset,strand,0,genePrefix,geneNum);				
+							writeGFTLine(out,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
+							writeGFTLine(out,seqName,"start_codon",exonStart+offset,exonEnd+offset,strand,2,genePrefix,geneNum);				
+						}
+						else if (exonEnd - exonStart + 1 == 1) 	{ // this exon is 1 base
+							writeGFTLine(out,seqName,"start_codon",prevExonEnd+offset-1,prevExonEnd+offset,strand,0,genePrefix,geneNum);				
+							writeGFTLine(out,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
+							writeGFTLine(out,seqName,"start_codon",exonStart+offset,exonEnd+offset,strand,1,genePrefix,geneNum);												
+						}
+					}
+					else {
+						writeGFTLine(out,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
+						writeGFTLine(out,seqName,"start_codon",exonEnd+offset-2,exonEnd+offset,strand,0,    genePrefix,geneNum);				
+					}			
+					inMinusExon = false;
+					firstExon   = true;
+					startCodonSplit = false;
+					geneNum++;			
+				}
+			}
+		}
+		seqCount++;
+	}
+
+	/** flushes and closes the GTF file */
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void parseSeqName(TrainingSequence seq, int seqNum) {
+		NameInputSequence nameInput = null;
+
+		InputSequence<?> inputSeq = seq.getInputSequence();
+		if(inputSeq instanceof InputSequenceComposite) {
+			nameInput = (NameInputSequence) inputSeq.getComponent("name");
+			
+		}
+		if(nameInput == null) {
+			log.debug("Sequence name not specified.  Setting sequence name to 'SEQ_" + String.valueOf(seqNum) + "'");
+			seqName    = "SEQ_" + String.valueOf(seqNum);	// Create a name and return.
+			genePrefix = "SEQ_" + String.valueOf(seqNum);
+			offset = 0;
+			return;
+		}
+		String name =  nameInput.getName().trim();
+		
+		int colon1, colon2, numColons;
+		
+		if (name.startsWith("group:") || name.startsWith("seq:") ) {
+			numColons = numOccurrences(name, ':');
+			if (numColons == 1) {
+				colon1 = name.indexOf(":");
+				seqName = name;
+				genePrefix = name.substring(colon1 + 1, name.length());
+				offset = 0;
+				return;
+			}
+			else if (numColons == 2) {
+				colon1 = name.indexOf(":");
+				colon2 = name.lastIndexOf(":");
+				seqName = name.substring(0, colon2);
+				genePrefix = name.substring(colon1 + 1, colon2);
+				int pound = genePrefix.indexOf("#");
+				if (pound > 0) {
+					genePrefix = genePrefix.substring(0, pound);
+				}
+				setOffset(name.substring(colon2+1, name.length()));
+				return;
+			}
+		}
+		log.debug("Sequence name is in unexpected format.  Setting offset=0 and sequence name='" + name + "'.");
+		seqName    = name;
+		genePrefix = name;
+		offset = 0;
+	}
+	
+	// Returns the number of times the character 'c' occurs in 'str'
+	private static int numOccurrences(String str, char c) {
+		int num = 0;
+		int index = str.indexOf(c);
+		while (index != -1) {
+			num++;
+			index = str.indexOf(c, index+1);
+		}
+		return num;
+	}
+
+	private void setOffset(String str) {
+		int numDashes, dash;
+		numDashes = numOccurrences(str, '-');
+		
+		if (numDashes == 0) {
+			offset = 0;
+		}
+		else if (numDashes == 1) {
+			try {
+				dash = str.indexOf("-");
+				offset = Long.valueOf(str.substring(0, dash)) - 1;
+			}
+			catch (NumberFormatException e) {
+				System.err.println("Sequence range values in unexpected format.  Setting offset=0 for sequence='" + seqName + "'.");
+				offset = 0;
+			}
+		}
+		else {
+			System.err.println("Sequence range values in unexpected format.  Setting offset=0 for sequence='" + seqName + "'.");
+			offset = 0;
+		}
+	}
+	
+	// Frame is the nmber of bases in this region befor you get in frame.  
+	// That is, if frame is 0, the first three bases in this element are a codon.
+	// If frame is 1, the first base is the end of a codon hanging over from the 
+	//     end of the previous codon and the next three are the first codon in this feature.
+	// If frame is 2, the first two bases are the end of the previous codon and the 
+	//     next three are the first codon in this feature.
+	private static int setFrame(int ref) {
+		int frame = -1;
+		
+		switch (ref) {
+		case 1:  frame = 0;  break;
+		case 2:  frame = 2;  break;
+		case 3:  frame = 1;  break;
+		case 7:  frame = 1;  break;
+		case 8:  frame = 2;  break;
+		case 9:  frame = 0;  break;
+		default:  Assert.a(false, "Error setting frame, ref = ", ref);
+		}
+		return frame;
+	}
+
+	// Outputs one line to the GTF file.  
+	// NOTE:  source is assumed to be 'CONRAD', and score is assumed to be unknown and set to '.'.
+	private static void writeGFTLine(Writer out, String seqName, String feature, long exonStart, long exonEnd, 
+									 String strand, int frame, String genePrefix, int geneNum) throws IOException {
+
+		Assert.a(frame==0 || frame==1 || frame==2, "Frame value invalid, frame = ", frame);
+		
+		String geneId = genePrefix + "G_" + String.valueOf(geneNum);
+		String transId = genePrefix + "T_" + String.valueOf(geneNum) + ".1";
+		
+		out.write(seqName + "\t" + "CONRAD" + "\t" + feature + "\t" + exonStart + "\t" + exonEnd + "\t" +
+				  "." + "\t" + strand + "\t" + frame + "\t" + 
+				  "gene_id \"" + geneId + "\"; transcript_id \"" + transId + "\";\n");	
+	}
+}
@@ -28,6 +28,18 @@ public interface InputHandler extends Serializable {
 	*/
 	List<? extends TrainingSequence<?>> readTrainingData(String location, boolean predict) throws IOException;
 	List<? extends TrainingSequence<?>> readTrainingData(String location) throws IOException;
+
+	/** returns the training data read from the specified location one sequence at a time.  Where the input format allows it,
+	sequences are read as the iterator advances, so a caller that handles each sequence and then lets go of it, such as
+	prediction, needs memory for only one sequence at a time.  When <code>predict</code> is true the hidden sequences
+	are all intergenic and no hidden state file is read.
+	@param location string location of the data.  Meaning is implementation dependent.
+	@param predict true if the data is only used for prediction and has no hidden sequences
+	@return an iterator over training sequences
+	@throws IOException if there is a problem reading the data
+	*/
+	Iterator<? extends TrainingSequence<?>> readTrainingDataIterator(String location, boolean predict) throws IOException;
+
 	/** returns the input data read from the specified location.  The result is returned as an <code>Iterator</code> 
 	because the inference algorithms can predict on the sequences one at a time. The interpretation of
 	the location string is dependent on the particular <code>InputHandler</code> implementation used.
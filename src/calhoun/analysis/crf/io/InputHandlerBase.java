@@ -20,6 +20,21 @@ public abstract class InputHandlerBase implements InputHandler {
 		return ret.iterator();
 		
 	}
+
+	Iterator<? extends InputSequence<?>> createCompositeInput(Iterator<Map<String, InputSequence<?>>> inputs) {
+		// Create each composite as it is asked for, so inputs read lazily are not all held at once
+		return new IteratorAdapterCompositeInput(inputs);
+	}
+
+	/** returns training data one sequence at a time.  For prediction, the input sequences are read as the iterator advances and given all
+	 * intergenic hidden sequences.  Otherwise the hidden state file has to be matched to the whole list of inputs, so the data is read
+	 * with {@link #readTrainingData(String, boolean)}. */
+	public Iterator<? extends TrainingSequence<?>> readTrainingDataIterator(String location, boolean predict) throws IOException {
+		if (predict) {
+			return new IteratorAdapterPredictionSequence(readInputData(location));
+		}
+		return readTrainingData(location, false).iterator();
+	}
 	
 	List<? extends TrainingSequence<?>> readTrainingData(String location, String trainingLocation, TrainingSequenceIO hiddenStateReader, boolean predict) throws IOException {
 		Iterator<? extends InputSequence<Map<String, Object>>> inputIter = (Iterator<? extends InputSequence<Map<String, Object>>>) readInputData(location);
@@ -7,6 +7,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import calhoun.util.ConfigException;
 import calhoun.util.Util;
 
 /** an {@link InputHandler} used when the input is in several files within a single directory.  A single {@link InputComponentIO} is used for each
@@ -19,13 +20,30 @@ public class InputHandlerDirectory extends InputHandlerBase {
 	Map<String, InputComponentIO> inputReaders;
 	TrainingSequenceIO hiddenStateReader;
 	String hiddenSequenceFile = "hidden.dat";
+	boolean indexedFasta = false;
 
 	public Iterator<? extends InputSequence<?>> readInputData(String location) throws IOException {
+		if (indexedFasta) {
+			boolean fasta = false;
+			for(InputComponentIO reader : inputReaders.values()) {
+				fasta |= reader instanceof FastaInput;
+			}
+			if (!fasta) {
+				throw new ConfigException("indexedFasta is set, but none of the input readers is a FastaInput.  Only FastaInput readers can be indexed.");
+			}
+		}
+		if (inputReaders.size() == 1) {
+			Map.Entry<String, InputComponentIO> entry = inputReaders.entrySet().iterator().next();
+			if (entry.getValue() instanceof FastaInput) {
+				// With no other components to line up with the sequences, read each record as it is asked for
+				return createCompositeInput(((FastaInput) entry.getValue()).iterateInputSequences(new File(location, entry.getKey()).getPath(), indexedFasta));
+			}
+		}
 		List<Map<String, InputSequence<?>>> inputs = new ArrayList();
 
 		// Read in all of the inputs
 		for(Map.Entry<String, InputComponentIO> entry : inputReaders.entrySet()) {
-			entry.getValue().readInputSequences(new File(location, entry.getKey()).getPath(), inputs);
+			FastaInput.read(entry.getValue(), new File(location, entry.getKey()).getPath(), inputs, indexedFasta);
 		}
 
 		return createCompositeInput(inputs);
@@ -105,4 +123,20 @@ public class InputHandlerDirectory extends InputHandlerBase {
 	public void setHiddenSequenceFile(String hiddenSequenceFile) {
 		this.hiddenSequenceFile = hiddenSequenceFile;
 	}
+
+	/** returns true if {@link FastaInput} readers read their files through a memory mapped index.
+	 * @return true if FASTA input is indexed
+	 */
+	public boolean isIndexedFasta() {
+		return indexedFasta;
+	}
+
+	/** sets whether {@link FastaInput} readers read their files through a memory mapped index, as if their <code>indexed</code>
+	 * property were set.  Used for genome scale inputs.  Other readers are not affected, but reading fails with a
+	 * {@link ConfigException} if this is set and none of the readers is a {@link FastaInput}.
+	 * @param indexedFasta true to read FASTA input through an index
+	 */
+	public void setIndexedFasta(boolean indexedFasta) {
+		this.indexedFasta = indexedFasta;
+	}
 }
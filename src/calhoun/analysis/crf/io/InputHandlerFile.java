@@ -7,6 +7,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import calhoun.util.ConfigException;
 import calhoun.util.Util;
 
 /** an {@link InputHandler} used when all of the input is in a single file.  A single {@link InputComponentIO} is used to read the
@@ -21,10 +22,18 @@ public class InputHandlerFile extends InputHandlerBase {
 	InputComponentIO inputReader;
 	FilenameMapper mapper;
 	TrainingSequenceIO hiddenStateReader;
+	boolean indexedFasta = false;
 	
 	public Iterator<? extends InputSequence<?>> readInputData(String location) throws IOException {
+		if (indexedFasta && !(inputReader instanceof FastaInput)) {
+			throw new ConfigException("indexedFasta is set, but the input reader is a "+inputReader.getClass().getName()+".  Only a FastaInput reader can be indexed.");
+		}
+		if (inputReader instanceof FastaInput) {
+			// Read each record as it is asked for
+			return createCompositeInput(((FastaInput) inputReader).iterateInputSequences(location, indexedFasta));
+		}
 		List<Map<String, InputSequence<?>>> inputs = new ArrayList();
-		inputReader.readInputSequences(location, inputs);
+		FastaInput.read(inputReader, location, inputs, indexedFasta);
 
 		return createCompositeInput(inputs);
 	}
@@ -102,4 +111,20 @@ public class InputHandlerFile extends InputHandlerBase {
 	public void setMapper(FilenameMapper mapper) {
 		this.mapper = mapper;
 	}
+
+	/** returns true if a {@link FastaInput} reader reads the file through a memory mapped index.
+	 * @return true if FASTA input is indexed
+	 */
+	public boolean isIndexedFasta() {
+		return indexedFasta;
+	}
+
+	/** sets whether a {@link FastaInput} reader reads the file through a memory mapped index, as if its <code>indexed</code>
+	 * property were set.  Used for genome scale inputs.  Reading fails with a {@link ConfigException} if this is set and the input
+	 * reader is not a {@link FastaInput}.
+	 * @param indexedFasta true to read FASTA input through an index
+	 */
+	public void setIndexedFasta(boolean indexedFasta) {
+		this.indexedFasta = indexedFasta;
+	}
 }
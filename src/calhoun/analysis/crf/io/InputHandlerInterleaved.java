@@ -14,8 +14,11 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import calhoun.util.Assert;
+import calhoun.util.ErrorException;
+import calhoun.util.Util;
 
 /** an {@link InputHandler} for handling input files that consist of multiple different sequences
  * interleaved together in a file.  This input handler has a list of {@link InterleavedInputComponent}s.
@@ -62,7 +65,7 @@ public class InputHandlerInterleaved implements InputHandler {
 	}
 	
 	public Iterator<? extends InputSequence<?>> readInputData(String location) throws IOException {
-		throw new UnsupportedOperationException();
+		return new IteratorAdapterTrainingSequenceInput(readTrainingDataIterator(location, true));
 	}
 	
 	public List<? extends TrainingSequence<?>> readTrainingData(String location) throws IOException {
@@ -70,41 +73,118 @@ public class InputHandlerInterleaved implements InputHandler {
 	}
 	
 	public List<? extends TrainingSequence<?>> readTrainingData(String location, boolean predict) throws IOException {
-		// XXX: Predict semantics are unusual here
-		Reader reader = locationIsLiteral ? new StringReader(location) : new FileReader(new File(location)); 
-		BufferedReader r = new BufferedReader(reader);
 		List<TrainingSequence<?>> ret = new ArrayList<TrainingSequence<?>>();
+		SequenceIterator it = (SequenceIterator) readTrainingDataIterator(location, predict);
 		try {
-			while(r.ready()) {
-				int[] data = hiddenStateReader.readSequence(r);
-				if(data == null) {
-					break;
-				}
-				InputSequence<?> inputSeq = null;
-				
-				Map<String, InputSequence<?>> seq = new HashMap<String, InputSequence<?>>();
-				for(InterleavedInputComponent comp : components) {
-					boolean success = comp.read(r, seq);
-					Assert.a(success == true, "Not all components of a composite input sequence were present.");
-				}
-				if(singleComponent) {
-					Assert.a(seq.size() == 1);
-					Map.Entry<String, InputSequence<?>> entry = seq.entrySet().iterator().next();
-					componentName = entry.getKey();
-					inputSeq = entry.getValue();
-				}
-				else {
-					inputSeq = new InputSequenceComposite(seq);
-				}
-				ret.add(new TrainingSequence(inputSeq, data));
+			Util.addAll(ret, it);
+		}
+		catch(ErrorException ex) {
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
 			}
+			throw ex;
 		}
 		finally {
-			r.close();
+			it.close();
 		}
 		return ret;
 	}
 
+	/** returns an iterator that reads one sequence from the file each time it advances.  The file is closed when the last
+	 * sequence has been read or when reading fails. */
+	public Iterator<? extends TrainingSequence<?>> readTrainingDataIterator(String location, boolean predict) throws IOException {
+		// XXX: Predict semantics are unusual here
+		Reader reader = locationIsLiteral ? new StringReader(location) : new FileReader(new File(location)); 
+		return new SequenceIterator(new BufferedReader(reader));
+	}
+
+	/** reads the interleaved file one sequence ahead of the caller */
+	class SequenceIterator implements Iterator<TrainingSequence<?>> {
+		BufferedReader r;
+		TrainingSequence<?> next;
+
+		SequenceIterator(BufferedReader r) throws IOException {
+			this.r = r;
+			advance();
+		}
+
+		void advance() throws IOException {
+			next = null;
+			if(r == null) {
+				return;
+			}
+			boolean found = false;
+			try {
+				found = read();
+			}
+			finally {
+				// Close at the end of the file, and also if reading failed so the file is not left open
+				if(!found) {
+					close();
+				}
+			}
+		}
+
+		/** reads the next sequence into next, or returns false at the end of the file */
+		boolean read() throws IOException {
+			if(r.ready()) {
+				int[] data = hiddenStateReader.readSequence(r);
+				if(data != null) {
+					InputSequence<?> inputSeq = null;
+					
+					Map<String, InputSequence<?>> seq = new HashMap<String, InputSequence<?>>();
+					for(InterleavedInputComponent comp : components) {
+						boolean success = comp.read(r, seq);
+						Assert.a(success == true, "Not all components of a composite input sequence were present.");
+					}
+					if(singleComponent) {
+						Assert.a(seq.size() == 1);
+						Map.Entry<String, InputSequence<?>> entry = seq.entrySet().iterator().next();
+						componentName = entry.getKey();
+						inputSeq = entry.getValue();
+					}
+					else {
+						inputSeq = new InputSequenceComposite(seq);
+					}
+					next = new TrainingSequence(inputSeq, data);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/** closes the file.  Safe to call more than once. */
+		void close() throws IOException {
+			if(r != null) {
+				BufferedReader toClose = r;
+				r = null;
+				toClose.close();
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public TrainingSequence<?> next() {
+			if(next == null) {
+				throw new NoSuchElementException();
+			}
+			TrainingSequence<?> ret = next;
+			try {
+				advance();
+			}
+			catch(IOException ex) {
+				throw new ErrorException(ex);
+			}
+			return ret;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	public void writeInputData(String location, Iterator<? extends InputSequence<?>> data) throws IOException {
 		throw new UnsupportedOperationException();
 	}
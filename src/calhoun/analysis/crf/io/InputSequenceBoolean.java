@@ -4,9 +4,12 @@ import java.util.Collection;
 
 import calhoun.util.Assert;
 
-/** an input sequence where the elements of the sequence are boolean values. */
-public class InputSequenceBoolean implements InputSequence<Boolean> {
+/** an input sequence where the elements of the sequence are boolean values.  A sequence returned by {@link #subSequence}
+ * is a view of a range of the same array, so it is created without copying. */
+public class InputSequenceBoolean implements BooleanInputSequence {
 	boolean[] data;
+	int offset = 0;
+	int length = 0;
 	
 	/** default constructor */
 	public InputSequenceBoolean() { }
@@ -15,21 +18,43 @@ public class InputSequenceBoolean implements InputSequence<Boolean> {
 	 * @param a a boolean array containing the input sequence */
 	public InputSequenceBoolean(boolean[] a) {
 		data = a;
+		length = a == null ? 0 : a.length;
+	}
+
+	/** creates an input sequence that is a view of part of a boolean array.  The array is not copied.
+	 * @param a a boolean array containing the input sequence
+	 * @param offset index in the array of the first position of the sequence
+	 * @param length length of the sequence */
+	public InputSequenceBoolean(boolean[] a, int offset, int length) {
+		Assert.a(offset >= 0 && length >= 0 && offset+length <= a.length);
+		data = a;
+		this.offset = offset;
+		this.length = length;
 	}
 	
-	/** gets the boolean array containing the data for this sequence.
+	/** gets the boolean array containing the data for this sequence.  If this sequence is a view of part of a larger
+	 * array, the part is copied.
 	 * @return the boolean array containing the data for this sequence
 	 */
 	public boolean[] getData() {
-		return data;
+		if(data == null || (offset == 0 && length == data.length)) {
+			return data;
+		}
+		boolean[] ret = new boolean[length];
+		System.arraycopy(data, offset, ret, 0, length);
+		return ret;
 	}
 	
 	public Boolean getX(int ix) {
-		return data[ix];
+		return data[offset+ix];
+	}
+
+	public boolean getBoolean(int ix) {
+		return data[offset+ix];
 	}
 
 	public int length() {
-		return data == null ? 0 : data.length;
+		return length;
 	}
 
 	public InputSequence<?> getComponent(String name) {
@@ -40,15 +65,10 @@ public class InputSequenceBoolean implements InputSequence<Boolean> {
 		throw new UnsupportedOperationException();
 	}
 
-	public InputSequence<Boolean> subSequence(int start, int end) {
+	public BooleanInputSequence subSequence(int start, int end) {
 		Assert.a(start >= 1);
 		Assert.a(end <= this.length());
 		Assert.a(start <= end);
-		boolean[] newdata = new boolean[end-start+1];
-		for (int j=0; j<(end-start+1); j++) {
-			newdata[j] = data[j+start-1];
-		}
-		InputSequenceBoolean B = new InputSequenceBoolean(newdata);
-		return B;
+		return new InputSequenceBoolean(data, offset+start-1, end-start+1);
 	}
 }
@@ -0,0 +1,58 @@
+package calhoun.analysis.crf.io;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/** a cache of data computed from input sequences, such as indexes that several features share.  The value for a sequence is
+ * created with {@link #create} the first time it is asked for and is kept until the sequence is garbage collected.  The cache
+ * does not keep sequences from being garbage collected.
+ * <p>
+ * {@link #get} is safe from any thread.  The sequence looked up last is remembered, since it is almost always the one asked for
+ * next, so repeated lookups of the same sequence take no lock.  Values should be safe to share between threads.
+ * @param <S> the type of the input sequences
+ * @param <V> the type of the cached values
+ */
+public abstract class InputSequenceCache<S extends InputSequence<?>, V> {
+
+	final Map<S, V> cache = new WeakHashMap<S, V>();
+
+	/** the last sequence looked up */
+	static class LastLookup<S, V> {
+		final WeakReference<S> seq;
+		final V value;
+
+		LastLookup(S seq, V value) {
+			this.seq = new WeakReference<S>(seq);
+			this.value = value;
+		}
+	}
+	volatile LastLookup<S, V> last;
+
+	/** returns the value for a sequence, creating it on first use
+	 * @param seq an input sequence
+	 * @return the value for this sequence
+	 */
+	public V get(S seq) {
+		LastLookup<S, V> l = last;
+		if (l != null && l.seq.get() == seq) {
+			return l.value;
+		}
+		V ret;
+		synchronized (cache) {
+			ret = cache.get(seq);
+			if (ret == null) {
+				ret = create(seq);
+				cache.put(seq, ret);
+			}
+		}
+		last = new LastLookup<S, V>(seq, ret);
+		return ret;
+	}
+
+	/** computes the value for a sequence that is not in the cache
+	 * @param seq an input sequence
+	 * @return the value to cache for this sequence
+	 */
+	protected abstract V create(S seq);
+}
@@ -4,9 +4,12 @@ import java.util.Collection;
 
 import calhoun.util.Assert;
 
-/** an input sequence where the elements of the sequence are string characters. */
+/** an input sequence where the elements of the sequence are string characters.  A sequence returned by {@link #subSequence}
+ * is a view of a range of the same string, so it is created without copying. */
 public class InputSequenceCharacter implements InputSequence<Character> {
 	String str;
+	int offset = 0;
+	int length = 0;
 	
 	/** default constructor */
 	public InputSequenceCharacter() { }
@@ -15,20 +18,35 @@ public class InputSequenceCharacter implements InputSequence<Character> {
 	 * @param a string containing characters of the input sequence */
 	public InputSequenceCharacter(String a) {
 		str = a;
+		length = a == null ? 0 : a.length();
+	}
+
+	/** creates an input sequence that is a view of part of a string.  The string is not copied.
+	 * @param a string containing characters of the input sequence
+	 * @param offset index in the string of the first position of the sequence
+	 * @param length length of the sequence */
+	public InputSequenceCharacter(String a, int offset, int length) {
+		Assert.a(offset >= 0 && length >= 0 && offset+length <= a.length());
+		str = a;
+		this.offset = offset;
+		this.length = length;
 	}
 	
-	/** returns the input sequence as a string 
+	/** returns the input sequence as a string.  If this sequence is a view of part of a longer string, the part is copied.
 	 * @return a string of the characters */
 	public String getString() {
-		return str;
+		if(str == null || (offset == 0 && length == str.length())) {
+			return str;
+		}
+		return str.substring(offset, offset+length);
 	}
 	
 	public Character getX(int ix) {
-		return str.charAt(ix);
+		return str.charAt(offset+ix);
 	}
 
 	public int length() {
-		return str == null ? 0 : str.length();
+		return length;
 	}
 
 	public InputSequence<?> getComponent(String name) {
@@ -44,13 +62,11 @@ public class InputSequenceCharacter implements InputSequence<Character> {
 		Assert.a(end <= this.length());
 		Assert.a(start <= end);
 		
-		InputSequenceCharacter S = new InputSequenceCharacter(str.substring(start-1,end));
-		
-		return S;
+		return new InputSequenceCharacter(str, offset+start-1, end-start+1);
 	}
 	
 	@Override
 	public String toString() {
-		return str.substring(0, Math.min(str.length(), 15));
+		return str.substring(offset, offset+Math.min(length, 15));
 	}
 }
@@ -71,6 +71,7 @@ public class InputSequenceComposite implements InputSequence<Map<String, Object>
 		return components.keySet();
 	}
 
+	/** returns a composite of the subsequences of each component.  Nothing is copied for components that return views. */
 	public InputSequenceComposite subSequence(int start, int end) {
 		Assert.a(start >= 1);
 		Assert.a(end <= length());
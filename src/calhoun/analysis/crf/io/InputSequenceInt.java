@@ -4,9 +4,12 @@ import java.util.Collection;
 
 import calhoun.util.Assert;
 
-/** an input sequence where the elements of the sequence are integer values. */
-public class InputSequenceInt implements InputSequence<Integer> {
+/** an input sequence where the elements of the sequence are integer values.  A sequence returned by {@link #subSequence}
+ * is a view of a range of the same array, so it is created without copying. */
+public class InputSequenceInt implements IntInputSequence {
 	int[] data;
+	int offset = 0;
+	int length = 0;
 	
 	/** default constructor */
 	public InputSequenceInt() { }
@@ -15,21 +18,52 @@ public class InputSequenceInt implements InputSequence<Integer> {
 	 * @param a an int array containing the input sequence */
 	public InputSequenceInt(int[] a) {
 		data = a;
+		length = a == null ? 0 : a.length;
+	}
+
+	/** creates an input sequence that is a view of part of a int array.  The array is not copied.
+	 * @param a an int array containing the input sequence
+	 * @param offset index in the array of the first position of the sequence
+	 * @param length length of the sequence */
+	public InputSequenceInt(int[] a, int offset, int length) {
+		Assert.a(offset >= 0 && length >= 0 && offset+length <= a.length);
+		data = a;
+		this.offset = offset;
+		this.length = length;
 	}
 	
-	/** gets the int array containing the data for this sequence.
+	/** gets the int array containing the data for this sequence.  If this sequence is a view of part of a larger
+	 * array, the part is copied.
 	 * @return the int array containing the data for this sequence
 	 */
 	public int[] getData() {
-		return data;
+		if(data == null || (offset == 0 && length == data.length)) {
+			return data;
+		}
+		int[] ret = new int[length];
+		System.arraycopy(data, offset, ret, 0, length);
+		return ret;
 	}
 	
 	public Integer getX(int ix) {
-		return data[ix];
+		return data[offset+ix];
+	}
+
+	public int getInt(int ix) {
+		return data[offset+ix];
+	}
+
+	public int nextChange(int ix) {
+		int value = data[offset+ix];
+		int ret = ix+1;
+		while (ret < length && data[offset+ret] == value) {
+			ret++;
+		}
+		return ret;
 	}
 
 	public int length() {
-		return data == null ? 0 : data.length;
+		return length;
 	}
 
 	public InputSequence<?> getComponent(String name) {
@@ -40,15 +74,10 @@ public class InputSequenceInt implements InputSequence<Integer> {
 		throw new UnsupportedOperationException();
 	}
 
-	public InputSequence<Integer> subSequence(int start, int end) {
+	public IntInputSequence subSequence(int start, int end) {
 		Assert.a(start >= 1);
 		Assert.a(end <= this.length());
 		Assert.a(start <= end);
-		int[] newdata = new int[end-start+1];
-		for (int j=0; j<(end-start+1); j++) {
-			newdata[j] = data[j+start-1];
-		}
-		InputSequenceInt B = new InputSequenceInt(newdata);
-		return B;
+		return new InputSequenceInt(data, offset+start-1, end-start+1);
 	}
 }
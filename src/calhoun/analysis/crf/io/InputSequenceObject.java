@@ -4,9 +4,12 @@ import java.util.Collection;
 
 import calhoun.util.Assert;
 
-/** an input sequence where the elements of the sequence are objects. */
+/** an input sequence where the elements of the sequence are objects.  A sequence returned by {@link #subSequence}
+ * is a view of a range of the same array, so it is created without copying. */
 public class InputSequenceObject<T> implements InputSequence<T> {
 	T[] t;
+	int offset = 0;
+	int length = 0;
 	
 	/** default constructor */
 	public InputSequenceObject() {
@@ -16,14 +19,26 @@ public class InputSequenceObject<T> implements InputSequence<T> {
 	 * @param t a an object array containing the input sequence */
 	public InputSequenceObject(T[] t) {
 		this.t = t;
+		length = t.length;
+	}
+
+	/** creates an input sequence that is a view of part of an Object array.  The array is not copied.
+	 * @param t an object array containing the input sequence
+	 * @param offset index in the array of the first position of the sequence
+	 * @param length length of the sequence */
+	public InputSequenceObject(T[] t, int offset, int length) {
+		Assert.a(offset >= 0 && length >= 0 && offset+length <= t.length);
+		this.t = t;
+		this.offset = offset;
+		this.length = length;
 	}
 	
 	public T getX(int ix) {
-		return t[ix];
+		return t[offset+ix];
 	}
 
 	public int length() {
-		return t.length;
+		return length;
 	}
 
 	public InputSequence<?> getComponent(String name) {
@@ -39,11 +54,6 @@ public class InputSequenceObject<T> implements InputSequence<T> {
 		Assert.a(end <= this.length());
 		Assert.a(start <= end);
 
-		int length = end - start + 1;
-		T[] ret = (T[]) new Object[length];
-		for(int i= 0; i<length; ++i) {
-			ret[i] = t[i+start-1];
-		}
-		return new InputSequenceObject<T>(ret);
+		return new InputSequenceObject<T>(t, offset+start-1, end-start+1);
 	}
 }
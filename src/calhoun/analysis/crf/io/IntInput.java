@@ -12,7 +12,6 @@ import java.util.List;
 import java.util.Map;
 
 import calhoun.util.Assert;
-import calhoun.util.ErrorException;
 
 /** reads in an input consisting of a list of ints that correspond to binary values.  Can be used as a standalone
  * input component or part of an interleaved input.
@@ -20,7 +19,24 @@ import calhoun.util.ErrorException;
 public class IntInput extends InterleavedInputComponentBase implements TrainingSequenceIO {
 	private static final long serialVersionUID = 4413724139445660883L;
 	
+	boolean runLength = false;
+
 	public boolean read(BufferedReader r, Map<String, InputSequence<?>> output) throws IOException {
+		if(runLength) {
+			// Decode straight into runs so the full int array is never built
+			String str = r.readLine();
+			if(str == null) {
+				return false;
+			}
+			RunLengthInputSequence.Builder b = new RunLengthInputSequence.Builder();
+			for (int i = 0; i < str.length(); ++i) {
+				b.append(decode(str.charAt(i)), 1);
+			}
+			RunLengthInputSequence seq = new RunLengthInputSequence();
+			b.build(seq);
+			output.put(name, seq);
+			return true;
+		}
 		int[] data = readSequence(r);
 		if(data == null) {
 			return false;
@@ -35,27 +51,34 @@ public class IntInput extends InterleavedInputComponentBase implements TrainingS
 			return null;
 		}
 		int[] data = new int[str.length()];
-		try {
-			for (int i = 0; i < str.length(); ++i) {
-				int temp = str.charAt(i) - '0';
-				if ( (temp<0) || (temp>9)) {
-					temp = str.charAt(i) - 'A' + 10;
-					
-					if ( (temp<10) || (temp>35)) {
-						temp = str.charAt(i) - 'a' + 36;
-						Assert.a( (temp>=36) && (temp<62), "Offending character was '" + str.charAt(i));
-					}
+		for (int i = 0; i < str.length(); ++i) {
+			data[i] = decode(str.charAt(i));
+		}
+		return data;
+	}
+
+	static int decode(char c) {
+		int temp = c - '0';
+		if ( (temp<0) || (temp>9)) {
+			temp = c - 'A' + 10;
+			
+			if ( (temp<10) || (temp>35)) {
+				temp = c - 'a' + 36;
+				if ( (temp<36) || (temp>=62)) {
+					Assert.a(false, "Offending character was '" + c);
 				}
-				data[i] = temp;
 			}
-		} catch (NumberFormatException ex) {
-			throw new ErrorException(ex);
 		}
-		return data;
+		return temp;
 	}
 	
 	public void write(Writer w, Map<String, ? extends InputSequence<?>> data) throws IOException {
-		writeSequence(w, ((InputSequenceInt) data.get(name)).getData());
+		InputSequence<?> seq = data.get(name);
+		if(seq instanceof RunLengthInputSequence) {
+			writeSequence(w, ((RunLengthInputSequence) seq).getData());
+		} else {
+			writeSequence(w, ((InputSequenceInt) seq).getData());
+		}
 	}
 
 	public void writeSequence(Writer w, int[] data) throws IOException {
@@ -92,6 +115,19 @@ public class IntInput extends InterleavedInputComponentBase implements TrainingS
 		w.close();
 	}
 
+	/** returns true if sequences are stored as {@link RunLengthInputSequence}s
+	 * @return true if sequences are run length encoded */
+	public boolean isRunLength() {
+		return runLength;
+	}
+
+	/** sets whether sequences are stored as {@link RunLengthInputSequence}s instead of an int for every position.  This saves
+	 * a lot of memory for evidence tracks that only change value at the ends of hits.
+	 * @param runLength true to run length encode sequences */
+	public void setRunLength(boolean runLength) {
+		this.runLength = runLength;
+	}
+
 	/** Convenience function for creating training sequences in test data. */
 	public static List<? extends TrainingSequence<?>> prepareData(String str) throws Exception {
 		return new InputHandlerInterleaved(new IntInput(), true).readTrainingData(str) ;
@@ -0,0 +1,20 @@
+package calhoun.analysis.crf.io;
+
+/** an input sequence of integers that can return each value as a primitive <code>int</code>.  Features that read integer
+ * evidence tracks at every position should use {@link #getInt} instead of {@link #getX} to avoid boxing.
+ */
+public interface IntInputSequence extends InputSequence<Integer> {
+
+	/** retrieves the value at a position in the input sequence.
+	 * @param ix the zero-based index position at which to get the input.
+	 * @return the value at this position.
+	 */
+	int getInt(int ix);
+
+	/** returns the first position after a given position where the value changes.  Features whose value depends only on
+	 * this input can use it to skip over positions where nothing changes.
+	 * @param ix the zero-based index position to start from.
+	 * @return the first position after <code>ix</code> with a different value, or <code>length()</code> if there is none.
+	 */
+	int nextChange(int ix);
+}
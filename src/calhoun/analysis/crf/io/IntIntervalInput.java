@@ -0,0 +1,72 @@
+package calhoun.analysis.crf.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+import calhoun.util.Assert;
+
+/** an input component used to read integer evidence tracks given as a list of intervals, such as EST or Blast hits.
+ * Each input sequence is two lines.  The first is the length of the sequence and the second looks like
+ * "<code>(1000,1250,2)(1800,2100,1)...</code>", where each interval is a one-based start, an inclusive end and a value.
+ * Positions not covered by an interval are 0.  Where intervals overlap, the later one wins.
+ * <p>
+ * The intervals are turned directly into a {@link RunLengthInputSequence}, so a value is never stored for every position.
+ * Features read it through {@link IntInputSequence} the same way as a track read by {@link IntInput}.
+ * <p>
+ * This input component can be used in a regular input handler or as part of an {@link InputHandlerInterleaved}.
+ */
+public class IntIntervalInput extends InterleavedInputComponentBase {
+	private static final long serialVersionUID = -6217410825340125871L;
+
+	public boolean read(BufferedReader r, Map<String, InputSequence<?>> output) throws IOException {
+		String temp = r.readLine();
+		if(temp == null) {
+			return false;
+		}
+		int inputLength;
+		try {
+			inputLength = Integer.parseInt(temp.trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Offending line was : " + temp);
+		}
+		String bigLine = r.readLine();
+		Assert.a(bigLine != null, "Missing interval line after length ", inputLength);
+
+		String[] fields = bigLine.split("[(]");
+		int n = fields.length-1;
+		int[] starts = new int[n];
+		int[] ends = new int[n];
+		int[] values = new int[n];
+		try {
+			for (int k=0; k<n; k++) {
+				String[] rings = fields[k+1].split("[,)]");
+				starts[k] = Integer.parseInt(rings[0].trim()) - 1;
+				ends[k] = Integer.parseInt(rings[1].trim());
+				values[k] = Integer.parseInt(rings[2].trim());
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Offending line was : " + bigLine);
+		}
+		output.put(name, RunLengthInputSequence.fromIntervals(inputLength, starts, ends, values));
+		return true;
+	}
+
+	/** writes the runs with a non-zero value as intervals.  Accepts any {@link IntInputSequence}. */
+	public void write(Writer w, Map<String, ? extends InputSequence<?>> data) throws IOException {
+		IntInputSequence seq = (IntInputSequence) data.get(name);
+		int length = seq.length();
+		w.write(length + "\n");
+		int pos = 0;
+		while (pos < length) {
+			int next = seq.nextChange(pos);
+			int value = seq.getInt(pos);
+			if (value != 0) {
+				w.write("(" + (pos+1) + "," + next + "," + value + ")");
+			}
+			pos = next;
+		}
+		w.write("\n");
+	}
+}
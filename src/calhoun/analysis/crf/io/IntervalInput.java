@@ -3,6 +3,8 @@ package calhoun.analysis.crf.io;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
@@ -10,7 +12,7 @@ import org.apache.commons.logging.LogFactory;
 
 import calhoun.analysis.crf.io.IntervalInputSequence.IntervalRangeMapValue;
 import calhoun.util.Assert;
-import calhoun.util.RangeMap;
+import calhoun.util.IntervalIndex;
 
 /** an input component used to read in values that are similar for long intervals.
  * Each input sequence is a line which looks like "<code>(164716,215910,-,1.0)(194048,218199,-,1.0)...</code>".
@@ -34,13 +36,12 @@ public class IntervalInput extends InterleavedInputComponentBase {
 		}
 		log.debug("Length of " + inputName + "   is  " + inputLength);	
 		
-		RangeMap rmplus = new RangeMap();
-		RangeMap rmminus = new RangeMap();
-		
 		String bigLine = r.readLine();
 		// Parse lines like this: (164716,215910,-,1.0)(194048,218199,-,1.0)	
 		
 		String[] fields = bigLine.split("[(]");
+		List<IntervalRangeMapValue> plus = new ArrayList<IntervalRangeMapValue>();
+		List<IntervalRangeMapValue> minus = new ArrayList<IntervalRangeMapValue>();
 		for (int k=1; k<fields.length; k++) {
 			String[] rings = fields[k].split("[,)]");
 
@@ -51,28 +52,36 @@ public class IntervalInput extends InterleavedInputComponentBase {
 
 			IntervalRangeMapValue irmv = new IntervalRangeMapValue(start,stop,val);
 			if (strand=='+') {
-				irmv.insertIntoRangeMap(rmplus);
+				plus.add(irmv);
 			} else if (strand=='-') {
-				irmv.insertIntoRangeMap(rmminus);			
+				minus.add(irmv);
 			} else { Assert.a(false); }
 		}
-		InputSequence<?> inputSeq = new IntervalInputSequence(rmplus, rmminus, inputName, inputLength);
+		InputSequence<?> inputSeq = new IntervalInputSequence(makeIndex(plus), makeIndex(minus), inputName, inputLength);
 		output.put(name, inputSeq);
 		return true;
 	}
 
+	static IntervalIndex makeIndex(List<IntervalRangeMapValue> intervals) {
+		int n = intervals.size();
+		int[] starts = new int[n];
+		int[] ends = new int[n];
+		for (int i=0; i<n; i++) {
+			starts[i] = intervals.get(i).start;
+			ends[i] = intervals.get(i).end;
+		}
+		return new IntervalIndex(starts, ends, intervals.toArray());
+	}
+
 	public void write(Writer w, Map<String, ? extends InputSequence<?>> data) throws IOException {
-		IntervalInputSequence seq = (IntervalInputSequence) data;
+		IntervalInputSequence seq = (IntervalInputSequence) data.get(name);
 		w.write(seq.inputName + "\n");
 		w.write("" + seq.inputLength + "\n");
-		Object[] rmplusList = seq.rmplus.getObjectList().values().toArray();
-		for (int i=0; i<rmplusList.length; i++) {
-			w.write(((IntervalRangeMapValue) rmplusList[i]).toStringStrand("+"));
+		for (IntervalRangeMapValue irmv : seq.intervals(seq.plus)) {
+			w.write(irmv.toStringStrand("+"));
 		}
-		
-		Object[] rmminusList = seq.rmminus.getObjectList().values().toArray();
-		for (int i=0; i<rmminusList.length; i++) {
-			w.write(((IntervalRangeMapValue) rmminusList[i]).toStringStrand("+"));
+		for (IntervalRangeMapValue irmv : seq.intervals(seq.minus)) {
+			w.write(irmv.toStringStrand("-"));
 		}		
 		w.write("\n");
 	}
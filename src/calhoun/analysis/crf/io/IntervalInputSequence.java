@@ -1,23 +1,32 @@
 package calhoun.analysis.crf.io;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import calhoun.util.Assert;
+import calhoun.util.IntervalIndex;
 import calhoun.util.RangeMap;
 
 /** an input sequence made up of intervals of constant valued features.  Each position is represented
  * by an {@link IntervalPosition} object.
+ * <p>
+ * The intervals on each strand are kept in an {@link IntervalIndex}.  Features can call {@link #queryPlus(int)} and
+ * {@link #queryMinus(int)} directly to avoid creating an IntervalPosition for every lookup.  A sequence returned by
+ * {@link #subSequence} shares the indexes of its parent and only records its offset.
  */
 public class IntervalInputSequence implements InputSequence<IntervalInputSequence.IntervalPosition>{
 	@SuppressWarnings("unused")
 	private static final Log log = LogFactory.getLog(IntervalInputSequence.class);
 
-	RangeMap rmplus,rmminus;
+	IntervalIndex plus, minus;
 	String inputName;
 	int inputLength;
+	// Position in the indexes of the first position of this sequence
+	int offset = 0;
 	
 	/** constructs an input sequence from the necessary data
 	 * @param rmplus range map of values on the positive strand
@@ -26,8 +35,18 @@ public class IntervalInputSequence implements InputSequence<IntervalInputSequenc
 	 * @param inputLength length of the input sequence.  Requires since the intervals may not cover the whole sequence.
 	 */
 	public IntervalInputSequence(RangeMap rmplus, RangeMap rmminus, String inputName, int inputLength) {
-		this.rmplus = rmplus;
-		this.rmminus = rmminus;
+		this(rmplus.toIntervalIndex(), rmminus.toIntervalIndex(), inputName, inputLength);
+	}
+
+	/** constructs an input sequence from the necessary data
+	 * @param plus index of {@link IntervalRangeMapValue}s on the positive strand
+	 * @param minus index of {@link IntervalRangeMapValue}s on the negative strand
+	 * @param inputName name of the input sequence
+	 * @param inputLength length of the input sequence.  Requires since the intervals may not cover the whole sequence.
+	 */
+	public IntervalInputSequence(IntervalIndex plus, IntervalIndex minus, String inputName, int inputLength) {
+		this.plus = plus;
+		this.minus = minus;
 		this.inputName = inputName;
 		this.inputLength = inputLength;
 	}
@@ -37,6 +56,49 @@ public class IntervalInputSequence implements InputSequence<IntervalInputSequenc
 		return ret;
 	}
 
+	/** returns true if an input interval exists on the positive strand at this position.  */
+	public boolean queryPlus(int pos) {
+		return plus.overlaps(offset+pos, queryEnd(pos));
+	}
+
+	/** returns true if an input interval exists on the negative strand at this position.  */
+	public boolean queryMinus(int pos) {
+		return minus.overlaps(offset+pos, queryEnd(pos));
+	}
+
+	/** returns the last index position a query at this position looks at.  A query also sees intervals starting at the next
+	 * position, but never past the end of this sequence, so a subsequence does not see intervals that start just after it. */
+	int queryEnd(int pos) {
+		return offset + Math.min(pos+1, inputLength-1);
+	}
+
+	/** returns the index of intervals on the positive strand.  Positions in the index are offset by {@link #getOffset()}. */
+	public IntervalIndex getPlus() {
+		return plus;
+	}
+
+	/** returns the index of intervals on the negative strand.  Positions in the index are offset by {@link #getOffset()}. */
+	public IntervalIndex getMinus() {
+		return minus;
+	}
+
+	/** returns the position in the indexes of the first position of this sequence.  This is 0 except for subsequences. */
+	public int getOffset() {
+		return offset;
+	}
+
+	/** returns the intervals of an index that can affect this sequence, in the coordinates of this sequence */
+	List<IntervalRangeMapValue> intervals(IntervalIndex index) {
+		List<IntervalRangeMapValue> ret = new ArrayList<IntervalRangeMapValue>();
+		int low = offset;
+		int high = offset + inputLength - 1;
+		for (int i = index.nextOverlap(0, low, high); i != -1; i = index.nextOverlap(i+1, low, high)) {
+			IntervalRangeMapValue irmv = (IntervalRangeMapValue) index.getValue(i);
+			ret.add(offset == 0 ? irmv : new IntervalRangeMapValue(irmv.start-offset, irmv.end-offset, irmv.value));
+		}
+		return ret;
+	}
+
 	public int length() {
 		return inputLength;
 	}
@@ -46,10 +108,9 @@ public class IntervalInputSequence implements InputSequence<IntervalInputSequenc
 		Assert.a(end <= inputLength);
 		Assert.a(start >= 1);
 		
-		RangeMap newRmplus  = shiftedSubRangeMap(rmplus ,start,end);
-		RangeMap newRmminus = shiftedSubRangeMap(rmminus,start,end);		
-
-		return new IntervalInputSequence(newRmplus,newRmminus,inputName,end-start+1);
+		IntervalInputSequence ret = new IntervalInputSequence(plus,minus,inputName,end-start+1);
+		ret.offset = offset+start-1;
+		return ret;
 	}
 
 	public InputSequence getComponent(String name) {
@@ -60,18 +121,6 @@ public class IntervalInputSequence implements InputSequence<IntervalInputSequenc
 		throw new UnsupportedOperationException();
 	}
 
-	private RangeMap shiftedSubRangeMap(RangeMap rm, int start, int end) {
-		Object[] rmplusList = rm.find(start-1,end-1).toArray();
-		RangeMap newrm = new RangeMap();
-		for (int i=0; i<rmplusList.length; i++) {
-			IntervalRangeMapValue irmv = (IntervalRangeMapValue) rmplusList[i];
-			IntervalRangeMapValue newirmv = new IntervalRangeMapValue(irmv.start-start+1, irmv.end-start+1, irmv.value);
-			rm.add(newirmv.start,newirmv.end, newirmv);
-		}
-		
-		return newrm;
-	}
-
 	/** provides interval based queries for a particular position in the input sequence for an IntervalInputSequence. 
 	 */
 	public class IntervalPosition {
@@ -85,12 +134,12 @@ public class IntervalInputSequence implements InputSequence<IntervalInputSequenc
 
 		/** returns true if an input interval exists on the positive strand at this position.  */
 		public boolean queryPlus() {
-			return (rmplus.find(pos,pos+1).size()>0);
+			return IntervalInputSequence.this.queryPlus(pos);
 		}
 		
 		/** returns true if an input interval exists on the negative strand at this position.  */
 		public boolean queryMinus() {
-			return (rmminus.find(pos,pos+1).size()>0);
+			return IntervalInputSequence.this.queryMinus(pos);
 		}
 	}
 
@@ -0,0 +1,31 @@
+package calhoun.analysis.crf.io;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/** utility adapter class for creating an iterator of {@link InputSequenceComposite}s from an iterator over maps of input components.
+ * Each composite is created as the iterator advances, so sequences that are read lazily stay lazy.
+ */
+public class IteratorAdapterCompositeInput implements Iterator<InputSequenceComposite> {
+
+	Iterator<Map<String, InputSequence<?>>> parent;
+
+	/** constructs an iterator that combines the input components of the parent iterator into composites
+	 * @param parent the iterator over maps of component names to input sequences
+	 */
+	public IteratorAdapterCompositeInput(Iterator<Map<String, InputSequence<?>>> parent) {
+		this.parent = parent;
+	}
+
+	public boolean hasNext() {
+		return parent.hasNext();
+	}
+
+	public InputSequenceComposite next() {
+		return new InputSequenceComposite(parent.next());
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
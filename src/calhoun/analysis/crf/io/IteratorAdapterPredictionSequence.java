@@ -0,0 +1,31 @@
+package calhoun.analysis.crf.io;
+
+import java.util.Iterator;
+
+/** utility adapter class for converting an iterator over input sequences into an iterator over training sequences for prediction.
+ * Each training sequence has an all intergenic hidden sequence, as if read with an {@link AllIntergenicHiddenStateReader}.
+ */
+public class IteratorAdapterPredictionSequence implements Iterator<TrainingSequence<?>> {
+
+	Iterator<? extends InputSequence<?>> parent;
+
+	/** constructs an iterator that pairs each input sequence of the parent iterator with an all intergenic hidden sequence
+	 * @param parent the iterator over input sequences
+	 */
+	public IteratorAdapterPredictionSequence(Iterator<? extends InputSequence<?>> parent) {
+		this.parent = parent;
+	}
+
+	public boolean hasNext() {
+		return parent.hasNext();
+	}
+
+	public TrainingSequence<?> next() {
+		InputSequence<?> seq = parent.next();
+		return new TrainingSequence(seq, new int[seq.length()]);
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,172 @@
+package calhoun.analysis.crf.io;
+
+import calhoun.seq.KmerHasher;
+import calhoun.util.Assert;
+
+/** per-position k-mer indexes of a DNA sequence, shared by all of the features that look up k-mers in the same sequence.
+ * The tracks for a sequence are found with {@link #get} and each track is computed once, with a rolling hash, the first time
+ * it is asked for.  Tracks are never modified afterwards, so lookups are a single array read that is safe in any order and
+ * from any thread.
+ * <p>
+ * Bases are coded with {@link KmerHasher#ACGTother}, so A, C, G and T are 0-3 and anything else is {@link #OTHER}.  A forward
+ * index at a position is the hash of the k bases ending there, most distant base first.  A reverse index at a position is the
+ * hash of the reverse complement of the k bases starting there.  Indexes have radix 4 and are -1 where the k-mer runs off
+ * the sequence or contains another character, unless they are asked for with <code>allowOther</code>, in which case they have
+ * radix 5 and other characters are coded as 4 like {@link KmerHasher#ACGTN}.
+ */
+public class KmerIndexTracks {
+
+	/** code of any character other than A, C, G or T */
+	public static final int OTHER = 4;
+
+	static final InputSequenceCache<InputSequence<? extends Character>, KmerIndexTracks> cache = new InputSequenceCache<InputSequence<? extends Character>, KmerIndexTracks>() {
+		protected KmerIndexTracks create(InputSequence<? extends Character> seq) {
+			return new KmerIndexTracks(seq);
+		}
+	};
+
+	static final KmerHasher hasher = new KmerHasher(KmerHasher.ACGTother, 1);
+
+	final int length;
+	final byte[] codes;
+	// Computed tracks, indexed by trackKey.  Replaced with a longer copy when a new track is added.
+	volatile int[][] tracks = new int[0][];
+
+	/** returns the tracks of a sequence, creating them on first use.  The tracks do not keep the sequence from being garbage collected.
+	 * @param seq a DNA sequence
+	 * @return the tracks for this sequence
+	 */
+	public static KmerIndexTracks get(InputSequence<? extends Character> seq) {
+		return cache.get(seq);
+	}
+
+	KmerIndexTracks(InputSequence<? extends Character> seq) {
+		length = seq.length();
+		codes = new byte[length];
+		if (seq instanceof PackedDnaInputSequence) {
+			((PackedDnaInputSequence) seq).codes(0, length, codes);
+		} else if (seq instanceof InputSequenceCharacter) {
+			// Hash the characters in blocks so a long sequence needs only a small buffer
+			String bases = ((InputSequenceCharacter) seq).getString();
+			int[] block = new int[Math.min(length, 1 << 16)];
+			for (int from=0; from<length; from+=block.length) {
+				int to = Math.min(length, from+block.length);
+				hasher.hashChars(bases, from, to, block);
+				for (int i=from; i<to; i++) {
+					codes[i] = (byte) block[i-from];
+				}
+			}
+		} else if (seq instanceof MappedFastaInputSequence) {
+			// Copy the bases out of the mapped file in blocks and hash each block
+			MappedFastaInputSequence mapped = (MappedFastaInputSequence) seq;
+			byte[] bases = new byte[Math.min(length, 1 << 16)];
+			int[] block = new int[bases.length];
+			for (int from=0; from<length; from+=block.length) {
+				int to = Math.min(length, from+block.length);
+				mapped.getBytes(from, to, bases);
+				hasher.hashChars(bases, 0, to-from, block);
+				for (int i=from; i<to; i++) {
+					codes[i] = (byte) block[i-from];
+				}
+			}
+		} else {
+			for (int i=0; i<length; i++) {
+				codes[i] = (byte) hasher.hash(seq.getX(i));
+			}
+		}
+	}
+
+	/** returns the code of each base.  The array must not be modified.
+	 * @return the {@link KmerHasher#ACGTother} code at each position
+	 */
+	public byte[] getCodes() {
+		return codes;
+	}
+
+	/** returns the index of the k-mer ending at each position.  The array must not be modified.
+	 * @param k length of the k-mers
+	 * @param allowOther true to include k-mers containing other characters, using radix 5
+	 * @return the index at each position, or -1
+	 */
+	public int[] getForward(int k, boolean allowOther) {
+		return getTrack(k, false, allowOther);
+	}
+
+	/** returns the index of the reverse complement of the k-mer starting at each position.  The array must not be modified.
+	 * @param k length of the k-mers
+	 * @param allowOther true to include k-mers containing other characters, using radix 5
+	 * @return the index at each position, or -1
+	 */
+	public int[] getReverse(int k, boolean allowOther) {
+		return getTrack(k, true, allowOther);
+	}
+
+	int[] getTrack(int k, boolean reverse, boolean allowOther) {
+		Assert.a(k >= 1 && k <= (allowOther ? 13 : 15), "Unsupported k-mer length ", k);
+		int key = (k << 2) | (reverse ? 2 : 0) | (allowOther ? 1 : 0);
+		int[][] t = tracks;
+		if (key < t.length && t[key] != null) {
+			return t[key];
+		}
+		synchronized (this) {
+			t = tracks;
+			if (key < t.length && t[key] != null) {
+				return t[key];
+			}
+			int[] track = reverse ? computeReverse(k, allowOther) : computeForward(k, allowOther);
+			int[][] newTracks = new int[Math.max(t.length, key+1)][];
+			System.arraycopy(t, 0, newTracks, 0, t.length);
+			newTracks[key] = track;
+			tracks = newTracks;
+			return track;
+		}
+	}
+
+	int[] computeForward(int k, boolean allowOther) {
+		int radix = allowOther ? 5 : 4;
+		int top = 1;
+		for (int i=1; i<k; i++) {
+			top *= radix;
+		}
+		int[] ret = new int[length];
+		int hash = 0;
+		// Number of bases at the end of the current window that can be hashed
+		int valid = 0;
+		for (int pos=0; pos<length; pos++) {
+			int c = codes[pos];
+			if (c == OTHER && !allowOther) {
+				valid = 0;
+				hash = 0;
+			} else {
+				hash = (hash % top) * radix + c;
+				valid++;
+			}
+			ret[pos] = valid >= k ? hash : -1;
+		}
+		return ret;
+	}
+
+	int[] computeReverse(int k, boolean allowOther) {
+		int radix = allowOther ? 5 : 4;
+		int top = 1;
+		for (int i=1; i<k; i++) {
+			top *= radix;
+		}
+		int[] ret = new int[length];
+		int hash = 0;
+		int valid = 0;
+		// Walk backwards, so the base at each position becomes the least significant digit of the reverse complement
+		for (int pos=length-1; pos>=0; pos--) {
+			int c = codes[pos];
+			if (c == OTHER && !allowOther) {
+				valid = 0;
+				hash = 0;
+			} else {
+				hash = (hash % top) * radix + (c == OTHER ? OTHER : 3 - c);
+				valid++;
+			}
+			ret[pos] = valid >= k ? hash : -1;
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,226 @@
+package calhoun.analysis.crf.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import calhoun.util.Assert;
+
+/** reads a multiple alignment in MAF format and projects it onto the reference sequence.  The alignment is read one block at a time
+ * and each block is written directly into the alignment rows, so the file is never held in memory and no padded FASTA alignment is needed.
+ * <p>
+ * Like {@link FastaAlignmentInput}, an {@link AlignmentTree} must be read first for the same component to give the tree and the reference
+ * species.  Species are taken from the MAF source names, which look like <code>species.chromosome</code>.  All of the blocks for a
+ * reference sequence must be consecutive, and each run of blocks with the same reference source is one input sequence, in order.
+ * <p>
+ * Columns that are gaps in the reference are dropped, so the alignment has one column for each reference position.  Blocks on the
+ * reverse strand of the reference are reverse complemented.  Reference positions not covered by any block are an 'N' in the
+ * reference and gaps in the other species.  Blocks that do not contain the reference and species that are not in the tree are ignored.
+ */
+public class MafAlignmentInput implements InputComponentIO {
+	private static final long serialVersionUID = -2417651297815396264L;
+	private static final Log log = LogFactory.getLog(MafAlignmentInput.class);
+
+	String component;
+
+	public List<String> getComponentNames() {
+		return Collections.singletonList(component);
+	}
+
+	public void readInputSequences(String location, List<Map<String, InputSequence<?>>> inputs) throws IOException {
+		BufferedReader r = new BufferedReader(new FileReader(location));
+		try {
+			List<String> species = null;
+			Block block = null;
+			for(Map<String, InputSequence<?>> input : inputs) {
+				MultipleAlignmentInputSequence alignment = (MultipleAlignmentInputSequence) input.get(component);
+				Assert.a(alignment != null, "AlignmentTree must be input before the MAF alignment");
+
+				boolean first = species == null;
+				if(first) {
+					species = new ArrayList<String>();
+					species.addAll(alignment.getTree().getSpeciesSet());
+				}
+				int refIndex = species.indexOf(alignment.refSpecies);
+				Assert.a(refIndex != -1, "Reference species ", alignment.refSpecies, " is not in the tree");
+				if(first) {
+					block = readBlock(r, species, refIndex);
+				}
+				Assert.a(block != null, "MAF file ", location, " has fewer reference sequences than there are inputs");
+
+				// Every reference position starts out as an unaligned N
+				String refSrc = block.refSrc;
+				byte[][] rows = new byte[species.size()][];
+				rows[refIndex] = new byte[block.refSrcSize];
+				Arrays.fill(rows[refIndex], (byte) 'N');
+
+				int nBlocks = 0;
+				while(block != null && block.refSrc.equals(refSrc)) {
+					Assert.a(block.refSrcSize == rows[refIndex].length, "Reference ", refSrc, " has inconsistent lengths in the MAF file");
+					project(block, refIndex, rows);
+					nBlocks += 1;
+					block = readBlock(r, species, refIndex);
+				}
+				log.debug("Read " + nBlocks + " MAF blocks for reference " + refSrc + " of length " + rows[refIndex].length);
+
+				alignment.setSpeciesAndRows(species, rows);
+			}
+		}
+		finally {
+			r.close();
+		}
+	}
+
+	/** writes the reference-projected alignment of each input as a single MAF block.  Coordinates in the other species are
+	 * not known after projection, so each is written as starting at 0. */
+	public void writeInputSequences(String location, List<? extends Map<String, ? extends InputSequence<?>>> inputComponents) throws IOException {
+		Writer w = new BufferedWriter(new FileWriter(location));
+		w.write("##maf version=1\n");
+		int seqNum = 0;
+		for(Map<String, ? extends InputSequence<?>> input : inputComponents) {
+			MultipleAlignmentInputSequence alignment = (MultipleAlignmentInputSequence) input.get(component);
+			List<String> names = alignment.getSpeciesNames();
+			w.write("\na\n");
+			for(int spec=0; spec<names.size(); ++spec) {
+				if(alignment.rows[spec] == null) {
+					continue;
+				}
+				String text = alignment.getConsensusSeq(spec);
+				int size = 0;
+				for(int i=0; i<text.length(); ++i) {
+					if(text.charAt(i) != '-') {
+						++size;
+					}
+				}
+				w.write("s " + names.get(spec) + ".seq" + seqNum + " 0 " + size + " + " + size + " " + text + "\n");
+			}
+			seqNum += 1;
+		}
+		w.close();
+	}
+
+	/** one alignment block, with the text of each species in the tree */
+	static class Block {
+		String refSrc;
+		int refStart;
+		boolean refMinus;
+		int refSrcSize;
+		String[] text;
+	}
+
+	/** reads the next block that contains the reference species, or returns null at the end of the file */
+	Block readBlock(BufferedReader r, List<String> species, int refIndex) throws IOException {
+		Block block = null;
+		String line;
+		while((line = r.readLine()) != null) {
+			if(line.length() == 0 || line.charAt(0) == '#') {
+				// A blank line ends a block
+				if(block != null && line.length() == 0) {
+					if(block.refSrc != null) {
+						return block;
+					}
+					block = null;
+				}
+			} else if(line.charAt(0) == 'a') {
+				if(block != null && block.refSrc != null) {
+					throw new IOException("MAF block with reference " + block.refSrc + " not followed by a blank line");
+				}
+				block = new Block();
+				block.text = new String[species.size()];
+			} else if(line.charAt(0) == 's' && block != null) {
+				String[] fields = line.trim().split("\\s+");
+				if(fields.length != 7) {
+					throw new IOException("Invalid MAF sequence line: " + line);
+				}
+				String src = fields[1];
+				int dot = src.indexOf('.');
+				int spec = species.indexOf(dot == -1 ? src : src.substring(0, dot));
+				if(spec == -1 || block.text[spec] != null) {
+					// Species not in the tree, or a second row for the same species
+					continue;
+				}
+				block.text[spec] = fields[6];
+				if(spec == refIndex) {
+					block.refSrc = src;
+					block.refStart = Integer.parseInt(fields[2]);
+					block.refMinus = fields[4].equals("-");
+					block.refSrcSize = Integer.parseInt(fields[5]);
+				}
+			}
+		}
+		return (block != null && block.refSrc != null) ? block : null;
+	}
+
+	/** copies the non-gap reference columns of a block into the rows at their positions on the forward strand of the reference. */
+	void project(Block block, int refIndex, byte[][] rows) {
+		int refLength = rows[refIndex].length;
+		int refPos = block.refMinus ? refLength - 1 - block.refStart : block.refStart;
+		int step = block.refMinus ? -1 : 1;
+		String refText = block.text[refIndex];
+		for(int col = 0; col < refText.length(); ++col) {
+			if(refText.charAt(col) == '-') {
+				continue;
+			}
+			Assert.a(refPos >= 0 && refPos < refLength, "MAF block for ", block.refSrc, " extends past the end of the reference");
+			for(int spec = 0; spec < rows.length; ++spec) {
+				String text = block.text[spec];
+				if(text == null) {
+					continue;
+				}
+				char c = text.charAt(col);
+				if(block.refMinus) {
+					c = complement(c);
+				}
+				if(spec == refIndex) {
+					rows[spec][refPos] = (byte) (MultipleAlignmentInputSequence.isBase(c) ? c : 'N');
+				} else {
+					if(rows[spec] == null) {
+						rows[spec] = new byte[refLength];
+						Arrays.fill(rows[spec], MultipleAlignmentInputSequence.GAP);
+					}
+					rows[spec][refPos] = (byte) c;
+				}
+			}
+			refPos += step;
+		}
+	}
+
+	static char complement(char c) {
+		switch(c) {
+			case 'A': return 'T';
+			case 'C': return 'G';
+			case 'G': return 'C';
+			case 'T': return 'A';
+			case 'a': return 't';
+			case 'c': return 'g';
+			case 'g': return 'c';
+			case 't': return 'a';
+			default: return c;
+		}
+	}
+
+	/**
+	 * @return Returns the component.
+	 */
+	public String getComponent() {
+		return component;
+	}
+
+	/**
+	 * @param component The component to set.
+	 */
+	public void setComponent(String component) {
+		this.component = component;
+	}
+}
@@ -0,0 +1,96 @@
+package calhoun.analysis.crf.io;
+
+import java.util.Collection;
+
+import calhoun.seq.IndexedFastaFile;
+import calhoun.util.Assert;
+
+/** an input sequence of DNA bases read on demand from a record of a memory mapped {@link IndexedFastaFile}.  No bases are held in
+ * memory; each base is read from the mapped file when it is asked for.  All bases are returned in upper case, like the sequences
+ * read by {@link FastaInput}.  A sequence returned by {@link #subSequence} is a view of a range of the same record.
+ */
+public class MappedFastaInputSequence implements InputSequence<Character> {
+
+	IndexedFastaFile.Record record;
+	// Position in the record of the first base of this sequence.  Non-zero for a view created by subSequence.
+	int offset;
+	int length;
+
+	/** creates a sequence for a whole record
+	 * @param record the record in the indexed file */
+	public MappedFastaInputSequence(IndexedFastaFile.Record record) {
+		this(record, 0, record.getLength());
+	}
+
+	/** creates a sequence for part of a record
+	 * @param record the record in the indexed file
+	 * @param offset 0-based position in the record of the first base
+	 * @param length number of bases */
+	public MappedFastaInputSequence(IndexedFastaFile.Record record, int offset, int length) {
+		Assert.a(offset >= 0 && length >= 0 && offset+length <= record.getLength());
+		this.record = record;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/** returns the record this sequence reads from */
+	public IndexedFastaFile.Record getRecord() {
+		return record;
+	}
+
+	/** returns the position in the record of the first base of this sequence */
+	public int getOffset() {
+		return offset;
+	}
+
+	/** copies the bases of a range of this sequence as they appear in the file, without changing their case.
+	 * @param from 0-based position of the first base
+	 * @param to 0-based position after the last base
+	 * @param dest array that receives the bases, starting at index 0 */
+	public void getBytes(int from, int to, byte[] dest) {
+		Assert.a(from >= 0 && from <= to && to <= length);
+		record.getBytes(offset+from, offset+to, dest);
+	}
+
+	public Character getX(int ix) {
+		if (ix < 0 || ix >= length) {
+			throw new ArrayIndexOutOfBoundsException(ix);
+		}
+		return Character.toUpperCase(record.charAt(offset+ix));
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/** returns the bases as an upper case string
+	 * @return a string of the bases */
+	public String getString() {
+		return length == 0 ? "" : record.getSequence(offset+1, offset+length).toUpperCase();
+	}
+
+	public InputSequence<?> getComponent(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	public Collection<String> listComponents() {
+		throw new UnsupportedOperationException();
+	}
+
+	public InputSequence<Character> subSequence(int start, int end) {
+		Assert.a(start >= 1);
+		Assert.a(end <= this.length());
+		Assert.a(start <= end);
+
+		return new MappedFastaInputSequence(record, offset+start-1, end-start+1);
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer ret = new StringBuffer();
+		for (int i=0; i<Math.min(length, 15); i++) {
+			ret.append(getX(i));
+		}
+		return ret.toString();
+	}
+}
@@ -67,7 +67,7 @@ public class MultipleAlignmentInput extends InterleavedInputComponentBase {
 		for (int spec=0; spec<inputSeq.nSpecies; spec++) {
 			w.write(">" + inputSeq.speciesNames.get(spec));
 			w.write('\n');
-			w.write(inputSeq.consensuses.get(spec));
+			w.write(inputSeq.getConsensusSeq(spec));
 			w.write('\n');			
 		}
 	}
@@ -2,7 +2,9 @@ package calhoun.analysis.crf.io;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -14,23 +16,28 @@ import calhoun.seq.KmerHasher;
 import calhoun.util.Assert;
 
 /** an input sequence where each element represents one column of a multiple alignment.
+ * <p>
+ * A sequence returned by {@link #subSequence} is a view that shares the alignment rows and reference map of its parent and only
+ * records where it starts.  Column patterns and alignment tracks of a view are computed for the view on first use.
  */
 public class MultipleAlignmentInputSequence implements InputSequence<MultipleAlignmentInputSequence.MultipleAlignmentColumn> {
 	private static final Log log = LogFactory.getLog(MultipleAlignmentInputSequence.class);
 
 	// Raw original data
 	List<String> speciesNames;
-	List<String> consensuses;
 	RootedBinaryPhylogeneticTree tree;
 	String refSpecies;
 	
+	// The alignment, one row of characters for each species.  A null row is a species missing from the alignment, which is all gaps.
+	byte[][] rows;
+	
 	// Derived data
 	int nSpecies;
 	int consensusLength;
-	KmerHasher h;
-	ArrayList<Integer> ref2con;
-	int[] con2refLeft;
-	int[] con2refRight;
+	int[] ref2con;  // consensus position of each reference position
+	// Offsets of the first position of this sequence in ref2con and in the rows.  Non-zero for a view created by subSequence.
+	int refOffset = 0;
+	int conOffset = 0;
 	
 	int refSpeciesIndex=0;
 	
@@ -38,6 +45,10 @@ public class MultipleAlignmentInputSequence implements InputSequence<MultipleAli
 	boolean ready;	
 
 	KmerHasher columnHasher;
+	ColumnPatterns columnPatterns;
+	AlignmentTracks alignmentTracks;
+
+	static final byte GAP = '-';
 
 	public MultipleAlignmentInputSequence(String refSpecies, RootedBinaryPhylogeneticTree tree) {
 		this.refSpecies = refSpecies;
@@ -48,6 +59,7 @@ public class MultipleAlignmentInputSequence implements InputSequence<MultipleAli
 	/** constructs a multiple alignment input sequence.
 	 * @param speciesNames a list of the names of the species in the alignments
 	 * @param consensuses a list of the consensus sequences for each species.  The consensus sequences shoudl form a multiple alignment, including gaps.
+	 * A null entry is a species that is missing from the alignment.
 	 * @param tree a tree of all the species in the alignment with branch lengths.
 	 */
 	public MultipleAlignmentInputSequence(List<String> speciesNames, List<String> consensuses, String refSpecies, RootedBinaryPhylogeneticTree tree) {
@@ -55,16 +67,51 @@ public class MultipleAlignmentInputSequence implements InputSequence<MultipleAli
 		setSpeciesAndConsensuses(speciesNames, consensuses);
 	}
 
+	MultipleAlignmentInputSequence(List<String> speciesNames, byte[][] rows, String refSpecies, RootedBinaryPhylogeneticTree tree) {
+		this(refSpecies, tree);
+		setSpeciesAndRows(speciesNames, rows);
+	}
+
+	/** creates a view of reference positions <code>refOffset</code> to <code>refOffset+reflen-1</code> of the parent's data */
+	MultipleAlignmentInputSequence(MultipleAlignmentInputSequence parent, int refOffset, int reflen) {
+		this(parent.refSpecies, parent.tree);
+		speciesNames = parent.speciesNames;
+		rows = parent.rows;
+		ref2con = parent.ref2con;
+		refSpeciesIndex = parent.refSpeciesIndex;
+		columnHasher = parent.columnHasher;
+		this.refOffset = refOffset;
+		this.reflen = reflen;
+		conOffset = ref2con[refOffset];
+		consensusLength = ref2con[refOffset+reflen-1] - conOffset + 1;
+	}
+
 	public int getNumSpecies() {
 		return nSpecies;
 	}
 	
 	void setSpeciesAndConsensuses(List<String> speciesNames, List<String> consensuses) {
+		Assert.a(speciesNames.size() == consensuses.size());
+		byte[][] newRows = new byte[consensuses.size()][];
+		for (int spec = 0; spec<newRows.length; spec++) {
+			String consensus = consensuses.get(spec);
+			if (consensus != null) {
+				byte[] row = new byte[consensus.length()];
+				for (int i=0; i<row.length; i++) {
+					row[i] = (byte) consensus.charAt(i);
+				}
+				newRows[spec] = row;
+			}
+		}
+		setSpeciesAndRows(speciesNames, newRows);
+	}
+
+	void setSpeciesAndRows(List<String> speciesNames, byte[][] rows) {
 		this.speciesNames = speciesNames;
-		this.consensuses = consensuses;
+		this.rows = rows;
 
 		// Determine number of species in multiple alignment;
-		Assert.a(speciesNames.size() == consensuses.size());
+		Assert.a(speciesNames.size() == rows.length);
 		Assert.a(nSpecies == speciesNames.size());
 		Assert.a(nSpecies >= 1,"Number of species was " + nSpecies + " and supposed to be >= 1");
 
@@ -74,40 +121,34 @@ public class MultipleAlignmentInputSequence implements InputSequence<MultipleAli
 		columnHasher = new KmerHasher(KmerHasher.ACGTother, nSpecies);
 		 
 		// Determine length of consensus (padded) sequence in multiple alignment
-		consensusLength = consensuses.get(refSpeciesIndex).length();
+		consensusLength = -1;
 		for (int spec = 0; spec<nSpecies; spec++) {
-			Assert.a(consensuses.get(spec).length() == consensusLength);
+			if (rows[spec] != null) {
+				if (consensusLength == -1) {
+					consensusLength = rows[spec].length;
+				}
+				Assert.a(rows[spec].length == consensusLength);
+			}
 		}
+		Assert.a(consensusLength != -1, "No species present in the alignment");
 		
-		h = new KmerHasher(KmerHasher.ACGTN,1);
 		reflen = 0;
-		ref2con = new ArrayList<Integer>();
-		String refCon = consensuses.get(refSpeciesIndex);
 		for (int cpos=0; cpos<consensusLength; cpos++) {
-			if (h.hashable(refCon.charAt(cpos))) {
-				ref2con.add(cpos);
+			if (isBase(characterInPaddedAlignment(cpos, refSpeciesIndex))) {
 				reflen++;
 			}
 		}
-		Assert.a(ref2con.size() == reflen);
-
-		
-		con2refLeft = new int[consensusLength]; // at cpos, = max(0 , argmax_rpos( ref2con(rpos)< cpos ) ) 
-		int refLeft = 0;
+		refOffset = 0;
+		conOffset = 0;
+		ref2con = new int[reflen];
+		int rpos = 0;
 		for (int cpos=0; cpos<consensusLength; cpos++) {
-			if (refLeft < (reflen-1)) {
-				if (ref2con.get(refLeft+1) < cpos)  { refLeft++; }
+			if (isBase(characterInPaddedAlignment(cpos, refSpeciesIndex))) {
+				ref2con[rpos++] = cpos;
 			}
-			con2refLeft[cpos] = refLeft;
-		}
-		con2refRight = new int[consensusLength]; // at cpos = min(reflen-1, argmin_rpos( ref2con(rpos)>cpos) )
-		int refRight = reflen-1;
-		for (int cpos=consensusLength-1; cpos>=0; cpos--) {
-			if (refRight>0) {
-				if (ref2con.get(refRight-1) > cpos) { refRight--; }
-			}
-			con2refRight[cpos] = refRight;
 		}
+		columnPatterns = null;
+		alignmentTracks = null;
 		
 		log.debug("consensus length = " + consensusLength + "    Reference length = " + reflen);
 	}
@@ -129,20 +170,49 @@ public class MultipleAlignmentInputSequence implements InputSequence<MultipleAli
 		throw new UnsupportedOperationException();
 	}
 
+	/** returns the last reference position before a consensus position, or 0 if there is none. */
 	public int con2refLeft( int cpos ) {
-		return con2refLeft[cpos];
+		return Math.max(0, countRefBefore(cpos) - 1);
 	}
 
+	/** returns the first reference position after a consensus position, or the last reference position if there is none. */
 	public int con2refRight( int cpos ) {
-		return con2refRight[cpos];
+		return Math.min(reflen-1, countRefBefore(cpos+1));
+	}
+
+	/** returns the number of reference positions before a consensus position */
+	int countRefBefore(int cpos) {
+		int key = conOffset + cpos;
+		int lo = refOffset;
+		int hi = refOffset + reflen;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ref2con[mid] < key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo - refOffset;
 	}
 
 	public int ref2con(int pos) {
-		return ref2con.get(pos);
+		return ref2con[refOffset+pos] - conOffset;
 	}
 
 	public char characterInPaddedAlignment(int consensusPosition, int speciesNumber) {
-		return consensuses.get(speciesNumber).charAt(consensusPosition);
+		byte[] row = rows[speciesNumber];
+		return row == null ? (char) GAP : (char) row[conOffset+consensusPosition];
+	}
+
+	/** returns the character of a species at a reference position without creating a column object
+	 * @param pos position on the reference sequence
+	 * @param speciesNumber index of the species in <code>speciesNames</code>
+	 * @return the character in the alignment
+	 */
+	public char nucleotide(int pos, int speciesNumber) {
+		byte[] row = rows[speciesNumber];
+		return row == null ? (char) GAP : (char) row[ref2con[refOffset+pos]];
 	}
 
 	public int numSpecies() {
@@ -154,18 +224,7 @@ public class MultipleAlignmentInputSequence implements InputSequence<MultipleAli
 		Assert.a(end <= this.length());
 		Assert.a(start <= end);
 		
-		int constart1 = ref2con(start-1)+1; // start coord in consensus, one-based inclusive
-		int conend1 = ref2con(end-1)+1; // end coord in consensus, one-based inclusive
-		
-		ArrayList<String> newcon = new ArrayList<String>();
-		
-		for (int j=0; j<nSpecies; j++) {
-			newcon.add(consensuses.get(j).substring(constart1-1,conend1));
-		}
-		
-		MultipleAlignmentInputSequence MA = new MultipleAlignmentInputSequence(speciesNames,newcon,refSpecies, tree);
-		
-		return MA;
+		return new MultipleAlignmentInputSequence(this, refOffset+start-1, end-start+1);
 	}
 
 	public List<String> getSpeciesNames()
@@ -173,19 +232,65 @@ public class MultipleAlignmentInputSequence implements InputSequence<MultipleAli
 		return speciesNames;
 	}
 	
+	/** returns the padded consensus sequences of each species.  The strings are built from the packed alignment on each call. */
 	public List<String> getConsensusSeqs()
 	{
-		return consensuses;
+		List<String> ret = new ArrayList<String>(nSpecies);
+		for (int spec=0; spec<nSpecies; spec++) {
+			ret.add(getConsensusSeq(spec));
+		}
+		return ret;
+	}
+
+	/** returns the padded consensus sequence of one species.  A missing species is all gaps. */
+	public String getConsensusSeq(int spec) {
+		char[] chars = new char[consensusLength];
+		byte[] row = rows[spec];
+		for (int i=0; i<consensusLength; i++) {
+			chars[i] = row == null ? (char) GAP : (char) row[conOffset+i];
+		}
+		return new String(chars);
 	}
 
 	public int getColumnUniqueHash(int conpos) {
 		int ret = 0;
 		for(int i = 0; i<nSpecies; ++i) {
-			ret = columnHasher.shiftHash(consensuses.get(i).charAt(conpos), ret);
+			ret = columnHasher.shiftHash(characterInPaddedAlignment(conpos, i), ret);
 		}
 		return ret;
 	}
 
+	/** returns the distinct column patterns in this alignment.  The patterns are computed on first use.
+	 * @return the column patterns for the alignment
+	 */
+	public synchronized ColumnPatterns getColumnPatterns() {
+		if(columnPatterns == null) {
+			columnPatterns = new ColumnPatterns(this);
+		}
+		return columnPatterns;
+	}
+
+	/** returns the frameshift, gap boundary and aligned species tracks for this alignment.  The tracks are computed on first use.
+	 * @return the tracks for the alignment
+	 */
+	public synchronized AlignmentTracks getAlignmentTracks() {
+		if(alignmentTracks == null) {
+			alignmentTracks = new AlignmentTracks(this);
+		}
+		return alignmentTracks;
+	}
+
+	/** returns true for the characters that are bases in the reference, A, C, G, T or N in either case. */
+	static boolean isBase(char c) {
+		switch(c) {
+			case 'A': case 'C': case 'G': case 'T': case 'N':
+			case 'a': case 'c': case 'g': case 't': case 'n':
+				return true;
+			default:
+				return false;
+		}
+	}
+
 	public int getConsensusLength() {
 		return consensusLength;
 	}
@@ -249,5 +354,72 @@ public class MultipleAlignmentInputSequence implements InputSequence<MultipleAli
 		public RootedBinaryPhylogeneticTree getTree() {
 			return MultipleAlignmentInputSequence.this.getTree();
 		}
+
+		/** returns the position of this column on the reference sequence
+		 * @return the reference position
+		 */
+		public int getPosition() {
+			return pos;
+		}
+	}
+
+	/** the distinct columns of an alignment.  A multiple alignment usually contains only a few thousand distinct columns, so
+	 * anything computed from a column alone can be computed once per pattern and looked up by position.  Each pattern
+	 * is stored as the {@link KmerHasher#ACGTother} code of each species, so all non-ACGT characters are the same pattern.
+	 */
+	public static class ColumnPatterns {
+		int[] patternIds;
+		byte[][] patterns;
+
+		ColumnPatterns(MultipleAlignmentInputSequence aln) {
+			int nSpecies = aln.numSpecies();
+			patternIds = new int[aln.length()];
+			Map<String, Integer> ids = new HashMap<String, Integer>();
+			List<byte[]> patternList = new ArrayList<byte[]>();
+			char[] key = new char[nSpecies];
+			for(int pos = 0; pos < patternIds.length; ++pos) {
+				int cpos = aln.ref2con(pos);
+				for(int spec = 0; spec < nSpecies; ++spec) {
+					key[spec] = (char) aln.columnHasher.hash(aln.characterInPaddedAlignment(cpos, spec));
+				}
+				String keyString = new String(key);
+				Integer id = ids.get(keyString);
+				if(id == null) {
+					id = patternList.size();
+					ids.put(keyString, id);
+					byte[] pattern = new byte[nSpecies];
+					for(int spec = 0; spec < nSpecies; ++spec) {
+						pattern[spec] = (byte) key[spec];
+					}
+					patternList.add(pattern);
+				}
+				patternIds[pos] = id;
+			}
+			patterns = patternList.toArray(new byte[patternList.size()][]);
+			log.debug("Alignment of length " + patternIds.length + " has " + patterns.length + " distinct column patterns");
+		}
+
+		/** returns the number of distinct patterns
+		 * @return the number of patterns
+		 */
+		public int numPatterns() {
+			return patterns.length;
+		}
+
+		/** returns the pattern of the column at a position
+		 * @param pos the position on the reference sequence
+		 * @return the pattern id, between 0 and <code>numPatterns()-1</code>
+		 */
+		public int getPatternId(int pos) {
+			return patternIds[pos];
+		}
+
+		/** returns the {@link KmerHasher#ACGTother} codes of each species in a pattern.  The array must not be modified.
+		 * @param patternId the pattern id
+		 * @return the codes in species order
+		 */
+		public byte[] getPattern(int patternId) {
+			return patterns[patternId];
+		}
 	}
 }
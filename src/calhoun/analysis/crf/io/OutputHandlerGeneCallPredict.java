@@ -1,10 +1,7 @@
 package calhoun.analysis.crf.io;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -14,6 +11,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import calhoun.analysis.crf.ModelManager;
+import calhoun.analysis.crf.features.interval13.Interval13Model;
 import calhoun.analysis.crf.io.IntervalInputSequence.IntervalRangeMapValue;
 import calhoun.analysis.crf.statistics.PredictedActualBinaryContingencyTable;
 import calhoun.util.Assert;
@@ -32,6 +30,9 @@ public class OutputHandlerGeneCallPredict implements OutputHandler {
 	private InputHandler inputHandler;
 	String location;
 	boolean writeTrainingData = false;
+	boolean streaming = false;
+	// Open while streaming output to a location
+	transient GeneCallGTFWriter gtf;
 
 	/** default constructor.  <code>ModelManager</code> and <code>InputHandler</code> must be configured separately. */
 	public OutputHandlerGeneCallPredict() {
@@ -48,6 +49,7 @@ public class OutputHandlerGeneCallPredict implements OutputHandler {
 	
 	public void setOutputLocation(String location) {
 		this.location = location;
+		gtf = null;
 	}
 	
 	public void writeOutput(InputSequence<?> sequence, int[] hiddenStates) throws IOException {
@@ -56,11 +58,21 @@ public class OutputHandlerGeneCallPredict implements OutputHandler {
 
 	public void writeTestOutput(InputSequence<?> sequence, int[] truePath, int[] hiddenStates) throws IOException {
 		calcResultIncrement(new TrainingSequence(sequence, truePath), hiddenStates);
+		if(streaming && location != null) {
+			// Write the genes now so the sequence can be released
+			if(gtf == null) {
+				gtf = new GeneCallGTFWriter(location + ".gtf", manager instanceof Interval13Model ? Boolean.TRUE : null);
+			}
+			gtf.write(new TrainingSequence(sequence, hiddenStates));
+		}
 	}
 
 	public void outputComplete() throws IOException {
 		if(location != null) {
-			if(writeTrainingData) {
+			if(writeTrainingData && streaming) {
+				log.warn("Labeled sequences are not kept when streaming, so the training data was not written");
+			}
+			else if(writeTrainingData) {
 				try {
 					inputHandler.writeTrainingData(location, labeled);
 				}
@@ -68,7 +80,17 @@ public class OutputHandlerGeneCallPredict implements OutputHandler {
 					log.warn("Unable to write training data", ex);
 				}
 			}
-			writeGTF(labeled, location + ".gtf");
+			if(streaming) {
+				if(gtf == null) {
+					// No sequences, so write an empty file
+					gtf = new GeneCallGTFWriter(location + ".gtf", null);
+				}
+				gtf.close();
+				gtf = null;
+			}
+			else {
+				writeGTF(labeled, location + ".gtf");
+			}
 			System.out.print(this);
 			writeResults(location + ".dat");
 		}
@@ -219,7 +241,9 @@ public class OutputHandlerGeneCallPredict implements OutputHandler {
 	
 	/** calculates statstics and output for results on a given test sequence */
 	public void calcResultIncrement(TrainingSequence training, int[] predictedHiddenSequence) {
-		labeled.add(new TrainingSequence(training.getInputSequence(), predictedHiddenSequence));  // This is only place that labelled gets added to???
+		if(!streaming) {
+			labeled.add(new TrainingSequence(training.getInputSequence(), predictedHiddenSequence));  // This is only place that labelled gets added to???
+		}
 		// So I guess the results just get built up incrementally, both the actuall hidden sequences and the stats?
 		Assert.a(training.length() == predictedHiddenSequence.length);
 		int[] actualHiddenSequence = new int[training.length()];
@@ -352,286 +376,10 @@ public class OutputHandlerGeneCallPredict implements OutputHandler {
 		return labeled.get(i);
 	}
 	
-	String seqName;
-	String genePrefix;
-	long   offset;
-	
 	// This function converts a 13 state model hidden sequence to a GTF file.  
 	public void writeGTF(List<? extends TrainingSequence<?>> refStates, String filename) throws IOException
 	{		
-		int ref, geneNum, seqCount, frame=-1;
-		long i, exonStart, exonEnd, end;
-		boolean inPlusExon, inMinusExon, firstExon, startCodonSplit;
-		String strand;
-		Writer fout = new BufferedWriter(new FileWriter(filename));	
-		exonStart = exonEnd = 0;
-		geneNum = 1;
-		seqCount = 0;
-		
-		// Determine if model is tricycle13 or interval13.
-		boolean interval13 = false;
-		int prevState, state;
-		for (TrainingSequence seq : refStates) {
-			if (seq.length() == 0) 	 continue;
-			
-			prevState = seq.getY(0);
-			for (i=1; i<seq.length(); i++) {
-				state = seq.getY((int)i);
-				if (prevState == 0 && (state==2 || state==3 || state==7 || state==8)) {
-					interval13 = true;
-					break;
-				}
-				prevState = state;
-			}
-			if (interval13)
-				break;
-		}
-		
-		for (TrainingSequence seq : refStates) {	
-			
-			if (interval13) {
-				SequenceConverter.convertSeqFromInterval13ToTricycle13(seq);
-			}
-			
-			inPlusExon  = false;
-			inMinusExon = false;
-			firstExon   = true;
-			startCodonSplit = false;
-			
-			parseSeqName(seq, seqCount);
-									
-			for (i=0; i<seq.length(); i++)
-			{			
-				ref = seq.getY((int)i);
-				
-				if (ref == 1 || ref == 2 || ref == 3)		// in a plus exon
-				{
-					if (!inPlusExon)
-					{
-						exonStart = i+1;
-						inPlusExon = true;
-						frame = setFrame(ref);
-					}
-				}
-				else if (ref == 7 || ref == 8 || ref == 9)	// in a minus exon
-				{
-					if (!inMinusExon)
-					{
-						exonStart = i+1;
-						inMinusExon = true;
-						frame = setFrame(ref);
-						if (firstExon) {
-							if (i < 3)
-								System.err.println("Minus strand gene start is within 3 nucleotides of sequence start.  No stop codon writen to GTF for gene starting at position " + (exonStart+offset));
-							else
-								writeGFTLine(fout,seqName,"stop_codon",exonStart+offset-3,exonStart+offset-1,"-",frame,genePrefix,geneNum);						
-	
-						}
-					}
-				}
-				else if ( inPlusExon  && (ref == 4  || ref == 5  || ref == 6) )	{ // just ended an exon on plus strand, now in a plus intron
-					strand = "+";	
-					inPlusExon = false;
-					exonEnd = i;
-					if (firstExon) {
-						if (exonEnd - exonStart + 1 < 3)	{ end = exonEnd + offset; startCodonSplit = true;}
-						else								{ end = exonStart+offset+2; }
-						writeGFTLine(fout,seqName,"start_codon",exonStart+offset,end,strand,frame,genePrefix,geneNum);						
-						firstExon = false;
-					}
-					else if (startCodonSplit) {	// at second exon that contains part of start codon
-						Assert.a(frame==1 || frame==2);
-						writeGFTLine(fout,seqName,"start_codon",exonStart+offset,exonStart+offset+frame-1,strand,frame,genePrefix,geneNum);						
-						startCodonSplit = false;
-					}
-					writeGFTLine(fout,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
-				}
-				else if (inMinusExon && (ref == 10 || ref == 11 || ref == 12))  { // just ended an exon on minus strand, now in a minus intron
-					strand = "-";
-					inMinusExon = false;
-					firstExon = false;
-					exonEnd = i;
-					writeGFTLine(fout,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
-				}
-				else								// now in intergenic region
-				{
-					boolean write = true;
-					if (inPlusExon)					// was in gene at previous nucleotide
-					{
-						strand = "+";
-						exonEnd = i;			
-						if (firstExon) {
-							if (exonEnd - exonStart + 1 < 3) {
-								System.err.println("Single '" + strand + "' strand exon is < 3 bases for sequence '" + seqName + "'.  exonStart=" + exonStart + "  exonEnd=" + exonEnd);
-								write = false;
-							}
-							else {
-								writeGFTLine(fout,seqName,"start_codon",exonStart+offset,exonStart+offset+2,strand,frame,genePrefix,geneNum);
-							}
-						}
-						else if (startCodonSplit) {	// at second exon that contains part of start codon
-							Assert.a(frame==1 || frame==2);
-							writeGFTLine(fout,seqName,"start_codon",exonStart+offset,exonStart+offset+frame-1,strand,frame,genePrefix,geneNum);						
-						}
-						if (write) {
-							writeGFTLine(fout,seqName,"CDS",exonStart+offset,exonEnd+offset,  strand,frame,genePrefix,geneNum);
-							writeGFTLine(fout,seqName,"stop_codon",exonEnd+offset+1,exonEnd+offset+3,strand,0,    genePrefix,geneNum);
-						}
-						inPlusExon  = false;
-						firstExon   = true;
-						startCodonSplit = false;
-						geneNum++;
-					}
-					else if (inMinusExon) {
-						strand = "-";
-						long prevExonEnd = exonEnd;
-						exonEnd = i;			
-						if (firstExon && exonEnd - exonStart + 1 < 3) {
-							System.err.println("Single '" + strand + "' strand exon is < 3 bases for sequence '" + seqName + "'.  exonStart=" + exonStart + "  exonEnd=" + exonEnd);
-						}
-						else if (exonEnd - exonStart + 1 < 3) {	// this exon is < 3 bases, need to split start codon
-							if (exonEnd - exonStart + 1 == 2) { // this exon is 2 bases
-								writeGFTLine(fout,seqName,"start_codon",prevExonEnd+offset,prevExonEnd+offset,strand,0,genePrefix,geneNum);				
-								writeGFTLine(fout,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
-								writeGFTLine(fout,seqName,"start_codon",exonStart+offset,exonEnd+offset,strand,2,genePrefix,geneNum);				
-							}
-							else if (exonEnd - exonStart + 1 == 1) 	{ // this exon is 1 base
-								writeGFTLine(fout,seqName,"start_codon",prevExonEnd+offset-1,prevExonEnd+offset,strand,0,genePrefix,geneNum);				
-								writeGFTLine(fout,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
-								writeGFTLine(fout,seqName,"start_codon",exonStart+offset,exonEnd+offset,strand,1,genePrefix,geneNum);												
-							}
-						}
-						else {
-							writeGFTLine(fout,seqName,"CDS",exonStart+offset,exonEnd+offset,strand,frame,genePrefix,geneNum);
-							writeGFTLine(fout,seqName,"start_codon",exonEnd+offset-2,exonEnd+offset,strand,0,    genePrefix,geneNum);				
-						}			
-						inMinusExon = false;
-						firstExon   = true;
-						startCodonSplit = false;
-						geneNum++;			
-					}
-				}
-			}
-			seqCount++;
-		}
-		fout.close();
-	}
-	
-	private void parseSeqName(TrainingSequence seq, int seqNum) {
-		NameInputSequence nameInput = null;
-
-		InputSequence<?> inputSeq = seq.getInputSequence();
-		if(inputSeq instanceof InputSequenceComposite) {
-			nameInput = (NameInputSequence) inputSeq.getComponent("name");
-			
-		}
-		if(nameInput == null) {
-			log.debug("Sequence name not specified.  Setting sequence name to 'SEQ_" + String.valueOf(seqNum) + "'");
-			seqName    = "SEQ_" + String.valueOf(seqNum);	// Create a name and return.
-			genePrefix = "SEQ_" + String.valueOf(seqNum);
-			offset = 0;
-			return;
-		}
-		String name =  nameInput.getName().trim();
-		
-		int colon1, colon2, numColons;
-		
-		if (name.startsWith("group:") || name.startsWith("seq:") ) {
-			numColons = numOccurrences(name, ':');
-			if (numColons == 1) {
-				colon1 = name.indexOf(":");
-				seqName = name;
-				genePrefix = name.substring(colon1 + 1, name.length());
-				offset = 0;
-				return;
-			}
-			else if (numColons == 2) {
-				colon1 = name.indexOf(":");
-				colon2 = name.lastIndexOf(":");
-				seqName = name.substring(0, colon2);
-				genePrefix = name.substring(colon1 + 1, colon2);
-				int pound = genePrefix.indexOf("#");
-				if (pound > 0) {
-					genePrefix = genePrefix.substring(0, pound);
-				}
-				setOffset(name.substring(colon2+1, name.length()));
-				return;
-			}
-		}
-		log.debug("Sequence name is in unexpected format.  Setting offset=0 and sequence name='" + name + "'.");
-		seqName    = name;
-		genePrefix = name;
-		offset = 0;
-	}
-	
-	// Returns the number of times the character 'c' occurs in 'str'
-	private static int numOccurrences(String str, char c) {
-		int num = 0;
-		int index = str.indexOf(c);
-		while (index != -1) {
-			num++;
-			index = str.indexOf(c, index+1);
-		}
-		return num;
-	}
-
-	private void setOffset(String str) {
-		int numDashes, dash;
-		numDashes = numOccurrences(str, '-');
-		
-		if (numDashes == 0) {
-			offset = 0;
-		}
-		else if (numDashes == 1) {
-			try {
-				dash = str.indexOf("-");
-				offset = Long.valueOf(str.substring(0, dash)) - 1;
-			}
-			catch (NumberFormatException e) {
-				System.err.println("Sequence range values in unexpected format.  Setting offset=0 for sequence='" + seqName + "'.");
-				offset = 0;
-			}
-		}
-		else {
-			System.err.println("Sequence range values in unexpected format.  Setting offset=0 for sequence='" + seqName + "'.");
-			offset = 0;
-		}
-	}
-	
-	// Frame is the nmber of bases in this region befor you get in frame.  
-	// That is, if frame is 0, the first three bases in this element are a codon.
-	// If frame is 1, the first base is the end of a codon hanging over from the 
-	//     end of the previous codon and the next three are the first codon in this feature.
-	// If frame is 2, the first two bases are the end of the previous codon and the 
-	//     next three are the first codon in this feature.
-	private static int setFrame(int ref) {
-		int frame = -1;
-		
-		switch (ref) {
-		case 1:  frame = 0;  break;
-		case 2:  frame = 2;  break;
-		case 3:  frame = 1;  break;
-		case 7:  frame = 1;  break;
-		case 8:  frame = 2;  break;
-		case 9:  frame = 0;  break;
-		default:  Assert.a(false, "Error setting frame, ref = ", ref);
-		}
-		return frame;
-	}
-
-	// Outputs one line to the GTF file.  
-	// NOTE:  source is assumed to be 'CONRAD', and score is assumed to be unknown and set to '.'.
-	private static void writeGFTLine(Writer out, String seqName, String feature, long exonStart, long exonEnd, 
-									 String strand, int frame, String genePrefix, int geneNum) throws IOException {
-
-		Assert.a(frame==0 || frame==1 || frame==2, "Frame value invalid, frame = ", frame);
-		
-		String geneId = genePrefix + "G_" + String.valueOf(geneNum);
-		String transId = genePrefix + "T_" + String.valueOf(geneNum) + ".1";
-		
-		out.write(seqName + "\t" + "CONRAD" + "\t" + feature + "\t" + exonStart + "\t" + exonEnd + "\t" +
-				  "." + "\t" + strand + "\t" + frame + "\t" + 
-				  "gene_id \"" + geneId + "\"; transcript_id \"" + transId + "\";\n");	
+		GeneCallGTFWriter.writeGTF(refStates, filename);
 	}
 
 	public double[] getViterbiScores() {
@@ -652,4 +400,20 @@ public class OutputHandlerGeneCallPredict implements OutputHandler {
 		this.writeTrainingData = writeTrainingData;
 	}
 
+	/** returns true if each sequence's genes are written to the GTF file as soon as the sequence is predicted.
+	 * @return true if output is streamed
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/** sets whether each sequence's genes are written to the GTF file as soon as the sequence is predicted, instead of keeping every
+	 * labeled sequence until {@link #outputComplete}.  Statistics are still accumulated, but no sequence is kept, so memory does not
+	 * grow with the number of sequences.  Training data can not be written when streaming.
+	 * @param streaming true to stream output
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
 }
@@ -0,0 +1,194 @@
+package calhoun.analysis.crf.io;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import calhoun.seq.KmerHasher;
+import calhoun.util.Assert;
+
+/** an input sequence of DNA bases stored at 2 bits per base.  Characters other than A, C, G and T are kept in a sparse list of runs,
+ * so long stretches of N cost almost nothing.  All bases are returned in upper case.
+ * <p>
+ * Besides the usual {@link #getX} this provides {@link #getCode} and {@link #codes} which return the {@link KmerHasher#ACGTother}
+ * code of a base without creating any objects.  Features that look at many bases per position can check for this class and use the
+ * codes directly.  {@link FastaInput} creates these when its <code>packed</code> property is set.
+ */
+public class PackedDnaInputSequence implements InputSequence<Character> {
+
+	/** code returned for any character other than A, C, G or T */
+	public static final int OTHER = 4;
+
+	static final char[] BASES = new char[] {'A', 'C', 'G', 'T'};
+	static final KmerHasher hasher = new KmerHasher(KmerHasher.ACGTother, 1);
+
+	int length;
+	// Position in the packed arrays of the first base.  Non-zero for a view created by subSequence.
+	int offset = 0;
+	// 32 bases per long, 2 bits each, first base in the low bits
+	long[] packed;
+	// One bit for each entry of packed that overlaps a run of other characters
+	long[] otherWords;
+	// Runs of identical non-ACGT characters, sorted by start.  Ends are exclusive.
+	int[] runStart;
+	int[] runEnd;
+	char[] runChar;
+
+	/** creates a packed sequence from a string of bases.  Lower case bases are converted to upper case.
+	 * @param seq the bases */
+	public PackedDnaInputSequence(String seq) {
+		length = seq.length();
+		packed = new long[(length+31) >> 5];
+		otherWords = new long[(packed.length+63) >> 6];
+
+		int nRuns = 0;
+		int[] starts = new int[16];
+		int[] ends = new int[16];
+		char[] chars = new char[16];
+		for (int i=0; i<length; i++) {
+			char c = Character.toUpperCase(seq.charAt(i));
+			int code = hasher.hash(c);
+			if (code == OTHER) {
+				if (nRuns > 0 && ends[nRuns-1] == i && chars[nRuns-1] == c) {
+					ends[nRuns-1] = i+1;
+				} else {
+					if (nRuns == starts.length) {
+						starts = grow(starts);
+						ends = grow(ends);
+						char[] newChars = new char[chars.length*2];
+						System.arraycopy(chars, 0, newChars, 0, nRuns);
+						chars = newChars;
+					}
+					starts[nRuns] = i;
+					ends[nRuns] = i+1;
+					chars[nRuns] = c;
+					nRuns++;
+				}
+				int word = i >> 5;
+				otherWords[word >> 6] |= 1L << (word & 63);
+			} else {
+				packed[i >> 5] |= ((long) code) << ((i & 31) << 1);
+			}
+		}
+		runStart = new int[nRuns];
+		runEnd = new int[nRuns];
+		runChar = new char[nRuns];
+		System.arraycopy(starts, 0, runStart, 0, nRuns);
+		System.arraycopy(ends, 0, runEnd, 0, nRuns);
+		System.arraycopy(chars, 0, runChar, 0, nRuns);
+	}
+
+	/** creates a view of part of another packed sequence.  The packed arrays are shared. */
+	PackedDnaInputSequence(PackedDnaInputSequence parent, int offset, int length) {
+		this.length = length;
+		this.offset = offset;
+		packed = parent.packed;
+		otherWords = parent.otherWords;
+		runStart = parent.runStart;
+		runEnd = parent.runEnd;
+		runChar = parent.runChar;
+	}
+
+	static int[] grow(int[] a) {
+		int[] ret = new int[a.length*2];
+		System.arraycopy(a, 0, ret, 0, a.length);
+		return ret;
+	}
+
+	/** returns the {@link KmerHasher#ACGTother} code of a base.
+	 * @param ix zero-based position
+	 * @return 0-3 for A, C, G, T, or {@link #OTHER} */
+	public int getCode(int ix) {
+		ix += offset;
+		int word = ix >> 5;
+		if (((otherWords[word >> 6] >>> (word & 63)) & 1L) != 0 && findRun(ix) >= 0) {
+			return OTHER;
+		}
+		return (int) (packed[word] >>> ((ix & 31) << 1)) & 3;
+	}
+
+	/** copies the {@link KmerHasher#ACGTother} codes of a range of bases into an array.
+	 * @param from zero-based position of the first base
+	 * @param to zero-based position after the last base
+	 * @param dest array to fill, starting at index 0 */
+	public void codes(int from, int to, byte[] dest) {
+		Assert.a(from >= 0 && to <= length && from <= to);
+		from += offset;
+		to += offset;
+		for (int i=from; i<to; i++) {
+			dest[i-from] = (byte) ((packed[i >> 5] >>> ((i & 31) << 1)) & 3);
+		}
+		// Overwrite the positions that are in runs of other characters
+		int run = Arrays.binarySearch(runStart, from);
+		if (run < 0) {
+			run = Math.max(0, -run - 2);
+		}
+		for (; run < runStart.length && runStart[run] < to; run++) {
+			int start = Math.max(from, runStart[run]);
+			int end = Math.min(to, runEnd[run]);
+			for (int i=start; i<end; i++) {
+				dest[i-from] = OTHER;
+			}
+		}
+	}
+
+	/** returns the index of the run of other characters containing a position, or -1 */
+	int findRun(int ix) {
+		int run = Arrays.binarySearch(runStart, ix);
+		if (run >= 0) {
+			return run;
+		}
+		run = -run - 2;
+		return (run >= 0 && ix < runEnd[run]) ? run : -1;
+	}
+
+	public Character getX(int ix) {
+		ix += offset;
+		int word = ix >> 5;
+		if (((otherWords[word >> 6] >>> (word & 63)) & 1L) != 0) {
+			int run = findRun(ix);
+			if (run >= 0) {
+				return runChar[run];
+			}
+		}
+		return BASES[(int) (packed[word] >>> ((ix & 31) << 1)) & 3];
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/** returns the bases as a string
+	 * @return a string of the bases */
+	public String getString() {
+		char[] chars = new char[length];
+		for (int i=0; i<length; i++) {
+			chars[i] = getX(i);
+		}
+		return new String(chars);
+	}
+
+	public InputSequence<?> getComponent(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	public Collection<String> listComponents() {
+		throw new UnsupportedOperationException();
+	}
+
+	public InputSequence<Character> subSequence(int start, int end) {
+		Assert.a(start >= 1);
+		Assert.a(end <= this.length());
+		Assert.a(start <= end);
+
+		return new PackedDnaInputSequence(this, offset+start-1, end-start+1);
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer ret = new StringBuffer();
+		for (int i=0; i<Math.min(length, 15); i++) {
+			ret.append(getX(i));
+		}
+		return ret.toString();
+	}
+}
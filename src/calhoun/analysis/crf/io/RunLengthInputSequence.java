@@ -0,0 +1,212 @@
+package calhoun.analysis.crf.io;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import calhoun.util.Assert;
+
+/** an input sequence of integers stored as runs of equal values.  Evidence tracks such as EST, Blast and Pfam hits only change
+ * value at the ends of hits, so this takes a few bytes per hit instead of 4 bytes per base.
+ * <p>
+ * Random access is a binary search over the runs.  The run found by the last lookup is remembered, so reading positions in order
+ * takes constant time per position.  {@link #nextChange} lets callers skip over whole runs.
+ */
+public class RunLengthInputSequence implements IntInputSequence {
+
+	int length;
+	// Position in the runs of the first position of this sequence.  Non-zero for a view created by subSequence.
+	int offset = 0;
+	// First position of each run.  runStart[0] is 0 and the runs cover the whole sequence.
+	int[] runStart;
+	int[] runValue;
+
+	// Index of the run returned by the last lookup.  Only a hint, so unsynchronized access from several threads is safe.
+	transient int lastRun = 0;
+
+	/** creates a run length encoded copy of an array of values
+	 * @param data the value at each position */
+	public RunLengthInputSequence(int[] data) {
+		Builder b = new Builder();
+		b.append(data);
+		b.build(this);
+	}
+
+	/** creates a sequence from runs that have already been computed.  Adjacent runs should have different values.
+	 * @param length the length of the sequence
+	 * @param runStart the first position of each run, starting with 0
+	 * @param runValue the value of each run */
+	public RunLengthInputSequence(int length, int[] runStart, int[] runValue) {
+		Assert.a(runStart.length == runValue.length);
+		Assert.a(length == 0 || (runStart.length > 0 && runStart[0] == 0));
+		this.length = length;
+		this.runStart = runStart;
+		this.runValue = runValue;
+	}
+
+	RunLengthInputSequence() {
+	}
+
+	/** creates a view of part of another sequence.  The runs are shared. */
+	RunLengthInputSequence(RunLengthInputSequence parent, int offset, int length) {
+		this.length = length;
+		this.offset = offset;
+		runStart = parent.runStart;
+		runValue = parent.runValue;
+	}
+
+	/** creates a sequence that is 0 everywhere except in the given intervals.  Where intervals overlap, the later one wins.
+	 * @param length the length of the sequence
+	 * @param starts zero-based first position of each interval
+	 * @param ends zero-based position after the end of each interval
+	 * @param values value of each interval
+	 * @return the new sequence */
+	public static RunLengthInputSequence fromIntervals(int length, int[] starts, int[] ends, int[] values) {
+		Assert.a(starts.length == ends.length && starts.length == values.length);
+		boolean sorted = true;
+		for (int i=1; i<starts.length && sorted; i++) {
+			sorted = ends[i-1] <= starts[i];
+		}
+		Builder b = new Builder();
+		if (sorted) {
+			// The usual case of disjoint intervals in order is built without expanding the sequence
+			int pos = 0;
+			for (int i=0; i<starts.length; i++) {
+				Assert.a(starts[i] >= 0 && starts[i] <= ends[i] && ends[i] <= length, "Invalid interval ", starts[i], "-", ends[i]);
+				b.append(0, starts[i] - pos);
+				b.append(values[i], ends[i] - starts[i]);
+				pos = ends[i];
+			}
+			b.append(0, length - pos);
+		} else {
+			int[] data = new int[length];
+			for (int i=0; i<starts.length; i++) {
+				Assert.a(starts[i] >= 0 && starts[i] <= ends[i] && ends[i] <= length, "Invalid interval ", starts[i], "-", ends[i]);
+				Arrays.fill(data, starts[i], ends[i], values[i]);
+			}
+			b.append(data);
+		}
+		RunLengthInputSequence ret = new RunLengthInputSequence();
+		b.build(ret);
+		return ret;
+	}
+
+	/** returns the index of the run containing a position */
+	int findRun(int ix) {
+		if (ix < 0 || ix >= length) {
+			throw new ArrayIndexOutOfBoundsException(ix);
+		}
+		ix += offset;
+		int run = lastRun;
+		if (run >= runStart.length || ix < runStart[run]) {
+			run = search(ix);
+		} else if (run+1 < runStart.length && ix >= runStart[run+1]) {
+			// Sequential access usually moves to the next run
+			run++;
+			if (run+1 < runStart.length && ix >= runStart[run+1]) {
+				run = search(ix);
+			}
+		}
+		lastRun = run;
+		return run;
+	}
+
+	int search(int ix) {
+		int run = Arrays.binarySearch(runStart, ix);
+		return run >= 0 ? run : -run - 2;
+	}
+
+	public Integer getX(int ix) {
+		return runValue[findRun(ix)];
+	}
+
+	public int getInt(int ix) {
+		return runValue[findRun(ix)];
+	}
+
+	public int nextChange(int ix) {
+		int run = findRun(ix);
+		int end = offset + length;
+		return (run+1 < runStart.length ? Math.min(runStart[run+1], end) : end) - offset;
+	}
+
+	/** returns the number of runs of equal values
+	 * @return the number of runs */
+	public int getNumRuns() {
+		return length == 0 ? 0 : findRun(length-1) - findRun(0) + 1;
+	}
+
+	/** returns the values at every position as an array
+	 * @return an array of the values */
+	public int[] getData() {
+		int[] ret = new int[length];
+		int pos = 0;
+		while (pos < length) {
+			int next = nextChange(pos);
+			Arrays.fill(ret, pos, next, getInt(pos));
+			pos = next;
+		}
+		return ret;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public InputSequence<?> getComponent(String name) {
+		throw new UnsupportedOperationException();
+	}
+
+	public Collection<String> listComponents() {
+		throw new UnsupportedOperationException();
+	}
+
+	public IntInputSequence subSequence(int start, int end) {
+		Assert.a(start >= 1);
+		Assert.a(end <= this.length());
+		Assert.a(start <= end);
+
+		return new RunLengthInputSequence(this, offset+start-1, end-start+1);
+	}
+
+	/** accumulates runs of values in order */
+	static class Builder {
+		int length = 0;
+		int nRuns = 0;
+		int[] starts = new int[16];
+		int[] values = new int[16];
+
+		void append(int value, int count) {
+			if (count <= 0) {
+				return;
+			}
+			if (nRuns == 0 || values[nRuns-1] != value) {
+				if (nRuns == starts.length) {
+					int[] newStarts = new int[nRuns*2];
+					int[] newValues = new int[nRuns*2];
+					System.arraycopy(starts, 0, newStarts, 0, nRuns);
+					System.arraycopy(values, 0, newValues, 0, nRuns);
+					starts = newStarts;
+					values = newValues;
+				}
+				starts[nRuns] = length;
+				values[nRuns] = value;
+				nRuns++;
+			}
+			length += count;
+		}
+
+		void append(int[] data) {
+			for (int i=0; i<data.length; i++) {
+				append(data[i], 1);
+			}
+		}
+
+		void build(RunLengthInputSequence seq) {
+			seq.length = length;
+			seq.runStart = new int[nRuns];
+			seq.runValue = new int[nRuns];
+			System.arraycopy(starts, 0, seq.runStart, 0, nRuns);
+			System.arraycopy(values, 0, seq.runValue, 0, nRuns);
+		}
+	}
+}
@@ -5,13 +5,16 @@ import java.util.HashMap;
 
 import calhoun.util.Assert;
 
-/** represents an input sequence that also contains a sequence of hidden states.
+/** represents an input sequence that also contains a sequence of hidden states.  A training sequence returned by
+ * {@link #subSequence} shares the hidden states of its parent, so changes made with {@link #setY(int, int)} are seen by both.
  * @param <A> the elements which make up the input sequence which is part of this training sequence 
  */
 public class TrainingSequence<A> implements InputSequence<A> {
 	private static final long serialVersionUID = -443081006327395045L;
 	InputSequence<? extends A> x;
 	int[] y;
+	// Index in y of the first position.  Non-zero for a view created by subSequence.
+	int yOffset = 0;
 	HashMap<String,TrainingSequence> componentMap;
 	
 	/** constructs a training sequence using just the input sequence.  The hidden sequence needs to be added later
@@ -32,6 +35,14 @@ public class TrainingSequence<A> implements InputSequence<A> {
 		Assert.a(y.length == x.length(), "Lengths differ between input and training sequences.  Hidden = " + y.length  + "   Observed = " + x.length());
 	}
 	
+	/** constructs a training sequence whose hidden states are part of a longer array, which is not copied. */
+	TrainingSequence(InputSequence<? extends A> xArg, int[] yArg, int yOffset) {
+		this.x = xArg;
+		this.y = yArg;
+		this.yOffset = yOffset;
+		Assert.a(yOffset >= 0 && yOffset + x.length() <= y.length, "Hidden states end before the input sequence");
+	}
+
 	/** gets the underlying input sequence
 	 * @return the underlying input sequence
 	 */
@@ -39,10 +50,16 @@ public class TrainingSequence<A> implements InputSequence<A> {
 		return x;
 	}
 
-	/** gets the vector of hidden state indices
+	/** gets the vector of hidden state indices.  If this is a subsequence of a longer training sequence, its part of the
+	 * hidden states is copied.
 	 * @return an array of ints containing the index of the hidden state at each position in the sequence */
 	public int[] getY() {
-		return y;
+		if(y == null || (yOffset == 0 && y.length == length())) {
+			return y;
+		}
+		int[] ret = new int[length()];
+		System.arraycopy(y, yOffset, ret, 0, ret.length);
+		return ret;
 	}
 	
 	/** sets the vector of hidden state indices.  Must be the same length as the previsouly specified inputs
@@ -50,6 +67,7 @@ public class TrainingSequence<A> implements InputSequence<A> {
 	public void setY(int[] hiddenStates) {
 		Assert.a(hiddenStates.length == x.length(), "Lengths differ between input and training sequences.  Hidden = " + hiddenStates.length  + "   Observed = " + x.length());
 		y = hiddenStates;
+		yOffset = 0;
 	}
 	
 	/** gets the hidden state index at a particular position
@@ -57,7 +75,7 @@ public class TrainingSequence<A> implements InputSequence<A> {
 	 * @return the hidden state index at this position
 	 */
 	public int getY(int x1) {
-		return y[x1];
+		return y[yOffset+x1];
 	}
 	
 	/** sets the hidden state index at a particular position
@@ -65,7 +83,7 @@ public class TrainingSequence<A> implements InputSequence<A> {
 	 * @param z the vlaue of the hidden state index to set for this position
 	 */
 	public void setY(int x,int z) {
-		y[x] = z;
+		y[yOffset+x] = z;
 	}
 
 	/** gets the value of the underlying input sequence at a particular position
@@ -102,7 +120,7 @@ public class TrainingSequence<A> implements InputSequence<A> {
 		}
 		TrainingSequence ret = componentMap.get(name);
 		if(ret == null) {
-			ret = new TrainingSequence(x.getComponent(name), y);
+			ret = new TrainingSequence(x.getComponent(name), y, yOffset);
 			componentMap.put(name, ret);
 		}
 		return ret;
@@ -112,13 +130,7 @@ public class TrainingSequence<A> implements InputSequence<A> {
 		Assert.a(start >= 1);
 		Assert.a(end <= this.length());
 		Assert.a(start <= end);
-		int[] newdata = new int[end-start+1];
-		for (int j=0; j<(end-start+1); j++) {
-			newdata[j] = y[j+start-1];
-		}
-	
-		TrainingSequence<A> TS = new TrainingSequence<A>(this.x.subSequence(start,end),newdata);	
-		return TS;
+		return new TrainingSequence<A>(this.x.subSequence(start,end), y, yOffset+start-1);
 	}
 
 	@Override
@@ -0,0 +1,702 @@
+package calhoun.analysis.crf.solver;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import calhoun.analysis.crf.CRFObjectiveFunctionGradient;
+import calhoun.analysis.crf.CRFTraining;
+import calhoun.analysis.crf.ModelManager;
+import calhoun.analysis.crf.io.TrainingSequence;
+import calhoun.util.Assert;
+import calhoun.util.ErrorException;
+
+/** a pure Java L-BFGS optimizer with a More-Thuente line search.  It is a replacement for the {@link StandardOptimizer}, which
+ * wraps the Fortran port in <code>LBFGS.jar</code>.  That port keeps its state in static variables, so only one optimization can run
+ * in a JVM at a time.  All state for this optimizer is local to each call to {@link #optimize}, so several optimizations can
+ * run in parallel.  The More-Thuente line search usually needs fewer objective function evaluations than the line search in the port.
+ * <p>
+ * If <code>l1Regularization</code> is set, the optimizer runs in OWL-QN mode (Andrew and Gao, 2007) and minimizes the objective with an
+ * additional L1 penalty on the weights.  OWL-QN uses a backtracking line search that keeps each step within one orthant.
+ * <p>
+ * This optimizer requires one property to be set:
+ * <p>
+ * <b><code>objectiveFunction</code></b> - This is the gradient function that the optimizer will use.  It must be a reference to a bean that implements the {@link CRFObjectiveFunctionGradient} interface.
+ * <p>
+ * In addition, it has several optional properties that allow control over the optimization process:
+ * <ul>
+ * <li> <b><code>epsForConvergence</code></b> - the optimization has converged when <code>norm(grad) &lt; epsForConvergence * max(1, norm(weights))</code>.
+ * Defaults to 0.00001.
+ * <li> <b><code>fixFirstWeight</code></b> - if true, the first feature weight will be fixed at 1.0 and will not be allowed to change
+ * during the optimization
+ * <li> <b><code>l1Regularization</code></b> - if set to a nonzero value, adds <code>l1Regularization*sum(abs(weights))</code> to the objective
+ * and switches to OWL-QN.
+ * <li> <b><code>maxIters</code></b> - The maximum number of L-BFGS iterations.  Defaults to 2000.
+ * <li> <b><code>maxLineSearch</code></b> - The maximum number of objective function evaluations in one line search.  Defaults to 20.
+ * <li> <b><code>mForHessian</code></b> - number of previous steps used to approximate the Hessian.  Defaults to 20.
+ * <li> <b><code>quadraticRegularization</code></b> - if set to a nonzero value, adds <code>quadraticRegularization*sum(weights^2)</code> to the objective
+ * <li> <b><code>requireConvergence</code></b> - if true, throws an error if convergence is not reached.  Otherwise, the best feature weights
+ * found are returned.
+ * <li> <b><code>starts</code></b> - an initial set of guesses at feature weights.  Defaults to 1.0
+ * </ul>
+ */
+public class LBFGSOptimizer implements CRFTraining {
+	private static final Log log = LogFactory.getLog(LBFGSOptimizer.class);
+
+	// Line search parameters
+	static final double FTOL = 1e-4;
+	static final double GTOL = 0.9;
+	static final double XTOL = 1e-16;
+	static final double MIN_STEP = 1e-20;
+	static final double MAX_STEP = 1e20;
+
+	// Configuration
+	CRFObjectiveFunctionGradient gradFunc;
+	int maxIters = 2000;
+	int mForHessian = 20;
+	int maxLineSearch = 20;
+	boolean requireConvergence = true;
+	double epsForConvergence = 0.00001;
+	double[] starts = null;
+	boolean fixFirstWeight = false;
+	double quadraticRegularization = 0.0;
+	double l1Regularization = 0.0;
+
+	public double[] optimize(ModelManager fm, List<? extends TrainingSequence<?>> data) {
+		gradFunc.setTrainingData(fm, data);
+		int nFeatures = fm.getNumFeatures();
+
+		double[] lambda = new double[nFeatures];
+		if(starts == null) {
+			Arrays.fill(lambda, 1.0);
+		}
+		else {
+			Assert.a(starts.length == lambda.length, "Received ", starts.length, " initial weights.  Expected: ", lambda.length);
+			System.arraycopy(starts, 0, lambda, 0, lambda.length);
+		}
+		if(fixFirstWeight) {
+			log.info("Fixing first weight to 1.0.");
+			lambda[0] = 1.0;
+		}
+
+		Search search = new Search(lambda);
+		boolean converged = search.run();
+		log.info(String.format("L-BFGS finished after %d iterations and %d objective function evaluations.  Objective: %f", search.iterations, search.evaluations, -search.f));
+		if(requireConvergence && !converged) {
+			throw new ErrorException("Convergence not reached.");
+		}
+		return search.weights();
+	}
+
+	/** the state of one optimization.  The optimizer minimizes the negated objective function over the free weights. */
+	final class Search {
+		final int offset;
+		final int n;
+		final double[] full;
+		final double[] fullGrad;
+
+		final double[] x;
+		final double[] g;
+		final double[] pg;
+		final double[] xp;
+		final double[] gp;
+		final double[] pgp;
+		final double[] d;
+		double f;
+
+		// History for the Hessian approximation
+		final double[][] s;
+		final double[][] y;
+		final double[] rho;
+		final double[] alpha;
+		int historySize = 0;
+		int historyEnd = 0;
+		// The newest curvature pair, kept here until it is accepted into the history
+		final double[] sNew;
+		final double[] yNew;
+		// Scale of the initial Hessian, from the last accepted pair
+		double gamma = 1.0;
+
+		int iterations = 0;
+		int evaluations = 0;
+
+		Search(double[] lambda) {
+			full = lambda;
+			fullGrad = new double[lambda.length];
+			offset = fixFirstWeight ? 1 : 0;
+			n = lambda.length - offset;
+			x = new double[n];
+			System.arraycopy(lambda, offset, x, 0, n);
+			g = new double[n];
+			pg = new double[n];
+			xp = new double[n];
+			gp = new double[n];
+			pgp = new double[n];
+			d = new double[n];
+			s = new double[mForHessian][n];
+			y = new double[mForHessian][n];
+			rho = new double[mForHessian];
+			alpha = new double[mForHessian];
+			sNew = new double[n];
+			yNew = new double[n];
+		}
+
+		double[] weights() {
+			System.arraycopy(x, 0, full, offset, n);
+			return full;
+		}
+
+		boolean owlqn() {
+			return l1Regularization != 0.0;
+		}
+
+		boolean run() {
+			f = evaluate(x, g);
+			pseudoGradient(x, g, pg);
+			if(converged()) {
+				return true;
+			}
+
+			// Initial direction is steepest descent with a step of unit length
+			for(int i=0; i<n; ++i) {
+				d[i] = -pg[i];
+			}
+			double step = 1.0/norm(d);
+
+			while(iterations < maxIters) {
+				System.arraycopy(x, 0, xp, 0, n);
+				System.arraycopy(g, 0, gp, 0, n);
+				System.arraycopy(pg, 0, pgp, 0, n);
+				double fp = f;
+
+				int count = owlqn() ? backtrackingOrthantSearch(step) : moreThuenteSearch(step);
+				if(count < 0) {
+					// The line search failed.  Go back to the previous point.  If we were using the Hessian approximation, try again with steepest descent.
+					System.arraycopy(xp, 0, x, 0, n);
+					System.arraycopy(gp, 0, g, 0, n);
+					System.arraycopy(pgp, 0, pg, 0, n);
+					f = fp;
+					if(historySize == 0) {
+						log.warn("Line search failed at iteration "+iterations+".  Unable to make further progress.");
+						return false;
+					}
+					log.info("Line search failed at iteration "+iterations+".  Resetting the Hessian approximation.");
+					historySize = 0;
+					gamma = 1.0;
+					for(int i=0; i<n; ++i) {
+						d[i] = -pg[i];
+					}
+					step = 1.0/norm(d);
+					continue;
+				}
+				++iterations;
+				if(log.isDebugEnabled()) {
+					log.debug(String.format("Iteration: %d Objective: %f norm(grad): %f Step: %g Line search evaluations: %d", iterations, -f, norm(pg), step, count));
+				}
+
+				if(converged()) {
+					return true;
+				}
+
+				// Update the history.  Uses the gradient of the smooth part of the objective for OWL-QN.
+				double ys = 0.0;
+				double yy = 0.0;
+				for(int i=0; i<n; ++i) {
+					sNew[i] = x[i] - xp[i];
+					yNew[i] = g[i] - gp[i];
+					ys += yNew[i]*sNew[i];
+					yy += yNew[i]*yNew[i];
+				}
+				if(ys > 0) {
+					// Only an accepted pair replaces the oldest one in the history
+					System.arraycopy(sNew, 0, s[historyEnd], 0, n);
+					System.arraycopy(yNew, 0, y[historyEnd], 0, n);
+					rho[historyEnd] = 1.0/ys;
+					gamma = ys/yy;
+					historyEnd = (historyEnd+1) % mForHessian;
+					historySize = Math.min(historySize+1, mForHessian);
+				}
+				else {
+					log.debug("Skipping history update, curvature condition not met.");
+				}
+
+				computeDirection();
+				step = 1.0;
+			}
+			log.warn("Maximum number of iterations ("+maxIters+") reached.");
+			return false;
+		}
+
+		boolean converged() {
+			double xnorm = Math.max(1.0, norm(x));
+			return norm(pg) < epsForConvergence * xnorm;
+		}
+
+		/** two loop recursion to compute d = -H * pg */
+		void computeDirection() {
+			for(int i=0; i<n; ++i) {
+				d[i] = -pg[i];
+			}
+			int j = historyEnd;
+			for(int k=0; k<historySize; ++k) {
+				j = (j + mForHessian - 1) % mForHessian;
+				alpha[j] = rho[j] * dot(s[j], d);
+				axpy(-alpha[j], y[j], d);
+			}
+			for(int i=0; i<n; ++i) {
+				d[i] *= gamma;
+			}
+			for(int k=0; k<historySize; ++k) {
+				double beta = rho[j] * dot(y[j], d);
+				axpy(alpha[j] - beta, s[j], d);
+				j = (j + 1) % mForHessian;
+			}
+			if(owlqn()) {
+				// Keep the direction within the orthant of the steepest descent direction
+				for(int i=0; i<n; ++i) {
+					if(d[i] * pg[i] >= 0) {
+						d[i] = 0.0;
+					}
+				}
+			}
+		}
+
+		/** the More-Thuente line search, as in MINPACK-2 and libLBFGS.  Returns the number of evaluations used, or -1 on failure.
+		 * On entry x = xp, on exit x, f and g are at the new point. */
+		int moreThuenteSearch(double stp) {
+			double dginit = dot(gp, d);
+			if(dginit >= 0) {
+				log.debug("Search direction is not a descent direction.");
+				return -1;
+			}
+			double finit = f;
+			double dgtest = FTOL * dginit;
+			double width = MAX_STEP - MIN_STEP;
+			double prevWidth = 2.0 * width;
+
+			TrialInterval t = new TrialInterval();
+			t.stx = t.sty = 0.0;
+			t.fx = t.fy = finit;
+			t.dx = t.dy = dginit;
+			boolean stage1 = true;
+			int count = 0;
+			boolean uinfo = true;
+
+			while(true) {
+				double stmin;
+				double stmax;
+				if(t.brackt) {
+					stmin = Math.min(t.stx, t.sty);
+					stmax = Math.max(t.stx, t.sty);
+				}
+				else {
+					stmin = t.stx;
+					stmax = stp + 4.0 * (stp - t.stx);
+				}
+				stp = Math.max(stp, MIN_STEP);
+				stp = Math.min(stp, MAX_STEP);
+
+				if((t.brackt && (stp <= stmin || stmax <= stp || maxLineSearch <= count + 1 || !uinfo)) || (t.brackt && stmax - stmin <= XTOL * stmax)) {
+					stp = t.stx;
+				}
+
+				for(int i=0; i<n; ++i) {
+					x[i] = xp[i] + stp * d[i];
+				}
+				f = evaluate(x, g);
+				double dg = dot(g, d);
+				double ftest1 = finit + stp * dgtest;
+				++count;
+
+				if(t.brackt && (stp <= stmin || stmax <= stp || !uinfo)) {
+					return -1;
+				}
+				if(stp == MAX_STEP && f <= ftest1 && dg <= dgtest) {
+					return -1;
+				}
+				if(stp == MIN_STEP && (ftest1 < f || dgtest <= dg)) {
+					return -1;
+				}
+				if(t.brackt && stmax - stmin <= XTOL * stmax) {
+					return -1;
+				}
+				if(f <= ftest1 && Math.abs(dg) <= GTOL * -dginit) {
+					pseudoGradient(x, g, pg);
+					return count;
+				}
+				if(maxLineSearch <= count) {
+					return -1;
+				}
+
+				if(stage1 && f <= ftest1 && Math.min(FTOL, GTOL) * dginit <= dg) {
+					stage1 = false;
+				}
+
+				t.stp = stp;
+				if(stage1 && ftest1 < f && f <= t.fx) {
+					// Use the modified function values
+					double fm = f - stp * dgtest;
+					double dgm = dg - dgtest;
+					t.fx -= t.stx * dgtest;
+					t.fy -= t.sty * dgtest;
+					t.dx -= dgtest;
+					t.dy -= dgtest;
+					uinfo = t.update(fm, dgm, stmin, stmax);
+					t.fx += t.stx * dgtest;
+					t.fy += t.sty * dgtest;
+					t.dx += dgtest;
+					t.dy += dgtest;
+				}
+				else {
+					uinfo = t.update(f, dg, stmin, stmax);
+				}
+				stp = t.stp;
+
+				if(t.brackt) {
+					if(0.66 * prevWidth <= Math.abs(t.sty - t.stx)) {
+						stp = t.stx + 0.5 * (t.sty - t.stx);
+					}
+					prevWidth = width;
+					width = Math.abs(t.sty - t.stx);
+				}
+			}
+		}
+
+		/** backtracking line search for OWL-QN.  Each trial point is projected onto the orthant of the starting point. */
+		int backtrackingOrthantSearch(double stp) {
+			double finit = f;
+			int count = 0;
+			while(true) {
+				for(int i=0; i<n; ++i) {
+					x[i] = xp[i] + stp * d[i];
+					double sign = (xp[i] == 0.0) ? -pgp[i] : xp[i];
+					if(x[i] * sign <= 0) {
+						x[i] = 0.0;
+					}
+				}
+				f = evaluate(x, g);
+				++count;
+
+				double dgtest = 0.0;
+				for(int i=0; i<n; ++i) {
+					dgtest += (x[i] - xp[i]) * pgp[i];
+				}
+				if(f <= finit + FTOL * dgtest) {
+					pseudoGradient(x, g, pg);
+					return count;
+				}
+				if(stp < MIN_STEP || maxLineSearch <= count) {
+					return -1;
+				}
+				stp *= 0.5;
+			}
+		}
+
+		/** evaluates the objective to minimize.  Returns the value and fills in the gradient of the smooth part. */
+		double evaluate(double[] point, double[] grad) {
+			System.arraycopy(point, 0, full, offset, n);
+			if(fixFirstWeight) {
+				full[0] = 1.0;
+			}
+			double value = -gradFunc.apply(full, fullGrad);
+			++evaluations;
+			for(int i=0; i<n; ++i) {
+				double w = point[i];
+				grad[i] = -fullGrad[i+offset] + 2*quadraticRegularization*w;
+				value += quadraticRegularization*w*w + l1Regularization*Math.abs(w);
+			}
+			return value;
+		}
+
+		/** computes the pseudo-gradient of the L1 regularized objective.  Without L1 regularization it is the gradient. */
+		void pseudoGradient(double[] point, double[] grad, double[] pseudo) {
+			if(!owlqn()) {
+				System.arraycopy(grad, 0, pseudo, 0, n);
+				return;
+			}
+			double c = l1Regularization;
+			for(int i=0; i<n; ++i) {
+				if(point[i] < 0) {
+					pseudo[i] = grad[i] - c;
+				}
+				else if(point[i] > 0) {
+					pseudo[i] = grad[i] + c;
+				}
+				else if(grad[i] + c < 0) {
+					pseudo[i] = grad[i] + c;
+				}
+				else if(grad[i] - c > 0) {
+					pseudo[i] = grad[i] - c;
+				}
+				else {
+					pseudo[i] = 0.0;
+				}
+			}
+		}
+	}
+
+	/** the interval of uncertainty of the More-Thuente line search.  x is the step with the lowest function value so far,
+	 * y is the other endpoint of the interval, and stp is the current trial step. */
+	static final class TrialInterval {
+		double stx, fx, dx;
+		double sty, fy, dy;
+		double stp;
+		boolean brackt = false;
+
+		/** updates the interval with the function value and derivative at the trial step and computes a new trial step.
+		 * Returns false if the inputs are inconsistent. */
+		boolean update(double ft, double dt, double tmin, double tmax) {
+			double t = stp;
+			boolean dsign = dt * (dx / Math.abs(dx)) < 0.0;
+			boolean bound;
+			double newt;
+
+			if(brackt) {
+				if(t <= Math.min(stx, sty) || Math.max(stx, sty) <= t) {
+					return false;
+				}
+				if(0.0 <= dx * (t - stx)) {
+					return false;
+				}
+				if(tmax < tmin) {
+					return false;
+				}
+			}
+
+			if(fx < ft) {
+				// Higher function value.  The minimum is bracketed.
+				brackt = true;
+				bound = true;
+				double mc = cubicMinimizer(stx, fx, dx, t, ft, dt);
+				double mq = quadraticMinimizer(stx, fx, dx, t, ft);
+				if(Math.abs(mc - stx) < Math.abs(mq - stx)) {
+					newt = mc;
+				}
+				else {
+					newt = mc + 0.5 * (mq - mc);
+				}
+			}
+			else if(dsign) {
+				// Derivatives have opposite signs.  The minimum is bracketed.
+				brackt = true;
+				bound = false;
+				double mc = cubicMinimizer(stx, fx, dx, t, ft, dt);
+				double mq = secantMinimizer(stx, dx, t, dt);
+				if(Math.abs(mc - t) > Math.abs(mq - t)) {
+					newt = mc;
+				}
+				else {
+					newt = mq;
+				}
+			}
+			else if(Math.abs(dt) < Math.abs(dx)) {
+				// Lower function value, same sign derivative, and the derivative decreases in magnitude.
+				bound = true;
+				double mc = cubicMinimizerBounded(stx, fx, dx, t, ft, dt, tmin, tmax);
+				double mq = secantMinimizer(stx, dx, t, dt);
+				if(brackt) {
+					newt = Math.abs(t - mc) < Math.abs(t - mq) ? mc : mq;
+				}
+				else {
+					newt = Math.abs(t - mc) > Math.abs(t - mq) ? mc : mq;
+				}
+			}
+			else {
+				// Lower function value, same sign derivative, and the derivative does not decrease in magnitude.
+				bound = false;
+				if(brackt) {
+					newt = cubicMinimizer(t, ft, dt, sty, fy, dy);
+				}
+				else if(stx < t) {
+					newt = tmax;
+				}
+				else {
+					newt = tmin;
+				}
+			}
+
+			// Update the interval of uncertainty
+			if(fx < ft) {
+				sty = t;
+				fy = ft;
+				dy = dt;
+			}
+			else {
+				if(dsign) {
+					sty = stx;
+					fy = fx;
+					dy = dx;
+				}
+				stx = t;
+				fx = ft;
+				dx = dt;
+			}
+
+			newt = Math.min(newt, tmax);
+			newt = Math.max(newt, tmin);
+
+			// Don't get too close to the far end of the interval
+			if(brackt && bound) {
+				double mq = stx + 0.66 * (sty - stx);
+				if(stx < sty) {
+					newt = Math.min(newt, mq);
+				}
+				else {
+					newt = Math.max(newt, mq);
+				}
+			}
+			stp = newt;
+			return true;
+		}
+
+		static double cubicMinimizer(double u, double fu, double du, double v, double fv, double dv) {
+			double d = v - u;
+			double theta = (fu - fv) * 3 / d + du + dv;
+			double s = Math.max(Math.abs(theta), Math.max(Math.abs(du), Math.abs(dv)));
+			double a = theta / s;
+			double gamma = s * Math.sqrt(a * a - (du / s) * (dv / s));
+			if(v < u) {
+				gamma = -gamma;
+			}
+			double p = gamma - du + theta;
+			double q = gamma - du + gamma + dv;
+			return u + p / q * d;
+		}
+
+		static double cubicMinimizerBounded(double u, double fu, double du, double v, double fv, double dv, double xmin, double xmax) {
+			double d = v - u;
+			double theta = (fu - fv) * 3 / d + du + dv;
+			double s = Math.max(Math.abs(theta), Math.max(Math.abs(du), Math.abs(dv)));
+			double a = theta / s;
+			double gamma = s * Math.sqrt(Math.max(0, a * a - (du / s) * (dv / s)));
+			if(u < v) {
+				gamma = -gamma;
+			}
+			double p = gamma - dv + theta;
+			double q = gamma - dv + gamma + du;
+			double r = p / q;
+			if(r < 0.0 && gamma != 0.0) {
+				return v - r * d;
+			}
+			else if(a < 0) {
+				return xmax;
+			}
+			return xmin;
+		}
+
+		static double quadraticMinimizer(double u, double fu, double du, double v, double fv) {
+			double a = v - u;
+			return u + du / ((fu - fv) / a + du) / 2 * a;
+		}
+
+		static double secantMinimizer(double u, double du, double v, double dv) {
+			double a = u - v;
+			return v + dv / (dv - du) * a;
+		}
+	}
+
+	static double dot(double[] a, double[] b) {
+		double ret = 0.0;
+		for(int i=0; i<a.length; ++i) {
+			ret += a[i]*b[i];
+		}
+		return ret;
+	}
+
+	static double norm(double[] a) {
+		return Math.sqrt(dot(a, a));
+	}
+
+	static void axpy(double a, double[] x, double[] y) {
+		for(int i=0; i<x.length; ++i) {
+			y[i] += a*x[i];
+		}
+	}
+
+	/** returns the configured objective function gradient which will be
+	 * used by the optimizer during the training process.
+	 * @return the configured objective function gradient
+	 */
+	public CRFObjectiveFunctionGradient getObjectiveFunction() {
+		return gradFunc;
+	}
+
+	/** sets the objective function gradient.  Called automatically during configuration. */
+	public void setObjectiveFunction(CRFObjectiveFunctionGradient objectiveFunction) {
+		this.gradFunc = objectiveFunction;
+	}
+
+	public double getEpsForConvergence() {
+		return epsForConvergence;
+	}
+
+	public void setEpsForConvergence(double epsForConvergence) {
+		this.epsForConvergence = epsForConvergence;
+	}
+
+	public boolean isFixFirstWeight() {
+		return fixFirstWeight;
+	}
+
+	public void setFixFirstWeight(boolean fixFirstWeight) {
+		this.fixFirstWeight = fixFirstWeight;
+	}
+
+	public double getL1Regularization() {
+		return l1Regularization;
+	}
+
+	public void setL1Regularization(double regularization) {
+		l1Regularization = regularization;
+	}
+
+	public int getMaxIters() {
+		return maxIters;
+	}
+
+	public void setMaxIters(int maxIters) {
+		this.maxIters = maxIters;
+	}
+
+	public int getMaxLineSearch() {
+		return maxLineSearch;
+	}
+
+	public void setMaxLineSearch(int maxLineSearch) {
+		this.maxLineSearch = maxLineSearch;
+	}
+
+	public int getMForHessian() {
+		return mForHessian;
+	}
+
+	public void setMForHessian(int forHessian) {
+		mForHessian = forHessian;
+	}
+
+	public double getQuadraticRegularization() {
+		return quadraticRegularization;
+	}
+
+	public void setQuadraticRegularization(double quadraticRegularization) {
+		this.quadraticRegularization = quadraticRegularization;
+	}
+
+	public boolean isRequireConvergence() {
+		return requireConvergence;
+	}
+
+	public void setRequireConvergence(boolean requireConvergence) {
+		this.requireConvergence = requireConvergence;
+	}
+
+	public double[] getStarts() {
+		return starts;
+	}
+
+	public void setStarts(double[] starts) {
+		this.starts = starts;
+	}
+}
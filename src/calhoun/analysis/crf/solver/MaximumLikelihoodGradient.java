@@ -9,7 +9,7 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import calhoun.analysis.crf.CRFObjectiveFunctionGradient;
+import calhoun.analysis.crf.CRFBatchObjectiveFunctionGradient;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.analysis.crf.solver.CacheProcessor.FeatureEvaluation;
@@ -21,7 +21,7 @@ import calhoun.util.ColtUtil;
 /** computes the likelihood of the true path for a Markov CRF.  The likelihood is normalized to a per label likelihood so
  * that likelihood of different length paths can be meaningfully compared and a single set of optimization tolerances can be used.
  * Must be configured with a {@link CacheProcessor}. */
-public class MaximumLikelihoodGradient implements CRFObjectiveFunctionGradient {
+public class MaximumLikelihoodGradient implements CRFBatchObjectiveFunctionGradient {
 	private static final Log log = LogFactory.getLog(MaximumLikelihoodGradient.class);
 	boolean debug = log.isDebugEnabled();
 
@@ -78,7 +78,15 @@ public class MaximumLikelihoodGradient implements CRFObjectiveFunctionGradient {
 		betaNorms = new double[modelInfo.longestSeq];
 	}
 	
+	public int getNumSequences() {
+		return modelInfo.nSeqs;
+	}
+
 	public double apply(double[] param, double[] grad) {
+		return apply(param, grad, null);
+	}
+
+	public double apply(double[] param, double[] grad, int[] sequences) {
 		// Initialize values
 		Arrays.fill(grad, 0);
 		double result = 0.0;
@@ -86,7 +94,9 @@ public class MaximumLikelihoodGradient implements CRFObjectiveFunctionGradient {
 
 		// Iterate through sequences
 		int seqStart = 0;
-		for(int i = 0; i<modelInfo.nSeqs; ++i) {
+		int nBatch = TrainingBatch.size(modelInfo, sequences);
+		for(int b = 0; b<nBatch; ++b) {
+			int i = TrainingBatch.sequence(sequences, b);
 			int len = modelInfo.seqOffsets[i+1] - modelInfo.seqOffsets[i]; 
 			
 			// Work backwards, computing betas.
@@ -151,20 +161,21 @@ public class MaximumLikelihoodGradient implements CRFObjectiveFunctionGradient {
 		}
 		
 		// sum_j lambda_j F_j(xk, yk)
-		double[] featureSums = cacheProcessor.getFeatureSums();
+		double[] featureSums = TrainingBatch.featureSums(cacheProcessor, sequences);
 		for (int j = 0; j < modelInfo.nFeatures; ++j) {
 			result += featureSums[j] * param[j];
 			grad[j] = featureSums[j] - expects[j];
 		}
 
+		int positions = TrainingBatch.positions(modelInfo, sequences);
 		if(log.isInfoEnabled()) {
 			// Report average per-label numbers.
-			log.info(String.format("It: %d L=%e, LL=%f, norm(grad): %f Sums: %s Expects: %s Weights: %s Grad (unnorm): %s", iter, exp(result/modelInfo.totalPositions), result/modelInfo.totalPositions, ColtUtil.norm(grad)/modelInfo.totalPositions, ColtUtil.format(featureSums), ColtUtil.format(expects), ColtUtil.format(param), ColtUtil.format(grad)));
+			log.info(String.format("It: %d L=%e, LL=%f, norm(grad): %f Sums: %s Expects: %s Weights: %s Grad (unnorm): %s", iter, exp(result/positions), result/positions, ColtUtil.norm(grad)/positions, ColtUtil.format(featureSums), ColtUtil.format(expects), ColtUtil.format(param), ColtUtil.format(grad)));
 		}
 		iter += 1;
-		result = result/modelInfo.totalPositions; 
+		result = result/positions; 
 		for(int i=0; i<grad.length; ++i) {
-			grad[i] = grad[i]/modelInfo.totalPositions;
+			grad[i] = grad[i]/positions;
 		}
 	
 		this.featureSums = featureSums;
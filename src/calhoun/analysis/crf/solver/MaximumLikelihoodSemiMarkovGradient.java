@@ -7,7 +7,7 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import calhoun.analysis.crf.CRFObjectiveFunctionGradient;
+import calhoun.analysis.crf.CRFBatchObjectiveFunctionGradient;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.analysis.crf.solver.CacheProcessor.FeatureEvaluation;
@@ -36,7 +36,7 @@ import calhoun.util.FileUtil;
  * */
 //public class MaximumLikelihoodSemiMarkovGradient extends CleanMaximumLikelihoodSemiMarkovGradient {
 //}
-public class MaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFunctionGradient {
+public class MaximumLikelihoodSemiMarkovGradient implements CRFBatchObjectiveFunctionGradient {
 	private static final Log log = LogFactory.getLog(MaximumLikelihoodSemiMarkovGradient.class);
 	private static final boolean debug = log.isDebugEnabled();
 	private static final double ASSERTION_TOLERANCE = 0.0001;
@@ -124,7 +124,15 @@ public class MaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFunction
 		starterAlpha = new double[modelInfo.nStates];
 	}
 
+	public int getNumSequences() {
+		return modelInfo.nSeqs;
+	}
+
 	public double apply(double[] param, double[] grad) {
+		return apply(param, grad, null);
+	}
+
+	public double apply(double[] param, double[] grad, int[] sequences) {
 		log.debug(String.format("Beginning It: %d Weights: %s", iter, ColtUtil.format(param)));
 		alphaWriter = FileUtil.safeOpen(alphaFile);
 		alphaLengthWriter = FileUtil.safeOpen(alphaLengthFile);
@@ -140,7 +148,9 @@ public class MaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFunction
 		try {
 			// Iterate through sequences
 			Arrays.fill(expects, 0);
-			for (int i = 0; i < modelInfo.nSeqs; ++i) {
+			int nBatch = TrainingBatch.size(modelInfo, sequences);
+			for (int b = 0; b < nBatch; ++b) {
+				int i = TrainingBatch.sequence(sequences, b);
 				int len = modelInfo.seqOffsets[i + 1] - modelInfo.seqOffsets[i];
 				// Work forwards, computing alphas
 				alphaProcessor.computeAlpha(i, len);
@@ -176,7 +186,7 @@ public class MaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFunction
 			}
 			
 			// sum_j lambda_j F_j(xk, yk)
-			double[] featureSums = cacheProcessor.getFeatureSums();
+			double[] featureSums = TrainingBatch.featureSums(cacheProcessor, sequences);
 			this.featureSums = featureSums;
 			for (int j = 0; j < modelInfo.nFeatures; ++j) {
 				result += featureSums[j] * param[j];
@@ -194,9 +204,10 @@ public class MaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFunction
 				}
 			}
 			Assert.a(exp(result) <= 1.0, "Likelihood is greater than 1.");
-			result = result/modelInfo.totalPositions; 
+			int positions = TrainingBatch.positions(modelInfo, sequences);
+			result = result/positions; 
 			for(int i=0; i<grad.length; ++i) {
-				grad[i] = grad[i]/modelInfo.totalPositions;
+				grad[i] = grad[i]/positions;
 			}
 			iter += 1;
 		}
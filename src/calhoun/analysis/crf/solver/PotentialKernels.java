@@ -0,0 +1,156 @@
+package calhoun.analysis.crf.solver;
+
+import calhoun.analysis.crf.solver.CacheProcessor.FeatureEvaluation;
+
+/** inner loop kernels for the semi-Markov solvers.  The solvers spend most of their time in a small number of loops: weighted
+ * sums over the sparse feature evaluations of a potential, max or sum reductions over the edges into a state, and rescaling
+ * of normalized alpha and beta vectors.  The kernels here compute the same quantities as the scalar loops in the solvers,
+ * but the loops are written as counted loops with independent accumulators so that the JIT can unroll them and map them
+ * onto the SIMD units of the processor.
+ * <p>
+ * Because independent accumulators change the order in which floating point values are added, results may differ
+ * from the scalar loops in the last bits.  For this reason the solvers only use the reducing kernels when their
+ * <code>vectorKernels</code> property is set.
+ */
+public final class PotentialKernels {
+
+	private PotentialKernels() {
+	}
+
+	/** returns the number of feature evaluations in a sentinel terminated index list.  The terminating index
+	 * (-1, or <code>Short.MIN_VALUE</code> for an invalid potential) is at <code>indices[n]</code>.
+	 * @param indices the feature indices of a {@link FeatureEvaluation}
+	 * @return position of the first negative index
+	 */
+	public static int length(final short[] indices) {
+		int n = 0;
+		while(indices[n] >= 0) {
+			++n;
+		}
+		return n;
+	}
+
+	/** computes the weighted sum of the first <code>n</code> feature evaluations.
+	 * @param indices feature indices
+	 * @param vals feature values
+	 * @param lambda feature weights
+	 * @param n number of evaluations to sum, usually the result of {@link #length}
+	 * @return sum of <code>vals[i]*lambda[indices[i]]</code>
+	 */
+	public static double dot(final short[] indices, final float[] vals, final double[] lambda, final int n) {
+		double s0 = 0.0;
+		double s1 = 0.0;
+		double s2 = 0.0;
+		double s3 = 0.0;
+		int i = 0;
+		final int limit = n - 3;
+		for(; i < limit; i += 4) {
+			s0 += vals[i] * lambda[indices[i]];
+			s1 += vals[i+1] * lambda[indices[i+1]];
+			s2 += vals[i+2] * lambda[indices[i+2]];
+			s3 += vals[i+3] * lambda[indices[i+3]];
+		}
+		for(; i < n; ++i) {
+			s0 += vals[i] * lambda[indices[i]];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/** computes the weighted sum of all features in an evaluation.
+	 * @param eval the feature evaluations for a potential
+	 * @param lambda feature weights
+	 * @return the weighted sum, or negative infinity if the evaluation marks the potential as invalid
+	 */
+	public static double potential(final FeatureEvaluation eval, final double[] lambda) {
+		final short[] indices = eval.index;
+		final int n = length(indices);
+		if(indices[n] == Short.MIN_VALUE) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		return dot(indices, eval.value, lambda, n);
+	}
+
+	/** finds the best scoring edge into a state for a Viterbi update.  The score of an edge is the score of the
+	 * previous state plus the transition potential.  Edges with infinite transition potentials are ignored.
+	 * @param scores best scores array
+	 * @param offset offset of the previous position in <code>scores</code>
+	 * @param potentials edge potentials into the state
+	 * @param nStates number of states in the model, edge potentials start at this value
+	 * @param transitionFrom source state for each transition
+	 * @param mi transition potentials
+	 * @return index into <code>potentials</code> of the best edge, or -1 if no edge has a finite score
+	 */
+	public static int argMaxPlus(final double[] scores, final int offset, final byte[] potentials, final int nStates, final short[] transitionFrom, final double[] mi) {
+		double max = Double.NEGATIVE_INFINITY;
+		int best = -1;
+		final int nEdges = potentials.length;
+		for(int i = 0; i < nEdges; ++i) {
+			final int trans = potentials[i] - nStates;
+			final double transitionCost = mi[trans];
+			if(Double.isInfinite(transitionCost)) {
+				continue;
+			}
+			final double current = scores[offset + transitionFrom[trans]] + transitionCost;
+			if(current > max) {
+				max = current;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/** computes the forward sum over the edges into a state: <code>sum(prev[from] * exp(mi[trans]))</code>.  Edges with
+	 * infinite transition potentials are ignored.
+	 * @param prev alpha vector at the previous position
+	 * @param potentials edge potentials into the state
+	 * @param nStates number of states in the model, edge potentials start at this value
+	 * @param transitionFrom source state for each transition
+	 * @param mi unexponentiated transition potentials
+	 * @return the unnormalized alpha value for the state
+	 */
+	public static double sumExpProduct(final double[] prev, final byte[] potentials, final int nStates, final short[] transitionFrom, final double[] mi) {
+		double s0 = 0.0;
+		double s1 = 0.0;
+		final int nEdges = potentials.length;
+		int i = 0;
+		for(; i + 1 < nEdges; i += 2) {
+			final int t0 = potentials[i] - nStates;
+			final int t1 = potentials[i+1] - nStates;
+			final double m0 = mi[t0];
+			final double m1 = mi[t1];
+			if(!Double.isInfinite(m0)) {
+				s0 += prev[transitionFrom[t0]] * Math.exp(m0);
+			}
+			if(!Double.isInfinite(m1)) {
+				s1 += prev[transitionFrom[t1]] * Math.exp(m1);
+			}
+		}
+		if(i < nEdges) {
+			final int t0 = potentials[i] - nStates;
+			final double m0 = mi[t0];
+			if(!Double.isInfinite(m0)) {
+				s0 += prev[transitionFrom[t0]] * Math.exp(m0);
+			}
+		}
+		return s0 + s1;
+	}
+
+	/** scales all of the entries of a vector by a constant factor.  Zero entries stay zero even if the factor is infinite.
+	 * For finite factors this is a straight multiply, which the JIT vectorizes.
+	 * @param vec the vector to scale in place
+	 * @param factor the scaling factor
+	 */
+	public static void scale(final double[] vec, final double factor) {
+		final int len = vec.length;
+		if(Double.isInfinite(factor) || Double.isNaN(factor)) {
+			for(int i = 0; i < len; ++i) {
+				if(vec[i] != 0.0)
+					vec[i] *= factor;
+			}
+			return;
+		}
+		for(int i = 0; i < len; ++i) {
+			vec[i] *= factor;
+		}
+	}
+}
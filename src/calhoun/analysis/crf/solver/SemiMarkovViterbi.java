@@ -35,6 +35,8 @@ public class SemiMarkovViterbi implements CRFInference {
 
 	RecyclingBuffer<double[]> stableStates;
 	double[] stableVector;
+
+	boolean vectorKernels = false;
 	
 	/** gets the cache processor used to access feature evaluations
 	 * @return the configured cache processor
@@ -50,6 +52,21 @@ public class SemiMarkovViterbi implements CRFInference {
 		this.cacheProcessor = cacheProcessor;
 	}
 
+	/** returns true if the inner loops use the unrolled {@link PotentialKernels}.
+	 * @return true if vector kernels are enabled
+	 */
+	public boolean isVectorKernels() {
+		return vectorKernels;
+	}
+
+	/** enables the unrolled {@link PotentialKernels} for the weighted feature sums and the max over incoming edges.
+	 * Scores may differ from the scalar loops in the last bits.  Defaults to false.
+	 * @param vectorKernels true to use the kernels
+	 */
+	public void setVectorKernels(boolean vectorKernels) {
+		this.vectorKernels = vectorKernels;
+	}
+
 	public InferenceResult predict(ModelManager fm, InputSequence<?> seq, double[] lambda) {
 		this.lambda = lambda;
 
@@ -118,6 +135,15 @@ public class SemiMarkovViterbi implements CRFInference {
 						max = latestStable[state];
 						bestPrevState = -1;
 					}
+					else if(vectorKernels) {
+						int prevOffset = nStates*(pos-1);
+						int bestEdge = PotentialKernels.argMaxPlus(bestScore, prevOffset, potentials.potentials, nStates, modelInfo.transitionFrom, latestMi);
+						if(bestEdge != -1) {
+							int transition = potentials.potentials[bestEdge] - nStates;
+							bestPrevState = modelInfo.transitionFrom[transition];
+							max = bestScore[prevOffset + bestPrevState] + latestMi[transition];
+						}
+					}
 					else {
 						for(byte edgePotential : potentials.potentials) {
 							if(invalidTransitions[invalidIndex + state])
@@ -178,11 +204,19 @@ public class SemiMarkovViterbi implements CRFInference {
 					short[] indices = nodeEvals.index;
 					float[] vals = nodeEvals.value;
 					int ix = 0;
-					short index = indices[ix];
+					short index;
 					double nodePotential = 0.0;
-					while(index >= 0) {
-						nodePotential += vals[ix] * lambda[index];
-						index = indices[++ix];
+					if(vectorKernels) {
+						ix = PotentialKernels.length(indices);
+						nodePotential = PotentialKernels.dot(indices, vals, lambda, ix);
+						index = indices[ix];
+					}
+					else {
+						index = indices[ix];
+						while(index >= 0) {
+							nodePotential += vals[ix] * lambda[index];
+							index = indices[++ix];
+						}
 					}
 					Assert.a(index != Short.MIN_VALUE, "Node lengths should only be returned in the cache if they are valid");
 
@@ -227,17 +261,25 @@ public class SemiMarkovViterbi implements CRFInference {
 								// If the cache processor does have edge evaluations, then ignore the illegal transitions matrix
 								// and update the expval using the edge evaluations
 								FeatureEvaluation potEvals = edgeEvals[edgeIx];
-								indices = potEvals.index;
-								vals = potEvals.value;
-								ix = 0;
-								index = indices[i];
-								if(index == Short.MIN_VALUE) {
-									log.info("SHORT.MIN_VALUE");
-									continue;
+								if(vectorKernels) {
+									edgeVal = PotentialKernels.potential(potEvals, lambda);
+									if(edgeVal == Double.NEGATIVE_INFINITY) {
+										continue;
+									}
 								}
-								while(index != -1) {
-									edgeVal += vals[ix] * lambda[index];
-									index = indices[++ix];
+								else {
+									indices = potEvals.index;
+									vals = potEvals.value;
+									ix = 0;
+									index = indices[i];
+									if(index == Short.MIN_VALUE) {
+										log.info("SHORT.MIN_VALUE");
+										continue;
+									}
+									while(index != -1) {
+										edgeVal += vals[ix] * lambda[index];
+										index = indices[++ix];
+									}
 								}
 							}
 							
@@ -338,14 +380,19 @@ public class SemiMarkovViterbi implements CRFInference {
 
 			// Add up all features for this potential.
 			FeatureEvaluation potEvals = evals[potential];
-			short[] indices = potEvals.index;
-			float[] vals = potEvals.value;
-			int i = 0;
-			short index = indices[i];
-			while(index != -1) {
-				// An invalid potential is indicated by a feature value of Short.MAX_VALUE
-				features += (index == Short.MIN_VALUE) ? Double.NEGATIVE_INFINITY : vals[i]*lambda[index]; 
-				index = indices[++i];
+			if(vectorKernels) {
+				features += PotentialKernels.potential(potEvals, lambda);
+			}
+			else {
+				short[] indices = potEvals.index;
+				float[] vals = potEvals.value;
+				int i = 0;
+				short index = indices[i];
+				while(index != -1) {
+					// An invalid potential is indicated by a feature value of Short.MAX_VALUE
+					features += (index == Short.MIN_VALUE) ? Double.NEGATIVE_INFINITY : vals[i]*lambda[index]; 
+					index = indices[++i];
+				}
 			}
 			
 			if(potential < modelInfo.nStates) {
@@ -12,6 +12,7 @@ import calhoun.analysis.crf.CRFTraining;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.util.Assert;
+import calhoun.util.ConfigException;
 import calhoun.util.ErrorException;
 
 /** uses a L-BFGS algorithm to optimize the objective function.  This is the algorithm normally used. 
@@ -26,6 +27,9 @@ import calhoun.util.ErrorException;
  * <ul>
  * <li> <b><code>debugLevel</code></b> - explicitly sets the debug level in the underlying L-BFGS solver.  Normally it is set based
  * on the debug level for this object. 
+ * <li> <b><code>evaluationCacheSize</code></b> - number of recent objective function evaluations to remember.  The line search sometimes asks
+ * for the objective at a weight vector that was already evaluated, and these requests are answered from the cache instead of doing
+ * another pass over the training data.  The number of evaluations saved is written to the log.  Set to 0 to disable.  Defaults to 4.
  * <li> <b><code>epsForConvergence</code></b> - epsilon value used to determine when to halt the optimzation and declase convergence.  Defaults
  * to 0.0001.
  * <li> <b><code>fixFirstWeight</code></b> - if true, the first feature weight will be fixed at 1.0 and will not be allowed to change 
@@ -57,6 +61,7 @@ public class StandardOptimizer implements CRFTraining {
 	boolean fixFirstWeight = false;
 	double quadraticRegularization = 0.0;
 	int unchangedObjective = 5;
+	int evaluationCacheSize = 4;
 	
 	public double[] optimize(ModelManager fm, List<? extends TrainingSequence<?>> data) {
 		gradFunc.setTrainingData(fm, data);
@@ -94,6 +99,7 @@ public class StandardOptimizer implements CRFTraining {
 			System.arraycopy(starts, 0, lambda, 0, lambda.length);
 		}
 
+		EvaluationCache cache = new EvaluationCache(evaluationCacheSize, nFeatures);
 		int icall = 0;
 		float lastObjective = Float.NaN;
 		int runningObjective = 0;
@@ -102,17 +108,25 @@ public class StandardOptimizer implements CRFTraining {
 				lambda[0] = 1.0;
 			}
 			
-			try {
-				f = gradFunc.apply(lambda, grad);
+			if(cache.lookup(lambda, grad)) {
+				f = cache.value;
+				log.debug("Objective function value for iteration "+icall+" taken from the evaluation cache.");
 			}
-			catch(RuntimeException ex) {
-				if(requireConvergence) {
-					throw ex;
-				} else {
-					log.warn("Exception thrown while calculating gradient.  Possible numeric problem.");
-					log.warn(ex);
-					return lambda;
+			else {
+				try {
+					f = gradFunc.apply(lambda, grad);
 				}
+				catch(RuntimeException ex) {
+					if(requireConvergence) {
+						throw ex;
+					} else {
+						log.warn("Exception thrown while calculating gradient.  Possible numeric problem.");
+						log.warn(ex);
+						logCacheStats(cache);
+						return lambda;
+					}
+				}
+				cache.store(lambda, f, grad);
 			}
 
 			// Take the gradient, normalize by the total length of the sequence, and make it a minimization instead of a maximization problem.
@@ -148,6 +162,7 @@ public class StandardOptimizer implements CRFTraining {
 				log.info("Objective value unchanged: "+lastObjective+" returned "+runningObjective+" times.");
 				if(runningObjective > 0 && runningObjective >= unchangedObjective) {
 					log.warn("Same objective value: "+lastObjective+" returned "+(unchangedObjective+1)+" times.  Assuming convergence.");
+					logCacheStats(cache);
 					return lambda;
 				}
 			}
@@ -179,12 +194,64 @@ public class StandardOptimizer implements CRFTraining {
 			}
 			icall += 1;
 		} while ((iflag[0] != 0) && (icall < maxIters));
+		logCacheStats(cache);
 		if(requireConvergence && !(iflag[0] == 0)) {
 			throw new ErrorException("Convergence not reached.");
 		}
 		return lambda;
 	}
 
+	void logCacheStats(EvaluationCache cache) {
+		int total = cache.hits + cache.misses;
+		log.info(String.format("Objective function requested %d times.  %d full evaluations, %d answered from the evaluation cache.", total, cache.misses, cache.hits));
+	}
+
+	/** remembers the objective value and gradient for the last few weight vectors evaluated.  Weight vectors must match exactly. */
+	static final class EvaluationCache {
+		final double[][] weights;
+		final double[][] grads;
+		final double[] values;
+		final int[] hashes;
+		int size = 0;
+		int next = 0;
+		int hits = 0;
+		int misses = 0;
+		double value;
+
+		EvaluationCache(int capacity, int nFeatures) {
+			weights = new double[capacity][nFeatures];
+			grads = new double[capacity][nFeatures];
+			values = new double[capacity];
+			hashes = new int[capacity];
+		}
+
+		/** if the weights have been evaluated before, copies the gradient into grad, sets value, and returns true. */
+		boolean lookup(double[] lambda, double[] grad) {
+			int hash = Arrays.hashCode(lambda);
+			for(int i=0; i<size; ++i) {
+				if(hashes[i] == hash && Arrays.equals(weights[i], lambda)) {
+					System.arraycopy(grads[i], 0, grad, 0, grad.length);
+					value = values[i];
+					++hits;
+					return true;
+				}
+			}
+			++misses;
+			return false;
+		}
+
+		void store(double[] lambda, double f, double[] grad) {
+			if(values.length == 0)
+				return;
+			System.arraycopy(lambda, 0, weights[next], 0, lambda.length);
+			System.arraycopy(grad, 0, grads[next], 0, grad.length);
+			values[next] = f;
+			hashes[next] = Arrays.hashCode(lambda);
+			next = (next+1) % values.length;
+			size = Math.min(size+1, values.length);
+		}
+	}
+
 	/** returns the configured objective function gradient which will be 
 	 * used by the optimizer during the training process.
 	 * @return the configured objective function gradient
@@ -275,4 +342,14 @@ public class StandardOptimizer implements CRFTraining {
 	public void setUnchangedObjective(int unchangedObjective) {
 		this.unchangedObjective = unchangedObjective;
 	}
+
+	public int getEvaluationCacheSize() {
+		return evaluationCacheSize;
+	}
+
+	public void setEvaluationCacheSize(int evaluationCacheSize) {
+		if(evaluationCacheSize < 0)
+			throw new ConfigException("evaluationCacheSize must be 0 or more.  Got "+evaluationCacheSize);
+		this.evaluationCacheSize = evaluationCacheSize;
+	}
 }
@@ -0,0 +1,274 @@
+package calhoun.analysis.crf.solver;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import calhoun.analysis.crf.CRFBatchObjectiveFunctionGradient;
+import calhoun.analysis.crf.CRFObjectiveFunctionGradient;
+import calhoun.analysis.crf.CRFTraining;
+import calhoun.analysis.crf.ModelManager;
+import calhoun.analysis.crf.io.TrainingSequence;
+import calhoun.util.Assert;
+import calhoun.util.ConfigException;
+import calhoun.util.ErrorException;
+
+/** uses mini-batch stochastic gradient ascent to optimize the objective function.  Each step evaluates the objective function and
+ * its gradient on a small random batch of training sequences, so many steps are taken for each pass over the training data.  This
+ * gets to reasonable weights much faster than the {@link StandardOptimizer} on large training sets, but does not converge
+ * tightly.  It is usually used as the <code>firstPass</code> of a {@link TwoPassOptimizer} with a {@link StandardOptimizer}
+ * as the second pass.
+ * <p>
+ * This optimizer requires one property to be set:
+ * <p>
+ * <b><code>objectiveFunction</code></b> - This is the gradient function that the optimizer will use.  It must be a reference to a bean
+ * that implements the {@link CRFBatchObjectiveFunctionGradient} interface.
+ * <p>
+ * In addition, it has several optional properties that allow control over the optimization process:
+ * <ul>
+ * <li> <b><code>batchSize</code></b> - number of training sequences in each batch.  Defaults to 10.
+ * <li> <b><code>epsForConvergence</code></b> - the optimization stops when the average objective value over an epoch,
+ * weighted by the number of positions in each batch, changes by less than this amount.  Defaults to 0.00001.
+ * <li> <b><code>fixFirstWeight</code></b> - if true, the first feature weight will be fixed at 1.0 and will not be allowed to change
+ * during the optimization
+ * <li> <b><code>learningRate</code></b> - the initial step size.  Defaults to 0.1
+ * <li> <b><code>learningRateDecay</code></b> - for <code>sgd</code>, the step size at step t is <code>learningRate/(1+t*learningRateDecay)</code>.
+ * Defaults to 0.01
+ * <li> <b><code>maxEpochs</code></b> - the maximum number of passes through the training data.  Defaults to 20.
+ * <li> <b><code>method</code></b> - the update rule, one of <code>sgd</code>, <code>adagrad</code> or <code>adam</code>.  Defaults to <code>adagrad</code>.
+ * <li> <b><code>quadraticRegularization</code></b> - if set to a nonzero value, regularizes feature weights by imposing
+ * a penalty on the objective function based on the absolute sizes of the weights.
+ * <li> <b><code>seed</code></b> - seed for the random number generator used to shuffle the training sequences.  Defaults to 0, so
+ * runs are reproducible.
+ * <li> <b><code>starts</code></b> - an initial set of guesses at feature weights.  Defaults to 1.0
+ * </ul>
+ */
+public class StochasticOptimizer implements CRFTraining {
+	private static final Log log = LogFactory.getLog(StochasticOptimizer.class);
+
+	static final double EPSILON = 1e-8;
+	static final double ADAM_BETA1 = 0.9;
+	static final double ADAM_BETA2 = 0.999;
+
+	// Configuration
+	CRFBatchObjectiveFunctionGradient gradFunc;
+	int batchSize = 10;
+	int maxEpochs = 20;
+	String method = "adagrad";
+	double learningRate = 0.1;
+	double learningRateDecay = 0.01;
+	double epsForConvergence = 0.00001;
+	double quadraticRegularization = 0.0;
+	boolean fixFirstWeight = false;
+	long seed = 0;
+	double[] starts = null;
+
+	public double[] optimize(ModelManager fm, List<? extends TrainingSequence<?>> data) {
+		Assert.a(gradFunc != null, "No objective function configured for the StochasticOptimizer.");
+		Assert.a(batchSize > 0, "Batch size must be positive: ", batchSize);
+		boolean sgd = "sgd".equals(method);
+		boolean adam = "adam".equals(method);
+		if(!(sgd || adam || "adagrad".equals(method))) {
+			throw new ConfigException("Unknown stochastic optimization method: "+method+".  Must be sgd, adagrad or adam.");
+		}
+
+		gradFunc.setTrainingData(fm, data);
+		int nFeatures = fm.getNumFeatures();
+		int nSeqs = gradFunc.getNumSequences();
+
+		double[] lambda = new double[nFeatures];
+		double[] grad = new double[nFeatures];
+		if(starts == null) {
+			Arrays.fill(lambda, 1.0);
+		}
+		else {
+			Assert.a(starts.length == lambda.length, "Received ", starts.length, " initial weights.  Expected: ", lambda.length);
+			System.arraycopy(starts, 0, lambda, 0, lambda.length);
+		}
+
+		// Accumulated squared gradients for adagrad, moments for adam
+		double[] first = new double[nFeatures];
+		double[] second = new double[nFeatures];
+
+		int[] order = new int[nSeqs];
+		for(int i=0; i<nSeqs; ++i) {
+			order[i] = i;
+		}
+		Random random = new Random(seed);
+		int nBatches = (nSeqs + batchSize - 1)/batchSize;
+		log.info("Stochastic optimization using "+method+" with "+nBatches+" batches of "+batchSize+" out of "+nSeqs+" sequences.");
+
+		int step = 0;
+		double lastEpochObjective = Double.NaN;
+		for(int epoch = 0; epoch < maxEpochs; ++epoch) {
+			shuffle(order, random);
+			double epochObjective = 0.0;
+			int epochPositions = 0;
+			for(int batch = 0; batch < nBatches; ++batch) {
+				int start = batch*batchSize;
+				int[] sequences = new int[Math.min(batchSize, nSeqs - start)];
+				System.arraycopy(order, start, sequences, 0, sequences.length);
+
+				if(fixFirstWeight) {
+					lambda[0] = 1.0;
+				}
+				double f = gradFunc.apply(lambda, grad, sequences);
+				if(Double.isNaN(f) || Double.isInfinite(f)) {
+					throw new ErrorException("Objective function returned "+f+" at epoch "+epoch+" batch "+batch+".  Try a smaller learningRate.");
+				}
+
+				// Subtract the regularization term quadraticRegularization*sum(lambda_i^2), we are maximizing
+				for(int j=0; j<nFeatures; ++j) {
+					f -= quadraticRegularization*lambda[j]*lambda[j];
+					grad[j] -= 2*quadraticRegularization*lambda[j];
+				}
+				// The objective is normalized per position, so weight each batch by its positions
+				int positions = 0;
+				for(int seq : sequences) {
+					positions += data.get(seq).length();
+				}
+				epochObjective += f*positions;
+				epochPositions += positions;
+
+				++step;
+				for(int j = fixFirstWeight ? 1 : 0; j<nFeatures; ++j) {
+					double g = grad[j];
+					if(sgd) {
+						lambda[j] += learningRate/(1+step*learningRateDecay) * g;
+					}
+					else if(adam) {
+						first[j] = ADAM_BETA1*first[j] + (1-ADAM_BETA1)*g;
+						second[j] = ADAM_BETA2*second[j] + (1-ADAM_BETA2)*g*g;
+						double mHat = first[j]/(1-Math.pow(ADAM_BETA1, step));
+						double vHat = second[j]/(1-Math.pow(ADAM_BETA2, step));
+						lambda[j] += learningRate * mHat/(Math.sqrt(vHat) + EPSILON);
+					}
+					else {
+						second[j] += g*g;
+						lambda[j] += learningRate * g/(Math.sqrt(second[j]) + EPSILON);
+					}
+				}
+			}
+			epochObjective /= epochPositions;
+			log.info(String.format("Epoch: %d Avg. objective: %f", epoch, epochObjective));
+			if(Math.abs(epochObjective - lastEpochObjective) < epsForConvergence) {
+				log.info("Objective changed by less than "+epsForConvergence+" over an epoch.  Assuming convergence.");
+				break;
+			}
+			lastEpochObjective = epochObjective;
+		}
+		if(fixFirstWeight) {
+			lambda[0] = 1.0;
+		}
+		return lambda;
+	}
+
+	static void shuffle(int[] order, Random random) {
+		for(int i=order.length-1; i>0; --i) {
+			int j = random.nextInt(i+1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+	}
+
+	/** returns the configured objective function gradient which will be
+	 * used by the optimizer during the training process.
+	 * @return the configured objective function gradient
+	 */
+	public CRFObjectiveFunctionGradient getObjectiveFunction() {
+		return gradFunc;
+	}
+
+	/** sets the objective function gradient.  Called automatically during configuration.  The objective function must
+	 * implement {@link CRFBatchObjectiveFunctionGradient}. */
+	public void setObjectiveFunction(CRFObjectiveFunctionGradient objectiveFunction) {
+		if(!(objectiveFunction instanceof CRFBatchObjectiveFunctionGradient)) {
+			throw new ConfigException("StochasticOptimizer requires an objective function that supports batches.  "+objectiveFunction.getClass().getName()+" does not.");
+		}
+		this.gradFunc = (CRFBatchObjectiveFunctionGradient) objectiveFunction;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public double getEpsForConvergence() {
+		return epsForConvergence;
+	}
+
+	public void setEpsForConvergence(double epsForConvergence) {
+		this.epsForConvergence = epsForConvergence;
+	}
+
+	public boolean isFixFirstWeight() {
+		return fixFirstWeight;
+	}
+
+	public void setFixFirstWeight(boolean fixFirstWeight) {
+		this.fixFirstWeight = fixFirstWeight;
+	}
+
+	public double getLearningRate() {
+		return learningRate;
+	}
+
+	public void setLearningRate(double learningRate) {
+		this.learningRate = learningRate;
+	}
+
+	public double getLearningRateDecay() {
+		return learningRateDecay;
+	}
+
+	public void setLearningRateDecay(double learningRateDecay) {
+		this.learningRateDecay = learningRateDecay;
+	}
+
+	public int getMaxEpochs() {
+		return maxEpochs;
+	}
+
+	public void setMaxEpochs(int maxEpochs) {
+		this.maxEpochs = maxEpochs;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public void setMethod(String method) {
+		this.method = method;
+	}
+
+	public double getQuadraticRegularization() {
+		return quadraticRegularization;
+	}
+
+	public void setQuadraticRegularization(double quadraticRegularization) {
+		this.quadraticRegularization = quadraticRegularization;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public double[] getStarts() {
+		return starts;
+	}
+
+	public void setStarts(double[] starts) {
+		this.starts = starts;
+	}
+}
@@ -0,0 +1,62 @@
+package calhoun.analysis.crf.solver;
+
+import calhoun.analysis.crf.CRFBatchObjectiveFunctionGradient;
+import calhoun.analysis.crf.solver.CacheProcessor.SolverSetup;
+import calhoun.util.Assert;
+
+/** helper functions for objective functions that implement {@link CRFBatchObjectiveFunctionGradient}.  A batch is an array of
+ * sequence indices.  A <code>null</code> batch stands for the whole training set. */
+public final class TrainingBatch {
+
+	private TrainingBatch() {
+	}
+
+	/** returns the number of sequences in a batch.
+	 * @param setup the solver setup of the cache processor
+	 * @param sequences the batch, or null for all sequences
+	 * @return number of sequences in the batch */
+	public static int size(SolverSetup setup, int[] sequences) {
+		return sequences == null ? setup.nSeqs : sequences.length;
+	}
+
+	/** returns the index of the i'th sequence of a batch.
+	 * @param sequences the batch, or null for all sequences
+	 * @param i position in the batch
+	 * @return index of the training sequence */
+	public static int sequence(int[] sequences, int i) {
+		return sequences == null ? i : sequences[i];
+	}
+
+	/** returns the total number of positions in the sequences of a batch.
+	 * @param setup the solver setup of the cache processor
+	 * @param sequences the batch, or null for all sequences
+	 * @return number of positions */
+	public static int positions(SolverSetup setup, int[] sequences) {
+		if(sequences == null)
+			return setup.totalPositions;
+		int total = 0;
+		for(int seq : sequences) {
+			total += setup.seqOffsets[seq + 1] - setup.seqOffsets[seq];
+		}
+		return total;
+	}
+
+	/** returns the feature sums along the training paths of the sequences in a batch.
+	 * @param cacheProcessor the cache processor holding the training data
+	 * @param sequences the batch, or null for all sequences
+	 * @return an array with the sum of each feature over the batch */
+	public static double[] featureSums(CacheProcessor cacheProcessor, int[] sequences) {
+		if(sequences == null)
+			return cacheProcessor.getFeatureSums();
+		double[][] seqFeatureSums = cacheProcessor.getSequenceFeatureSums();
+		Assert.a(seqFeatureSums != null, "Cache processor ", cacheProcessor.getClass().getName(), " does not compute per sequence feature sums.");
+		double[] sums = new double[cacheProcessor.getSolverSetup().nFeatures];
+		for(int seq : sequences) {
+			double[] seqSums = seqFeatureSums[seq];
+			for(int j = 0; j < sums.length; ++j) {
+				sums[j] += seqSums[j];
+			}
+		}
+		return sums;
+	}
+}
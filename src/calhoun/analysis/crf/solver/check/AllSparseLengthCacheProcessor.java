@@ -85,6 +85,7 @@ public class AllSparseLengthCacheProcessor extends CacheProcessorBasic {
 		val = cache.val;
 
 		featureSums = cache.featureSums;
+		seqFeatureSums = cache.seqFeatureSums;
 		starts = cache.starts;
 		
 		evaluateConstantFeatures(false);
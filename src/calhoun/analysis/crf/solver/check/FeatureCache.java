@@ -33,6 +33,10 @@ public class FeatureCache extends TransitionInfo {
 	
 	/// Cached values of the sums of each feature value through the whole training set.
 	public double[] featureSums;
+	/// Cached values of the sums of each feature value through each training sequence.
+	public double[][] seqFeatureSums;
+	/// Index of the sequence currently being cached.
+	protected int currentSeq;
 	/// Index into the feature arrays of the first feature for each postion of each sequence.
 	public int[] starts;
 	/// Index into the starts array of the first position of each sequence.
@@ -86,6 +90,7 @@ public class FeatureCache extends TransitionInfo {
 		public CachedFeatureList() {
 			// Allocate cache
 			featureSums = new double[fm.getNumFeatures()];
+			seqFeatureSums = new double[nSeqs][fm.getNumFeatures()];
 
 			seqOffsets = new int[nSeqs+1];
 			starts = new int[totalPositions + 1];
@@ -114,6 +119,7 @@ public class FeatureCache extends TransitionInfo {
 				longestSeq = Math.max(seqLen, longestSeq);
 
 				seqOffsets[i + 1] = seqOffsets[i] + seqLen;
+				currentSeq = i;
 				for (int pos = 0; pos < seqLen; ++pos) {
 					cachePosition(seq, i, pos);
 				}
@@ -185,6 +191,7 @@ public class FeatureCache extends TransitionInfo {
 		public void addFeature(int index, double doubleVal) {
 			if (computeSum) {
 				featureSums[index] += doubleVal;
+				seqFeatureSums[currentSeq][index] += doubleVal;
 			}
 			float value = (float) doubleVal;
 			// Check if this is the next constant feature we expect
@@ -106,6 +106,7 @@ public class FeatureCacheLength extends FeatureCache {
 		for (int i = 0; i < nSeqs; ++i) {
 			TrainingSequence seq = data.get(i);
 			int seqLen = seq.length();
+			currentSeq = i;
 
 			short lastState = -1;
 			short length = 0; 			
@@ -285,6 +286,7 @@ public class FeatureCacheLength extends FeatureCache {
 				lengthVals[currentFeature] = val;
 				if(computeSums) {
 					featureSums[index] += val;
+					seqFeatureSums[currentSeq][index] += val;
 				}
 				//log.info(String.format("Caching length feature: Lb: %d Ix: %d Pot: %d Val: %f", lookback, featureList.getIndex(i), potential, lengthVals[currentFeature]));
 				++currentFeature;
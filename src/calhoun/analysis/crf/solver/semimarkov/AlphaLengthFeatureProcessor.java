@@ -10,6 +10,7 @@ import org.apache.commons.logging.LogFactory;
 
 import calhoun.analysis.crf.solver.LogFiles;
 import calhoun.analysis.crf.solver.LookbackBuffer;
+import calhoun.analysis.crf.solver.PotentialKernels;
 import calhoun.analysis.crf.solver.CacheProcessor.FeatureEvaluation;
 import calhoun.analysis.crf.solver.CacheProcessor.LengthFeatureEvaluation;
 import calhoun.analysis.crf.solver.CacheProcessor.SolverSetup;
@@ -30,11 +31,13 @@ final class AlphaLengthFeatureProcessor {
 	double[] stableState;
 	SolverSetup modelInfo;
 	final LogFiles logs;
+	final boolean vectorKernels;
 	
 	public AlphaLengthFeatureProcessor(CleanMaximumLikelihoodSemiMarkovGradient parent) {
 		this.parent = parent;
 		this.modelInfo = parent.modelInfo;
 		this.logs = parent.logs;
+		this.vectorKernels = parent.vectorKernels;
 	}
 	
 	/**
@@ -63,7 +66,10 @@ final class AlphaLengthFeatureProcessor {
 				Arrays.fill(parent.nextBuffer.stableState, 0.0);
 			} else {
 				parent.cacheMi(seqNum, parent.nextBuffer.mi, stableState, parent.nextBuffer.stableState, pos);
-				alphaUpdated = regularAlphaUpdate(pos, parent.nextBuffer.mi, prevAlpha, alpha);
+				if(vectorKernels && logs.alphaWriter == null)
+					alphaUpdated = kernelAlphaUpdate(parent.nextBuffer.mi, prevAlpha, alpha);
+				else
+					alphaUpdated = regularAlphaUpdate(pos, parent.nextBuffer.mi, prevAlpha, alpha);
 			}
 			
 			// Add the lookback into the array
@@ -136,6 +142,23 @@ final class AlphaLengthFeatureProcessor {
 		return ret;
 	}
 
+	/**
+	 * Same as {@link #regularAlphaUpdate}, but computes the sum over the incoming edges of each state with
+	 * {@link PotentialKernels#sumExpProduct}.  Does not write the alpha trace file.
+	 */
+	private final boolean kernelAlphaUpdate(final double[] mi, final double[] lastAlpha, final double[] newAlpha) {
+		boolean ret = false;
+		for (StatePotentials potentials : modelInfo.statesWithoutLookback) {
+			byte state = potentials.state;
+			double nodeVal = PotentialKernels.sumExpProduct(lastAlpha, potentials.potentials, modelInfo.nStates, modelInfo.transitionFrom, mi);
+			if (potentials.potentials.length > 0 || Math.abs(nodeVal - newAlpha[state]) > 0.0000000000000001) {
+				ret = true;
+			}
+			newAlpha[state] = nodeVal;
+		}
+		return ret;
+	}
+
 	/** Updates an alpha entry with a weighted sum of features values for a given potential */
 	private final void lengthAlpha(final int seqNum, final int pos) {
 		parent.cacheProcessor.evaluateSegmentsEndingAt(seqNum, pos);
@@ -164,12 +187,20 @@ final class AlphaLengthFeatureProcessor {
 				short[] indices = nodeEvals.index;
 				float[] vals = nodeEvals.value;
 				int ix = 0;
-				short index = indices[ix];
+				short index;
 				double stableValue = stableState[toNode] - buffer.stableState[toNode];
 				double nodePotential = stableValue;
-				while(index >= 0) {
-					nodePotential += vals[ix] * parent.lambda[index];
-					index = indices[++ix];
+				if(vectorKernels) {
+					ix = PotentialKernels.length(indices);
+					nodePotential += PotentialKernels.dot(indices, vals, parent.lambda, ix);
+					index = indices[ix];
+				}
+				else {
+					index = indices[ix];
+					while(index >= 0) {
+						nodePotential += vals[ix] * parent.lambda[index];
+						index = indices[++ix];
+					}
 				}
 				if(debug)
 					Assert.a(index != Short.MIN_VALUE, "Node lengths should only be returned in the cache if they are valid");
@@ -220,16 +251,24 @@ final class AlphaLengthFeatureProcessor {
 							// If the cache processor does have edge evaluations, then ignore the illegal transitions matrix
 							// and update the expval using the edge evaluations
 							FeatureEvaluation potEvals = edgeEvals[edgeIx];
-							indices = potEvals.index;
-							vals = potEvals.value;
-							ix = 0;
-							index = indices[i];
-							while(index >= 0) {
-								edgeVal += vals[ix] * parent.lambda[index];
-								index = indices[++ix];
+							if(vectorKernels) {
+								edgeVal = PotentialKernels.potential(potEvals, parent.lambda);
+								if(edgeVal == Double.NEGATIVE_INFINITY) {
+									continue;
+								}
 							}
-							if(index == Short.MIN_VALUE) {
-								continue;
+							else {
+								indices = potEvals.index;
+								vals = potEvals.value;
+								ix = 0;
+								index = indices[i];
+								while(index >= 0) {
+									edgeVal += vals[ix] * parent.lambda[index];
+									index = indices[++ix];
+								}
+								if(index == Short.MIN_VALUE) {
+									continue;
+								}
 							}
 						}
 						
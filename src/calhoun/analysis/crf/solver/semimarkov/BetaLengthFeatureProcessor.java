@@ -7,6 +7,7 @@ import org.apache.commons.logging.LogFactory;
 
 import calhoun.analysis.crf.solver.LogFiles;
 import calhoun.analysis.crf.solver.LookbackBuffer;
+import calhoun.analysis.crf.solver.PotentialKernels;
 import calhoun.analysis.crf.solver.CacheProcessor.FeatureEvaluation;
 import calhoun.analysis.crf.solver.CacheProcessor.LengthFeatureEvaluation;
 import calhoun.analysis.crf.solver.CacheProcessor.SolverSetup;
@@ -23,6 +24,7 @@ class BetaLengthFeatureProcessor {
 	final CleanMaximumLikelihoodSemiMarkovGradient parent;
 	final SolverSetup modelInfo;
 	final LogFiles logs;
+	final boolean vectorKernels;
 	
 	int seqOffset;
 
@@ -42,6 +44,7 @@ class BetaLengthFeatureProcessor {
 		this.parent = parent;
 		this.modelInfo = parent.modelInfo;
 		this.logs = parent.logs;
+		this.vectorKernels = parent.vectorKernels;
 
 		nodeProb = new double[modelInfo.nStates];
 	}
@@ -320,10 +323,18 @@ class BetaLengthFeatureProcessor {
 				short[] indices = nodeEvals.index;
 				float[] vals = nodeEvals.value;
 				int ix = 0;
-				short index = indices[ix];
-				while(index >= 0) {
-					nodePotential += vals[ix] * parent.lambda[index];
-					index = indices[++ix];
+				short index;
+				if(vectorKernels) {
+					ix = PotentialKernels.length(indices);
+					nodePotential += PotentialKernels.dot(indices, vals, parent.lambda, ix);
+					index = indices[ix];
+				}
+				else {
+					index = indices[ix];
+					while(index >= 0) {
+						nodePotential += vals[ix] * parent.lambda[index];
+						index = indices[++ix];
+					}
 				}
 				if(debug)
 					Assert.a(index != Short.MIN_VALUE, "Node lengths should only be returned in the cache if they are valid.  They can be invalid because a node is invalid or a self-transition edge is invalid.");
@@ -358,16 +369,24 @@ class BetaLengthFeatureProcessor {
 							// If the cache processor does have edge evaluations, then ignore the illegal transitions matrix
 							// and update the expval using the edge evaluations
 							FeatureEvaluation potEvals = edgeEvals[edgeIx];
-							indices = potEvals.index;
-							vals = potEvals.value;
-							ix = 0;
-							index = indices[i];
-							while(index >= 0) {
-								edgeVal += vals[ix] * parent.lambda[index];
-								index = indices[++ix];
+							if(vectorKernels) {
+								edgeVal = PotentialKernels.potential(potEvals, parent.lambda);
+								if(edgeVal == Double.NEGATIVE_INFINITY) {
+									continue;
+								}
 							}
-							if(index == Short.MIN_VALUE) {
-								continue;
+							else {
+								indices = potEvals.index;
+								vals = potEvals.value;
+								ix = 0;
+								index = indices[i];
+								while(index >= 0) {
+									edgeVal += vals[ix] * parent.lambda[index];
+									index = indices[++ix];
+								}
+								if(index == Short.MIN_VALUE) {
+									continue;
+								}
 							}
 						}
 
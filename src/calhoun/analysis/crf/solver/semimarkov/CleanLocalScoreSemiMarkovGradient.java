@@ -9,6 +9,7 @@ import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.analysis.crf.scoring.SimScoreMaxStateAgreement;
 import calhoun.analysis.crf.solver.CacheProcessor;
 import calhoun.analysis.crf.solver.LookbackBuffer;
+import calhoun.analysis.crf.solver.TrainingBatch;
 import calhoun.analysis.crf.solver.CacheProcessor.FeatureEvaluation;
 import calhoun.analysis.crf.solver.CacheProcessor.LengthFeatureEvaluation;
 import calhoun.util.Assert;
@@ -89,7 +90,7 @@ public class CleanLocalScoreSemiMarkovGradient extends CleanMaximumLikelihoodSem
 	}
 
 	@Override
-	public double apply(double[] param, double[] grad) {
+	public double apply(double[] param, double[] grad, int[] sequences) {
 		log.debug(String.format("Beginning It: %d Weights: %s", iter, ColtUtil.format(param)));
 		lambda = param;
 		double[] scoreFeatureProductExpectation = new double[grad.length];
@@ -99,7 +100,9 @@ public class CleanLocalScoreSemiMarkovGradient extends CleanMaximumLikelihoodSem
 		try {
 			// Iterate through sequences
 			logs.open();
-			for (int i = 0; i < modelInfo.nSeqs; ++i) {
+			int nBatch = TrainingBatch.size(modelInfo, sequences);
+			for (int b = 0; b < nBatch; ++b) {
+				int i = TrainingBatch.sequence(sequences, b);
 				Arrays.fill(expects, 0);
 
 				int len = modelInfo.seqOffsets[i + 1] - modelInfo.seqOffsets[i];
@@ -124,10 +127,11 @@ public class CleanLocalScoreSemiMarkovGradient extends CleanMaximumLikelihoodSem
 			}
 
 			// Normalize by the number of positions
+			int positions = TrainingBatch.positions(modelInfo, sequences);
 			for(int j = 0; j<modelInfo.nFeatures; ++j) {
-				grad[j] = grad[j]/modelInfo.totalPositions; 
+				grad[j] = grad[j]/positions; 
 			}
-			result = result/modelInfo.totalPositions; 
+			result = result/positions; 
 			Assert.a(!Double.isNaN(result));
 			
 			if(debug) {
@@ -6,13 +6,15 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import calhoun.analysis.crf.CRFObjectiveFunctionGradient;
+import calhoun.analysis.crf.CRFBatchObjectiveFunctionGradient;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.analysis.crf.solver.CacheProcessor;
 import calhoun.analysis.crf.solver.LogFiles;
 import calhoun.analysis.crf.solver.LookbackBuffer;
+import calhoun.analysis.crf.solver.PotentialKernels;
 import calhoun.analysis.crf.solver.RecyclingBuffer;
+import calhoun.analysis.crf.solver.TrainingBatch;
 import calhoun.analysis.crf.solver.CacheProcessor.FeatureEvaluation;
 import calhoun.analysis.crf.solver.CacheProcessor.LengthFeatureEvaluation;
 import calhoun.analysis.crf.solver.CacheProcessor.SolverSetup;
@@ -35,8 +37,10 @@ import calhoun.util.ColtUtil;
  * <li> <b><code>expectLengthFile</code></b> - computation of expected values for each semi-Markov feature  
  * <li> <b><code>nodeMarginalFile</code></b> - computation of marginal probability of each state at each position 
  * </ul>
+ * Setting <b><code>vectorKernels</code></b> switches the weighted feature sums and the forward sums over incoming edges to the
+ * unrolled loops in {@link PotentialKernels}.  These are faster but may differ from the default loops in the last bits.
  * */
-public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFunctionGradient {
+public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFBatchObjectiveFunctionGradient {
 	static final Log log = LogFactory.getLog(CleanMaximumLikelihoodSemiMarkovGradient.class);
 	public static final boolean debug = log.isDebugEnabled();
 	public static final double ASSERTION_TOLERANCE = 0.0001;
@@ -75,6 +79,8 @@ public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFun
 	double zInv;
 	double[] expects;
 
+	boolean vectorKernels = false;
+
 	AlphaLengthFeatureProcessor alphaProcessor; 
 	BetaLengthFeatureProcessor betaProcessor;
 	
@@ -115,7 +121,15 @@ public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFun
 		starterAlpha = new double[modelInfo.nStates];
 	}
 
+	public int getNumSequences() {
+		return modelInfo.nSeqs;
+	}
+
 	public double apply(double[] param, double[] grad) {
+		return apply(param, grad, null);
+	}
+
+	public double apply(double[] param, double[] grad, int[] sequences) {
 		log.debug(String.format("Beginning It: %d Weights: %s", iter, ColtUtil.format(param)));
 		logs.open();
 		lambda = param;
@@ -126,7 +140,9 @@ public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFun
 		try {
 			// Iterate through sequences
 			Arrays.fill(expects, 0);
-			for (int i = 0; i < modelInfo.nSeqs; ++i) {
+			int nBatch = TrainingBatch.size(modelInfo, sequences);
+			for (int b = 0; b < nBatch; ++b) {
+				int i = TrainingBatch.sequence(sequences, b);
 				int len = modelInfo.seqOffsets[i + 1] - modelInfo.seqOffsets[i];
 
 				alphaAndBetaPass(i, len);
@@ -136,7 +152,7 @@ public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFun
 			}
 			
 			// sum_j lambda_j F_j(xk, yk)
-			double[] featureSums = cacheProcessor.getFeatureSums();
+			double[] featureSums = TrainingBatch.featureSums(cacheProcessor, sequences);
 			this.featureSums = featureSums;
 			for (int j = 0; j < modelInfo.nFeatures; ++j) {
 				result += featureSums[j] * param[j];
@@ -151,9 +167,10 @@ public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFun
 			Assert.a(exp(result) <= 1.0, "Likelihood is greater than 1.");
 
 			// Normalize by the length of the sequence
-			result = result/modelInfo.totalPositions; 
+			int positions = TrainingBatch.positions(modelInfo, sequences);
+			result = result/positions; 
 			for(int i=0; i<grad.length; ++i) {
-				grad[i] = grad[i]/modelInfo.totalPositions;
+				grad[i] = grad[i]/positions;
 			}
 
 			iter += 1;
@@ -250,17 +267,22 @@ public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFun
 
 			// Add up all features for this potential.
 			FeatureEvaluation potEvals = evals[potential];
-			short[] indices = potEvals.index;
-			float[] vals = potEvals.value;
-			int i = 0;
-			short index = indices[i];
-			while(index >= 0) {
-				// An invalid potential is indicated by a feature value of Short.MAX_VALUE
-				features += vals[i]*lambda[index]; 
-				index = indices[++i];
+			if(vectorKernels) {
+				features += PotentialKernels.potential(potEvals, lambda);
 			}
-			if(index == Short.MIN_VALUE) {
-				features = Double.NEGATIVE_INFINITY; 
+			else {
+				short[] indices = potEvals.index;
+				float[] vals = potEvals.value;
+				int i = 0;
+				short index = indices[i];
+				while(index >= 0) {
+					// An invalid potential is indicated by a feature value of Short.MAX_VALUE
+					features += vals[i]*lambda[index]; 
+					index = indices[++i];
+				}
+				if(index == Short.MIN_VALUE) {
+					features = Double.NEGATIVE_INFINITY; 
+				}
 			}
 				
 			if(potential < modelInfo.nStates) {
@@ -287,11 +309,7 @@ public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFun
 		double factor = exp(NORM_FACTOR * (currentNorm - newNorm));
 		//log.info(factor);
 		//log.info(ColtUtil.format(vec));
-		int len = vec.length;
-		for (int i = 0; i < len; ++i) {
-			if(vec[i] != 0.0)
-				vec[i] *= factor;
-		}
+		PotentialKernels.scale(vec, factor);
 		//log.info(ColtUtil.format(vec));
 	}
 
@@ -416,4 +434,12 @@ public class CleanMaximumLikelihoodSemiMarkovGradient implements CRFObjectiveFun
 	public void setBetaLengthFile(String betaLengthFile) {
 		logs.betaLengthFile = betaLengthFile;
 	}
+
+	public boolean isVectorKernels() {
+		return vectorKernels;
+	}
+
+	public void setVectorKernels(boolean vectorKernels) {
+		this.vectorKernels = vectorKernels;
+	}
 }
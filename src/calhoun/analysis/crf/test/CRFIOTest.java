@@ -1,8 +1,14 @@
 package calhoun.analysis.crf.test;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -10,6 +16,18 @@ import org.apache.commons.logging.LogFactory;
 import calhoun.analysis.crf.Conrad;
 import calhoun.analysis.crf.executables.InputSequenceSubsetter;
 import calhoun.analysis.crf.executables.PartitionRandomlyTrainTestFiles;
+import calhoun.analysis.crf.io.BooleanInputSequence;
+import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.InputSequenceBoolean;
+import calhoun.analysis.crf.io.InputSequenceCharacter;
+import calhoun.analysis.crf.io.InputSequenceComposite;
+import calhoun.analysis.crf.io.InputSequenceInt;
+import calhoun.analysis.crf.io.InputSequenceObject;
+import calhoun.analysis.crf.io.IntInput;
+import calhoun.analysis.crf.io.IntInputSequence;
+import calhoun.analysis.crf.io.IntIntervalInput;
+import calhoun.analysis.crf.io.PackedDnaInputSequence;
+import calhoun.analysis.crf.io.RunLengthInputSequence;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.util.AbstractTestCase;
 import calhoun.util.FileUtil;
@@ -28,6 +46,107 @@ public class CRFIOTest extends AbstractTestCase {
 		assertEquals(s[0][1],"276470");			
 	}
 
+	public void testPrimitiveSequences() throws Exception {
+		IntInputSequence ints = new InputSequenceInt(new int[] {0, 3, 1, 2, 2});
+		IntInputSequence intSub = (IntInputSequence) ints.subSequence(2, 4);
+		assertEquals(3, intSub.length());
+		assertEquals(3, intSub.getInt(0));
+		assertEquals(intSub.getX(2).intValue(), intSub.getInt(2));
+
+		BooleanInputSequence bools = new InputSequenceBoolean(new boolean[] {true, false, true});
+		BooleanInputSequence boolSub = (BooleanInputSequence) bools.subSequence(2, 3);
+		assertFalse(boolSub.getBoolean(0));
+		assertTrue(boolSub.getBoolean(1));
+		assertEquals(boolSub.getX(1).booleanValue(), boolSub.getBoolean(1));
+	}
+
+	public void testRunLengthSequences() throws Exception {
+		int[] data = new int[] {0, 0, 3, 3, 3, 1, 0, 0};
+		RunLengthInputSequence rle = new RunLengthInputSequence(data);
+		assertEquals(4, rle.getNumRuns());
+		for (int i=data.length-1; i>=0; i--) {
+			assertEquals(data[i], rle.getInt(i));
+		}
+		assertEquals(2, rle.nextChange(0));
+		assertEquals(5, rle.nextChange(3));
+		assertEquals(8, rle.nextChange(7));
+		assertEquals(5, new InputSequenceInt(data).nextChange(3));
+
+		IntInputSequence sub = rle.subSequence(4, 7);
+		assertEquals(4, sub.length());
+		assertEquals(3, sub.getInt(0));
+		assertEquals(2, sub.nextChange(0));
+		assertEquals(0, sub.getInt(3));
+
+		assertTrue(Arrays.equals(data, RunLengthInputSequence.fromIntervals(8, new int[] {2, 5}, new int[] {5, 6}, new int[] {3, 1}).getData()));
+		assertTrue(Arrays.equals(data, RunLengthInputSequence.fromIntervals(8, new int[] {2, 5, 4}, new int[] {6, 6, 5}, new int[] {3, 1, 3}).getData()));
+
+		IntIntervalInput reader = new IntIntervalInput();
+		Map<String, InputSequence<?>> seqs = new HashMap<String, InputSequence<?>>();
+		assertTrue(reader.read(new BufferedReader(new StringReader("8\n(3,5,3)(6,6,1)\n")), seqs));
+		IntInputSequence read = (IntInputSequence) seqs.get(reader.getName());
+		assertTrue(Arrays.equals(data, ((RunLengthInputSequence) read).getData()));
+		StringWriter w = new StringWriter();
+		reader.write(w, seqs);
+		assertEquals("8\n(3,5,3)(6,6,1)\n", w.toString());
+
+		IntInput intReader = new IntInput();
+		intReader.setRunLength(true);
+		assertTrue(intReader.read(new BufferedReader(new StringReader("00333100\n")), seqs));
+		assertEquals(4, ((RunLengthInputSequence) seqs.get(intReader.getName())).getNumRuns());
+		w = new StringWriter();
+		intReader.write(w, seqs);
+		assertEquals("00333100\n", w.toString());
+	}
+
+	public void testSubSequenceViews() throws Exception {
+		int[] ints = new int[] {0, 3, 1, 2, 2, 5, 5, 4};
+		InputSequenceInt intSeq = new InputSequenceInt(ints);
+		IntInputSequence intView = (IntInputSequence) intSeq.subSequence(2, 7).subSequence(2, 5);
+		assertEquals(4, intView.length());
+		assertEquals(1, intView.getInt(0));
+		assertEquals(3, intView.nextChange(1));
+		assertEquals(4, intView.nextChange(3));
+		assertTrue(Arrays.equals(new int[] {1, 2, 2, 5}, ((InputSequenceInt) intView).getData()));
+		assertSame(ints, intSeq.getData());
+
+		RunLengthInputSequence rleView = (RunLengthInputSequence) new RunLengthInputSequence(ints).subSequence(2, 7).subSequence(2, 5);
+		assertEquals(3, rleView.getNumRuns());
+		assertEquals(3, rleView.nextChange(1));
+		assertEquals(4, rleView.nextChange(3));
+		assertTrue(Arrays.equals(new int[] {1, 2, 2, 5}, rleView.getData()));
+
+		InputSequenceCharacter chars = (InputSequenceCharacter) new InputSequenceCharacter("ACGTNacgt").subSequence(3, 8).subSequence(2, 4);
+		assertEquals("TNa", chars.getString());
+		assertEquals('N', chars.getX(1).charValue());
+
+		PackedDnaInputSequence packed = new PackedDnaInputSequence("ACGTNNacgtACGTACGTACGTACGTACGTACGTACGTNA");
+		InputSequence<Character> packedView = packed.subSequence(4, 40).subSequence(2, 30);
+		assertEquals(29, packedView.length());
+		for(int i=0; i<packedView.length(); ++i) {
+			assertEquals(packed.getX(i+4), packedView.getX(i));
+			assertEquals(packed.getCode(i+4), ((PackedDnaInputSequence) packedView).getCode(i));
+		}
+
+		InputSequence<String> objects = new InputSequenceObject<String>(new String[] {"a", "b", "c", "d"}).subSequence(2, 4).subSequence(2, 3);
+		assertEquals(2, objects.length());
+		assertEquals("c", objects.getX(0));
+
+		Map<String, InputSequence<?>> components = new HashMap<String, InputSequence<?>>();
+		components.put("int", intSeq);
+		components.put("seq", new InputSequenceCharacter("ACGTNACG"));
+		TrainingSequence<Map<String, Object>> training = new TrainingSequence<Map<String, Object>>(new InputSequenceComposite(components), new int[] {0, 1, 2, 3, 4, 5, 6, 7});
+		TrainingSequence<Map<String, Object>> trainingView = training.subSequence(3, 7).subSequence(2, 4);
+		assertEquals(3, trainingView.length());
+		assertEquals(3, trainingView.getY(0));
+		assertTrue(Arrays.equals(new int[] {3, 4, 5}, trainingView.getY()));
+		assertEquals(5, trainingView.getTrainingComponent("int").getY(2));
+		assertEquals(5, ((IntInputSequence) trainingView.getInputSequence().getComponent("int")).getInt(2));
+		assertEquals('N', ((Character) trainingView.getX(1).get("seq")).charValue());
+		trainingView.setY(0, 7);
+		assertEquals(7, training.getY(3));
+	}
+
 	public void testInputSequenceReader() throws Exception {
 		String configFile = "test/input/test_subsetting_configfile.xml";
 		String inputFile = "test/input/test_subsetting_inputfile.txt";
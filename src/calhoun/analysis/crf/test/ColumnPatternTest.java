@@ -0,0 +1,200 @@
+package calhoun.analysis.crf.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import calhoun.analysis.crf.features.supporting.phylogenetic.ColumnPatternHistogram;
+import calhoun.analysis.crf.features.supporting.phylogenetic.EvolutionaryModel;
+import calhoun.analysis.crf.features.supporting.phylogenetic.Kimura80Model;
+import calhoun.analysis.crf.io.AlignmentTracks;
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence;
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence.ColumnPatterns;
+import calhoun.util.AbstractTestCase;
+
+public class ColumnPatternTest extends AbstractTestCase {
+
+	static MultipleAlignmentInputSequence alignment() {
+		List<String> species = Arrays.asList("cnDT", "cnDS", "cnAB", "cnBB", "cnBV");
+		List<String> consensuses = Arrays.asList(
+				"ACGTA-CGTAACGT",
+				"ACGTA-CGTNACGA",
+				"ACGTAACG-AAcgt",
+				"ACCTAACGTAACGT",
+				"ACGTA-CGTA-CGT");
+		return new MultipleAlignmentInputSequence(species, consensuses, "cnDT", ExampleTrees.crypto5());
+	}
+
+	public void testPatterns() throws Exception {
+		MultipleAlignmentInputSequence aln = alignment();
+		assertEquals(13, aln.length());
+		ColumnPatterns patterns = aln.getColumnPatterns();
+		assertSame(patterns, aln.getColumnPatterns());
+
+		// Columns 0 and 4 are the same, and lower case is the same pattern as upper case
+		assertEquals(patterns.getPatternId(0), patterns.getPatternId(4));
+		assertEquals(patterns.getPatternId(1), patterns.getPatternId(10));
+		assertFalse(patterns.getPatternId(0) == patterns.getPatternId(1));
+		// The gap and the N are both 'other'
+		assertEquals(4, patterns.getPattern(patterns.getPatternId(7))[2]);
+		assertEquals(4, patterns.getPattern(patterns.getPatternId(8))[1]);
+		assertTrue(patterns.numPatterns() < aln.length());
+	}
+
+	public void testPatternLogprobs() throws Exception {
+		MultipleAlignmentInputSequence aln = alignment();
+		ColumnPatterns patterns = aln.getColumnPatterns();
+		EvolutionaryModel model = new EvolutionaryModel(aln.getFelsensteinOrder(), new double[] {0.3, 0.2, 0.2, 0.3}, new Kimura80Model(new double[] {0.6, 0.2}));
+
+		for(boolean conditionref : new boolean[] {true, false}) {
+			double[] forward = model.logprobs(patterns, conditionref, false);
+			double[] reverse = model.logprobs(patterns, conditionref, true);
+			for(int pos = 0; pos < aln.length(); ++pos) {
+				int pattern = patterns.getPatternId(pos);
+				assertEquals(model.logprob(aln.getX(pos), conditionref), forward[pattern], 0.0);
+				assertEquals(model.logprobRC(aln.getX(pos), conditionref), reverse[pattern], 0.0);
+			}
+		}
+	}
+
+	public void testHistogram() throws Exception {
+		MultipleAlignmentInputSequence aln = alignment();
+		EvolutionaryModel model = new EvolutionaryModel(aln.getFelsensteinOrder(), new double[] {0.3, 0.2, 0.2, 0.3}, new Kimura80Model(new double[] {0.6, 0.2}));
+
+		ColumnPatternHistogram histogram = new ColumnPatternHistogram();
+		double expected = 0.0;
+		for(int pos = 0; pos < aln.length(); ++pos) {
+			histogram.add(aln.getX(pos), false);
+			expected += model.logprob(aln.getX(pos), true);
+			if(pos % 2 == 0) {
+				histogram.add(aln.getX(pos), true);
+				expected += model.logprobRC(aln.getX(pos), true);
+			}
+		}
+		assertEquals(20, histogram.getTotal());
+		int total = 0;
+		for(int i = 0; i < histogram.numPatterns(); ++i) {
+			total += histogram.getCount(i);
+		}
+		assertEquals(20, total);
+		assertTrue(histogram.numPatterns() < 20);
+		assertEquals(expected, histogram.logLikelihood(model, true), 1e-10);
+	}
+
+	public void testBatchLogprobs() throws Exception {
+		MultipleAlignmentInputSequence aln = alignment();
+		ColumnPatterns patterns = aln.getColumnPatterns();
+		EvolutionaryModel model = new EvolutionaryModel(aln.getFelsensteinOrder(), new double[] {0.3, 0.2, 0.2, 0.3}, new Kimura80Model(new double[] {0.6, 0.2}));
+
+		int n = patterns.numPatterns();
+		byte[][] codes = new byte[n][];
+		for(int p = 0; p < n; ++p) {
+			codes[p] = patterns.getPattern(p);
+		}
+		// Evaluate the patterns in two uneven batches
+		double[] result = new double[n];
+		double[] scratch = new double[model.batchScratchSize(n)];
+		model.logprobs(codes, 0, 3, true, false, scratch, result);
+		model.logprobs(codes, 3, n-3, true, false, scratch, result);
+		for(int p = 0; p < n; ++p) {
+			assertEquals(model.logprob(codes[p], true), result[p], 0.0);
+
+			// Conditioning on the reference divides by the probability of the reference leaf alone
+			byte[] refOnly = new byte[codes[p].length];
+			Arrays.fill(refOnly, (byte) 4);
+			refOnly[0] = codes[p][0];
+			assertEquals(model.logprob(codes[p], false) - model.logprob(refOnly, false), result[p], 1e-12);
+		}
+	}
+
+	public void testPackedAlignment() throws Exception {
+		List<String> species = Arrays.asList("cnDT", "cnDS", "cnAB", "cnBB", "cnBV");
+		List<String> consensuses = Arrays.asList(
+				"AC--GTA-C",
+				null,
+				"ACTTGTAAC",
+				"A-TTG-AAC",
+				null);
+		MultipleAlignmentInputSequence aln = new MultipleAlignmentInputSequence(species, consensuses, "cnDT", ExampleTrees.crypto5());
+		assertEquals(6, aln.length());
+		assertEquals(9, aln.getConsensusLength());
+
+		// Missing species read as gaps
+		assertEquals('-', aln.characterInPaddedAlignment(3, 1));
+		assertEquals("---------", aln.getConsensusSeqs().get(4));
+		assertEquals("ACTTGTAAC", aln.getConsensusSeq(2));
+		assertEquals('G', aln.nucleotide(2, 2));
+		assertEquals('G', aln.getX(2).nucleotide(2));
+
+		// Reference positions on either side of the consensus positions
+		int[] left = new int[] {0, 0, 1, 1, 1, 2, 3, 4, 4};
+		int[] right = new int[] {1, 2, 2, 2, 3, 4, 5, 5, 5};
+		for(int cpos = 0; cpos < 9; ++cpos) {
+			assertEquals(left[cpos], aln.con2refLeft(cpos));
+			assertEquals(right[cpos], aln.con2refRight(cpos));
+		}
+
+		MultipleAlignmentInputSequence sub = (MultipleAlignmentInputSequence) aln.subSequence(2, 4);
+		assertEquals(3, sub.length());
+		assertEquals("C--GT", sub.getConsensusSeq(0));
+		assertEquals("-----", sub.getConsensusSeq(1));
+		assertEquals("-TTG-", sub.getConsensusSeq(3));
+	}
+
+	public void testAlignmentTracks() throws Exception {
+		List<String> species = Arrays.asList("cnDT", "cnDS", "cnAB", "cnBB", "cnBV");
+		List<String> consensuses = Arrays.asList(
+				"AC--GTA-C",
+				null,
+				"ACTTG---C",
+				"A-TTG-AAC",
+				"ACTTGTAAC");
+		MultipleAlignmentInputSequence aln = new MultipleAlignmentInputSequence(species, consensuses, "cnDT", ExampleTrees.crypto5());
+		AlignmentTracks tracks = aln.getAlignmentTracks();
+		assertSame(tracks, aln.getAlignmentTracks());
+
+		// Gaps of length 1 and 2 are frameshifts, the gap of length 3 in cnAB is a gap boundary
+		boolean[] frameshift = new boolean[] {true, true, true, false, true, true};
+		boolean[] gapBoundary = new boolean[] {false, false, true, false, false, true};
+		String[] aligned = new String[] {"111111", "000000", "111001", "101011", "111111"};
+		for(int pos = 0; pos < aln.length(); ++pos) {
+			assertEquals(frameshift[pos], tracks.isFrameshift(pos));
+			assertEquals(gapBoundary[pos], tracks.isGapBoundary(pos));
+			for(int spec = 0; spec < species.size(); ++spec) {
+				assertEquals(aligned[spec].charAt(pos) == '1', tracks.isAligned(pos, spec));
+			}
+		}
+	}
+
+	public void testAlignmentView() throws Exception {
+		MultipleAlignmentInputSequence aln = alignment();
+		MultipleAlignmentInputSequence view = (MultipleAlignmentInputSequence) ((MultipleAlignmentInputSequence) aln.subSequence(2, 12)).subSequence(2, 9);
+		int from = aln.ref2con(2);
+		int to = aln.ref2con(9)+1;
+		List<String> consensuses = new ArrayList<String>();
+		for(String consensus : aln.getConsensusSeqs()) {
+			consensuses.add(consensus.substring(from, to));
+		}
+		MultipleAlignmentInputSequence copy = new MultipleAlignmentInputSequence(aln.getSpeciesNames(), consensuses, "cnDT", ExampleTrees.crypto5());
+
+		assertEquals(copy.length(), view.length());
+		assertEquals(copy.getConsensusLength(), view.getConsensusLength());
+		assertEquals(copy.getConsensusSeqs(), view.getConsensusSeqs());
+		AlignmentTracks copyTracks = copy.getAlignmentTracks();
+		AlignmentTracks viewTracks = view.getAlignmentTracks();
+		for(int pos = 0; pos < copy.length(); ++pos) {
+			assertEquals(copy.ref2con(pos), view.ref2con(pos));
+			assertEquals(copy.getColumnPatterns().getPatternId(pos), view.getColumnPatterns().getPatternId(pos));
+			assertEquals(copyTracks.isFrameshift(pos), viewTracks.isFrameshift(pos));
+			assertEquals(copyTracks.isGapBoundary(pos), viewTracks.isGapBoundary(pos));
+			for(int spec = 0; spec < copy.numSpecies(); ++spec) {
+				assertEquals(copy.nucleotide(pos, spec), view.nucleotide(pos, spec));
+				assertEquals(copyTracks.isAligned(pos, spec), viewTracks.isAligned(pos, spec));
+			}
+		}
+		for(int cpos = 0; cpos < copy.getConsensusLength(); ++cpos) {
+			assertEquals(copy.con2refLeft(cpos), view.con2refLeft(cpos));
+			assertEquals(copy.con2refRight(cpos), view.con2refRight(cpos));
+		}
+	}
+}
@@ -4,17 +4,28 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import calhoun.analysis.crf.AbstractFeatureManager;
+import calhoun.analysis.crf.CompositeFeatureManager;
 import calhoun.analysis.crf.Conrad;
+import calhoun.analysis.crf.FeatureList;
+import calhoun.analysis.crf.FeatureManagerNode;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.features.tricycle13.KmerFeatures;
 import calhoun.analysis.crf.io.InputHandlerInterleaved;
 import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.InputSequenceCharacter;
+import calhoun.analysis.crf.io.InputSequenceComposite;
+import calhoun.analysis.crf.io.InputSequenceInt;
+import calhoun.analysis.crf.io.IntInputSequence;
 import calhoun.analysis.crf.io.StringInput;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.analysis.crf.solver.check.ArrayFeatureList;
@@ -41,6 +52,72 @@ public class FeatureTest extends AbstractTestCase {
 		assertEquals(expectedProb(82, 23), kf.getKmerProb(0, "G", 1), .01);
 	}
 
+	public void testKmerFeatureCodes() throws Exception {
+		String bases = "ACGTTGCAacgtNNACGGTTCAaaTTGGCCAAGTACGTAGCTAGGATCNacgt";
+		int[] y = new int[bases.length()];
+		for(int i = 0; i < y.length; ++i) {
+			y[i] = (i / 5) % 2;
+		}
+		List<TrainingSequence<Character>> data = new ArrayList<TrainingSequence<Character>>();
+		data.add(new TrainingSequence<Character>(new InputSequenceCharacter(bases), y));
+		// The 7-mer has too many possible codes for a dense table, so it is hashed
+		List<int[]> defs = new ArrayList<int[]>();
+		defs.add(new int[] {0});
+		defs.add(new int[] {-1, 0, 1});
+		defs.add(new int[] {-3, -2, -1, 0, 1, 2, 3});
+		KmerFeatures kf = new KmerFeatures(defs);
+		kf.setRareThreshold(0);
+		kf.train(0, new ZeroOrderManager(), data);
+
+		// Expected values from counting kmer strings
+		List<Map<String, double[]>> expected = new ArrayList<Map<String, double[]>>();
+		for(int[] def : defs) {
+			Map<String, double[]> counts = new HashMap<String, double[]>();
+			for(int pos = 0; pos < bases.length(); ++pos) {
+				String kmer = kf.getKmer(data.get(0), pos, def);
+				if(kmer != null) {
+					if(!counts.containsKey(kmer)) {
+						counts.put(kmer, new double[] {1, 1});
+					}
+					counts.get(kmer)[y[pos]] += 1;
+				}
+			}
+			expected.add(counts);
+		}
+
+		final Map<Integer, Double> features = new HashMap<Integer, Double>();
+		FeatureList result = new FeatureList() {
+			public void addFeature(int index, double value) {
+				assertNull(features.put(index, value));
+			}
+			public void invalidate() {
+			}
+			public boolean isValid() {
+				return true;
+			}
+		};
+		for(String test : new String[] {bases, "TTXACGTacgNAC"}) {
+			InputSequenceCharacter seq = new InputSequenceCharacter(test);
+			for(int pos = 0; pos < test.length(); ++pos) {
+				for(int state = 0; state < 2; ++state) {
+					features.clear();
+					kf.evaluateNode(seq, pos, state, result);
+					for(int j = 0; j < defs.size(); ++j) {
+						double[] counts = expected.get(j).get(kf.getKmer(seq, pos, defs.get(j)));
+						Double value = features.get(j + defs.size() * state);
+						if(counts == null) {
+							assertNull(value);
+						} else {
+							double prob = Math.log(counts[state] / (counts[0] + counts[1]));
+							assertEquals(prob, kf.getKmerProb(j, kf.getKmer(seq, pos, defs.get(j)), state), 1e-9);
+							assertEquals(prob, value, 1e-9);
+						}
+					}
+				}
+			}
+		}
+	}
+
 	double expectedProb(int a, int b) {
 		return Math.log((a+1)/(float)(a+b+2));
 	}
@@ -74,6 +151,57 @@ public class FeatureTest extends AbstractTestCase {
 		result.evaluateNode(data.get(0), 0, 0);
 	}
 
+	/** a node feature whose value is the int in its input component at each position */
+	static class ComponentValueFeature extends AbstractFeatureManager<Integer> implements FeatureManagerNode<Integer> {
+		private static final long serialVersionUID = 1L;
+		int startIx;
+		public int getNumFeatures() {
+			return 1;
+		}
+		public String getFeatureName(int featureIndex) {
+			return "ComponentValue";
+		}
+		public void train(int startingIndex, ModelManager modelInfo, List data) {
+			startIx = startingIndex;
+		}
+		public void evaluateNode(InputSequence<? extends Integer> seq, int pos, int state, FeatureList result) {
+			result.addFeature(startIx, ((IntInputSequence) seq).getInt(pos));
+		}
+	}
+
+	public void testCompositeComponentSlots() throws Exception {
+		CompositeFeatureManager composite = new CompositeFeatureManager();
+		composite.addFeatureManager("a", null, new ComponentValueFeature());
+		composite.addFeatureManager("b", null, new ComponentValueFeature());
+		composite.addFeatureManager("a", null, new ComponentValueFeature());
+		composite.train(0, null, new ArrayList());
+		assertEquals(3, composite.getNumFeatures());
+
+		final double[] values = new double[3];
+		FeatureList result = new FeatureList() {
+			public void addFeature(int index, double value) {
+				values[index] = value;
+			}
+			public void invalidate() {
+			}
+			public boolean isValid() {
+				return true;
+			}
+		};
+		for(int[] b : new int[][] { {5, 6}, {7, 8} }) {
+			Map<String, InputSequence<?>> components = new HashMap<String, InputSequence<?>>();
+			components.put("a", new InputSequenceInt(new int[] {1, 2}));
+			components.put("b", new InputSequenceInt(b));
+			InputSequenceComposite seq = new InputSequenceComposite(components);
+			for(int pos = 0; pos < 2; ++pos) {
+				composite.evaluateNode(seq, pos, 0, result);
+				assertEquals(pos+1.0, values[0]);
+				assertEquals((double) b[pos], values[1]);
+				assertEquals(pos+1.0, values[2]);
+			}
+		}
+	}
+
 	public void writeFeatures(Conrad runner, String file, InputSequence data) throws IOException {
 		ModelManager model = runner.getModel();
 		boolean training = TrainingSequence.class.isInstance(data);
@@ -1,9 +1,40 @@
 package calhoun.analysis.crf.test;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import calhoun.analysis.crf.io.ExtensionMapper;
+import calhoun.analysis.crf.io.FastaInput;
+import calhoun.analysis.crf.io.GTFInputInterval13;
+import calhoun.analysis.crf.io.GTFReader;
+import calhoun.analysis.crf.io.InputComponentIO;
+import calhoun.analysis.crf.io.InputHandlerDirectory;
+import calhoun.analysis.crf.io.InputHandlerFile;
+import calhoun.analysis.crf.io.InputHandlerInterleaved;
+import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.InputSequenceCharacter;
+import calhoun.analysis.crf.io.InputSequenceComposite;
+import calhoun.analysis.crf.io.MappedFastaInputSequence;
+import calhoun.analysis.crf.io.NameInputSequence;
+import calhoun.analysis.crf.io.StringInput;
+import calhoun.analysis.crf.io.TrainingSequence;
+import calhoun.seq.FastaIterator;
+import calhoun.seq.FastaSequence;
+import calhoun.seq.IndexedFastaFile;
 import calhoun.util.AbstractTestCase;
+import calhoun.util.CheckException;
+import calhoun.util.ConfigException;
+import calhoun.util.FileUtil;
 
 public class FileInputHandlerTest extends AbstractTestCase {
 	
@@ -16,4 +47,202 @@ public class FileInputHandlerTest extends AbstractTestCase {
 		m.setAppend(true);
 		assertEquals(new File("/absolute/path/test.old.new"), m.mapFilename(new File("/absolute/path/test.old")));
 	}
+
+	public void testIndexedFasta() throws Exception {
+		String file = "test/working/indexed.fa";
+		new File(file + IndexedFastaFile.INDEX_EXTENSION).delete();
+		FileUtil.writeFile(file, ">chr1 first record\nACGTA\nCGtac\nGT\n>chr2\r\n\r\nNNAC\r\nGG\r\n>empty\n>chr3\nacgtacgtac");
+
+		FastaInput fasta = new FastaInput();
+		fasta.setHeader("name");
+		fasta.setSequence("ref");
+		InputHandlerFile handler = new InputHandlerFile();
+		handler.setInputReader(fasta);
+		handler.setIndexedFasta(true);
+
+		// Read once to build the index and again to reuse it
+		for(int pass = 0; pass < 2; ++pass) {
+			Iterator<? extends InputSequence<?>> indexed = handler.readInputData(file);
+			FastaIterator expected = new FastaIterator(file);
+			while(expected.hasNext()) {
+				FastaSequence record = expected.next();
+				InputSequence<?> input = indexed.next();
+				assertEquals(record.getHeader(), ((NameInputSequence) input.getComponent("name")).getName());
+				MappedFastaInputSequence seq = (MappedFastaInputSequence) input.getComponent("ref");
+				String bases = record.getSequence().toUpperCase();
+				assertEquals(bases, seq.getString());
+				for(int i = bases.length()-1; i >= 0; --i) {
+					assertEquals(bases.charAt(i), seq.getX(i).charValue());
+				}
+				if(bases.length() > 3) {
+					InputSequence<Character> sub = seq.subSequence(2, bases.length()-1);
+					assertEquals(bases.substring(1, bases.length()-1), ((MappedFastaInputSequence) sub).getString());
+				}
+			}
+			assertFalse(indexed.hasNext());
+			assertTrue(new File(file + IndexedFastaFile.INDEX_EXTENSION).exists());
+		}
+
+		IndexedFastaFile index = new IndexedFastaFile(file);
+		assertEquals(4, index.getRecords().size());
+		assertEquals("GtacGT", index.getRecord("chr1").getSequence(7, 12));
+		assertEquals(0, index.getRecord("empty").getLength());
+		assertNull(index.getRecord("chr4"));
+	}
+
+	public void testIndexedFastaRequiresFastaReader() throws Exception {
+		InputHandlerFile handler = new InputHandlerFile();
+		handler.setInputReader(new StringInput());
+		handler.setIndexedFasta(true);
+		try {
+			handler.readInputData("test/working/indexed.fa");
+			fail("Indexed a file read by an interleaved reader");
+		}
+		catch(ConfigException ex) {
+		}
+
+		InputHandlerDirectory dir = new InputHandlerDirectory();
+		dir.setInputReaders(Collections.singletonMap("input.txt", (InputComponentIO) new StringInput()));
+		dir.setIndexedFasta(true);
+		try {
+			dir.readInputData("test/working");
+			fail("Indexed a directory with no FASTA reader");
+		}
+		catch(ConfigException ex) {
+		}
+	}
+
+	public void testStreamingInput() throws Exception {
+		String literal = "0011\nACGT\n2210\nTTGA\n";
+		InputHandlerInterleaved interleaved = new InputHandlerInterleaved(new StringInput(), true);
+		Iterator<? extends TrainingSequence<?>> training = interleaved.readTrainingDataIterator(literal, false);
+		assertEquals("0011", toString(training.next().getY()));
+		TrainingSequence<?> second = training.next();
+		assertEquals("2210", toString(second.getY()));
+		assertEquals('G', ((Character) second.getX(2)).charValue());
+		assertFalse(training.hasNext());
+
+		Iterator<? extends InputSequence<?>> inputs = interleaved.readInputData(literal);
+		assertEquals(4, inputs.next().length());
+		assertEquals('T', ((Character) inputs.next().getX(0)).charValue());
+		assertFalse(inputs.hasNext());
+
+		String file = "test/working/streaming.fa";
+		FileUtil.writeFile(file, ">first\nACGTA\n>second\nGGC\n");
+		FastaInput fasta = new FastaInput();
+		fasta.setHeader("name");
+		fasta.setSequence("ref");
+		InputHandlerFile handler = new InputHandlerFile();
+		handler.setInputReader(fasta);
+		Iterator<? extends TrainingSequence<?>> predict = handler.readTrainingDataIterator(file, true);
+		TrainingSequence<?> seq = predict.next();
+		assertEquals("first", ((NameInputSequence) seq.getInputSequence().getComponent("name")).getName());
+		assertEquals("00000", toString(seq.getY()));
+		assertEquals(3, predict.next().length());
+		assertFalse(predict.hasNext());
+	}
+
+	public void testStreamingInputClosesOnError() throws Exception {
+		// The second sequence has a hidden state line but no input line
+		String file = "test/working/truncated.txt";
+		FileUtil.writeFile(file, "0011\nACGT\n0000\n");
+		final BufferedReader[] opened = new BufferedReader[1];
+		StringInput input = new StringInput() {
+			public boolean read(BufferedReader r, Map<String, InputSequence<?>> output) throws IOException {
+				opened[0] = r;
+				return super.read(r, output);
+			}
+		};
+		InputHandlerInterleaved handler = new InputHandlerInterleaved(input);
+
+		// The iterator reads one sequence ahead, so the error comes from the first call to next
+		Iterator<? extends TrainingSequence<?>> it = handler.readTrainingDataIterator(file, false);
+		try {
+			it.next();
+			fail("Read a truncated file");
+		}
+		catch(CheckException ex) {
+		}
+		assertFalse(it.hasNext());
+		assertClosed(opened[0]);
+
+		opened[0] = null;
+		try {
+			handler.readTrainingData(file);
+			fail("Read a truncated file");
+		}
+		catch(CheckException ex) {
+		}
+		assertClosed(opened[0]);
+	}
+
+	static void assertClosed(BufferedReader r) {
+		try {
+			r.ready();
+			fail("Reader was left open");
+		}
+		catch(IOException ex) {
+		}
+	}
+
+	public void testGTFReader() throws Exception {
+		String file = "test/working/reader.gtf";
+		FileUtil.writeFile(file, "# header\n"
+				+ "chr1\tsrc\tCDS\t3\t8\t.\t+\t0\tgene_id \"g1\"; transcript_id \"t1\";\n"
+				+ "chr1\tsrc\texon\t3\t8\t.\t+\t.\tgene_id \"g1\"; transcript_id \"t1\";\n"
+				+ "chr1\tsrc\tCDS\t12\t17\t.\t+\t2\tgene_id \"g1\"; transcript_id \"t1\";\n"
+				+ "\n"
+				+ "chr2\tsrc\tcds\t5\t7\t.\t-\t0\tParent=g2\n"
+				+ "chr3\tsrc\tCDS\t1\t3\t.\t+\t0\tgene_id \"g3\";\n");
+
+		GTFReader reader = new GTFReader(file);
+		Set<String> names = new HashSet<String>();
+		names.add("chr1");
+		names.add("chr2");
+		Map<String, List<GTFReader.Feature>> features = reader.read("CDS", names);
+		assertEquals(2, features.get("chr1").size());
+		assertEquals(12, features.get("chr1").get(1).start);
+		GTFReader.Feature minus = features.get("chr2").get(0);
+		assertEquals("g2", minus.gene);
+		assertEquals('-', minus.strand);
+		assertFalse(features.containsKey("chr3"));
+		assertEquals(1, reader.getDiscarded());
+
+		reader.buildIndex();
+		assertEquals(Arrays.asList(new String[] { "chr1", "chr2", "chr3" }), new ArrayList<String>(reader.getIndexedSequences()));
+		assertEquals(3, reader.read(null, "chr1").size());
+		assertEquals("g3", reader.read("CDS", "chr3").get(0).gene);
+		assertEquals(0, reader.read("CDS", "chr4").size());
+
+		// Both ways of reading give the same hidden states
+		for(int indexed = 0; indexed < 2; ++indexed) {
+			Map<String, InputSequence<?>> components = new HashMap<String, InputSequence<?>>();
+			components.put("name", new NameInputSequence("chr1"));
+			components.put("ref", new InputSequenceCharacter("AAAAAAAAAAAAAAAAAAAA"));
+			List<TrainingSequence<Map<String, Object>>> seqs = new ArrayList<TrainingSequence<Map<String, Object>>>();
+			seqs.add(new TrainingSequence(new InputSequenceComposite(components)));
+			GTFInputInterval13 gtf = new GTFInputInterval13();
+			gtf.setIndexed(indexed == 1);
+			gtf.readTrainingSequences(file, seqs);
+			assertEquals("00333333444333333000", toString(seqs.get(0).getY()));
+		}
+
+		FileUtil.writeFile(file, "chr1\tsrc\tCDS\t3\t8\t.\t+\t0\tgene_id \"g1\";\n"
+				+ "chr2\tsrc\tCDS\t3\t8\t.\t+\t0\tgene_id \"g2\";\n"
+				+ "chr1\tsrc\tCDS\t12\t17\t.\t+\t0\tgene_id \"g1\";\n");
+		try {
+			new GTFReader(file).buildIndex();
+			fail("Indexed a GTF file that is not sorted by sequence");
+		}
+		catch(ConfigException ex) {
+		}
+	}
+
+	static String toString(int[] y) {
+		StringBuffer ret = new StringBuffer();
+		for(int i = 0; i < y.length; ++i) {
+			ret.append(y[i]);
+		}
+		return ret.toString();
+	}
 }
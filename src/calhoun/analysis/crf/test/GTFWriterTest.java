@@ -1,17 +1,31 @@
 package calhoun.analysis.crf.test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import calhoun.analysis.crf.BeanModel;
+import calhoun.analysis.crf.CRFInference;
 import calhoun.analysis.crf.Conrad;
+import calhoun.analysis.crf.ModelManager;
+import calhoun.analysis.crf.features.interval13.Interval13Model;
+import calhoun.analysis.crf.io.GeneCallGTFWriter;
 import calhoun.analysis.crf.io.InputHandler;
 import calhoun.analysis.crf.io.InputHandlerInterleaved;
+import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.InputSequenceCharacter;
+import calhoun.analysis.crf.io.OutputHandler;
+import calhoun.analysis.crf.io.OutputHandlerGeneCallPredict;
 import calhoun.analysis.crf.io.OutputHandlerGeneCallStats;
 import calhoun.analysis.crf.io.StringInput;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.util.AbstractTestCase;
+import calhoun.util.FileUtil;
 
 public class GTFWriterTest extends AbstractTestCase {
 	private static final Log log = LogFactory.getLog(CacheTest.class);
@@ -41,6 +55,133 @@ public class GTFWriterTest extends AbstractTestCase {
 		oh.writeGTF(data3, gtfFile);
 		assertFilesMatch("test/output/shortTrain.gtf", gtfFile);	
 	}
+
+	public void testStreamingGTF() throws Exception {
+		// A plus strand gene in the first sequence and a two exon plus strand gene in the second
+		String literal = "0001231231230000\nAAAATGAAACCCTAAA\n0123123456456123000\nAATGCCGGTAAAGCATAGA\n";
+		InputHandler ih = new InputHandlerInterleaved(new StringInput(), true);
+
+		String batchFile = "test/working/streamingBatch.gtf";
+		GeneCallGTFWriter.writeGTF(ih.readTrainingData(literal), batchFile);
+
+		String streamFile = "test/working/streaming.gtf";
+		GeneCallGTFWriter w = new GeneCallGTFWriter(streamFile, null);
+		Iterator<? extends TrainingSequence<?>> it = ih.readTrainingDataIterator(literal, false);
+		while(it.hasNext()) {
+			w.write(it.next());
+		}
+		w.close();
+		assertFilesMatch(batchFile, streamFile);
+
+		String gtf = FileUtil.readFile(streamFile);
+		assertTrue(gtf.startsWith("SEQ_0\tCONRAD\tstart_codon\t4\t6\t.\t+\t0\tgene_id \"SEQ_0G_1\"; transcript_id \"SEQ_0T_1.1\";\n"));
+		assertTrue(gtf.indexOf("SEQ_1\tCONRAD\tCDS\t2\t7\t.\t+\t0\tgene_id \"SEQ_1G_2\"") >= 0);
+		assertTrue(gtf.indexOf("SEQ_1\tCONRAD\tstop_codon\t17\t19\t.\t+\t0\tgene_id \"SEQ_1G_2\"") >= 0);
+	}
+
+	public void testStreamingOutputHandlers() throws Exception {
+		// A tricycle13 model, where the type of each hidden sequence is detected, and an interval13 model
+		BeanModel tricycle = new BeanModel();
+		List<BeanModel.Node> nodes = new ArrayList<BeanModel.Node>();
+		List<BeanModel.Edge> edges = new ArrayList<BeanModel.Edge>();
+		for(int i=0; i<13; ++i) {
+			nodes.add(new BeanModel.Node(i, "state"+i));
+		}
+		for(BeanModel.Node from : nodes) {
+			for(BeanModel.Node to : nodes) {
+				edges.add(new BeanModel.Edge(from, to));
+			}
+		}
+		tricycle.setNodes(nodes);
+		tricycle.setEdges(edges);
+		ModelManager[] models = new ModelManager[] { tricycle, new Interval13Model() };
+
+		for(ModelManager model : models) {
+			boolean interval13 = model instanceof Interval13Model;
+			for(int handler=0; handler<2; ++handler) {
+				String[] gtf = new String[2];
+				for(int streaming=0; streaming<2; ++streaming) {
+					// The same random genes each time
+					List<TrainingSequence<Character>> data = new ArrayList<TrainingSequence<Character>>();
+					Random r = new Random(17);
+					for(int i=0; i<300; ++i) {
+						int[] y = randomGenes(r, interval13);
+						char[] bases = new char[y.length];
+						Arrays.fill(bases, 'A');
+						data.add(new TrainingSequence<Character>(new InputSequenceCharacter(new String(bases)), y));
+					}
+					OutputHandler oh;
+					if(handler == 0) {
+						OutputHandlerGeneCallStats stats = new OutputHandlerGeneCallStats(model, null);
+						stats.setStreaming(streaming == 1);
+						oh = stats;
+					}
+					else {
+						OutputHandlerGeneCallPredict predict = new OutputHandlerGeneCallPredict(model, null);
+						predict.setStreaming(streaming == 1);
+						oh = predict;
+					}
+					Conrad c = new Conrad();
+					c.setModel(model);
+					c.setWeights(new double[0]);
+					c.setOutputHandler(oh);
+					// Predicts the hidden states the sequence was created with
+					c.setInference(new CRFInference() {
+						public InferenceResult predict(ModelManager mm, InputSequence<?> seq, double[] weights) {
+							InferenceResult ret = new InferenceResult();
+							ret.hiddenStates = ((TrainingSequence<?>) seq).getY().clone();
+							return ret;
+						}
+					});
+					String location = "test/working/streamingHandler"+streaming;
+					c.test(data.iterator(), location);
+					gtf[streaming] = FileUtil.readFile(location+".gtf");
+				}
+				assertTrue(gtf[0].length() > 0);
+				assertEquals(gtf[0], gtf[1]);
+			}
+		}
+	}
+
+	/** returns a random 13 state hidden sequence.  Sequences start and end in intergenic and exons are at least 3 bases, so
+	 * every gene is written.  In tricycle13 sequences, exons next to intergenic start in the first codon position, so the
+	 * sequences are never mistaken for interval13. */
+	int[] randomGenes(Random r, boolean interval13) {
+		List<Integer> y = new ArrayList<Integer>();
+		addRun(y, 0, 4 + r.nextInt(20));
+		int nGenes = r.nextInt(4);
+		for(int gene=0; gene<nGenes; ++gene) {
+			boolean plus = r.nextBoolean();
+			int nExons = 1 + r.nextInt(3);
+			for(int exon=0; exon<nExons; ++exon) {
+				int length = 3 + r.nextInt(30);
+				if(interval13) {
+					addRun(y, (plus ? 1 : 7) + r.nextInt(3), length);
+				}
+				else {
+					int phase = exon == 0 ? 0 : r.nextInt(3);
+					for(int i=0; i<length; ++i) {
+						y.add(plus ? 1 + (phase + i) % 3 : 9 - (phase + i) % 3);
+					}
+				}
+				if(exon < nExons - 1) {
+					addRun(y, (plus ? 4 : 10) + r.nextInt(3), 3 + r.nextInt(30));
+				}
+			}
+			addRun(y, 0, 4 + r.nextInt(20));
+		}
+		int[] ret = new int[y.size()];
+		for(int i=0; i<ret.length; ++i) {
+			ret[i] = y.get(i);
+		}
+		return ret;
+	}
+
+	void addRun(List<Integer> y, int state, int length) {
+		for(int i=0; i<length; ++i) {
+			y.add(state);
+		}
+	}
 }
 
 
@@ -5,6 +5,9 @@ import java.util.List;
 
 import calhoun.analysis.crf.Conrad;
 import calhoun.analysis.crf.features.interval13.GeneConstraintsInterval13;
+import calhoun.analysis.crf.features.supporting.GeneMotifIndex;
+import calhoun.analysis.crf.features.supporting.GeneMotifIndex.Motif;
+import calhoun.analysis.crf.io.InputSequenceCharacter;
 import calhoun.analysis.crf.io.StringInput;
 import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.analysis.crf.solver.check.ArrayFeatureList;
@@ -118,4 +121,25 @@ public class GeneConstraintsInterval13Test extends AbstractTestCase {
 		assertTrue(result.isValid());		
 		
 	}
+
+	public void testGeneMotifIndex() throws Exception {
+		String bases = "ATGCATTAATAGTGAGTGCACGCAGCTTTACTATCAatgcatNATGTAG";
+		InputSequenceCharacter seq = new InputSequenceCharacter(bases);
+		GeneMotifIndex motifs = GeneMotifIndex.get(seq);
+		assertSame(motifs, GeneMotifIndex.get(seq));
+		String[][] patterns = new String[][] {
+				{"ATG"}, {"CAT"}, {"TAA", "TAG", "TGA"}, {"TTA", "CTA", "TCA"},
+				{"GT", "GC"}, {"AC", "GC"}, {"AG"}, {"CT"} };
+		Motif[] values = Motif.values();
+		assertEquals(patterns.length, values.length);
+		for(int m = 0; m < values.length; ++m) {
+			for(int pos = -2; pos < bases.length() + 2; ++pos) {
+				boolean expected = false;
+				for(String pattern : patterns[m]) {
+					expected |= pos >= 0 && bases.startsWith(pattern, pos);
+				}
+				assertEquals(values[m] + " at " + pos, expected, motifs.has(values[m], pos));
+			}
+		}
+	}
 }
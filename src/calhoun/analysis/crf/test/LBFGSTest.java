@@ -5,13 +5,16 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import calhoun.analysis.crf.CRFObjectiveFunctionGradient;
 import calhoun.analysis.crf.Conrad;
 import calhoun.analysis.crf.ModelManager;
 import calhoun.analysis.crf.io.IntInput;
 import calhoun.analysis.crf.io.TrainingSequence;
+import calhoun.analysis.crf.solver.LBFGSOptimizer;
 import calhoun.analysis.crf.solver.MaximumLikelihoodGradient;
 import calhoun.analysis.crf.solver.StandardOptimizer;
 import calhoun.util.AbstractTestCase;
+import calhoun.util.ConfigException;
 
 public class LBFGSTest extends AbstractTestCase {
 	@SuppressWarnings("unused")
@@ -30,6 +33,83 @@ public class LBFGSTest extends AbstractTestCase {
 		assertEquals(2.0, weights[0], 0.01);
 	}
 
+	public void testEvaluationCache() throws Exception {
+		List<? extends TrainingSequence<?>> data = IntInput.prepareData("001111\n001111\n001111\n001111\n001111\n001111\n001111\n001111\n");
+		ModelManager m = new TestFeatureManager(1);
+
+		// With a tolerance that can't be reached the line search stalls and comes back to weights it has already tried
+		double[][] weights = new double[2][];
+		final int[] evaluations = new int[2];
+		for(int i=0; i<2; ++i) {
+			final int run = i;
+			final MaximumLikelihoodGradient gradFunc = new MaximumLikelihoodGradient();
+			StandardOptimizer opt = new StandardOptimizer();
+			opt.setStarts(new double[] {5.0});
+			opt.setEpsForConvergence(1e-14);
+			opt.setRequireConvergence(false);
+			opt.setEvaluationCacheSize(i*4);
+			// Count the evaluations that actually reach the objective function
+			opt.setObjectiveFunction(new CRFObjectiveFunctionGradient() {
+				public void setTrainingData(ModelManager fm, List<? extends TrainingSequence<?>> data) {
+					gradFunc.setTrainingData(fm, data);
+				}
+				public double apply(double[] weights, double[] grad) {
+					++evaluations[run];
+					return gradFunc.apply(weights, grad);
+				}
+				public void clean() {
+					gradFunc.clean();
+				}
+			});
+			weights[i] = opt.optimize(m, data);
+		}
+		assertEquals(weights[0][0], weights[1][0], 0.0);
+		// Some requests were answered from the cache
+		assertTrue(evaluations[1] < evaluations[0]);
+	}
+
+	public void testNegativeEvaluationCacheSize() throws Exception {
+		StandardOptimizer opt = new StandardOptimizer();
+		try {
+			opt.setEvaluationCacheSize(-1);
+			fail("Accepted a negative cache size");
+		}
+		catch(ConfigException ex) {
+		}
+	}
+
+	public void testNativeLBFGS() throws Exception {
+		List<? extends TrainingSequence<?>> data = IntInput.prepareData("001111\n001111\n001111\n001111\n001111\n001111\n001111\n001111\n");
+		ModelManager m = new TestFeatureManager(1);
+
+		LBFGSOptimizer opt = new LBFGSOptimizer();
+		opt.setStarts(new double[] {0.1});
+		opt.setEpsForConvergence(0.00001);
+		opt.setObjectiveFunction(new MaximumLikelihoodGradient());
+		double[] weights = opt.optimize(m, data);
+		assertEquals(2.0, weights[0], 0.01);
+	}
+
+	public void testOWLQN() throws Exception {
+		List<? extends TrainingSequence<?>> data = IntInput.prepareData("001111\n001111\n001111\n001111\n001111\n001111\n001111\n001111\n");
+		ModelManager m = new TestFeatureManager(1);
+
+		// The L1 penalty pulls the weight towards 0
+		LBFGSOptimizer opt = new LBFGSOptimizer();
+		opt.setStarts(new double[] {0.1});
+		opt.setEpsForConvergence(0.00001);
+		opt.setL1Regularization(0.05);
+		opt.setObjectiveFunction(new MaximumLikelihoodGradient());
+		double[] weights = opt.optimize(m, data);
+		assertTrue(weights[0] > 0.0);
+		assertTrue(weights[0] < 1.99);
+
+		// A large penalty makes the weight exactly 0
+		opt.setL1Regularization(10.0);
+		weights = opt.optimize(m, data);
+		assertEquals(0.0, weights[0], 0.0);
+	}
+
 	public void testMainLBGFS() throws Exception {
 		// Create and train the CRF
 		Conrad.main(new String[] {"train", "test/input/zeroOrderLBFGS.xml", "test/input/zeroOrderTest.txt", "test/working/zeroLBGFSModel.ser"});
@@ -1,7 +1,14 @@
 package calhoun.analysis.crf.test;
 
+import java.util.Collections;
+
 import calhoun.analysis.crf.features.supporting.LogProbLookup;
+import calhoun.analysis.crf.features.supporting.MarkovPredictorLogprob;
+import calhoun.analysis.crf.features.supporting.PWMLookup;
 import calhoun.analysis.crf.io.InputSequenceCharacter;
+import calhoun.analysis.crf.io.KmerIndexTracks;
+import calhoun.analysis.crf.io.PackedDnaInputSequence;
+import calhoun.analysis.crf.io.TrainingSequence;
 import calhoun.seq.KmerHasher;
 import calhoun.util.AbstractTestCase;
 
@@ -46,6 +53,106 @@ public class LogprobLookupTest extends AbstractTestCase {
 		
 		System.out.println("hello");
 		
-	}	
-	
+	}
+
+	public void testPackedSequence() throws Exception {
+		// Long enough to cross several packed words, with runs of N and a lower case stretch
+		String bases = "TGTTGGTACGCTTGCGGCTCTGCTGCAGCGAAAAAAAAGATCNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNCGAAATGACCAGtgcaRYacgtNACGT";
+		PackedDnaInputSequence packed = new PackedDnaInputSequence(bases);
+		InputSequenceCharacter string = new InputSequenceCharacter(bases.toUpperCase());
+
+		assertEquals(bases.length(), packed.length());
+		assertEquals(bases.toUpperCase(), packed.getString());
+		byte[] codes = new byte[bases.length()];
+		packed.codes(0, bases.length(), codes);
+		for (int j=0; j<bases.length(); j++) {
+			assertEquals(string.getX(j), packed.getX(j));
+			assertEquals(KmerHasher.ACGTother.hash(string.getX(j)), packed.getCode(j));
+			assertEquals(packed.getCode(j), codes[j]);
+		}
+		byte[] middle = new byte[20];
+		packed.codes(70, 90, middle);
+		for (int j=0; j<20; j++) {
+			assertEquals(packed.getCode(70+j), middle[j]);
+		}
+		assertEquals(bases.substring(40, 100).toUpperCase(), ((PackedDnaInputSequence) packed.subSequence(41, 100)).getString());
+
+		// Lookups give the same values on packed and string sequences
+		String acgtn = bases.replace('R', 'N').replace('Y', 'N');
+		packed = new PackedDnaInputSequence(acgtn);
+		string = new InputSequenceCharacter(acgtn.toUpperCase());
+		LogProbLookup lp = new LogProbLookup(2,1.0);
+		PWMLookup pwm = new PWMLookup(3,6,1.0);
+		for (int j=0; j<acgtn.length(); j++) {
+			lp.increment(string,j,true);
+			lp.increment(string,j,false);
+			pwm.increment(string,j,true);
+			pwm.increment(string,j,false);
+		}
+		lp.finalize();
+		pwm.completeCounts();
+		for (int j=0; j<acgtn.length(); j++) {
+			assertEquals(lp.lookup(string,j,true),lp.lookup(packed,j,true),0.0);
+			assertEquals(lp.lookup(string,j,false),lp.lookup(packed,j,false),0.0);
+			assertEquals(pwm.lookup(string,j,true),pwm.lookup(packed,j,true),0.0);
+			assertEquals(pwm.lookup(string,j,false),pwm.lookup(packed,j,false),0.0);
+		}
+	}
+
+	public void testKmerIndexTracks() throws Exception {
+		String bases = "TGTTGGTACGCTTNGCGGCTCTGCTGNNCAGCGAAAAAAAAGATCGaaatgaccaN";
+		KmerIndexTracks tracks = KmerIndexTracks.get(new InputSequenceCharacter(bases));
+		for (int k=1; k<=4; k++) {
+			for (boolean allowOther : new boolean[] {false, true}) {
+				int[] forward = tracks.getForward(k, allowOther);
+				int[] reverse = tracks.getReverse(k, allowOther);
+				assertSame(forward, tracks.getForward(k, allowOther));
+				int radix = allowOther ? 5 : 4;
+				for (int pos=0; pos<bases.length(); pos++) {
+					int expectedForward = pos+1 >= k ? 0 : -1;
+					for (int j=pos-k+1; j<=pos && expectedForward >= 0; j++) {
+						int h = KmerHasher.ACGTother.hash(bases.charAt(j));
+						expectedForward = (h == 4 && !allowOther) ? -1 : expectedForward*radix + h;
+					}
+					assertEquals(expectedForward, forward[pos]);
+
+					int expectedReverse = pos+k <= bases.length() ? 0 : -1;
+					for (int j=pos+k-1; j>=pos && expectedReverse >= 0; j--) {
+						int h = KmerHasher.ACGTotherRC.hash(bases.charAt(j));
+						expectedReverse = (h == 4 && !allowOther) ? -1 : expectedReverse*radix + h;
+					}
+					assertEquals(expectedReverse, reverse[pos]);
+				}
+			}
+		}
+	}
+
+	public void testMarkovPredictorAccessOrder() throws Exception {
+		String bases = "TGTTGGTACGCTTNGCGGCTCTGCTGNNCAGCGAAAAAAAAGATCGAAATGACCAG";
+		InputSequenceCharacter seq = new InputSequenceCharacter(bases);
+		MarkovPredictorLogprob predictor = new MarkovPredictorLogprob(Collections.singletonList(new int[] {0, 0, 0}));
+		predictor.train(Collections.singletonList(new TrainingSequence<Character>(seq, new int[bases.length()])));
+
+		float[] sequential = new float[bases.length()];
+		for (int pos=0; pos<bases.length(); pos++) {
+			sequential[pos] = predictor.logprob(0, seq, pos);
+		}
+		for (int pos=bases.length()-1; pos>=0; pos--) {
+			assertEquals(sequential[pos], predictor.logprob(0, seq, pos), 0.0);
+			assertEquals(sequential[pos], predictor.logprob(0, new InputSequenceCharacter(bases), pos), 0.0);
+		}
+		// Values given by the incremental history hash that was used before the k-mer index tracks
+		float[] expected = new float[] {
+			0.0f, 0.0f, 0.0f, -1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f,
+			-1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f, -1.3862944f, -1.0986123f, -1.0986123f, -1.0986123f,
+			-1.0986123f, -1.2527629f, -1.0986123f, -1.0986123f, -1.3862944f, -1.0986123f, -1.0986123f, -1.2527629f,
+			-1.0986123f, -1.3862944f, -1.2527629f, -1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f,
+			-1.0986123f, -1.2527629f, -0.84729785f, -0.84729785f, -0.6931472f, -0.6931472f, -0.6931472f, -0.6931472f,
+			-0.6931472f, -1.7917595f, -1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f, -0.84729785f,
+			-0.84729785f, -1.7917595f, -1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f, -1.0986123f
+		};
+		for (int pos=0; pos<bases.length(); pos++) {
+			assertEquals("pos="+pos, expected[pos], sequential[pos], 0.0);
+		}
+	}
 }
@@ -0,0 +1,86 @@
+package calhoun.analysis.crf.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.MafAlignmentInput;
+import calhoun.analysis.crf.io.MultipleAlignmentInputSequence;
+import calhoun.util.AbstractTestCase;
+import calhoun.util.FileUtil;
+
+public class MafAlignmentInputTest extends AbstractTestCase {
+
+	static final String MAF =
+		"##maf version=1\n" +
+		"\n" +
+		"a score=1.0\n" +
+		"s cnDT.chr1 2 4 + 10 AC-GT\n" +
+		"s cnAB.chr7 100 5 + 500 ACTGA\n" +
+		"s cnXX.chr1 0 5 + 5 AAAAA\n" +
+		"\n" +
+		"a\n" +
+		"s cnDS.chr2 0 3 + 3 AAA\n" +
+		"\n" +
+		"a\n" +
+		"s cnDT.chr1 1 2 - 10 TT\n" +
+		"s cnBB.chr3 0 2 - 10 GA\n" +
+		"\n" +
+		"a\n" +
+		"s cnDT.chr2 0 3 + 3 GGG\n" +
+		"s cnDS.chr2 0 2 + 2 G-G\n" +
+		"\n";
+
+	List<Map<String, InputSequence<?>>> emptyInputs(int n) {
+		List<Map<String, InputSequence<?>>> inputs = new ArrayList<Map<String, InputSequence<?>>>();
+		for(int i = 0; i < n; ++i) {
+			Map<String, InputSequence<?>> input = new HashMap<String, InputSequence<?>>();
+			input.put("aln", new MultipleAlignmentInputSequence("cnDT", ExampleTrees.crypto5()));
+			inputs.add(input);
+		}
+		return inputs;
+	}
+
+	String row(Map<String, InputSequence<?>> input, String species) {
+		MultipleAlignmentInputSequence aln = (MultipleAlignmentInputSequence) input.get("aln");
+		return aln.getConsensusSeq(aln.getSpeciesNames().indexOf(species));
+	}
+
+	public void testReadMaf() throws Exception {
+		File file = File.createTempFile("aln", ".maf");
+		file.deleteOnExit();
+		FileUtil.writeFile(file.getPath(), MAF);
+
+		MafAlignmentInput reader = new MafAlignmentInput();
+		reader.setComponent("aln");
+		List<Map<String, InputSequence<?>>> inputs = emptyInputs(2);
+		reader.readInputSequences(file.getPath(), inputs);
+
+		// Reference gap columns are dropped and the reverse strand block is complemented
+		assertEquals(10, inputs.get(0).get("aln").length());
+		assertEquals("NNACGTNAAN", row(inputs.get(0), "cnDT"));
+		assertEquals("--ACGA----", row(inputs.get(0), "cnAB"));
+		assertEquals("-------TC-", row(inputs.get(0), "cnBB"));
+		assertEquals("----------", row(inputs.get(0), "cnDS"));
+
+		assertEquals(3, inputs.get(1).get("aln").length());
+		assertEquals("GGG", row(inputs.get(1), "cnDT"));
+		assertEquals("G-G", row(inputs.get(1), "cnDS"));
+		assertEquals("---", row(inputs.get(1), "cnAB"));
+
+		// Written alignments read back the same
+		File out = File.createTempFile("out", ".maf");
+		out.deleteOnExit();
+		reader.writeInputSequences(out.getPath(), inputs);
+		List<Map<String, InputSequence<?>>> reread = emptyInputs(2);
+		reader.readInputSequences(out.getPath(), reread);
+		for(int i = 0; i < 2; ++i) {
+			for(String species : new String[] {"cnDT", "cnDS", "cnAB", "cnBB", "cnBV"}) {
+				assertEquals(row(inputs.get(i), species), row(reread.get(i), species));
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package calhoun.analysis.crf.test;
+
+import calhoun.analysis.crf.solver.PotentialKernels;
+import calhoun.analysis.crf.solver.CacheProcessor.FeatureEvaluation;
+import calhoun.util.AbstractTestCase;
+
+public class PotentialKernelsTest extends AbstractTestCase {
+
+	public void testDot() throws Exception {
+		FeatureEvaluation eval = FeatureEvaluation.create(1, 8)[0];
+		double[] lambda = new double[] {0.5, -1.0, 2.0, 3.0, 0.25};
+		short[] indices = new short[] {0, 1, 2, 3, 4, 2, -1};
+		float[] vals = new float[] {1, 2, 3, 4, 5, 6, 0};
+		System.arraycopy(indices, 0, eval.index, 0, indices.length);
+		System.arraycopy(vals, 0, eval.value, 0, vals.length);
+
+		double expected = 0.0;
+		for(int i=0; i<6; ++i) {
+			expected += vals[i] * lambda[indices[i]];
+		}
+		assertEquals(6, PotentialKernels.length(eval.index));
+		assertEquals(expected, PotentialKernels.potential(eval, lambda), 1e-12);
+
+		eval.index[6] = Short.MIN_VALUE;
+		assertEquals(Double.NEGATIVE_INFINITY, PotentialKernels.potential(eval, lambda));
+	}
+
+	public void testEdgeReductions() throws Exception {
+		// Three states, transitions 0->2, 1->2, 2->2
+		int nStates = 3;
+		short[] transitionFrom = new short[] {0, 1, 2};
+		byte[] potentials = new byte[] {3, 4, 5};
+		double[] mi = new double[] {1.0, Double.NEGATIVE_INFINITY, 0.5};
+		double[] scores = new double[] {9, 9, 9, 2.0, 10.0, 2.1};
+
+		assertEquals(0, PotentialKernels.argMaxPlus(scores, 3, potentials, nStates, transitionFrom, mi));
+		mi[0] = Double.NEGATIVE_INFINITY;
+		assertEquals(2, PotentialKernels.argMaxPlus(scores, 3, potentials, nStates, transitionFrom, mi));
+		mi[2] = Double.NEGATIVE_INFINITY;
+		assertEquals(-1, PotentialKernels.argMaxPlus(scores, 3, potentials, nStates, transitionFrom, mi));
+
+		double[] alpha = new double[] {0.2, 0.3, 0.5};
+		mi = new double[] {1.0, Double.NEGATIVE_INFINITY, 0.5};
+		assertEquals(0.2*Math.exp(1.0) + 0.5*Math.exp(0.5), PotentialKernels.sumExpProduct(alpha, potentials, nStates, transitionFrom, mi), 1e-12);
+	}
+
+	public void testScale() throws Exception {
+		double[] vec = new double[] {0.0, 1.0, 2.0};
+		PotentialKernels.scale(vec, 0.5);
+		assertEquals(0.0, vec[0]);
+		assertEquals(0.5, vec[1]);
+		assertEquals(1.0, vec[2]);
+		PotentialKernels.scale(vec, Double.POSITIVE_INFINITY);
+		assertEquals(0.0, vec[0]);
+	}
+}
@@ -1,7 +1,18 @@
 package calhoun.analysis.crf.test;
 
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import calhoun.analysis.crf.io.InputSequence;
+import calhoun.analysis.crf.io.IntervalInput;
+import calhoun.analysis.crf.io.IntervalInputSequence;
 import calhoun.analysis.crf.io.IntervalInputSequence.IntervalRangeMapValue;
 import calhoun.util.AbstractTestCase;
+import calhoun.util.IntervalIndex;
 import calhoun.util.RangeMap;
 
 public class RangeMapExamples extends AbstractTestCase {
@@ -26,4 +37,69 @@ public class RangeMapExamples extends AbstractTestCase {
 		
 	}
 
+
+	public void testIntervalIndexMatchesRangeMap() throws Exception {
+		Random rand = new Random(17);
+		RangeMap rm = new RangeMap();
+		for (int j=0; j<40; j++) {
+			int start = rand.nextInt(200);
+			IntervalRangeMapValue irmv = new IntervalRangeMapValue(start,start+rand.nextInt(15),1.0);
+			irmv.insertIntoRangeMap(rm);
+		}
+		IntervalIndex index = rm.toIntervalIndex();
+		assertEquals(rm.size(), index.size());
+
+		IntervalIndex.Cursor cursor = index.cursor();
+		for (int pos=-5; pos<230; pos++) {
+			int count = rm.find(pos,pos).size();
+			assertEquals(count, index.coverage(pos));
+			assertEquals(count, cursor.coverage(pos));
+			assertEquals(rm.hasEntry(pos,pos+3), index.overlaps(pos,pos+3));
+
+			Set found = new HashSet();
+			for (int i = index.nextOverlap(0, pos, pos+3); i != -1; i = index.nextOverlap(i+1, pos, pos+3)) {
+				found.add(index.getValue(i));
+			}
+			assertEquals(rm.find(pos,pos+3), found);
+		}
+		// Cursors can also move backwards
+		assertEquals(rm.find(50,50).size(), cursor.coverage(50));
+	}
+
+	public void testIntervalInputSequence() throws Exception {
+		RangeMap plus = new RangeMap();
+		new IntervalRangeMapValue(5,10,1.0).insertIntoRangeMap(plus);
+		IntervalInputSequence seq = new IntervalInputSequence(plus, new RangeMap(), "test", 30);
+		assertTrue(seq.queryPlus(7));
+		assertEquals(seq.getX(7).queryPlus(), seq.queryPlus(7));
+		assertFalse(seq.queryPlus(11));
+		assertFalse(seq.queryMinus(7));
+
+		IntervalInputSequence sub = seq.subSequence(4, 20);
+		assertEquals(17, sub.length());
+		assertTrue(sub.queryPlus(4));
+		assertFalse(sub.queryPlus(8));
+	}
+
+	public void testIntervalJustPastSubSequence() throws Exception {
+		RangeMap plus = new RangeMap();
+		new IntervalRangeMapValue(5,10,1.0).insertIntoRangeMap(plus);
+		new IntervalRangeMapValue(20,25,2.0).insertIntoRangeMap(plus);
+		IntervalInputSequence seq = new IntervalInputSequence(plus, new RangeMap(), "test", 30);
+		// A query also sees an interval starting at the next position
+		assertTrue(seq.queryPlus(19));
+
+		// Positions 3-19 of the parent, so the second interval starts one base past the end
+		IntervalInputSequence sub = seq.subSequence(4, 20);
+		assertFalse(sub.queryPlus(16));
+		assertTrue(sub.queryPlus(15) == seq.queryPlus(18));
+
+		IntervalInput io = new IntervalInput();
+		io.setName("intervals");
+		Map<String, InputSequence<?>> data = new HashMap<String, InputSequence<?>>();
+		data.put("intervals", sub);
+		StringWriter w = new StringWriter();
+		io.write(w, data);
+		assertEquals("test\n17\n(2,7,+,1.0)\n", w.toString());
+	}
 }
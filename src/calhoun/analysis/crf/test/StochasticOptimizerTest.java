@@ -0,0 +1,51 @@
+package calhoun.analysis.crf.test;
+
+import java.util.List;
+
+import calhoun.analysis.crf.ModelManager;
+import calhoun.analysis.crf.io.IntInput;
+import calhoun.analysis.crf.io.TrainingSequence;
+import calhoun.analysis.crf.solver.MaximumLikelihoodGradient;
+import calhoun.analysis.crf.solver.StandardOptimizer;
+import calhoun.analysis.crf.solver.StochasticOptimizer;
+import calhoun.analysis.crf.solver.TwoPassOptimizer;
+import calhoun.util.AbstractTestCase;
+
+public class StochasticOptimizerTest extends AbstractTestCase {
+
+	/// Same model as LBFGSTest.testLBFGS, the optimal weight is 2.0
+	public void testAdagrad() throws Exception {
+		List<? extends TrainingSequence<?>> data = IntInput.prepareData("001111\n001111\n001111\n001111\n001111\n001111\n001111\n001111\n");
+		ModelManager m = new TestFeatureManager(1);
+
+		StochasticOptimizer opt = new StochasticOptimizer();
+		opt.setStarts(new double[] {0.1});
+		opt.setBatchSize(3);
+		opt.setMaxEpochs(200);
+		opt.setLearningRate(0.5);
+		opt.setEpsForConvergence(0.0);
+		opt.setObjectiveFunction(new MaximumLikelihoodGradient());
+		double[] weights = opt.optimize(m, data);
+		assertEquals(2.0, weights[0], 0.05);
+	}
+
+	public void testTwoPass() throws Exception {
+		List<? extends TrainingSequence<?>> data = IntInput.prepareData("001111\n001111\n001111\n001111\n001111\n001111\n001111\n001111\n");
+		ModelManager m = new TestFeatureManager(1);
+
+		StochasticOptimizer first = new StochasticOptimizer();
+		first.setMethod("adam");
+		first.setMaxEpochs(5);
+		first.setObjectiveFunction(new MaximumLikelihoodGradient());
+		StandardOptimizer second = new StandardOptimizer();
+		second.setEpsForConvergence(0.00001);
+		second.setObjectiveFunction(new MaximumLikelihoodGradient());
+
+		TwoPassOptimizer opt = new TwoPassOptimizer();
+		opt.setFirstPass(first);
+		opt.setSecondPass(second);
+		opt.setStarts(new double[] {0.1});
+		double[] weights = opt.optimize(m, data);
+		assertEquals(2.0, weights[0], 0.01);
+	}
+}
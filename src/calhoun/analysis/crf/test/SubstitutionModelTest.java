@@ -0,0 +1,33 @@
+package calhoun.analysis.crf.test;
+
+import calhoun.analysis.crf.features.supporting.phylogenetic.HKY85Model;
+import calhoun.analysis.crf.features.supporting.phylogenetic.Kimura80Model;
+import calhoun.analysis.crf.features.supporting.phylogenetic.NucleotideSubstitutionModel;
+import calhoun.util.AbstractTestCase;
+import cern.colt.matrix.DoubleMatrix2D;
+
+public class SubstitutionModelTest extends AbstractTestCase {
+
+	void assertClosedFormMatchesExponential(NucleotideSubstitutionModel model) {
+		for(double t : new double[] {0.0, 0.01, 0.1, 0.5, 1.0, 2.0}) {
+			double[] closed = model.transitionProbabilities(t);
+			DoubleMatrix2D series = model.transitionMatrix(t);
+			for(int i = 0; i<4; ++i) {
+				double rowSum = 0.0;
+				for(int j = 0; j<4; ++j) {
+					assertEquals("t="+t+" i="+i+" j="+j, series.getQuick(i,j), closed[i*4+j], 1e-10);
+					rowSum += closed[i*4+j];
+				}
+				assertEquals(1.0, rowSum, 1e-12);
+			}
+		}
+	}
+
+	public void testKimura80() throws Exception {
+		assertClosedFormMatchesExponential(new Kimura80Model(new double[] {1.2, 0.5}));
+	}
+
+	public void testHKY85() throws Exception {
+		assertClosedFormMatchesExponential(new HKY85Model(new double[] {1.2, 0.5, 0.3, 0.15, 0.25}));
+	}
+}
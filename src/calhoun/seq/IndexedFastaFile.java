@@ -0,0 +1,322 @@
+package calhoun.seq;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import calhoun.util.Assert;
+import calhoun.util.ConfigException;
+
+/**
+ * Random access to the records of a FASTA file through a <code>.fai</code> index, in the format written by <code>samtools faidx</code>.
+ * The file is memory mapped and nothing is decoded until it is asked for, so opening a genome takes only the time to read the
+ * index and the bases stay in the operating system's page cache instead of the heap.
+ * <p>
+ * The index is read from the file name with <code>.fai</code> appended if it exists and is not older than the FASTA file.  Otherwise
+ * the FASTA file is scanned once to build it, and the index is written next to the file if that directory is writable.  Indexing
+ * requires that all lines of a record except the last have the same length.
+ */
+public class IndexedFastaFile {
+	private static final Log log = LogFactory.getLog(IndexedFastaFile.class);
+
+	public static final String INDEX_EXTENSION = ".fai";
+
+	// The file is mapped in segments, since a single mapping is limited to 2GB
+	static final int SEGMENT_BITS = 30;
+	static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+	File file;
+	MappedByteBuffer[] segments;
+	List<Record> records = new ArrayList<Record>();
+	Map<String, Record> byName = new HashMap<String, Record>();
+
+	public IndexedFastaFile(String file) throws IOException {
+		this(new File(file));
+	}
+
+	/** opens a FASTA file, reading or building its index
+	 * @param file the FASTA file */
+	public IndexedFastaFile(File file) throws IOException {
+		this.file = file;
+		if(!file.exists())
+			throw new IOException("The fasta file \""+file+"\" does not exist");
+		map();
+
+		File index = new File(file.getPath() + INDEX_EXTENSION);
+		if(index.exists() && index.lastModified() >= file.lastModified()) {
+			readIndex(index);
+		}
+		else {
+			buildIndex();
+			try {
+				writeIndex(index);
+			}
+			catch(IOException ex) {
+				log.warn("Unable to write the index "+index+": "+ex.getMessage());
+			}
+		}
+	}
+
+	void map() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			int n = (int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS);
+			segments = new MappedByteBuffer[n];
+			for(int i = 0; i < n; ++i) {
+				long start = ((long) i) << SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_MASK + 1, size - start));
+			}
+		}
+		finally {
+			// The mappings remain valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/** returns the byte at an offset in the file */
+	byte byteAt(long offset) {
+		return segments[(int) (offset >>> SEGMENT_BITS)].get((int) (offset & SEGMENT_MASK));
+	}
+
+	void readIndex(File index) throws IOException {
+		BufferedReader r = new BufferedReader(new FileReader(index));
+		try {
+			String line;
+			while((line = r.readLine()) != null) {
+				if(line.trim().length() == 0)
+					continue;
+				String[] fields = line.split("\t");
+				if(fields.length < 5)
+					throw new ConfigException(index + " is not a valid FASTA index.  Offending line was : " + line);
+				Record rec = new Record(fields[0], Integer.parseInt(fields[1]), Long.parseLong(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+				rec.header = readHeader(rec.offset);
+				add(rec);
+			}
+		}
+		finally {
+			r.close();
+		}
+	}
+
+	/** recovers the full header line of a record from the file, since the index only stores the name */
+	String readHeader(long offset) {
+		long end = offset - 1;
+		while(end > 0 && (byteAt(end) == '\n' || byteAt(end) == '\r')) {
+			--end;
+		}
+		long start = end;
+		while(start > 0 && byteAt(start - 1) != '\n') {
+			--start;
+		}
+		Assert.a(byteAt(start) == '>', "No header line for the record at offset ", offset, " in ", file);
+		StringBuffer ret = new StringBuffer();
+		for(long i = start + 1; i <= end; ++i) {
+			ret.append((char) (byteAt(i) & 0xff));
+		}
+		return ret.toString().trim();
+	}
+
+	void buildIndex() throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		try {
+			long offset = 0;
+			Record current = null;
+			// Set once a record has a line shorter than the first, which must then be its last
+			boolean ended = false;
+			StringBuffer header = null;
+			int c = in.read();
+			while(c != -1) {
+				long lineStart = offset;
+				if(c == '>') {
+					header = new StringBuffer();
+					while((c = in.read()) != -1 && c != '\n') {
+						header.append((char) c);
+					}
+					offset += header.length() + (c == -1 ? 1 : 2);
+					String h = header.toString().trim();
+					current = new Record(h.split("\\s+", 2)[0], 0, offset, 0, 0);
+					current.header = h;
+					add(current);
+					ended = false;
+				}
+				else {
+					int bases = 0;
+					int width = 0;
+					while(c != -1 && c != '\n') {
+						++width;
+						if(c != '\r') {
+							bases = width;
+						}
+						c = in.read();
+					}
+					if(c == '\n') {
+						++width;
+					}
+					offset += width;
+					if(bases > 0) {
+						if(current == null)
+							throw new ConfigException(file + " is not a valid FASTA file");
+						if(ended)
+							throw new ConfigException("Unable to index "+file+": lines of record "+current.name+" have different lengths at offset "+lineStart);
+						if(current.lineBases == 0) {
+							current.lineBases = bases;
+							current.lineWidth = c == '\n' ? width : bases + 1;
+						}
+						else if(bases > current.lineBases || (bases == current.lineBases && c == '\n' && width != current.lineWidth)) {
+							throw new ConfigException("Unable to index "+file+": lines of record "+current.name+" have different lengths at offset "+lineStart);
+						}
+						else if(bases < current.lineBases) {
+							ended = true;
+						}
+						current.length += bases;
+					}
+					else if(current != null && current.lineBases > 0) {
+						ended = true;
+					}
+					else if(current != null) {
+						// Blank lines between the header and the first bases
+						current.offset = offset;
+					}
+				}
+				c = in.read();
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	void writeIndex(File index) throws IOException {
+		Writer w = new BufferedWriter(new FileWriter(index));
+		try {
+			for(Record rec : records) {
+				w.write(rec.name + "\t" + rec.length + "\t" + rec.offset + "\t" + rec.lineBases + "\t" + rec.lineWidth + "\n");
+			}
+		}
+		finally {
+			w.close();
+		}
+	}
+
+	void add(Record rec) {
+		Assert.a(!byName.containsKey(rec.name), "Duplicate record name ", rec.name, " in ", file);
+		records.add(rec);
+		byName.put(rec.name, rec);
+	}
+
+	/** returns the records in the order they appear in the file */
+	public List<Record> getRecords() {
+		return Collections.unmodifiableList(records);
+	}
+
+	/** returns the record with a name, the first word of its header, or null if there is none */
+	public Record getRecord(String name) {
+		return byName.get(name);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/** one record of the file.  Bases are read from the mapped file each time they are asked for, exactly as they appear in the file. */
+	public class Record implements FastaSequence {
+		String name;
+		String header;
+		int length;
+		// Offset in the file of the first base, number of bases on each full line, and bytes in each full line including the line end
+		long offset;
+		int lineBases;
+		int lineWidth;
+
+		Record(String name, int length, long offset, int lineBases, int lineWidth) {
+			this.name = name;
+			this.length = length;
+			this.offset = offset;
+			this.lineBases = lineBases;
+			this.lineWidth = lineWidth;
+		}
+
+		/** returns the first word of the header, which is the name used in the index */
+		public String getName() {
+			return name;
+		}
+
+		public String getHeader() {
+			return header;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		/** returns one base
+		 * @param pos 0-based position in the record
+		 * @return the base as it appears in the file */
+		public char charAt(int pos) {
+			if(pos < 0 || pos >= length) {
+				throw new ArrayIndexOutOfBoundsException(pos);
+			}
+			return (char) (byteAt(offset + ((long) (pos / lineBases)) * lineWidth + pos % lineBases) & 0xff);
+		}
+
+		/** copies a range of bases into an array, a line at a time
+		 * @param from 0-based position of the first base
+		 * @param to 0-based position after the last base
+		 * @param dest array that receives the bases, starting at index 0 */
+		public void getBytes(int from, int to, byte[] dest) {
+			Assert.a(from >= 0 && from <= to && to <= length, "Invalid range ", from, "-", to, " for ", name);
+			int pos = from;
+			while(pos < to) {
+				int end = Math.min(to, (pos / lineBases + 1) * lineBases);
+				long fileOffset = offset + ((long) (pos / lineBases)) * lineWidth + pos % lineBases;
+				for(int i = pos; i < end; ++i) {
+					dest[i - from] = byteAt(fileOffset++);
+				}
+				pos = end;
+			}
+		}
+
+		public String getSequence() {
+			return getSequence(1, length);
+		}
+
+		public String getSequence(int start, int stop) {
+			byte[] bytes = new byte[stop - start + 1];
+			getBytes(start - 1, stop, bytes);
+			char[] chars = new char[bytes.length];
+			for(int i = 0; i < bytes.length; ++i) {
+				chars[i] = (char) (bytes[i] & 0xff);
+			}
+			return new String(chars);
+		}
+
+		/** Indexed files have no quality scores, so this is always null */
+		public byte[] getQuality() {
+			return null;
+		}
+
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package calhoun.seq;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import org.apache.commons.logging.Log;
@@ -9,7 +11,10 @@ import calhoun.util.Assert;
 import calhoun.util.ErrorException;
 
 /** Class for computing kmer hashes.  You instantiate the class with the length of the kmer to hash and the alphabet to use.  
- * The hashing functions then compute hashes for individual kmers.  This class does not stored any hashes, which are just ints. */
+ * The hashing functions then compute hashes for individual kmers.  This class does not stored any hashes, which are just ints.
+ * <p>
+ * Characters below 256 are hashed through a lookup table built from the alphabet when the hasher is created, so the alphabet's
+ * hash function is only called for other characters.  {@link #hashChars} and {@link #hashKmers} hash a whole range of a sequence in one call. */
 public class KmerHasher implements Serializable {
 	private static final long serialVersionUID = -3402947063680917230L;
 
@@ -20,6 +25,8 @@ public class KmerHasher implements Serializable {
 	int length;
 	int mscMult;	// Multiplier for most significant character
 	int lscMult;	// Multiplier for least significant character
+	// Hash of each character below 256, or -1 if the alphabet rejects it.  Rebuilt when the hasher is read back in.
+	transient byte[] table;
 	
 	public interface CharacterHash extends Serializable {
 		public short getSize();
@@ -35,9 +42,15 @@ public class KmerHasher implements Serializable {
 		this.length = length;
 		mscMult = (int) Math.pow(charHash.getSize(), length-1);
 		lscMult = charHash.getSize();
+		table = lookupTable(charHash);
 		// log.info(String.format("Alphabet size: %d Max hash: %d Max hash(len-1): %d, length: %d", lscMult, mscMult*lscMult-1, mscMult, length));
 	}
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		table = lookupTable(charHash);
+	}
+
 	
 	public static String reverseComplement(String forward) {
 		String reverse = "";
@@ -64,7 +77,7 @@ public class KmerHasher implements Serializable {
 		Assert.a(pos+length <= str.length());
 		int hash = 0;
 		for(int i = 0; i<length; ++i) {
-			hash = hash*lscMult + charHash.hash(str.charAt(pos+i));
+			hash = hash*lscMult + hash(str.charAt(pos+i));
 		}
 		return hash;
 	}
@@ -73,7 +86,7 @@ public class KmerHasher implements Serializable {
 	public int hash(char[] chr) {
 		int hash = 0;
 		for(int i = 0; i<length; ++i) {
-			hash = hash*lscMult + charHash.hash(chr[i]);
+			hash = hash*lscMult + hash(chr[i]);
 		}
 		return hash;
 	}
@@ -82,7 +95,7 @@ public class KmerHasher implements Serializable {
 	public int hash(char[] chr, int start) {
 		int hash = 0;
 		for(int i = start; i<length+start; ++i) {
-			hash = hash*lscMult + charHash.hash(chr[i]);
+			hash = hash*lscMult + hash(chr[i]);
 		}
 		return hash;
 	}
@@ -90,14 +103,102 @@ public class KmerHasher implements Serializable {
 	/** Updates an existing hash.  Drops the first character and adds in the new one to the end.
 	 * hash("BCDE", 0) == shiftHash("E", hash("ABCD", 0))*/
 	public int shiftHash(char chr, int hash) {
-		return ((hash%mscMult)*lscMult) + charHash.hash(chr);
+		return ((hash%mscMult)*lscMult) + hash(chr);
 		
 	}
 
 	/** Updates an existing hash.  Drops the first character and adds in the new one to the end.
 	 * hash("ABCD", 0) == reverseShiftHash("A", hash("BCDE", 0))*/
 	public int reverseShiftHash(char chr, int hash) {
-		return charHash.hash(chr)*mscMult + hash/lscMult;
+		return hash(chr)*mscMult + hash/lscMult;
+	}
+
+	/** Hashes each character in a range of a sequence.
+	 * @param seq the characters to hash
+	 * @param from 0-based position of the first character
+	 * @param to 0-based position after the last character
+	 * @param dest array that receives the hash of character <code>from+i</code> at index <code>i</code> */
+	public void hashChars(CharSequence seq, int from, int to, int[] dest) {
+		Assert.a(from >= 0 && from <= to && to <= seq.length());
+		byte[] t = table;
+		for(int i = from; i<to; ++i) {
+			char c = seq.charAt(i);
+			int h = c < 256 ? t[c] : -1;
+			dest[i-from] = h >= 0 ? h : charHash.hash(c);
+		}
+	}
+
+	/** Hashes each byte in a range of an array of ASCII characters.
+	 * @param seq the characters to hash
+	 * @param from 0-based position of the first character
+	 * @param to 0-based position after the last character
+	 * @param dest array that receives the hash of character <code>from+i</code> at index <code>i</code> */
+	public void hashChars(byte[] seq, int from, int to, int[] dest) {
+		Assert.a(from >= 0 && from <= to && to <= seq.length);
+		byte[] t = table;
+		for(int i = from; i<to; ++i) {
+			int h = t[seq[i] & 0xff];
+			dest[i-from] = h >= 0 ? h : charHash.hash((char) (seq[i] & 0xff));
+		}
+	}
+
+	/** Hashes every kmer that starts in a range of a sequence with a rolling hash.
+	 * @param seq the characters to hash
+	 * @param from 0-based position of the first kmer
+	 * @param to 0-based position after the last character of the last kmer
+	 * @param dest array that receives the hash of the kmer starting at <code>from+i</code> at index <code>i</code>.  Needs room for
+	 * <code>to-from-length+1</code> hashes.
+	 * @return the number of kmers hashed */
+	public int hashKmers(CharSequence seq, int from, int to, int[] dest) {
+		Assert.a(from >= 0 && from <= to && to <= seq.length());
+		byte[] t = table;
+		int hash = 0;
+		for(int i = from; i<to; ++i) {
+			char c = seq.charAt(i);
+			int h = c < 256 ? t[c] : -1;
+			hash = (hash%mscMult)*lscMult + (h >= 0 ? h : charHash.hash(c));
+			if(i-from+1 >= length) {
+				dest[i-from-length+1] = hash;
+			}
+		}
+		return Math.max(0, to-from-length+1);
+	}
+
+	/** Hashes every kmer that starts in a range of an array of ASCII characters with a rolling hash.
+	 * @param seq the characters to hash
+	 * @param from 0-based position of the first kmer
+	 * @param to 0-based position after the last character of the last kmer
+	 * @param dest array that receives the hash of the kmer starting at <code>from+i</code> at index <code>i</code>.  Needs room for
+	 * <code>to-from-length+1</code> hashes.
+	 * @return the number of kmers hashed */
+	public int hashKmers(byte[] seq, int from, int to, int[] dest) {
+		Assert.a(from >= 0 && from <= to && to <= seq.length);
+		byte[] t = table;
+		int hash = 0;
+		for(int i = from; i<to; ++i) {
+			int h = t[seq[i] & 0xff];
+			hash = (hash%mscMult)*lscMult + (h >= 0 ? h : charHash.hash((char) (seq[i] & 0xff)));
+			if(i-from+1 >= length) {
+				dest[i-from-length+1] = hash;
+			}
+		}
+		return Math.max(0, to-from-length+1);
+	}
+
+	/** Builds a table of the hash of each character below 256 for an alphabet.
+	 * @param charHash the alphabet
+	 * @return the hash of each character, or -1 for characters the alphabet does not allow */
+	public static byte[] lookupTable(CharacterHash charHash) {
+		Assert.a(charHash.getSize() <= Byte.MAX_VALUE, "Alphabet is too large for a lookup table: ", charHash.getSize());
+		byte[] ret = new byte[256];
+		for(int c = 0; c<256; ++c) {
+			try {
+				ret[c] = (byte) charHash.hash((char) c);
+			} catch (ErrorException e) {
+				ret[c] = -1;
+			}
+		}
+		return ret;
 	}
 
 	/** Character hash function to use with DNA bases.  Upper and lower case get hashed to the same value.  Handles only the 4 nucleotides (ACTG).  No other characters allowed. */
@@ -272,10 +373,20 @@ public class KmerHasher implements Serializable {
 	};
 
 	public int hash(char c) {
+		if(c < 256) {
+			int h = table[c];
+			if(h >= 0) {
+				return h;
+			}
+		}
+		// Let the alphabet report the bad character
 		return charHash.hash(c);
 	}
 
 	public boolean hashable(char a)  {
+		if(a < 256) {
+			return table[a] >= 0;
+		}
 		try {
 			charHash.hash(a);
 		} catch (ErrorException E) {
@@ -2,6 +2,7 @@ package calhoun.seq.test;
 
 import calhoun.seq.KmerHasher;
 import calhoun.util.AbstractTestCase;
+import calhoun.util.ErrorException;
 
 public class KmerHasherTest extends AbstractTestCase  {
 	public void testDnaLengthOne() {
@@ -54,6 +55,40 @@ public class KmerHasherTest extends AbstractTestCase  {
 		assertEquals(hash, h.reverseShiftHash('a', 130));
 	}
 
+	public void testBulkHash() {
+		String seq = "ACGTNacgtnXTTGCA";
+		KmerHasher h = new KmerHasher(KmerHasher.ACGTother, 3);
+		int[] codes = new int[seq.length()];
+		h.hashChars(seq, 0, seq.length(), codes);
+		for(int i = 0; i < seq.length(); ++i) {
+			assertEquals(KmerHasher.ACGTother.hash(seq.charAt(i)), codes[i]);
+		}
+		int[] kmers = new int[seq.length()];
+		assertEquals(seq.length()-4, h.hashKmers(seq, 2, seq.length(), kmers));
+		int[] fromBytes = new int[seq.length()];
+		assertEquals(seq.length()-4, h.hashKmers(seq.getBytes(), 2, seq.length(), fromBytes));
+		for(int i = 0; i < seq.length()-4; ++i) {
+			assertEquals(h.hash(seq, i+2), kmers[i]);
+			assertEquals(kmers[i], fromBytes[i]);
+		}
+		assertEquals(0, h.hashKmers(seq, 3, 5, kmers));
+	}
+
+	public void testBulkHashRejectsBadCharacters() {
+		KmerHasher h = new KmerHasher(KmerHasher.DNA, 2);
+		assertTrue(h.hashable('g'));
+		assertFalse(h.hashable('N'));
+		int[] codes = new int[4];
+		h.hashChars("gatc".getBytes(), 0, 4, codes);
+		assertEquals(2, codes[0]);
+		assertEquals(1, codes[3]);
+		try {
+			h.hashKmers("gaNc", 0, 4, codes);
+			fail();
+		} catch(ErrorException e) {
+		}
+	}
+
 	public void testReverse() {
 		/*KmerHasher h = new KmerHasher(KmerHasher.LETTERS, 4);
 		// gaag hashes to 130
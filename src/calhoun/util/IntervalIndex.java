@@ -0,0 +1,218 @@
+package calhoun.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A static index over a set of closed intervals, stored in primitive arrays.  Like a {@link RangeMap}, the interval from
+ * 20-30 includes both 20 and 30.  Unlike a RangeMap, the index can not be changed after it is built, but point and range
+ * queries never create objects, which makes it suitable for lookups at every position of a sequence.
+ * <p>
+ * Two structures are kept.  The intervals sorted by start, with a running maximum of the ends, answer which intervals overlap
+ * a range.  The coverage segments, the points where the number of covering intervals changes, answer how many intervals
+ * cover a position.  A {@link Cursor} walks the coverage segments for sequential scans.
+ * <p>
+ * Intervals are numbered 0 to size()-1 in order of their start.  An optional value can be attached to each interval.
+ */
+public class IntervalIndex implements Serializable {
+	private static final long serialVersionUID = -3187020718346095212L;
+
+	int[] starts;
+	int[] ends;
+	// maxEnd[i] is the largest end of intervals 0..i, so it never decreases
+	int[] maxEnd;
+	Object[] values;
+
+	// Number of intervals covering breaks[k] up to breaks[k+1]-1.  Positions before breaks[0] are not covered.
+	int[] breaks;
+	int[] depth;
+
+	/** creates an index of intervals without values.
+	 * @param starts first position of each interval
+	 * @param ends last position of each interval */
+	public IntervalIndex(int[] starts, int[] ends) {
+		this(starts, ends, null);
+	}
+
+	/** creates an index of intervals.  The arrays passed in are not modified.
+	 * @param starts first position of each interval
+	 * @param ends last position of each interval
+	 * @param values value attached to each interval, or null */
+	public IntervalIndex(int[] starts, int[] ends, Object[] values) {
+		int n = starts.length;
+		Assert.a(ends.length == n && (values == null || values.length == n));
+
+		// Sort the interval numbers by start, keeping the original number in the low bits
+		long[] keys = new long[n];
+		for (int i=0; i<n; i++) {
+			Assert.a(starts[i] <= ends[i], "Low end of range (", starts[i], ") is greater than high end (", ends[i], ")");
+			keys[i] = (((long) starts[i]) << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		this.starts = new int[n];
+		this.ends = new int[n];
+		this.maxEnd = new int[n];
+		this.values = values == null ? null : new Object[n];
+		for (int i=0; i<n; i++) {
+			int orig = (int) keys[i];
+			this.starts[i] = starts[orig];
+			this.ends[i] = ends[orig];
+			this.maxEnd[i] = i == 0 ? ends[orig] : Math.max(maxEnd[i-1], ends[orig]);
+			if (values != null) {
+				this.values[i] = values[orig];
+			}
+		}
+
+		buildCoverage();
+	}
+
+	/** merges the sorted starts and ends into the points where coverage changes */
+	void buildCoverage() {
+		int n = starts.length;
+		int[] stops = new int[n];
+		for (int i=0; i<n; i++) {
+			stops[i] = ends[i] + 1;
+		}
+		Arrays.sort(stops);
+
+		int[] b = new int[2*n];
+		int[] d = new int[2*n];
+		int nBreaks = 0;
+		int current = 0;
+		int i = 0;
+		int j = 0;
+		while (i < n || j < n) {
+			int pos = (j == n || (i < n && starts[i] < stops[j])) ? starts[i] : stops[j];
+			while (i < n && starts[i] == pos) {
+				current++;
+				i++;
+			}
+			while (j < n && stops[j] == pos) {
+				current--;
+				j++;
+			}
+			if (nBreaks == 0 ? current != 0 : current != d[nBreaks-1]) {
+				b[nBreaks] = pos;
+				d[nBreaks] = current;
+				nBreaks++;
+			}
+		}
+		breaks = new int[nBreaks];
+		depth = new int[nBreaks];
+		System.arraycopy(b, 0, breaks, 0, nBreaks);
+		System.arraycopy(d, 0, depth, 0, nBreaks);
+	}
+
+	/** returns the number of intervals in the index */
+	public int size() {
+		return starts.length;
+	}
+
+	/** returns the first position of an interval */
+	public int getStart(int i) {
+		return starts[i];
+	}
+
+	/** returns the last position of an interval */
+	public int getEnd(int i) {
+		return ends[i];
+	}
+
+	/** returns the value attached to an interval, or null if the index was built without values */
+	public Object getValue(int i) {
+		return values == null ? null : values[i];
+	}
+
+	/** returns the index of the coverage segment containing a position, or -1 if it is before the first interval */
+	int segment(int pos) {
+		int k = Arrays.binarySearch(breaks, pos);
+		return k >= 0 ? k : -k - 2;
+	}
+
+	/** returns the number of intervals that contain a position */
+	public int coverage(int pos) {
+		int k = segment(pos);
+		return k < 0 ? 0 : depth[k];
+	}
+
+	/** returns true if any interval contains a position */
+	public boolean isCovered(int pos) {
+		return coverage(pos) > 0;
+	}
+
+	/** returns true if any interval overlaps the range.  Same as <code>RangeMap.hasEntry</code>. */
+	public boolean overlaps(int low, int high) {
+		int k = segment(low);
+		if (k >= 0 && depth[k] > 0) {
+			return true;
+		}
+		// Depth changes at every break, so the segment after an uncovered one is covered
+		return k+1 < breaks.length && breaks[k+1] <= high;
+	}
+
+	/** returns the next interval at or after interval <code>from</code> that overlaps the range.  The overlapping intervals can
+	 * be listed without creating any objects with
+	 * <code>for(int i = index.nextOverlap(0, low, high); i != -1; i = index.nextOverlap(i+1, low, high))</code>.
+	 * @param from interval number to start looking at
+	 * @param low first position of the range
+	 * @param high last position of the range
+	 * @return the number of the next overlapping interval, or -1 if there are no more */
+	public int nextOverlap(int from, int low, int high) {
+		// Skip the intervals that all end before the range
+		int lo = from;
+		int hi = starts.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (maxEnd[mid] < low) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		for (int i=lo; i<starts.length && starts[i] <= high; i++) {
+			if (ends[i] >= low) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** returns a new cursor for scanning the coverage of positions in order */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/** walks the coverage of an index position by position.  Moving forward takes constant time per coverage change, and
+	 * moving backward falls back to a binary search.  A cursor holds its position, so each thread needs its own. */
+	public class Cursor {
+		int seg = -1;
+
+		void seek(int pos) {
+			if (seg >= 0 && pos < breaks[seg]) {
+				seg = segment(pos);
+			} else {
+				while (seg+1 < breaks.length && breaks[seg+1] <= pos) {
+					seg++;
+				}
+			}
+		}
+
+		/** returns the number of intervals that contain a position */
+		public int coverage(int pos) {
+			seek(pos);
+			return seg < 0 ? 0 : depth[seg];
+		}
+
+		/** returns true if any interval contains a position */
+		public boolean isCovered(int pos) {
+			return coverage(pos) > 0;
+		}
+
+		/** returns the first position after <code>pos</code> where the coverage changes, or <code>Integer.MAX_VALUE</code> */
+		public int nextChange(int pos) {
+			seek(pos);
+			return seg+1 < breaks.length ? breaks[seg+1] : Integer.MAX_VALUE;
+		}
+	}
+}
@@ -490,6 +490,28 @@ public class RangeMap implements Serializable {
 	}
 	
 
+	/** Returns a static {@link IntervalIndex} of the objects in this map, with each object attached as the value of its
+	 * interval.  Code that builds a RangeMap once and then queries it many times can switch to the index, whose queries
+	 * do not create any objects.  Later changes to the RangeMap are not reflected in the index.
+	 */
+	public IntervalIndex toIntervalIndex() {
+		int n = objectList.size();
+		int[] starts = new int[n];
+		int[] ends = new int[n];
+		Object[] values = new Object[n];
+		int i = 0;
+		Iterator it = objectList.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry entry = (Map.Entry) it.next();
+			Integer[] bounds = (Integer[]) entry.getValue();
+			starts[i] = bounds[0].intValue();
+			ends[i] = bounds[1].intValue() - 1;
+			values[i] = entry.getKey();
+			++i;
+		}
+		return new IntervalIndex(starts, ends, values);
+	}
+
 	/** Returns true if the object is in the RangeMap */
 	public boolean contains(Object o) {
 		return objectList.get(o) != null;
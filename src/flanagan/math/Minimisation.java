@@ -33,7 +33,14 @@
 
 package flanagan.math;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -84,6 +91,8 @@ public class Minimisation {
                                 		    //  = 0; tests simplex sd < fTol
                                 		    // allows options for further tests to be added later
     private double simplexSd = 0.0D;    	// simplex standard deviation
+    private int nThreads = 1;               // number of threads used to evaluate simplex points concurrently
+    private ExecutorService executor = null;// thread pool for concurrent evaluations, only set during a minimisation
 
 
     //Constructors
@@ -189,18 +198,29 @@ public class Minimisation {
 	    }
 
 	    int jcount=this.konvge;  // count of number of restarts still available
+	    double[][] pspec = new double[4][np];   // speculative reflection, extension and contraction points
+	    double[] yspec = null;                  // function values at the speculative points
+
+	    if(this.nThreads>1 && !this.penalty)this.executor = Executors.newFixedThreadPool(this.nThreads);
+	    try{
 
 	    for (int i=0; i<np; ++i){
 	        pp[i][nnp-1]=start[i];
 	    }
-	    yy[nnp-1]=this.functionValue(g, start);
+	    int[] order = new int[nnp];
+	    order[0]=nnp-1;
 	    for (int j=0; j<np; ++j){
 		    start[j]=start[j]+step[j];
 
 		    for (int i=0; i<np; ++i)pp[i][j]=start[i];
-		    yy[j]=this.functionValue(g, start);
 		    start[j]=start[j]-step[j];
+		    order[j+1]=j;
 	    }
+	    this.simplexValues(g, pp, order, yy);
+	    int[] apices = new int[nnp];    // all apices, in order
+	    for (int j=0; j<nnp; ++j)apices[j]=j;
+	    int[] restartApices = new int[np];  // apices moved on a restart
+	    for (int j=0; j<np; ++j)restartApices[j]=j;
 
 	    // loop over allowed iterations
         double  ynewlo=0.0D;    // current value lowest y
@@ -243,8 +263,19 @@ public class Minimisation {
 	        // Calculate p=(1+alpha).pbar-alpha.ph {Reflection}
 	        for (int i=0; i<np; ++i)pstar[i]=(1.0 + this.rCoeff)*pbar[i]-this.rCoeff*pp[i][ihi];
 
+	        if(this.executor!=null){
+	            // Evaluate the reflection, extension and both possible contractions concurrently
+	            for (int i=0; i<np; ++i){
+	                pspec[0][i]=pstar[i];
+	                pspec[1][i]=pstar[i]*(1.0D + this.eCoeff)-this.eCoeff*pbar[i];
+	                pspec[2][i]=this.cCoeff*pp[i][ihi] + (1.0 - this.cCoeff)*pbar[i];
+	                pspec[3][i]=this.cCoeff*pstar[i] + (1.0 - this.cCoeff)*pbar[i];
+	            }
+	            yspec = this.functionValues(g, pspec);
+	        }
+
 	        // Calculate y*
-	        ystar=this.functionValue(g, pstar);
+	        ystar=(this.executor!=null) ? yspec[0] : this.functionValue(g, pstar);
 
 	        ++this.nIter;
 
@@ -253,7 +284,7 @@ public class Minimisation {
                 // Form p**=(1+gamma).p*-gamma.pbar {Extension}
 	            for (int i=0; i<np; ++i)p2star[i]=pstar[i]*(1.0D + this.eCoeff)-this.eCoeff*pbar[i];
 	            // Calculate y**
-	            y2star=this.functionValue(g, p2star);
+	            y2star=(this.executor!=null) ? yspec[1] : this.functionValue(g, p2star);
 	            ++this.nIter;
                 if(y2star < ylo){
                     // Replace ph by p**
@@ -272,15 +303,17 @@ public class Minimisation {
 	            for (int i=0; i<nnp; ++i)if (i!=ihi && ystar > yy[i]) ++ln;
 	            if (ln==np ){
 	                // y*>= all yi; Check if y*>yh
+                    boolean reflected = false;
                     if(ystar<=yy[ihi]){
                         // Replace ph by p*
 	                    for (int i=0; i<np; ++i)pp[i][ihi]=pstar[i];
 	                    yy[ihi]=ystar;
+	                    reflected = true;
 	                }
 	                // Calculate p** =beta.ph+(1-beta)pbar  {Contraction}
 	                for (int i=0; i<np; ++i)p2star[i]=this.cCoeff*pp[i][ihi] + (1.0 - this.cCoeff)*pbar[i];
 	                // Calculate y**
-	                y2star=this.functionValue(g, p2star);
+	                y2star=(this.executor!=null) ? yspec[reflected ? 3 : 2] : this.functionValue(g, p2star);
 	                ++this.nIter;
 	                // Check if y**>yh
 	                if(y2star>yy[ihi]){
@@ -291,8 +324,8 @@ public class Minimisation {
 			                    pp[i][j]=0.5*(pp[i][j] + pp[i][ilo]);
 			                    pmin[i]=pp[i][j];
 		                    }
-		                    yy[j]=this.functionValue(g, pmin);
 	                    }
+	                    this.simplexValues(g, pp, apices, yy);
 	                    this.nIter += nnp;
 	                }
 	                else{
@@ -348,9 +381,9 @@ public class Minimisation {
 	   	            for (int j=0; j<np; ++j){
 		                pmin[j]=pmin[j]+step[j];
 		                for (int i=0; i<np; ++i)pp[i][j]=pmin[i];
-		                yy[j]=this.functionValue(g, pmin);
 		                pmin[j]=pmin[j]-step[j];
 	                 }
+	                this.simplexValues(g, pp, restartApices, yy);
 	            }
 	        }
 
@@ -373,6 +406,13 @@ public class Minimisation {
     	this.minimum=ynewlo;
     	this.kRestart=this.konvge-jcount;
 
+	    }
+	    finally{
+	        if(this.executor!=null){
+	            this.executor.shutdown();
+	            this.executor = null;
+	        }
+	    }
 	}
 
 	// Nelder and Mead simplex
@@ -443,6 +483,57 @@ public class Minimisation {
     }
 
 
+    // Calculate the function values at the apices of the simplex pp, in the order given
+    // Apices are stored in the columns of pp
+	private void simplexValues(MinimisationFunction g, double[][] pp, int[] order, double[] yy){
+	    double[][] x = new double[order.length][this.nParam];
+	    for (int j=0; j<order.length; ++j){
+	        for (int i=0; i<this.nParam; ++i)x[j][i]=pp[i][order[j]];
+	    }
+	    double[] y = this.functionValues(g, x);
+	    for (int j=0; j<order.length; ++j)yy[order[j]]=y[j];
+	}
+
+    // Calculate the function values at several points
+    // The points are evaluated concurrently if more than one thread is allowed and no constraints are set
+	private double[] functionValues(final MinimisationFunction g, double[][] x){
+	    double[] funcVals = new double[x.length];
+	    if(this.executor==null){
+	        for(int i=0; i<x.length; i++)funcVals[i]=this.functionValue(g, x[i]);
+	        return funcVals;
+	    }
+	    List<Future<Double>> futures = new ArrayList<Future<Double>>(x.length);
+	    for(int i=0; i<x.length; i++){
+	        final double[] xi = x[i];
+	        futures.add(this.executor.submit(new Callable<Double>(){
+	            public Double call(){
+	                return unconstrainedFunctionValue(g, xi);
+	            }
+	        }));
+	    }
+	    try{
+	        for(int i=0; i<x.length; i++)funcVals[i]=futures.get(i).get().doubleValue();
+	    }
+	    catch(InterruptedException e){
+	        Thread.currentThread().interrupt();
+	        throw new RuntimeException("Interrupted while evaluating the function in Minimisation.nelderMead(...)", e);
+	    }
+	    catch(ExecutionException e){
+	        if(e.getCause() instanceof RuntimeException)throw (RuntimeException)e.getCause();
+	        throw new RuntimeException(e.getCause());
+	    }
+	    this.lastFunctValNoCnstrnt = funcVals[x.length-1];
+	    return funcVals;
+	}
+
+    // Calculate the function value with no constraint penalty
+    // Does not modify the state of the class, so can be called from several threads
+	private double unconstrainedFunctionValue(MinimisationFunction g, double[] x){
+	    double[] param = new double[this.nParam];
+	    for(int i=0; i<this.nParam; i++)param[i]=x[i]/scale[i];
+	    return g.function(param);
+	}
+
     // Calculate the function value for minimisation
 	private double functionValue(MinimisationFunction g, double[] x){
 	    double funcVal = -3.0D;
@@ -690,6 +781,19 @@ public class Minimisation {
 	    return this.konvge;
 	}
 
+	// Set the number of threads used to evaluate the function concurrently
+	// The function must be safe to call from several threads at once
+	// Constraints force single threaded evaluation
+	public void setNthreads(int nthreads){
+	    if(nthreads<1)throw new IllegalArgumentException("number of threads must be at least one: " + nthreads);
+	    this.nThreads = nthreads;
+	}
+
+	// Get the number of threads used to evaluate the function
+	public int getNthreads(){
+	    return this.nThreads;
+	}
+
 	// Reset the Nelder and Mead reflection coefficient [alpha]
 	public void setNMreflect(double refl){
 	    this.rCoeff = refl;
@@ -41,4 +41,21 @@ public class NelderMeadTest extends TestCase {
 		assertEquals(4.0, m.getParamValues()[1], 0.0001);
 	}
 
+	public void testParallelNelderMead() throws Exception {
+		Minimisation serial = new Minimisation();
+		serial.nelderMead(new MultivariateQuadratic(), new double[] {1,1});
+
+		Minimisation parallel = new Minimisation();
+		parallel.setNthreads(4);
+		parallel.nelderMead(new MultivariateQuadratic(), new double[] {1,1});
+		assertEquals(5.0, parallel.getMinimum(), 0.0001);
+		assertEquals(3.0, parallel.getParamValues()[0], 0.0001);
+		assertEquals(4.0, parallel.getParamValues()[1], 0.0001);
+
+		// The concurrent evaluations are speculative, the search itself is unchanged
+		assertEquals(serial.getMinimum(), parallel.getMinimum(), 0.0);
+		assertEquals(serial.getNiter(), parallel.getNiter());
+		assertEquals(serial.getParamValues()[0], parallel.getParamValues()[0], 0.0);
+		assertEquals(serial.getParamValues()[1], parallel.getParamValues()[1], 0.0);
+	}
 }